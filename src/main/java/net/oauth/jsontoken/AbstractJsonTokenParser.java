@@ -17,15 +17,17 @@
 package net.oauth.jsontoken;
 
 import com.google.common.base.Preconditions;
-import com.google.common.base.Splitter;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
+import java.nio.charset.StandardCharsets;
 import java.security.SignatureException;
+import java.util.EnumMap;
 import java.util.List;
-import net.oauth.jsontoken.crypto.AsciiStringVerifier;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import javax.annotation.Nullable;
 import net.oauth.jsontoken.crypto.Verifier;
-import org.apache.commons.codec.binary.Base64;
 import org.joda.time.Instant;
 
 /**
@@ -35,6 +37,11 @@ import org.joda.time.Instant;
 abstract class AbstractJsonTokenParser {
   private final Clock clock;
   private final Checker[] checkers;
+  private final ParserOptions options;
+  @Nullable private final VerificationStats stats;
+  @Nullable private final ClaimInterner interner;
+  private final EnumMap<TokenLimits.Violation, LongAdder> rejections =
+      new EnumMap<>(TokenLimits.Violation.class);
 
   /**
    * Creates a new {@link AbstractJsonTokenParser}.
@@ -44,33 +51,230 @@ abstract class AbstractJsonTokenParser {
    * @param checkers an array of checkers that validates the parameters in the JSON token.
    */
   AbstractJsonTokenParser(Clock clock, Checker... checkers) {
+    this(clock, ParserOptions.DEFAULT, checkers);
+  }
+
+  /**
+   * Creates a new {@link AbstractJsonTokenParser}.
+   *
+   * @param clock a clock object that will decide whether a given token is
+   *   currently valid or not.
+   * @param options optional parser settings.
+   * @param checkers an array of checkers that validates the parameters in the JSON token.
+   */
+  AbstractJsonTokenParser(Clock clock, ParserOptions options, Checker... checkers) {
     this.clock = Preconditions.checkNotNull(clock);
+    this.options = Preconditions.checkNotNull(options);
+    this.stats = options.getStats();
+    this.interner = options.getInterner();
     this.checkers = checkers;
+    for (TokenLimits.Violation violation : TokenLimits.Violation.values()) {
+      rejections.put(violation, new LongAdder());
+    }
+  }
+
+  ParserOptions getOptions() {
+    return options;
+  }
+
+  /**
+   * Returns the number of tokens this parser has rejected for exceeding the given limit.
+   */
+  public long getRejectionCount(TokenLimits.Violation violation) {
+    return rejections.get(violation).sum();
   }
 
   /**
    * Decodes the JWT token string into a JsonToken object. Does not perform
-   * any validation of headers or claims.
+   * any validation of headers or claims. If the parser has a {@link ClaimInterner},
+   * issuer, audience, key id and algorithm values it holds are replaced with their
+   * canonical instances.
    *
    * @param tokenString The original encoded representation of a JWT
    * @return Unverified contents of the JWT as a JsonToken
    * @throws JsonParseException if the header or payload of tokenString is corrupted
    * @throws IllegalStateException if tokenString is not a properly formatted JWT
+   *   or exceeds the parser's {@link TokenLimits}
    */
   public JsonToken deserialize(String tokenString) {
-    List<String> pieces = splitTokenString(tokenString);
-    String jwtHeaderSegment = pieces.get(0);
-    String jwtPayloadSegment = pieces.get(1);
-    JsonParser parser = new JsonParser();
-    JsonObject header = parser.parse(JsonTokenUtil.fromBase64ToJsonString(jwtHeaderSegment))
-        .getAsJsonObject();
-    JsonObject payload = parser.parse(JsonTokenUtil.fromBase64ToJsonString(jwtPayloadSegment))
-        .getAsJsonObject();
-
-    JsonToken jsonToken = new JsonToken(header, payload, clock, tokenString);
+    try {
+      checkTokenLength(tokenString);
+      int payloadEnd = signingInputEnd(tokenString);
+      int headerEnd = tokenString.indexOf(JsonTokenUtil.DELIMITER);
+      JsonObject header = parseSegment(decodeSegment(tokenString, 0, headerEnd, false));
+      JsonObject payload =
+          parseSegment(decodeSegment(tokenString, headerEnd + 1, payloadEnd, true));
+      return newToken(header, payload, tokenString);
+    } catch (RuntimeException e) {
+      recordFailure(VerificationTrace.Phase.DESERIALIZE);
+      throw e;
+    }
+  }
+
+  /**
+   * Parses and verifies a token, checking its signature before its payload is parsed.
+   * Only the header is parsed and the issuer is scanned from the raw payload to look up
+   * the verifiers; a forged token is rejected without building the payload's JSON tree.
+   * Tokens whose issuer cannot be scanned this way are deserialized first, as usual.
+   *
+   * <p>Verifies exactly as {@link #deserialize} followed by {@link #verify(JsonToken, List)}
+   * does, except that a token with both a bad signature and a corrupt payload is reported
+   * with a {@link SignatureException} rather than a {@link JsonParseException}.
+   *
+   * @param verifierLookup returns the verifiers for a token's algorithm, issuer and key id.
+   */
+  JsonToken verifySignatureFirst(String tokenString,
+      Function<JsonToken, List<Verifier>> verifierLookup) throws SignatureException {
+    PendingToken pending = decodeSignatureFirst(tokenString);
+    JsonToken jsonToken =
+        checkSignatureFirst(pending, verifierLookup.apply(pending.getLookupToken()));
+    if (pending.needsReverification(jsonToken)) {
+      // The scan and the parser disagree on the issuer; verify against the parsed one.
+      verify(jsonToken, verifierLookup.apply(jsonToken));
+    }
     return jsonToken;
   }
 
+  /**
+   * A token decoded for signature-first verification, whose verifiers are yet to be found.
+   */
+  static final class PendingToken {
+    private final String tokenString;
+    private final JsonObject header;
+    @Nullable private final byte[] payloadJson;
+    @Nullable private final String issuer;
+    private final JsonToken lookupToken;
+
+    private PendingToken(String tokenString, JsonObject header, @Nullable byte[] payloadJson,
+        @Nullable String issuer, JsonToken lookupToken) {
+      this.tokenString = tokenString;
+      this.header = header;
+      this.payloadJson = payloadJson;
+      this.issuer = issuer;
+      this.lookupToken = lookupToken;
+    }
+
+    /**
+     * Returns the token to look the verifiers up for: a stand-in carrying just the header
+     * and the scanned issuer, or the deserialized token if the issuer could not be scanned.
+     */
+    JsonToken getLookupToken() {
+      return lookupToken;
+    }
+
+    /**
+     * Returns whether the scan and the parser disagree on the issuer of the token returned
+     * by {@link AbstractJsonTokenParser#checkSignatureFirst}, in which case it must still be
+     * verified against the verifiers of its parsed issuer.
+     */
+    boolean needsReverification(JsonToken jsonToken) {
+      return issuer != null && !issuer.equals(jsonToken.getIssuer());
+    }
+  }
+
+  /**
+   * Decodes a token for {@link #verifySignatureFirst}: parses the header and scans the issuer
+   * from the raw payload. Tokens whose issuer cannot be scanned are deserialized.
+   */
+  PendingToken decodeSignatureFirst(String tokenString) {
+    try {
+      return decodeSignatureFirstUnrecorded(tokenString);
+    } catch (RuntimeException e) {
+      recordFailure(VerificationTrace.Phase.DESERIALIZE);
+      throw e;
+    }
+  }
+
+  private PendingToken decodeSignatureFirstUnrecorded(String tokenString) {
+    checkTokenLength(tokenString);
+    int payloadEnd = signingInputEnd(tokenString);
+    int headerEnd = tokenString.indexOf(JsonTokenUtil.DELIMITER);
+    JsonObject header = parseSegment(decodeSegment(tokenString, 0, headerEnd, false));
+    byte[] payloadJson = decodeSegment(tokenString, headerEnd + 1, payloadEnd, true);
+
+    String issuer = JsonScanner.findTopLevelString(payloadJson, JsonToken.ISSUER);
+    if (issuer == null) {
+      JsonToken jsonToken = newToken(header, parseSegment(payloadJson), tokenString);
+      return new PendingToken(tokenString, header, null, null, jsonToken);
+    }
+
+    // A stand-in token carrying just the header and issuer is enough to find the verifiers.
+    JsonObject issuerOnly = new JsonObject();
+    issuerOnly.addProperty(JsonToken.ISSUER, interner != null ? interner.intern(issuer) : issuer);
+    internHeader(header);
+    JsonToken standIn = new JsonToken(header, issuerOnly, clock, tokenString);
+    return new PendingToken(tokenString, header, payloadJson, issuer, standIn);
+  }
+
+  /**
+   * Checks the signature of a decoded token against its verifiers, then parses the payload
+   * and verifies the claims. If {@link PendingToken#needsReverification} holds for the
+   * returned token, its claims are not verified yet.
+   */
+  JsonToken checkSignatureFirst(PendingToken pending, List<Verifier> verifiers)
+      throws SignatureException {
+    if (pending.payloadJson == null) {
+      verify(pending.lookupToken, verifiers);
+      return pending.lookupToken;
+    }
+    String tokenString = pending.tokenString;
+    TokenTracer.Span span = Tracing.startSpan(Tracing.VERIFY_SPAN, pending.lookupToken);
+    TokenTracer.Scope scope = Tracing.makeCurrent(span);
+    JsonToken jsonToken;
+    try {
+      checkSignature(tokenString, verifiers, null);
+      jsonToken =
+          newToken(pending.header, parseSegmentRecorded(pending.payloadJson), tokenString);
+      if (!pending.needsReverification(jsonToken)) {
+        verifyClaims(jsonToken, null);
+      }
+    } catch (SignatureException | RuntimeException e) {
+      Tracing.end(span, false, e);
+      throw e;
+    } finally {
+      Tracing.close(scope);
+    }
+    Tracing.end(span, true, null);
+    return jsonToken;
+  }
+
+  private void checkTokenLength(String tokenString) {
+    TokenLimits limits = options.getLimits();
+    if (tokenString.length() > limits.getMaxTokenLength()) {
+      throw reject(TokenLimits.Violation.TOKEN_LENGTH, "token length " + tokenString.length()
+          + " exceeds limit of " + limits.getMaxTokenLength());
+    }
+  }
+
+  private JsonToken newToken(JsonObject header, JsonObject payload, String tokenString) {
+    internHeader(header);
+    if (interner != null) {
+      interner.internProperty(payload, JsonToken.ISSUER);
+      interner.internProperty(payload, JsonToken.AUDIENCE);
+    }
+    return new JsonToken(header, payload, clock, tokenString);
+  }
+
+  private void internHeader(JsonObject header) {
+    if (interner != null) {
+      interner.internProperty(header, JsonToken.ALGORITHM_HEADER);
+      interner.internProperty(header, JsonToken.KEY_ID_HEADER);
+    }
+  }
+
+  private static JsonObject parseSegment(byte[] json) {
+    return new JsonParser().parse(new String(json, StandardCharsets.UTF_8)).getAsJsonObject();
+  }
+
+  private JsonObject parseSegmentRecorded(byte[] json) {
+    try {
+      return parseSegment(json);
+    } catch (RuntimeException e) {
+      recordFailure(VerificationTrace.Phase.DESERIALIZE);
+      throw e;
+    }
+  }
+
   /**
    * Verifies that the jsonToken has a valid signature and valid standard claims
    * (iat, exp). Does not need VerifierProviders because verifiers are passed in
@@ -83,33 +287,121 @@ abstract class AbstractJsonTokenParser {
    *   or if tokenString is not a properly formatted JWT
    */
   public void verify(JsonToken jsonToken, List<Verifier> verifiers) throws SignatureException {
-    if (! signatureIsValid(jsonToken.getTokenString(), verifiers)) {
-      throw new SignatureException("Invalid signature for token: " +
-          jsonToken.getTokenString());
+    verify(jsonToken, verifiers, null);
+  }
+
+  /**
+   * Verifies the token as {@link #verify(JsonToken, List)} does, recording the signature
+   * and claims phases in the trace if one is given.
+   */
+  void verify(JsonToken jsonToken, List<Verifier> verifiers, @Nullable VerificationTrace trace)
+      throws SignatureException {
+    TokenTracer.Span span = Tracing.startSpan(Tracing.VERIFY_SPAN, jsonToken);
+    TokenTracer.Scope scope = Tracing.makeCurrent(span);
+    try {
+      verifyPhases(jsonToken, verifiers, trace);
+    } catch (SignatureException | RuntimeException e) {
+      Tracing.end(span, false, e);
+      throw e;
+    } finally {
+      Tracing.close(scope);
     }
+    Tracing.end(span, true, null);
+  }
 
-    Instant issuedAt = jsonToken.getIssuedAt();
-    Instant expiration = jsonToken.getExpiration();
+  private void verifyPhases(JsonToken jsonToken, List<Verifier> verifiers,
+      @Nullable VerificationTrace trace) throws SignatureException {
+    long phaseStart = trace == null ? 0 : System.nanoTime();
+    try {
+      checkSignature(jsonToken.getTokenString(), verifiers, trace);
+    } catch (SignatureException | RuntimeException e) {
+      if (trace != null) {
+        trace.recordFailure(VerificationTrace.Phase.SIGNATURE, e);
+      }
+      throw e;
+    } finally {
+      if (trace != null) {
+        long now = System.nanoTime();
+        trace.recordPhase(VerificationTrace.Phase.SIGNATURE, now - phaseStart);
+        phaseStart = now;
+      }
+    }
 
-    if (issuedAt == null && expiration != null) {
-      issuedAt = new Instant(0);
+    try {
+      verifyClaims(jsonToken, trace);
+    } catch (SignatureException | RuntimeException e) {
+      if (trace != null) {
+        trace.recordFailure(VerificationTrace.Phase.CLAIMS, e);
+      }
+      throw e;
+    } finally {
+      if (trace != null) {
+        trace.recordPhase(VerificationTrace.Phase.CLAIMS, System.nanoTime() - phaseStart);
+      }
     }
+  }
+
+  /**
+   * Throws a {@link SignatureException} unless one of the verifiers accepts the signature,
+   * recording a signature failure for it or for any exception a verifier throws.
+   */
+  private void checkSignature(String tokenString, List<Verifier> verifiers,
+      @Nullable VerificationTrace trace) throws SignatureException {
+    boolean valid;
+    try {
+      valid = signatureIsValid(tokenString, verifiers, trace);
+    } catch (RuntimeException e) {
+      recordFailure(VerificationTrace.Phase.SIGNATURE);
+      throw e;
+    }
+    if (! valid) {
+      recordFailure(VerificationTrace.Phase.SIGNATURE);
+      throw new SignatureException("Invalid signature for token: " + tokenString);
+    }
+  }
 
-    if (issuedAt != null && expiration == null) {
-      expiration = new Instant(Long.MAX_VALUE);
+  private void verifyClaims(JsonToken jsonToken, @Nullable VerificationTrace trace)
+      throws SignatureException {
+    try {
+      checkClaims(jsonToken, trace);
+    } catch (SignatureException | RuntimeException e) {
+      recordFailure(VerificationTrace.Phase.CLAIMS);
+      throw e;
     }
+    recordSuccess();
+  }
 
-    if (issuedAt != null && expiration != null) {
+  private void checkClaims(JsonToken jsonToken, @Nullable VerificationTrace trace)
+      throws SignatureException {
+
+    ClaimSet claims = jsonToken.getClaims();
+    long issuedAtSeconds = claims.getIssuedAtSeconds();
+    long expirationSeconds = claims.getExpirationSeconds();
+
+    if (issuedAtSeconds != ClaimSet.ABSENT || expirationSeconds != ClaimSet.ABSENT) {
+      // JWT represents time in seconds, Instants expect milliseconds
+      Instant issuedAt = issuedAtSeconds == ClaimSet.ABSENT
+          ? new Instant(0) : new Instant(issuedAtSeconds * 1000);
+      Instant expiration = expirationSeconds == ClaimSet.ABSENT
+          ? new Instant(Long.MAX_VALUE) : new Instant(expirationSeconds * 1000);
       if (issuedAt.isAfter(expiration)
           || ! clock.isCurrentTimeInInterval(issuedAt, expiration)) {
         throw new IllegalStateException(String.format("Invalid iat and/or exp. iat: %s exp: %s "
-            + "now: %s", jsonToken.getIssuedAt(), jsonToken.getExpiration(), clock.now()));
+            + "now: %s", issuedAtSeconds == ClaimSet.ABSENT ? null : issuedAt,
+            expirationSeconds == ClaimSet.ABSENT ? null : expiration, clock.now()));
       }
     }
 
     if (checkers != null) {
       for (Checker checker : checkers) {
-        checker.check(jsonToken.getPayloadAsJsonObject());
+        try {
+          checker.check(jsonToken.getPayloadAsJsonObject());
+        } catch (SignatureException | RuntimeException e) {
+          if (trace != null) {
+            trace.recordRejectingChecker(checker);
+          }
+          throw e;
+        }
       }
     }
   }
@@ -123,19 +415,47 @@ abstract class AbstractJsonTokenParser {
    * @throws IllegalStateException if tokenString is not a properly formatted JWT
    */
   public boolean signatureIsValid(String tokenString, List<Verifier> verifiers) {
-    List<String> pieces = splitTokenString(tokenString);
-    byte[] signature = Base64.decodeBase64(pieces.get(2));
-    String baseString = JsonTokenUtil.toDotFormat(pieces.get(0), pieces.get(1));
+    return signatureIsValid(tokenString, verifiers, null);
+  }
+
+  private boolean signatureIsValid(String tokenString, List<Verifier> verifiers,
+      @Nullable VerificationTrace trace) {
+    // The signing input is the token up to the last delimiter; it is fed to each verifier
+    // straight from tokenString rather than copied out of it.
+    int signingInputEnd = signingInputEnd(tokenString);
+    int signatureStart = signingInputEnd + 1;
+    byte[] signature;
+    try {
+      signature = Base64Url.decode(tokenString, signatureStart, tokenString.length());
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+
+    ParallelSignatureCheck parallelCheck = options.getParallelCheck();
+    if (parallelCheck != null && trace == null && verifiers.size() > 1) {
+      Boolean parallelResult =
+          parallelCheck.anyAccepts(tokenString, signingInputEnd, signature, verifiers);
+      if (parallelResult != null) {
+        return parallelResult;
+      }
+      // the pool is saturated; check on this thread
+    }
 
     boolean sigVerified = false;
-    for (Verifier verifier : verifiers) {
-      AsciiStringVerifier asciiVerifier = new AsciiStringVerifier(verifier);
+    for (int i = 0; i < verifiers.size(); i++) {
+      Verifier verifier = verifiers.get(i);
+      long attemptStart = trace == null ? 0 : System.nanoTime();
       try {
-        asciiVerifier.verifySignature(baseString, signature);
+        verifier.verifySignature(tokenString, 0, signingInputEnd, signature);
         sigVerified = true;
-        break;
       } catch (SignatureException e) {
-        continue;
+        // try the next verifier
+      }
+      if (trace != null) {
+        trace.recordVerifierAttempt(verifier, i, sigVerified, System.nanoTime() - attemptStart);
+      }
+      if (sigVerified) {
+        break;
       }
     }
     return sigVerified;
@@ -165,18 +485,87 @@ abstract class AbstractJsonTokenParser {
     return issuedAt == null || issuedAt.isBefore(now);
   }
 
+  /**
+   * Decodes the JSON of a base64url-encoded header or payload segment, checking
+   * the decoded size before decoding and the JSON structure before it is parsed.
+   * @throws JsonParseException if the segment is not a canonical base64url encoding
+   * @throws IllegalStateException if the segment exceeds the parser's {@link TokenLimits}
+   */
+  private byte[] decodeSegment(String tokenString, int start, int end, boolean isPayload) {
+    TokenLimits limits = options.getLimits();
+    byte[] json;
+    try {
+      int decodedLength = Base64Url.decodedLength(end - start);
+      if (decodedLength > limits.getMaxSegmentBytes()) {
+        throw reject(TokenLimits.Violation.SEGMENT_SIZE, "decoded segment size "
+            + decodedLength + " exceeds limit of " + limits.getMaxSegmentBytes());
+      }
+      json = Base64Url.decode(tokenString, start, end);
+    } catch (IllegalArgumentException e) {
+      throw new JsonParseException("token segment is not valid base64url", e);
+    }
+    TokenLimits.Violation violation = limits.scanJson(json, isPayload);
+    if (violation == TokenLimits.Violation.JSON_DEPTH) {
+      throw reject(violation, "JSON nesting exceeds depth limit of " + limits.getMaxJsonDepth());
+    } else if (violation == TokenLimits.Violation.CLAIM_COUNT) {
+      throw reject(violation, "payload exceeds claim count limit of "
+          + limits.getMaxClaimCount());
+    }
+    return json;
+  }
+
+  /**
+   * Records the failure of a verification in the parser's statistics, if it has any.
+   */
+  void recordFailure(VerificationTrace.Phase phase) {
+    if (stats != null) {
+      stats.recordFailure(phase);
+    }
+  }
+
+  /**
+   * Returns the start time of a verification whose latency is to be recorded with
+   * {@link #recordLatency}, or 0 if the parser has no statistics.
+   */
+  long startLatency() {
+    return stats == null ? 0 : System.nanoTime();
+  }
+
+  void recordLatency(long startNanos) {
+    if (stats != null) {
+      stats.recordVerifyLatency(System.nanoTime() - startNanos);
+    }
+  }
+
+  private void recordSuccess() {
+    if (stats != null) {
+      stats.recordSuccess();
+    }
+  }
+
+  private IllegalStateException reject(TokenLimits.Violation violation, String message) {
+    rejections.get(violation).increment();
+    return new IllegalStateException(message);
+  }
+
   /**
    * @param tokenString The original encoded representation of a JWT
-   * @return Three components of the JWT as an array of strings
+   * @return The index of the delimiter between the signing input and the signature
    * @throws IllegalStateException if tokenString is not a properly formatted JWT
    */
-  private List<String> splitTokenString(String tokenString) {
-    List<String> pieces = Splitter.on(JsonTokenUtil.DELIMITER).splitToList(tokenString);
-    if (pieces.size() != 3) {
+  private static int signingInputEnd(String tokenString) {
+    int first = tokenString.indexOf(JsonTokenUtil.DELIMITER);
+    int last = tokenString.lastIndexOf(JsonTokenUtil.DELIMITER);
+    if (first < 0 || first == last
+        || tokenString.indexOf(JsonTokenUtil.DELIMITER, first + 1) != last) {
+      int segments = 1;
+      for (int i = first; i >= 0; i = tokenString.indexOf(JsonTokenUtil.DELIMITER, i + 1)) {
+        segments++;
+      }
       throw new IllegalStateException("Expected JWT to have 3 segments separated by '" +
-          JsonTokenUtil.DELIMITER + "', but it has " + pieces.size() + " segments");
+          JsonTokenUtil.DELIMITER + "', but it has " + segments + " segments");
     }
-    return pieces;
+    return last;
   }
 
 }
@@ -21,8 +21,10 @@ import com.google.common.base.Preconditions;
 import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.gson.JsonObject;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import net.oauth.jsontoken.crypto.SignatureAlgorithm;
@@ -52,7 +54,27 @@ public final class AsyncJsonTokenParser extends AbstractJsonTokenParser {
       AsyncVerifierProviders asyncVerifierProviders,
       Executor executor,
       Checker... checkers) {
-    super(clock, checkers);
+    this(clock, asyncVerifierProviders, executor, ParserOptions.DEFAULT, checkers);
+  }
+
+  /**
+   * Creates a new {@link AsyncJsonTokenParser}.
+   *
+   * @param clock a clock object that will decide whether a given token is currently valid or not.
+   * @param asyncVerifierProviders an object that provides signature verifiers asynchronously
+   *   based on a signature algorithm, the signer, and key ids.
+   * @param executor an executor to run the tasks before and after getting the verifiers
+   * @param options optional parser settings. Tracing is not supported by this parser;
+   *   signature-first verification is.
+   * @param checkers an array of checkers that validates the parameters in the JSON token.
+   */
+  public AsyncJsonTokenParser(
+      Clock clock,
+      AsyncVerifierProviders asyncVerifierProviders,
+      Executor executor,
+      ParserOptions options,
+      Checker... checkers) {
+    super(clock, options, checkers);
     this.asyncVerifierProviders = Preconditions.checkNotNull(asyncVerifierProviders);
     this.executor = Preconditions.checkNotNull(executor);
   }
@@ -69,6 +91,10 @@ public final class AsyncJsonTokenParser extends AbstractJsonTokenParser {
    * @return a {@link ListenableFuture} that will fail if the token fails verification.
    */
   public ListenableFuture<Void> verify(JsonToken jsonToken) {
+    return recordLatency(startLatency(), verifyUnrecorded(jsonToken));
+  }
+
+  private ListenableFuture<Void> verifyUnrecorded(JsonToken jsonToken) {
     ListenableFuture<List<Verifier>> futureVerifiers = provideVerifiers(jsonToken);
     // Use AsyncFunction instead of Function to allow for checked exceptions to propagate forward
     AsyncFunction<List<Verifier>, Void> verifyFunction =
@@ -77,7 +103,8 @@ public final class AsyncJsonTokenParser extends AbstractJsonTokenParser {
           return Futures.immediateVoidFuture();
         };
 
-    return Futures.transformAsync(futureVerifiers, verifyFunction, executor);
+    return Futures.transformAsync(futureVerifiers, verifyFunction,
+        Tracing.inCurrentContext(executor));
   }
 
   /**
@@ -93,14 +120,48 @@ public final class AsyncJsonTokenParser extends AbstractJsonTokenParser {
    * or equivalent constructor of {@link JsonToken} subclasses.
    */
   public ListenableFuture<JsonToken> verifyAndDeserialize(String tokenString) {
+    long start = startLatency();
+    if (getOptions().isSignatureFirst()) {
+      PendingToken pending;
+      try {
+        pending = decodeSignatureFirst(tokenString);
+      } catch (Exception e) {
+        recordLatency(start);
+        return Futures.immediateFailedFuture(e);
+      }
+      return recordLatency(start, verifySignatureFirst(pending));
+    }
+
     JsonToken jsonToken;
     try {
       jsonToken = deserialize(tokenString);
     } catch (Exception e) {
+      recordLatency(start);
       return Futures.immediateFailedFuture(e);
     }
 
-    return Futures.transform(verify(jsonToken), unused -> jsonToken, executor);
+    return recordLatency(start,
+        Futures.transform(verifyUnrecorded(jsonToken), unused -> jsonToken,
+            Tracing.inCurrentContext(executor)));
+  }
+
+  /**
+   * Checks the signature of a decoded token once its verifiers are found, before its payload
+   * is parsed, as {@link JsonTokenParser} does with {@link ParserOptions#withSignatureFirst}.
+   */
+  private ListenableFuture<JsonToken> verifySignatureFirst(PendingToken pending) {
+    AsyncFunction<List<Verifier>, JsonToken> checkFunction =
+        verifiers -> {
+          JsonToken jsonToken = checkSignatureFirst(pending, verifiers);
+          if (!pending.needsReverification(jsonToken)) {
+            return Futures.immediateFuture(jsonToken);
+          }
+          // The scan and the parser disagree on the issuer; verify against the parsed one.
+          return Futures.transform(verifyUnrecorded(jsonToken), unused -> jsonToken,
+              MoreExecutors.directExecutor());
+        };
+    return Futures.transformAsync(provideVerifiers(pending.getLookupToken()), checkFunction,
+        Tracing.inCurrentContext(executor));
   }
 
   /**
@@ -111,7 +172,28 @@ public final class AsyncJsonTokenParser extends AbstractJsonTokenParser {
    * @return a {@link ListenableFuture} that will return a list of verifiers
    */
   private ListenableFuture<List<Verifier>> provideVerifiers(JsonToken jsonToken) {
+    TokenTracer.Span span = Tracing.startSpan(Tracing.PROVIDE_VERIFIERS_SPAN, jsonToken);
+    ListenableFuture<List<Verifier>> verifiers = provideVerifiers(jsonToken, span);
+    if (span != TokenTracer.Span.NOOP) {
+      verifiers.addListener(() -> {
+        Throwable failure = null;
+        try {
+          Futures.getDone(verifiers);
+        } catch (ExecutionException e) {
+          failure = e.getCause();
+        } catch (CancellationException e) {
+          failure = e;
+        }
+        Tracing.end(span, failure == null, failure);
+      }, MoreExecutors.directExecutor());
+    }
+    return verifiers;
+  }
+
+  private ListenableFuture<List<Verifier>> provideVerifiers(JsonToken jsonToken,
+      TokenTracer.Span span) {
     ListenableFuture<List<Verifier>> futureVerifiers;
+    TokenTracer.Scope scope = Tracing.makeCurrent(span);
     try {
       SignatureAlgorithm signatureAlgorithm = jsonToken.getSignatureAlgorithm();
       AsyncVerifierProvider provider =
@@ -122,7 +204,10 @@ public final class AsyncJsonTokenParser extends AbstractJsonTokenParser {
       }
       futureVerifiers = provider.findVerifier(jsonToken.getIssuer(), jsonToken.getKeyId());
     } catch (Exception e) {
+      recordFailure(VerificationTrace.Phase.KEY_LOOKUP);
       return Futures.immediateFailedFuture(e);
+    } finally {
+      Tracing.close(scope);
     }
 
     Function<List<Verifier>, List<Verifier>> checkNullFunction =
@@ -134,7 +219,33 @@ public final class AsyncJsonTokenParser extends AbstractJsonTokenParser {
           return verifiers;
         };
 
-    return Futures.transform(futureVerifiers, checkNullFunction, executor);
+    ListenableFuture<List<Verifier>> checked = Futures.transform(futureVerifiers,
+        checkNullFunction, Tracing.inCurrentContext(executor));
+    if (getOptions().getStats() != null) {
+      // Covers failed lookups, missing verifiers, and an executor that rejects the check.
+      checked.addListener(() -> {
+        if (!checked.isCancelled() && failed(checked)) {
+          recordFailure(VerificationTrace.Phase.KEY_LOOKUP);
+        }
+      }, MoreExecutors.directExecutor());
+    }
+    return checked;
+  }
+
+  private <V> ListenableFuture<V> recordLatency(long start, ListenableFuture<V> future) {
+    if (getOptions().getStats() != null) {
+      future.addListener(() -> recordLatency(start), MoreExecutors.directExecutor());
+    }
+    return future;
+  }
+
+  private static boolean failed(ListenableFuture<?> future) {
+    try {
+      Futures.getDone(future);
+      return false;
+    } catch (ExecutionException e) {
+      return true;
+    }
   }
 
 }
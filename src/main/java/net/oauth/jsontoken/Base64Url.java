@@ -0,0 +1,275 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import java.util.Arrays;
+
+/**
+ * Encoder and decoder for the unpadded base64url encoding used by the segments of a JSON Token
+ * (RFC 4648, section 5, without the trailing "=" padding).
+ *
+ * <p>Unlike general purpose codecs, the decoder is strict: it rejects padding, whitespace,
+ * characters outside the base64url alphabet and encodings whose unused trailing bits are not
+ * zero, so every byte sequence has exactly one accepted encoding. Both directions work on
+ * ranges of the input and can write into caller-supplied buffers.
+ */
+public final class Base64Url {
+
+  private static final char[] ENCODE_TABLE =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+  // Maps each ASCII character to its 6-bit value, or to -1 if it is not in the alphabet.
+  private static final int[] DECODE_TABLE = new int[128];
+
+  static {
+    Arrays.fill(DECODE_TABLE, -1);
+    for (int i = 0; i < ENCODE_TABLE.length; i++) {
+      DECODE_TABLE[ENCODE_TABLE[i]] = i;
+    }
+  }
+
+  /**
+   * Returns the number of characters in the encoding of the given number of bytes.
+   */
+  public static int encodedLength(int byteCount) {
+    return (byteCount / 3) * 4 + ((byteCount % 3) * 4 + 2) / 3;
+  }
+
+  /**
+   * Returns the number of bytes encoded by the given number of characters.
+   * @throws IllegalArgumentException if no encoding has the given length.
+   */
+  public static int decodedLength(int length) {
+    if (length % 4 == 1) {
+      throw new IllegalArgumentException("invalid base64url length: " + length);
+    }
+    return (length / 4) * 3 + ((length % 4) * 3) / 4;
+  }
+
+  /**
+   * Encodes the given bytes.
+   */
+  public static String encode(byte[] source) {
+    char[] chars = new char[encodedLength(source.length)];
+    encode(source, 0, source.length, chars, 0);
+    return new String(chars);
+  }
+
+  /**
+   * Encodes {@code length} bytes of {@code source}, starting at {@code offset}, and appends the
+   * encoding to {@code destination}.
+   */
+  public static void encode(byte[] source, int offset, int length, StringBuilder destination) {
+    int end = offset + length;
+    destination.ensureCapacity(destination.length() + encodedLength(length));
+    int i = offset;
+    for (int fullEnd = end - 2; i < fullEnd; i += 3) {
+      int bits = (source[i] & 0xff) << 16 | (source[i + 1] & 0xff) << 8 | (source[i + 2] & 0xff);
+      destination.append(ENCODE_TABLE[bits >>> 18])
+          .append(ENCODE_TABLE[(bits >>> 12) & 0x3f])
+          .append(ENCODE_TABLE[(bits >>> 6) & 0x3f])
+          .append(ENCODE_TABLE[bits & 0x3f]);
+    }
+    if (end - i == 1) {
+      int bits = (source[i] & 0xff) << 16;
+      destination.append(ENCODE_TABLE[bits >>> 18])
+          .append(ENCODE_TABLE[(bits >>> 12) & 0x3f]);
+    } else if (end - i == 2) {
+      int bits = (source[i] & 0xff) << 16 | (source[i + 1] & 0xff) << 8;
+      destination.append(ENCODE_TABLE[bits >>> 18])
+          .append(ENCODE_TABLE[(bits >>> 12) & 0x3f])
+          .append(ENCODE_TABLE[(bits >>> 6) & 0x3f]);
+    }
+  }
+
+  /**
+   * Encodes {@code length} bytes of {@code source}, starting at {@code offset}, into
+   * {@code destination}, starting at {@code destinationOffset}.
+   * @return the number of characters written, i.e., {@link #encodedLength(int) encodedLength(length)}.
+   * @throws IndexOutOfBoundsException if the encoding does not fit into the destination.
+   */
+  public static int encode(byte[] source, int offset, int length, char[] destination,
+      int destinationOffset) {
+    int end = offset + length;
+    int o = destinationOffset;
+    int i = offset;
+    for (int fullEnd = end - 2; i < fullEnd; i += 3) {
+      int bits = (source[i] & 0xff) << 16 | (source[i + 1] & 0xff) << 8 | (source[i + 2] & 0xff);
+      destination[o++] = ENCODE_TABLE[bits >>> 18];
+      destination[o++] = ENCODE_TABLE[(bits >>> 12) & 0x3f];
+      destination[o++] = ENCODE_TABLE[(bits >>> 6) & 0x3f];
+      destination[o++] = ENCODE_TABLE[bits & 0x3f];
+    }
+    if (end - i == 1) {
+      int bits = (source[i] & 0xff) << 16;
+      destination[o++] = ENCODE_TABLE[bits >>> 18];
+      destination[o++] = ENCODE_TABLE[(bits >>> 12) & 0x3f];
+    } else if (end - i == 2) {
+      int bits = (source[i] & 0xff) << 16 | (source[i + 1] & 0xff) << 8;
+      destination[o++] = ENCODE_TABLE[bits >>> 18];
+      destination[o++] = ENCODE_TABLE[(bits >>> 12) & 0x3f];
+      destination[o++] = ENCODE_TABLE[(bits >>> 6) & 0x3f];
+    }
+    return o - destinationOffset;
+  }
+
+  /**
+   * Appends to {@code destination} the encoding of the UTF-8 bytes of {@code source}, without
+   * materializing those bytes. Unpaired surrogates are encoded as '?', as
+   * {@link String#getBytes(java.nio.charset.Charset)} does.
+   */
+  public static void encodeUtf8(CharSequence source, StringBuilder destination) {
+    int bits = 0;
+    int pending = 0;
+    for (int i = 0; i < source.length(); i++) {
+      int c = source.charAt(i);
+      int utf8;
+      int length;
+      if (c < 0x80) {
+        utf8 = c;
+        length = 1;
+      } else if (c < 0x800) {
+        utf8 = (0xc0 | c >>> 6) << 8 | (0x80 | c & 0x3f);
+        length = 2;
+      } else if (!Character.isSurrogate((char) c)) {
+        utf8 = (0xe0 | c >>> 12) << 16 | (0x80 | (c >>> 6) & 0x3f) << 8 | (0x80 | c & 0x3f);
+        length = 3;
+      } else if (Character.isHighSurrogate((char) c) && i + 1 < source.length()
+          && Character.isLowSurrogate(source.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint((char) c, source.charAt(++i));
+        utf8 = (0xf0 | codePoint >>> 18) << 24 | (0x80 | (codePoint >>> 12) & 0x3f) << 16
+            | (0x80 | (codePoint >>> 6) & 0x3f) << 8 | (0x80 | codePoint & 0x3f);
+        length = 4;
+      } else {
+        utf8 = '?';
+        length = 1;
+      }
+      for (int shift = 8 * (length - 1); shift >= 0; shift -= 8) {
+        bits = bits << 8 | (utf8 >>> shift) & 0xff;
+        if (++pending == 3) {
+          destination.append(ENCODE_TABLE[bits >>> 18])
+              .append(ENCODE_TABLE[(bits >>> 12) & 0x3f])
+              .append(ENCODE_TABLE[(bits >>> 6) & 0x3f])
+              .append(ENCODE_TABLE[bits & 0x3f]);
+          bits = 0;
+          pending = 0;
+        }
+      }
+    }
+    if (pending == 1) {
+      bits <<= 16;
+      destination.append(ENCODE_TABLE[bits >>> 18])
+          .append(ENCODE_TABLE[(bits >>> 12) & 0x3f]);
+    } else if (pending == 2) {
+      bits <<= 8;
+      destination.append(ENCODE_TABLE[bits >>> 18])
+          .append(ENCODE_TABLE[(bits >>> 12) & 0x3f])
+          .append(ENCODE_TABLE[(bits >>> 6) & 0x3f]);
+    }
+  }
+
+  /**
+   * Decodes the given encoding.
+   * @throws IllegalArgumentException if source is not a canonical base64url encoding.
+   */
+  public static byte[] decode(CharSequence source) {
+    return decode(source, 0, source.length());
+  }
+
+  /**
+   * Decodes the characters of {@code source} from {@code start} (inclusive) to {@code end}
+   * (exclusive).
+   * @throws IllegalArgumentException if the range is not a canonical base64url encoding.
+   */
+  public static byte[] decode(CharSequence source, int start, int end) {
+    byte[] bytes = new byte[decodedLength(end - start)];
+    decode(source, start, end, bytes, 0);
+    return bytes;
+  }
+
+  /**
+   * Decodes the characters of {@code source} from {@code start} (inclusive) to {@code end}
+   * (exclusive) into {@code destination}, starting at {@code destinationOffset}.
+   * @return the number of bytes written, i.e., {@link #decodedLength(int) decodedLength(end - start)}.
+   * @throws IllegalArgumentException if the range is not a canonical base64url encoding.
+   * @throws IndexOutOfBoundsException if the decoded bytes do not fit into the destination.
+   */
+  public static int decode(CharSequence source, int start, int end, byte[] destination,
+      int destinationOffset) {
+    int remainder = (end - start) % 4;
+    if (remainder == 1) {
+      throw new IllegalArgumentException("invalid base64url length: " + (end - start));
+    }
+    int o = destinationOffset;
+    int i = start;
+    for (int fullEnd = end - remainder; i < fullEnd; i += 4) {
+      int a = value(source.charAt(i));
+      int b = value(source.charAt(i + 1));
+      int c = value(source.charAt(i + 2));
+      int d = value(source.charAt(i + 3));
+      if ((a | b | c | d) < 0) {
+        throw invalidCharacter(source, i, i + 4);
+      }
+      int bits = a << 18 | b << 12 | c << 6 | d;
+      destination[o++] = (byte) (bits >>> 16);
+      destination[o++] = (byte) (bits >>> 8);
+      destination[o++] = (byte) bits;
+    }
+    if (remainder == 2) {
+      int a = value(source.charAt(i));
+      int b = value(source.charAt(i + 1));
+      if ((a | b) < 0) {
+        throw invalidCharacter(source, i, end);
+      }
+      if ((b & 0x0f) != 0) {
+        throw new IllegalArgumentException("non-canonical base64url encoding");
+      }
+      destination[o++] = (byte) (a << 2 | b >>> 4);
+    } else if (remainder == 3) {
+      int a = value(source.charAt(i));
+      int b = value(source.charAt(i + 1));
+      int c = value(source.charAt(i + 2));
+      if ((a | b | c) < 0) {
+        throw invalidCharacter(source, i, end);
+      }
+      if ((c & 0x03) != 0) {
+        throw new IllegalArgumentException("non-canonical base64url encoding");
+      }
+      int bits = a << 10 | b << 4 | c >>> 2;
+      destination[o++] = (byte) (bits >>> 8);
+      destination[o++] = (byte) bits;
+    }
+    return o - destinationOffset;
+  }
+
+  private static int value(char c) {
+    return c < 128 ? DECODE_TABLE[c] : -1;
+  }
+
+  private static IllegalArgumentException invalidCharacter(CharSequence source, int start,
+      int end) {
+    for (int i = start; i < end; i++) {
+      if (value(source.charAt(i)) < 0) {
+        return new IllegalArgumentException(
+            "invalid base64url character at index " + i + ": " + source.charAt(i));
+      }
+    }
+    return new IllegalArgumentException("invalid base64url encoding");
+  }
+
+  private Base64Url() { }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import com.google.common.base.Preconditions;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import net.oauth.jsontoken.crypto.Signer;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+
+/**
+ * Mints many tokens at once with a single signer, e.g., for an issuer that hands out
+ * short-lived tokens to a fleet of service instances. The tokens of a batch share one
+ * issued-at time and expiration, and are signed in parallel. The signers of this library
+ * keep their engines per thread, so one signer serves all threads.
+ */
+public final class BatchTokenMinter {
+
+  private final Signer signer;
+  private final Duration lifetime;
+  private final Clock clock;
+  private final Executor executor;
+  private final int parallelism;
+
+  /**
+   * Public constructor.
+   * @param signer the signer of the tokens, whose issuer is set on each token.
+   * @param lifetime the time from issuance to expiration.
+   * @param clock the clock that decides the issued-at time of each batch.
+   * @param executor runs the signing tasks of a batch besides the calling thread.
+   * @param parallelism the maximum number of threads, including the calling thread, that
+   *   sign one batch.
+   */
+  public BatchTokenMinter(Signer signer, Duration lifetime, Clock clock, Executor executor,
+      int parallelism) {
+    Preconditions.checkArgument(lifetime.getMillis() > 0, "lifetime must be positive");
+    Preconditions.checkArgument(parallelism > 0, "parallelism must be positive");
+    this.signer = Preconditions.checkNotNull(signer);
+    this.lifetime = lifetime;
+    this.clock = Preconditions.checkNotNull(clock);
+    this.executor = Preconditions.checkNotNull(executor);
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Mints and signs one token per claim set. Each token carries the signer's issuer, the
+   * batch's issued-at time and expiration, and the claims of its claim set, which take
+   * precedence over the former.
+   *
+   * @param claimSets the payload claims of each token.
+   * @return the serialized tokens, in the order of the claim sets.
+   * @throws SignatureException if a token can't be signed.
+   */
+  public List<String> mint(List<JsonObject> claimSets) throws SignatureException {
+    Instant issuedAt = clock.now();
+    JsonPrimitive issuedAtSeconds = new JsonPrimitive(issuedAt.getMillis() / 1000);
+    JsonPrimitive expirationSeconds =
+        new JsonPrimitive(issuedAt.plus(lifetime).getMillis() / 1000);
+
+    int size = claimSets.size();
+    int chunks = Math.max(1, Math.min(parallelism, size));
+    String[] tokens = new String[size];
+    List<FutureTask<Void>> tasks = new ArrayList<>(chunks - 1);
+    try {
+      for (int chunk = 1; chunk < chunks; chunk++) {
+        int start = size * chunk / chunks;
+        int end = size * (chunk + 1) / chunks;
+        FutureTask<Void> task = new FutureTask<>(() -> {
+          mintRange(claimSets, start, end, issuedAtSeconds, expirationSeconds, tokens);
+          return null;
+        });
+        executor.execute(task);
+        tasks.add(task);
+      }
+
+      mintRange(claimSets, 0, size / chunks, issuedAtSeconds, expirationSeconds, tokens);
+      for (FutureTask<Void> task : tasks) {
+        try {
+          task.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("interrupted while minting tokens", e);
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof SignatureException) {
+            throw (SignatureException) cause;
+          } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          }
+          throw new IllegalStateException(cause);
+        }
+      }
+      return Arrays.asList(tokens);
+    } finally {
+      // If the batch failed, tasks that have not started yet are not run
+      for (FutureTask<Void> task : tasks) {
+        task.cancel(false);
+      }
+    }
+  }
+
+  private void mintRange(List<JsonObject> claimSets, int start, int end,
+      JsonPrimitive issuedAtSeconds, JsonPrimitive expirationSeconds, String[] tokens)
+      throws SignatureException {
+    StringBuilder buffer = new StringBuilder();
+    for (int i = start; i < end; i++) {
+      JsonToken token = new JsonToken(signer, clock);
+      JsonObject payload = token.getPayloadAsJsonObject();
+      payload.add(JsonToken.ISSUED_AT, issuedAtSeconds);
+      payload.add(JsonToken.EXPIRATION, expirationSeconds);
+      for (Map.Entry<String, JsonElement> claim : claimSets.get(i).entrySet()) {
+        payload.add(claim.getKey(), claim.getValue());
+      }
+      buffer.setLength(0);
+      token.serializeAndSign(buffer);
+      tokens[i] = buffer.toString();
+    }
+  }
+}
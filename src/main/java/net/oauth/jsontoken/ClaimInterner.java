@@ -0,0 +1,128 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import com.google.common.base.Preconditions;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+import net.oauth.jsontoken.crypto.SignatureAlgorithm;
+
+/**
+ * A bounded, concurrent table of canonical instances for the claim and header values that
+ * recur across tokens: issuers, audiences, key ids and algorithm names. Parsers given an
+ * interner through {@link ParserOptions#withInterner} replace such values in deserialized
+ * tokens with their canonical instance, so that many live tokens share one copy of each and
+ * the values can be compared by identity.
+ *
+ * <p>Values enter the table only through {@link #add(String)}, called explicitly for the
+ * issuers, audiences and key ids known from configuration; parsers never add to it. The
+ * table is therefore a fixed allowlist that tokens cannot fill, and once it holds
+ * {@code maxSize} values it stops growing.
+ */
+public final class ClaimInterner {
+
+  /** Bound of the {@link #getDefault() default} interner. */
+  public static final int DEFAULT_MAX_SIZE = 4096;
+
+  private static final ClaimInterner DEFAULT = new ClaimInterner(DEFAULT_MAX_SIZE);
+
+  private final int maxSize;
+  private final ConcurrentMap<String, String> canonical;
+
+  /**
+   * Creates an interner holding at most {@code maxSize} values, seeded with the names of
+   * the supported signature algorithms.
+   */
+  public ClaimInterner(int maxSize) {
+    Preconditions.checkArgument(maxSize > 0, "maxSize must be positive");
+    this.maxSize = maxSize;
+    this.canonical = new ConcurrentHashMap<String, String>();
+    for (SignatureAlgorithm alg : SignatureAlgorithm.values()) {
+      add(alg.getNameForJson());
+    }
+  }
+
+  /**
+   * Returns an interner shared process-wide, seeded with the algorithm names.
+   */
+  public static ClaimInterner getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Returns the canonical instance equal to {@code value}, or {@code value} itself if the
+   * table holds none. Never adds to the table.
+   */
+  @Nullable
+  public String intern(@Nullable String value) {
+    if (value == null) {
+      return null;
+    }
+    String result = canonical.get(value);
+    return result != null ? result : value;
+  }
+
+  /**
+   * Makes {@code value} canonical, unless an equal value already is or the table is full.
+   * @return the canonical instance equal to value, or value itself if the table is full.
+   */
+  public String add(String value) {
+    String existing = canonical.get(value);
+    if (existing != null) {
+      return existing;
+    }
+    if (canonical.size() >= maxSize) {
+      return value;
+    }
+    existing = canonical.putIfAbsent(value, value);
+    return existing != null ? existing : value;
+  }
+
+  /**
+   * Returns the number of canonical values.
+   */
+  public int size() {
+    return canonical.size();
+  }
+
+  /**
+   * Replaces the string value of the named property with its canonical instance, if the
+   * table holds one.
+   */
+  void internProperty(JsonObject object, String name) {
+    String value = stringProperty(object, name);
+    if (value != null) {
+      String result = canonical.get(value);
+      if (result != null && result != value) {
+        object.addProperty(name, result);
+      }
+    }
+  }
+
+  @Nullable
+  private static String stringProperty(JsonObject object, String name) {
+    JsonElement element = object.get(name);
+    if (element == null || !element.isJsonPrimitive()
+        || !element.getAsJsonPrimitive().isString()) {
+      return null;
+    }
+    return element.getAsString();
+  }
+}
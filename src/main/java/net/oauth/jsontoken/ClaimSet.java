@@ -0,0 +1,240 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import java.util.Arrays;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * An immutable, compact view of the claims in a JSON Token's payload. The registered claims
+ * (iss, aud, sub, jti, iat, exp and nbf) are held in fields, with the timestamps as primitive
+ * epoch seconds, so reading them does not allocate. All other claims, as well as registered
+ * claims whose values do not have the expected form (for example an array-valued aud), are
+ * kept in a small flat array map in payload order.
+ */
+public final class ClaimSet {
+
+  /** Value returned by the timestamp getters when the claim is absent or not a number. */
+  public static final long ABSENT = Long.MIN_VALUE;
+
+  public static final String SUBJECT = "sub";
+  public static final String JWT_ID = "jti";
+  public static final String NOT_BEFORE = "nbf";
+
+  private static final String[] NO_NAMES = new String[0];
+  private static final JsonElement[] NO_VALUES = new JsonElement[0];
+
+  @Nullable private final String issuer;
+  @Nullable private final String audience;
+  @Nullable private final String subject;
+  @Nullable private final String jwtId;
+  private final long issuedAt;
+  private final long expiration;
+  private final long notBefore;
+  private final String[] customNames;
+  private final JsonElement[] customValues;
+
+  private ClaimSet(@Nullable String issuer, @Nullable String audience, @Nullable String subject,
+      @Nullable String jwtId, long issuedAt, long expiration, long notBefore,
+      String[] customNames, JsonElement[] customValues) {
+    this.issuer = issuer;
+    this.audience = audience;
+    this.subject = subject;
+    this.jwtId = jwtId;
+    this.issuedAt = issuedAt;
+    this.expiration = expiration;
+    this.notBefore = notBefore;
+    this.customNames = customNames;
+    this.customValues = customValues;
+  }
+
+  /**
+   * Reads the claims of a payload. String claims are read as {@link JsonToken#getIssuer()}
+   * reads them, and timestamps as {@link JsonToken#getIssuedAt()} does. Later changes to the
+   * payload are not reflected in the returned claim set.
+   */
+  public static ClaimSet fromJson(JsonObject payload) {
+    String issuer = null;
+    String audience = null;
+    String subject = null;
+    String jwtId = null;
+    long issuedAt = ABSENT;
+    long expiration = ABSENT;
+    long notBefore = ABSENT;
+
+    int size = payload.entrySet().size();
+    String[] names = size == 0 ? NO_NAMES : new String[size];
+    JsonElement[] values = size == 0 ? NO_VALUES : new JsonElement[size];
+    int customCount = 0;
+    for (Map.Entry<String, JsonElement> claim : payload.entrySet()) {
+      String name = claim.getKey();
+      JsonElement value = claim.getValue();
+      boolean captured = true;
+      switch (name) {
+        case JsonToken.ISSUER:
+          issuer = asString(value);
+          captured = issuer != null;
+          break;
+        case JsonToken.AUDIENCE:
+          audience = asString(value);
+          captured = audience != null;
+          break;
+        case SUBJECT:
+          subject = asString(value);
+          captured = subject != null;
+          break;
+        case JWT_ID:
+          jwtId = asString(value);
+          captured = jwtId != null;
+          break;
+        case JsonToken.ISSUED_AT:
+          issuedAt = asSeconds(value);
+          captured = issuedAt != ABSENT;
+          break;
+        case JsonToken.EXPIRATION:
+          expiration = asSeconds(value);
+          captured = expiration != ABSENT;
+          break;
+        case NOT_BEFORE:
+          notBefore = asSeconds(value);
+          captured = notBefore != ABSENT;
+          break;
+        default:
+          captured = false;
+      }
+      if (!captured) {
+        names[customCount] = name;
+        values[customCount] = value;
+        customCount++;
+      }
+    }
+    if (customCount < size) {
+      names = trim(names, customCount, NO_NAMES);
+      values = trim(values, customCount, NO_VALUES);
+    }
+    return new ClaimSet(issuer, audience, subject, jwtId, issuedAt, expiration, notBefore,
+        names, values);
+  }
+
+  @Nullable
+  public String getIssuer() {
+    return issuer;
+  }
+
+  @Nullable
+  public String getAudience() {
+    return audience;
+  }
+
+  @Nullable
+  public String getSubject() {
+    return subject;
+  }
+
+  @Nullable
+  public String getJwtId() {
+    return jwtId;
+  }
+
+  /**
+   * Returns the iat claim in seconds since the epoch, or {@link #ABSENT}.
+   */
+  public long getIssuedAtSeconds() {
+    return issuedAt;
+  }
+
+  /**
+   * Returns the exp claim in seconds since the epoch, or {@link #ABSENT}.
+   */
+  public long getExpirationSeconds() {
+    return expiration;
+  }
+
+  /**
+   * Returns the nbf claim in seconds since the epoch, or {@link #ABSENT}.
+   */
+  public long getNotBeforeSeconds() {
+    return notBefore;
+  }
+
+  /**
+   * Returns the number of claims not held in the registered claim fields.
+   */
+  public int getCustomClaimCount() {
+    return customNames.length;
+  }
+
+  /**
+   * Returns the name of the custom claim at the given index, in payload order.
+   */
+  public String getCustomClaimName(int index) {
+    return customNames[index];
+  }
+
+  /**
+   * Returns the value of the custom claim at the given index, in payload order. The value
+   * is shared with the payload the claim set was read from and must not be modified.
+   */
+  public JsonElement getCustomClaimValue(int index) {
+    return customValues[index];
+  }
+
+  /**
+   * Returns the value of the named custom claim, or null if there is none. The value is
+   * shared with the payload the claim set was read from and must not be modified.
+   */
+  @Nullable
+  public JsonElement getCustomClaim(String name) {
+    for (int i = 0; i < customNames.length; i++) {
+      if (customNames[i].equals(name)) {
+        return customValues[i];
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  private static String asString(JsonElement value) {
+    return value.isJsonPrimitive() ? value.getAsString() : null;
+  }
+
+  private static long asSeconds(JsonElement value) {
+    if (!value.isJsonPrimitive()) {
+      return ABSENT;
+    }
+    JsonPrimitive primitive = (JsonPrimitive) value;
+    if (primitive.isNumber() || primitive.isString()) {
+      try {
+        return primitive.getAsLong();
+      } catch (NumberFormatException e) {
+        return ABSENT;
+      }
+    }
+    return ABSENT;
+  }
+
+  private static <T> T[] trim(T[] array, int length, T[] empty) {
+    if (length == 0) {
+      return empty;
+    }
+    return Arrays.copyOf(array, length);
+  }
+}
@@ -0,0 +1,295 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import javax.annotation.Nullable;
+import net.oauth.jsontoken.crypto.SignatureAlgorithm;
+import net.oauth.jsontoken.crypto.Verifier;
+import net.oauth.jsontoken.discovery.AsyncVerifierProvider;
+import net.oauth.jsontoken.discovery.AsyncVerifierProviders;
+import net.oauth.jsontoken.discovery.VerifierProvider;
+import net.oauth.jsontoken.discovery.VerifierProviders;
+
+/**
+ * A {@link CompletionStage} based counterpart of {@link AsyncJsonTokenParser}.
+ *
+ * <p>When constructed with {@link AsyncVerifierProviders}, verification runs on the calling
+ * thread whenever the provider returns an already completed future (for example because the
+ * verifiers are cached). The executor is only used to resume verification once a pending
+ * key lookup completes, so CPU-only work never pays for a thread hop.
+ *
+ * <p>When constructed with blocking {@link VerifierProviders}, each verification, including the
+ * key lookup, runs as a single task on the executor. On JDK 21 and later, passing
+ * {@code Executors.newVirtualThreadPerTaskExecutor()} runs every verification on its own
+ * virtual thread.
+ */
+public final class CompletionStageJsonTokenParser extends AbstractJsonTokenParser {
+  @Nullable private final AsyncVerifierProviders asyncVerifierProviders;
+  @Nullable private final VerifierProviders verifierProviders;
+  private final Executor executor;
+
+  /**
+   * Creates a new {@link CompletionStageJsonTokenParser} that looks up verifiers asynchronously.
+   *
+   * @param clock a clock object that will decide whether a given token is currently valid or not.
+   * @param asyncVerifierProviders an object that provides signature verifiers asynchronously
+   *   based on a signature algorithm, the signer, and key ids.
+   * @param executor an executor to resume verification on once a pending key lookup completes
+   * @param checkers an array of checkers that validates the parameters in the JSON token.
+   */
+  public CompletionStageJsonTokenParser(
+      Clock clock,
+      AsyncVerifierProviders asyncVerifierProviders,
+      Executor executor,
+      Checker... checkers) {
+    this(clock, asyncVerifierProviders, executor, ParserOptions.DEFAULT, checkers);
+  }
+
+  /**
+   * Creates a new {@link CompletionStageJsonTokenParser} that looks up verifiers asynchronously.
+   *
+   * @param clock a clock object that will decide whether a given token is currently valid or not.
+   * @param asyncVerifierProviders an object that provides signature verifiers asynchronously
+   *   based on a signature algorithm, the signer, and key ids.
+   * @param executor an executor to resume verification on once a pending key lookup completes
+   * @param options optional parser settings. Tracing and signature-first verification are not
+   *   supported by this parser.
+   * @param checkers an array of checkers that validates the parameters in the JSON token.
+   */
+  public CompletionStageJsonTokenParser(
+      Clock clock,
+      AsyncVerifierProviders asyncVerifierProviders,
+      Executor executor,
+      ParserOptions options,
+      Checker... checkers) {
+    super(clock, options, checkers);
+    this.asyncVerifierProviders = Preconditions.checkNotNull(asyncVerifierProviders);
+    this.verifierProviders = null;
+    this.executor = Preconditions.checkNotNull(executor);
+  }
+
+  /**
+   * Creates a new {@link CompletionStageJsonTokenParser} that runs each verification, including
+   * the blocking key lookup, as one task on the given executor.
+   *
+   * @param clock a clock object that will decide whether a given token is currently valid or not.
+   * @param verifierProviders an object that provides signature verifiers
+   *   based on a signature algorithm, the signer, and key ids.
+   * @param executor an executor to run each verification on, such as a virtual thread executor
+   * @param checkers an array of checkers that validates the parameters in the JSON token.
+   */
+  public CompletionStageJsonTokenParser(
+      Clock clock,
+      VerifierProviders verifierProviders,
+      Executor executor,
+      Checker... checkers) {
+    this(clock, verifierProviders, executor, ParserOptions.DEFAULT, checkers);
+  }
+
+  /**
+   * Creates a new {@link CompletionStageJsonTokenParser} that runs each verification, including
+   * the blocking key lookup, as one task on the given executor.
+   *
+   * @param clock a clock object that will decide whether a given token is currently valid or not.
+   * @param verifierProviders an object that provides signature verifiers
+   *   based on a signature algorithm, the signer, and key ids.
+   * @param executor an executor to run each verification on, such as a virtual thread executor
+   * @param options optional parser settings. Tracing and signature-first verification are not
+   *   supported by this parser.
+   * @param checkers an array of checkers that validates the parameters in the JSON token.
+   */
+  public CompletionStageJsonTokenParser(
+      Clock clock,
+      VerifierProviders verifierProviders,
+      Executor executor,
+      ParserOptions options,
+      Checker... checkers) {
+    super(clock, options, checkers);
+    this.asyncVerifierProviders = null;
+    this.verifierProviders = Preconditions.checkNotNull(verifierProviders);
+    this.executor = Preconditions.checkNotNull(executor);
+  }
+
+  /**
+   * Verifies that the jsonToken has a valid signature and valid standard claims
+   * (iat, exp). This method does not throw; the returned stage completes exceptionally
+   * with the same exceptions as thrown by {@link JsonTokenParser#verify(JsonToken)}.
+   *
+   * @param jsonToken
+   * @return a {@link CompletionStage} that will fail if the token fails verification.
+   */
+  public CompletionStage<Void> verify(JsonToken jsonToken) {
+    return recordLatency(startLatency(), verifyWith(jsonToken, (Void) null));
+  }
+
+  /**
+   * Parses and verifies a JSON Token. This method does not throw; the returned stage
+   * completes exceptionally with the same exceptions as thrown by
+   * {@link JsonTokenParser#verifyAndDeserialize(String)}.
+   *
+   * @param tokenString the serialized token that is to parsed and verified.
+   * @return a {@link CompletionStage} that will return the deserialized {@link JsonToken}.
+   */
+  public CompletionStage<JsonToken> verifyAndDeserialize(String tokenString) {
+    long start = startLatency();
+    JsonToken jsonToken;
+    try {
+      jsonToken = deserialize(tokenString);
+    } catch (Exception e) {
+      recordLatency(start);
+      return failedFuture(e);
+    }
+    return recordLatency(start, verifyWith(jsonToken, jsonToken));
+  }
+
+  private <T> CompletableFuture<T> recordLatency(long start, CompletableFuture<T> result) {
+    if (getOptions().getStats() != null) {
+      result.whenComplete((value, failure) -> recordLatency(start));
+    }
+    return result;
+  }
+
+  /**
+   * Verifies the token, completing the returned future with {@code value} if it passes.
+   */
+  private <T> CompletableFuture<T> verifyWith(JsonToken jsonToken, T value) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    if (verifierProviders != null) {
+      try {
+        executor.execute(() -> completeBlocking(jsonToken, value, result));
+      } catch (RejectedExecutionException e) {
+        recordFailure(VerificationTrace.Phase.KEY_LOOKUP);
+        result.completeExceptionally(e);
+      }
+      return result;
+    }
+
+    ListenableFuture<List<Verifier>> futureVerifiers;
+    try {
+      futureVerifiers = findVerifiersAsync(jsonToken);
+    } catch (Exception e) {
+      recordFailure(VerificationTrace.Phase.KEY_LOOKUP);
+      result.completeExceptionally(e);
+      return result;
+    }
+
+    if (futureVerifiers.isDone()) {
+      // Fast path: the verifiers are already available, so stay on the calling thread.
+      completeAsync(jsonToken, futureVerifiers, value, result);
+    } else {
+      futureVerifiers.addListener(
+          () -> completeAsync(jsonToken, futureVerifiers, value, result), executor);
+    }
+    return result;
+  }
+
+  private <T> void completeAsync(JsonToken jsonToken,
+      ListenableFuture<List<Verifier>> futureVerifiers, T value, CompletableFuture<T> result) {
+    List<Verifier> verifiers;
+    try {
+      verifiers = checkVerifiers(jsonToken, Futures.getDone(futureVerifiers));
+    } catch (ExecutionException e) {
+      recordFailure(VerificationTrace.Phase.KEY_LOOKUP);
+      result.completeExceptionally(e.getCause());
+      return;
+    } catch (RuntimeException e) {
+      recordFailure(VerificationTrace.Phase.KEY_LOOKUP);
+      result.completeExceptionally(e);
+      return;
+    }
+    complete(jsonToken, verifiers, value, result);
+  }
+
+  private <T> void completeBlocking(JsonToken jsonToken, T value, CompletableFuture<T> result) {
+    List<Verifier> verifiers;
+    try {
+      verifiers = findVerifiers(jsonToken);
+    } catch (RuntimeException e) {
+      recordFailure(VerificationTrace.Phase.KEY_LOOKUP);
+      result.completeExceptionally(e);
+      return;
+    }
+    complete(jsonToken, verifiers, value, result);
+  }
+
+  /**
+   * Verifies the token against its verifiers, which records the outcome in the statistics.
+   */
+  private <T> void complete(JsonToken jsonToken, List<Verifier> verifiers, T value,
+      CompletableFuture<T> result) {
+    try {
+      verify(jsonToken, verifiers);
+      result.complete(value);
+    } catch (Exception e) {
+      result.completeExceptionally(e);
+    }
+  }
+
+  /**
+   * @throws IllegalArgumentException if the signature algorithm is not supported
+   * @throws IllegalStateException if the header does not exist
+   */
+  private ListenableFuture<List<Verifier>> findVerifiersAsync(JsonToken jsonToken) {
+    SignatureAlgorithm signatureAlgorithm = jsonToken.getSignatureAlgorithm();
+    AsyncVerifierProvider provider =
+        asyncVerifierProviders.getVerifierProvider(signatureAlgorithm);
+    if (provider == null) {
+      throw new IllegalArgumentException("Signature algorithm not supported: "
+          + signatureAlgorithm);
+    }
+    return provider.findVerifier(jsonToken.getIssuer(), jsonToken.getKeyId());
+  }
+
+  /**
+   * @throws IllegalArgumentException if the signature algorithm is not supported
+   * @throws IllegalStateException if there is no valid verifier for the issuer
+   *   or if the header does not exist
+   */
+  private List<Verifier> findVerifiers(JsonToken jsonToken) {
+    SignatureAlgorithm signatureAlgorithm = jsonToken.getSignatureAlgorithm();
+    VerifierProvider provider = verifierProviders.getVerifierProvider(signatureAlgorithm);
+    if (provider == null) {
+      throw new IllegalArgumentException("Signature algorithm not supported: "
+          + signatureAlgorithm);
+    }
+    return checkVerifiers(jsonToken,
+        provider.findVerifier(jsonToken.getIssuer(), jsonToken.getKeyId()));
+  }
+
+  private static List<Verifier> checkVerifiers(JsonToken jsonToken, List<Verifier> verifiers) {
+    if (verifiers == null) {
+      throw new IllegalStateException("No valid verifier for issuer: " + jsonToken.getIssuer());
+    }
+    return verifiers;
+  }
+
+  private static <T> CompletableFuture<T> failedFuture(Throwable cause) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    future.completeExceptionally(cause);
+    return future;
+  }
+
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import java.nio.charset.StandardCharsets;
+import javax.annotation.Nullable;
+
+/**
+ * Reads single values out of UTF-8 encoded JSON without building a tree. Handles only
+ * strict, well-formed JSON; callers fall back to a full parse whenever it gives up.
+ */
+final class JsonScanner {
+
+  private final byte[] json;
+  private int pos;
+
+  private JsonScanner(byte[] json) {
+    this.json = json;
+  }
+
+  /**
+   * Returns the value of the named member of the top-level object if that value is a
+   * string. When the member is repeated the last one wins, as it does for a parsed object.
+   *
+   * @return the value, or null if the member is absent, is not a string, contains escape
+   *   sequences, or the JSON is not a strict, well-formed object.
+   */
+  @Nullable
+  static String findTopLevelString(byte[] json, String name) {
+    return new JsonScanner(json).findMember(name.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Nullable
+  private String findMember(byte[] name) {
+    String result = null;
+    if (!consume('{')) {
+      return null;
+    }
+    if (consume('}')) {
+      return atEnd() ? result : null;
+    }
+    do {
+      skipWhitespace();
+      int keyStart = pos + 1;
+      if (!skipString(false)) {
+        return null;
+      }
+      boolean match = equalsRange(name, keyStart, pos - 1);
+      if (!consume(':')) {
+        return null;
+      }
+      if (match) {
+        skipWhitespace();
+        int valueStart = pos + 1;
+        if (pos >= json.length || json[pos] != '"' || !skipString(false)) {
+          return null;
+        }
+        result = new String(json, valueStart, pos - 1 - valueStart, StandardCharsets.UTF_8);
+      } else if (!skipValue()) {
+        return null;
+      }
+    } while (consume(','));
+    return consume('}') && atEnd() ? result : null;
+  }
+
+  /**
+   * Skips a string starting at the current position, after any whitespace.
+   * @param allowEscapes whether the string may contain escape sequences.
+   */
+  private boolean skipString(boolean allowEscapes) {
+    if (!consume('"')) {
+      return false;
+    }
+    while (pos < json.length) {
+      byte b = json[pos++];
+      if (b == '"') {
+        return true;
+      } else if (b == '\\') {
+        if (!allowEscapes) {
+          return false;
+        }
+        pos++;
+      } else if (b >= 0 && b < 0x20) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Skips any value, including nested objects and arrays, without checking their contents
+   * beyond string boundaries and bracket nesting.
+   */
+  private boolean skipValue() {
+    skipWhitespace();
+    int depth = 0;
+    while (pos < json.length) {
+      byte b = json[pos];
+      if (b == '"') {
+        if (!skipString(true)) {
+          return false;
+        }
+        continue;
+      }
+      if (b == '{' || b == '[') {
+        depth++;
+      } else if (b == '}' || b == ']') {
+        if (depth == 0) {
+          return true;
+        }
+        depth--;
+      } else if (b == ',' && depth == 0) {
+        return true;
+      } else if (b == '\'') {
+        return false;
+      }
+      pos++;
+    }
+    return false;
+  }
+
+  private boolean consume(char c) {
+    skipWhitespace();
+    if (pos < json.length && json[pos] == c) {
+      pos++;
+      return true;
+    }
+    return false;
+  }
+
+  private boolean atEnd() {
+    skipWhitespace();
+    return pos == json.length;
+  }
+
+  private void skipWhitespace() {
+    while (pos < json.length
+        && (json[pos] == ' ' || json[pos] == '\t' || json[pos] == '\n' || json[pos] == '\r')) {
+      pos++;
+    }
+  }
+
+  private boolean equalsRange(byte[] expected, int start, int end) {
+    if (end - start != expected.length) {
+      return false;
+    }
+    for (int i = 0; i < expected.length; i++) {
+      if (json[start + i] != expected[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
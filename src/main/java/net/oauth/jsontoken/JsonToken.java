@@ -22,10 +22,8 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
 import java.security.SignatureException;
 import javax.annotation.Nullable;
-import net.oauth.jsontoken.crypto.AsciiStringSigner;
 import net.oauth.jsontoken.crypto.SignatureAlgorithm;
 import net.oauth.jsontoken.crypto.Signer;
-import org.apache.commons.codec.binary.Base64;
 import org.joda.time.Instant;
 
 /**
@@ -48,6 +46,8 @@ public class JsonToken {
   
   public final static int DEFAULT_LIFETIME_IN_MINS = 2;
 
+  private static final int INITIAL_TOKEN_CAPACITY = 512;
+
   protected final Clock clock;
   private final JsonObject header;
   private final JsonObject payload;
@@ -55,8 +55,10 @@ public class JsonToken {
   
   // The following fields are only valid when signing the token.
   private final Signer signer;
-  private String signature;
   private String baseString;
+
+  // Read from the payload on first use, and discarded by setParam.
+  private ClaimSet claims;
   
   
   /**
@@ -80,7 +82,6 @@ public class JsonToken {
     this.payload = new JsonObject();
     this.signer = signer;
     this.clock = clock;
-    this.signature = null;
     this.baseString = null;
     this.tokenString = null;
 
@@ -106,7 +107,6 @@ public class JsonToken {
     this.payload = payload;
     this.clock = clock;
     this.baseString = null;
-    this.signature = null;
     this.signer = null;
     this.tokenString = tokenString;
   }
@@ -123,7 +123,6 @@ public class JsonToken {
     this.payload = payload;
     this.baseString = null;
     this.tokenString = null;
-    this.signature = null;
     this.signer = null;
     this.clock = null;
   }
@@ -143,7 +142,6 @@ public class JsonToken {
     this.clock = clock;
     this.baseString = null;
     this.tokenString = null;
-    this.signature = null;
     this.signer = null;
   }
 
@@ -156,9 +154,33 @@ public class JsonToken {
    * @throws SignatureException if the token can't be signed.
    */
   public String serializeAndSign() throws SignatureException {
-    String baseString = computeSignatureBaseString();
-    String sig = getSignature();
-    return JsonTokenUtil.toDotFormat(baseString, sig);
+    StringBuilder destination = new StringBuilder(INITIAL_TOKEN_CAPACITY);
+    serializeAndSign(destination);
+    return destination.toString();
+  }
+
+  /**
+   * Appends the serialized representation of this token to {@code destination}, e.g., a
+   * buffer holding the start of an HTTP header. The signing input from
+   * {@link #computeSignatureBaseString()} is appended and signed in place, and the signature
+   * is encoded straight into the buffer. If the token can't be signed, {@code destination}
+   * is left unchanged.
+   * @throws SignatureException if the token can't be signed.
+   */
+  public void serializeAndSign(StringBuilder destination) throws SignatureException {
+    if (signer == null) {
+      throw new SignatureException("can't sign JsonToken with signer.");
+    }
+    int start = destination.length();
+    try {
+      destination.append(computeSignatureBaseString());
+      byte[] signature = signer.sign(destination, start, destination.length());
+      destination.append(JsonTokenUtil.DELIMITER);
+      Base64Url.encode(signature, 0, signature.length, destination);
+    } catch (SignatureException | RuntimeException e) {
+      destination.setLength(start);
+      throw e;
+    }
   }
 
   /**
@@ -213,10 +235,27 @@ public class JsonToken {
 
   public void setParam(String name, String value) {
     payload.addProperty(name, value);
+    claims = null;
   }
 
   public void setParam(String name, Number value) {
     payload.addProperty(name, value);
+    claims = null;
+  }
+
+  /**
+   * Returns the claims of this token as an immutable {@link ClaimSet}. The claim set is
+   * read from the payload once and reused until a parameter is set with
+   * {@link #setParam}; changes made directly to {@link #getPayloadAsJsonObject()} are
+   * not reflected.
+   */
+  public ClaimSet getClaims() {
+    ClaimSet result = claims;
+    if (result == null) {
+      result = ClaimSet.fromJson(payload);
+      claims = result;
+    }
+    return result;
   }
 
   @Nullable
@@ -294,19 +333,34 @@ public class JsonToken {
   }
 
   /**
+   * Returns the signing input of this token, base64url(header).base64url(payload). Once
+   * computed, the signing input is kept and used by later calls to
+   * {@link #serializeAndSign()}. The signing input is built by
+   * {@link #appendSignatureBaseString}.
    * @throws IllegalStateException if the header does not exist
    */
   protected String computeSignatureBaseString() {
     if (baseString != null && !baseString.isEmpty()) {
       return baseString;
     }
-    baseString = JsonTokenUtil.toDotFormat(
-        JsonTokenUtil.toBase64(getHeader()),
-        JsonTokenUtil.toBase64(payload)
-        );
+    StringBuilder destination = new StringBuilder(INITIAL_TOKEN_CAPACITY);
+    appendSignatureBaseString(destination);
+    baseString = destination.toString();
     return baseString;
   }
 
+  /**
+   * Appends the signing input of this token, base64url(header).base64url(payload), to
+   * {@code destination}. Subclasses that need to fill in claims before the token is
+   * signed should override this method.
+   * @throws IllegalStateException if the header does not exist
+   */
+  protected void appendSignatureBaseString(StringBuilder destination) {
+    JsonTokenUtil.appendBase64(getHeader(), destination);
+    destination.append(JsonTokenUtil.DELIMITER);
+    JsonTokenUtil.appendBase64(payload, destination);
+  }
+
   private static JsonObject createHeader(Signer signer) {
     JsonObject newHeader = new JsonObject();
     SignatureAlgorithm signatureAlgorithm = signer.getSignatureAlgorithm();
@@ -319,24 +373,5 @@ public class JsonToken {
     }
     return newHeader;
   }
-
-  /**
-   * @throws SignatureException if the signer does not exist
-   */
-  private String getSignature() throws SignatureException {
-    if (signature != null && !signature.isEmpty()) {
-      return signature;
-    }
-
-    if (signer == null) {
-      throw new SignatureException("can't sign JsonToken with signer.");
-    }
-    String signature;
-    // now, generate the signature
-    AsciiStringSigner asciiSigner = new AsciiStringSigner(signer);
-    signature = Base64.encodeBase64URLSafeString(asciiSigner.sign(baseString));
-    
-    return signature;
-  }
   
 }
@@ -20,6 +20,7 @@ import com.google.common.base.Preconditions;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import java.security.SignatureException;
+import java.util.ArrayList;
 import java.util.List;
 import net.oauth.jsontoken.crypto.SignatureAlgorithm;
 import net.oauth.jsontoken.crypto.Verifier;
@@ -54,7 +55,22 @@ public class JsonTokenParser extends AbstractJsonTokenParser {
    * @param checkers an array of checkers that validates the parameters in the JSON token.
    */
   public JsonTokenParser(Clock clock, VerifierProviders verifierProviders, Checker... checkers) {
-    super(clock, checkers);
+    this(clock, verifierProviders, ParserOptions.DEFAULT, checkers);
+  }
+
+  /**
+   * Creates a new {@link JsonTokenParser}.
+   *
+   * @param clock a clock object that will decide whether a given token is
+   *   currently valid or not.
+   * @param verifierProviders an object that provides signature verifiers
+   *   based on a signature algorithm, the signer, and key ids.
+   * @param options optional parser settings, such as verification tracing.
+   * @param checkers an array of checkers that validates the parameters in the JSON token.
+   */
+  public JsonTokenParser(Clock clock, VerifierProviders verifierProviders, ParserOptions options,
+      Checker... checkers) {
+    super(clock, options, checkers);
     this.verifierProviders = verifierProviders;
   }
 
@@ -71,8 +87,23 @@ public class JsonTokenParser extends AbstractJsonTokenParser {
    *   or if the header does not exist
    */
   public void verify(JsonToken jsonToken) throws SignatureException {
-    List<Verifier> verifiers = provideVerifiers(jsonToken);
-    verify(jsonToken, verifiers);
+    long start = startLatency();
+    try {
+      VerificationTrace trace = getOptions().startTrace();
+      if (trace == null) {
+        List<Verifier> verifiers = provideVerifiers(jsonToken);
+        verify(jsonToken, verifiers);
+        return;
+      }
+      trace.begin();
+      try {
+        verifyTraced(jsonToken, trace);
+      } finally {
+        trace.end(getOptions().getTraceListener());
+      }
+    } finally {
+      recordLatency(start);
+    }
   }
 
   /**
@@ -89,9 +120,101 @@ public class JsonTokenParser extends AbstractJsonTokenParser {
    *   or if there is no valid verifier for the issuer
    */
   public JsonToken verifyAndDeserialize(String tokenString) throws SignatureException {
-    JsonToken jsonToken = deserialize(tokenString);
-    verify(jsonToken);
-    return jsonToken;
+    long start = startLatency();
+    try {
+      return verifyAndDeserializeUnrecorded(tokenString);
+    } finally {
+      recordLatency(start);
+    }
+  }
+
+  private JsonToken verifyAndDeserializeUnrecorded(String tokenString)
+      throws SignatureException {
+    VerificationTrace trace = getOptions().startTrace();
+    if (trace == null) {
+      if (getOptions().isSignatureFirst()) {
+        return verifySignatureFirst(tokenString, this::provideVerifiers);
+      }
+      JsonToken jsonToken = deserialize(tokenString);
+      verify(jsonToken, provideVerifiers(jsonToken));
+      return jsonToken;
+    }
+    trace.begin();
+    try {
+      long start = System.nanoTime();
+      JsonToken jsonToken;
+      try {
+        jsonToken = deserialize(tokenString);
+      } catch (RuntimeException e) {
+        trace.recordFailure(VerificationTrace.Phase.DESERIALIZE, e);
+        throw e;
+      } finally {
+        trace.recordPhase(VerificationTrace.Phase.DESERIALIZE, System.nanoTime() - start);
+      }
+      verifyTraced(jsonToken, trace);
+      return jsonToken;
+    } finally {
+      trace.end(getOptions().getTraceListener());
+    }
+  }
+
+  private void verifyTraced(JsonToken jsonToken, VerificationTrace trace)
+      throws SignatureException {
+    long start = System.nanoTime();
+    List<Verifier> verifiers;
+    try {
+      trace.recordToken(jsonToken);
+      verifiers = provideVerifiers(jsonToken);
+    } catch (RuntimeException e) {
+      trace.recordFailure(VerificationTrace.Phase.KEY_LOOKUP, e);
+      throw e;
+    } finally {
+      trace.recordPhase(VerificationTrace.Phase.KEY_LOOKUP, System.nanoTime() - start);
+    }
+    verify(jsonToken, verifiers, trace);
+  }
+
+  /**
+   * Prepares this parser for traffic, e.g., before a readiness probe passes. Fetches the
+   * key sets of the given issuers through the configured {@link VerifierProvider}s, so
+   * that caching providers hold their verifiers, and then signs and verifies
+   * {@code iterations} synthetic tokens for every configured algorithm, so that the JCA
+   * providers are loaded and the verification path is compiled.
+   *
+   * @param issuers the issuers whose key sets to fetch.
+   * @param iterations the number of synthetic tokens per algorithm.
+   * @return the issuers for which no configured provider returned any verifier.
+   * @throws IllegalStateException if a synthetic token fails to sign or verify.
+   */
+  public List<String> warmUp(Iterable<String> issuers, int iterations) {
+    Preconditions.checkNotNull(verifierProviders);
+    Preconditions.checkArgument(iterations >= 0, "iterations must not be negative");
+    List<String> failedIssuers = new ArrayList<>();
+    for (String issuer : issuers) {
+      boolean found = false;
+      for (SignatureAlgorithm alg : SignatureAlgorithm.values()) {
+        VerifierProvider provider = verifierProviders.getVerifierProvider(alg);
+        if (provider == null) {
+          continue;
+        }
+        try {
+          List<Verifier> verifiers = provider.findVerifier(issuer, null);
+          found |= verifiers != null && !verifiers.isEmpty();
+        } catch (RuntimeException e) {
+          // the issuer has no keys for this algorithm
+        }
+      }
+      if (!found) {
+        failedIssuers.add(issuer);
+      }
+    }
+
+    for (SignatureAlgorithm alg : SignatureAlgorithm.values()) {
+      if (verifierProviders.getVerifierProvider(alg) != null) {
+        WarmUp.exercise(this, alg, iterations);
+      }
+    }
+    return failedIssuers;
   }
 
   /**
@@ -104,6 +227,30 @@ public class JsonTokenParser extends AbstractJsonTokenParser {
    *   or if the header does not exist
    */
   private List<Verifier> provideVerifiers(JsonToken jsonToken) {
+    TokenTracer.Span span = Tracing.startSpan(Tracing.PROVIDE_VERIFIERS_SPAN, jsonToken);
+    TokenTracer.Scope scope = Tracing.makeCurrent(span);
+    try {
+      List<Verifier> verifiers = findVerifiers(jsonToken);
+      Tracing.end(span, true, null);
+      return verifiers;
+    } catch (RuntimeException e) {
+      Tracing.end(span, false, e);
+      throw e;
+    } finally {
+      Tracing.close(scope);
+    }
+  }
+
+  private List<Verifier> findVerifiers(JsonToken jsonToken) {
+    try {
+      return findVerifiersUnrecorded(jsonToken);
+    } catch (RuntimeException e) {
+      recordFailure(VerificationTrace.Phase.KEY_LOOKUP);
+      throw e;
+    }
+  }
+
+  private List<Verifier> findVerifiersUnrecorded(JsonToken jsonToken) {
     Preconditions.checkNotNull(verifierProviders);
     SignatureAlgorithm signatureAlgorithm = jsonToken.getSignatureAlgorithm();
     VerifierProvider provider = verifierProviders.getVerifierProvider(signatureAlgorithm);
@@ -112,7 +259,8 @@ public class JsonTokenParser extends AbstractJsonTokenParser {
           + signatureAlgorithm);
     }
 
-    List<Verifier> verifiers = provider.findVerifier(jsonToken.getIssuer(), jsonToken.getKeyId());
+    List<Verifier> verifiers =
+        provider.findVerifier(jsonToken.getIssuer(), jsonToken.getKeyId());
     if (verifiers == null) {
       throw new IllegalStateException("No valid verifier for issuer: " + jsonToken.getIssuer());
     }
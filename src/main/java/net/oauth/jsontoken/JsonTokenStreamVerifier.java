@@ -0,0 +1,214 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import net.oauth.jsontoken.discovery.CoalescingAsyncVerifierProviders;
+
+/**
+ * Verifies a stream of serialized tokens with a bounded number of verifications in flight.
+ *
+ * <p>Each submitted token takes one slot of the in-flight window until its result has been
+ * delivered to the {@link Listener}. When the window is full, {@link #tryVerify(String)}
+ * refuses the token and {@link #verify(String)} blocks, which pushes back on the producer
+ * (for example a message-queue consumer) instead of queueing unbounded futures while a key
+ * server is slow.
+ *
+ * <p>Results are delivered one at a time, either in submission order or in completion order.
+ * To batch key lookups for tokens sharing the same issuer and key id, build the
+ * {@link AsyncJsonTokenParser} with {@link CoalescingAsyncVerifierProviders}.
+ */
+public final class JsonTokenStreamVerifier {
+
+  /**
+   * Receives the outcome of each submitted token. Calls are never concurrent, and
+   * implementations should not throw.
+   */
+  public interface Listener {
+
+    /**
+     * Called when a token has been parsed and verified.
+     *
+     * @param tokenString the submitted token
+     * @param token the verified token
+     */
+    void onVerified(String tokenString, JsonToken token);
+
+    /**
+     * Called when a token failed parsing or verification.
+     *
+     * @param tokenString the submitted token
+     * @param cause the exception as thrown by {@link JsonTokenParser#verifyAndDeserialize(String)}
+     */
+    void onFailure(String tokenString, Throwable cause);
+  }
+
+  private final AsyncJsonTokenParser parser;
+  private final boolean ordered;
+  private final Listener listener;
+  private final Semaphore window;
+
+  private final Object lock = new Object();
+  // The following fields are guarded by lock.
+  private final Map<Long, Result> pendingDelivery = new HashMap<>();
+  private final ArrayDeque<Result> ready = new ArrayDeque<>();
+  private long nextSequence;
+  private long nextToDeliver;
+  private boolean draining;
+
+  /**
+   * Public constructor.
+   *
+   * @param parser the parser used to verify each token.
+   * @param maxInFlight the maximum number of tokens submitted but not yet delivered.
+   * @param ordered if true, results are delivered in submission order; otherwise they are
+   *   delivered as soon as they complete.
+   * @param listener receives the result of each token.
+   */
+  public JsonTokenStreamVerifier(
+      AsyncJsonTokenParser parser, int maxInFlight, boolean ordered, Listener listener) {
+    Preconditions.checkArgument(maxInFlight > 0, "maxInFlight must be positive");
+    this.parser = Preconditions.checkNotNull(parser);
+    this.ordered = ordered;
+    this.listener = Preconditions.checkNotNull(listener);
+    this.window = new Semaphore(maxInFlight);
+  }
+
+  /**
+   * Submits a token for verification if the in-flight window has room.
+   *
+   * @return false if the window is full and the token was not submitted.
+   */
+  public boolean tryVerify(String tokenString) {
+    if (!window.tryAcquire()) {
+      return false;
+    }
+    submit(tokenString);
+    return true;
+  }
+
+  /**
+   * Submits a token for verification, waiting for room in the in-flight window.
+   *
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public void verify(String tokenString) throws InterruptedException {
+    window.acquire();
+    submit(tokenString);
+  }
+
+  /**
+   * Returns the number of free slots in the in-flight window.
+   */
+  public int getAvailableSlots() {
+    return window.availablePermits();
+  }
+
+  private void submit(String tokenString) {
+    long sequence;
+    synchronized (lock) {
+      sequence = nextSequence++;
+    }
+    Futures.addCallback(parser.verifyAndDeserialize(tokenString),
+        new FutureCallback<JsonToken>() {
+          @Override
+          public void onSuccess(JsonToken token) {
+            complete(new Result(sequence, tokenString, token, null));
+          }
+
+          @Override
+          public void onFailure(Throwable cause) {
+            complete(new Result(sequence, tokenString, null, cause));
+          }
+        },
+        MoreExecutors.directExecutor());
+  }
+
+  private void complete(Result result) {
+    synchronized (lock) {
+      if (ordered) {
+        pendingDelivery.put(result.sequence, result);
+        Result next;
+        while ((next = pendingDelivery.remove(nextToDeliver)) != null) {
+          ready.add(next);
+          nextToDeliver++;
+        }
+      } else {
+        ready.add(result);
+      }
+      if (draining) {
+        // Another thread is delivering and will pick this result up.
+        return;
+      }
+      draining = true;
+    }
+    drain();
+  }
+
+  private void drain() {
+    boolean done = false;
+    try {
+      while (true) {
+        Result result;
+        synchronized (lock) {
+          result = ready.poll();
+          if (result == null) {
+            draining = false;
+            done = true;
+            return;
+          }
+        }
+        try {
+          if (result.failure == null) {
+            listener.onVerified(result.tokenString, result.token);
+          } else {
+            listener.onFailure(result.tokenString, result.failure);
+          }
+        } finally {
+          window.release();
+        }
+      }
+    } finally {
+      if (!done) {
+        synchronized (lock) {
+          draining = false;
+        }
+      }
+    }
+  }
+
+  private static final class Result {
+    private final long sequence;
+    private final String tokenString;
+    private final JsonToken token;
+    private final Throwable failure;
+
+    Result(long sequence, String tokenString, JsonToken token, Throwable failure) {
+      this.sequence = sequence;
+      this.tokenString = tokenString;
+      this.token = token;
+      this.failure = failure;
+    }
+  }
+}
@@ -16,13 +16,12 @@
  */
 package net.oauth.jsontoken;
 
-import org.apache.commons.codec.binary.Base64;
-import org.apache.commons.codec.binary.StringUtils;
-
 import com.google.common.base.Joiner;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 
+import java.nio.charset.StandardCharsets;
+
 
 /**
  * Some utility functions for {@link JsonToken}s.
@@ -31,24 +30,50 @@ class JsonTokenUtil {
 
   static public final String DELIMITER = ".";
 
+  private static final Gson GSON = new Gson();
+
+  // Buffers larger than this are dropped after use rather than kept by the thread.
+  private static final int MAX_RETAINED_JSON_BUFFER = 16 * 1024;
+  private static final ThreadLocal<StringBuilder> JSON_BUFFER =
+      ThreadLocal.withInitial(() -> new StringBuilder(512));
+
   public static String toBase64(JsonObject json) {
     return convertToBase64(toJson(json));
   }
 
   public static String toJson(JsonObject json) {
-    return new Gson().toJson(json);
+    return GSON.toJson(json);
+  }
+
+  /**
+   * Appends the base64url encoding of the JSON serialization of {@code json} to
+   * {@code destination}. The JSON text is written into a buffer owned by the calling
+   * thread and encoded from there, so neither the JSON nor its UTF-8 bytes are
+   * allocated as separate objects.
+   */
+  public static void appendBase64(JsonObject json, StringBuilder destination) {
+    StringBuilder jsonText = JSON_BUFFER.get();
+    jsonText.setLength(0);
+    GSON.toJson(json, jsonText);
+    Base64Url.encodeUtf8(jsonText, destination);
+    if (jsonText.capacity() > MAX_RETAINED_JSON_BUFFER) {
+      JSON_BUFFER.remove();
+    }
   }
 
   public static String convertToBase64(String source) {
-    return Base64.encodeBase64URLSafeString(StringUtils.getBytesUtf8(source));
+    return Base64Url.encode(source.getBytes(StandardCharsets.UTF_8));
   }
   
   public static String decodeFromBase64String(String encoded) {
-    return new String(Base64.decodeBase64(encoded));
+    return new String(Base64Url.decode(encoded));
   }
   
+  /**
+   * @throws IllegalArgumentException if source is not a canonical base64url encoding.
+   */
   public static String fromBase64ToJsonString(String source) {
-    return StringUtils.newStringUtf8(Base64.decodeBase64(source));
+    return new String(Base64Url.decode(source), StandardCharsets.UTF_8);
   }
   
   public static String toDotFormat(String... parts) {
@@ -0,0 +1,154 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import com.google.common.base.Preconditions;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+import net.oauth.jsontoken.crypto.Verifier;
+
+/**
+ * Checks a signature against several candidate verifiers in parallel. The verifiers keep
+ * their engines per thread, so one verifier can run on several threads at once.
+ */
+final class ParallelSignatureCheck {
+
+  private final ExecutorService executor;
+  private final int maxInFlight;
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  ParallelSignatureCheck(ExecutorService executor, int maxInFlight) {
+    Preconditions.checkArgument(maxInFlight >= 0, "maxInFlight must not be negative");
+    this.executor = Preconditions.checkNotNull(executor);
+    this.maxInFlight = maxInFlight;
+  }
+
+  /**
+   * Returns whether any of the verifiers accepts the signature of the signing input, which
+   * is {@code tokenString} up to {@code end}. Returns as soon as one accepts, cancelling
+   * the checks that have not started yet.
+   *
+   * @return the result, or null if the executor is too busy and the caller should check
+   *   sequentially.
+   */
+  @Nullable
+  Boolean anyAccepts(String tokenString, int end, byte[] signature, List<Verifier> verifiers) {
+    int tasks = verifiers.size() - 1;
+    if (inFlight.addAndGet(tasks) > maxInFlight) {
+      inFlight.addAndGet(-tasks);
+      return null;
+    }
+    CompletionService<Boolean> completion = new ExecutorCompletionService<>(executor);
+    List<Check> checks = new ArrayList<>(tasks);
+    List<Future<Boolean>> futures = new ArrayList<>(tasks);
+    try {
+      for (int i = 1; i < verifiers.size(); i++) {
+        Check check = new Check(verifiers.get(i), tokenString, end, signature);
+        futures.add(completion.submit(check));
+        checks.add(check);
+      }
+      if (accepts(verifiers.get(0), tokenString, end, signature)) {
+        return true;
+      }
+      for (int i = 0; i < tasks; i++) {
+        if (completion.take().get()) {
+          return true;
+        }
+      }
+      return false;
+    } catch (RejectedExecutionException e) {
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      for (Future<Boolean> future : futures) {
+        future.cancel(false);
+      }
+      // Checks that are running count as in flight until they finish; the rest, and those
+      // never submitted, are released here.
+      int released = tasks - checks.size();
+      for (Check check : checks) {
+        if (check.claim()) {
+          released++;
+        }
+      }
+      inFlight.addAndGet(-released);
+    }
+  }
+
+  /**
+   * One candidate verifier checked on the executor. Whichever of the task and the caller
+   * claims it first releases its in-flight slot.
+   */
+  private final class Check implements Callable<Boolean> {
+    private final Verifier verifier;
+    private final String tokenString;
+    private final int end;
+    private final byte[] signature;
+    private final AtomicBoolean claimed = new AtomicBoolean();
+
+    Check(Verifier verifier, String tokenString, int end, byte[] signature) {
+      this.verifier = verifier;
+      this.tokenString = tokenString;
+      this.end = end;
+      this.signature = signature;
+    }
+
+    boolean claim() {
+      return claimed.compareAndSet(false, true);
+    }
+
+    @Override
+    public Boolean call() {
+      if (!claim()) {
+        return false;
+      }
+      try {
+        return accepts(verifier, tokenString, end, signature);
+      } finally {
+        inFlight.decrementAndGet();
+      }
+    }
+  }
+
+  private static boolean accepts(Verifier verifier, String tokenString, int end,
+      byte[] signature) {
+    try {
+      verifier.verifySignature(tokenString, 0, end, signature);
+      return true;
+    } catch (SignatureException e) {
+      return false;
+    }
+  }
+}
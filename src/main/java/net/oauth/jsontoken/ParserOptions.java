@@ -0,0 +1,199 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import com.google.common.base.Preconditions;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.annotation.Nullable;
+
+/**
+ * Immutable optional settings of the token parsers. Start from {@link #DEFAULT} and derive
+ * modified copies with the {@code with} methods.
+ */
+public final class ParserOptions {
+
+  /** Options with every optional behavior disabled. */
+  public static final ParserOptions DEFAULT =
+      new ParserOptions(null, 0, TokenLimits.UNLIMITED, false, null, null, null);
+
+  @Nullable private final VerificationTraceListener traceListener;
+  private final int traceSampleRate;
+  private final TokenLimits limits;
+  private final boolean signatureFirst;
+  @Nullable private final ParallelSignatureCheck parallelCheck;
+  @Nullable private final VerificationStats stats;
+  @Nullable private final ClaimInterner interner;
+
+  private ParserOptions(@Nullable VerificationTraceListener traceListener, int traceSampleRate,
+      TokenLimits limits, boolean signatureFirst,
+      @Nullable ParallelSignatureCheck parallelCheck, @Nullable VerificationStats stats,
+      @Nullable ClaimInterner interner) {
+    this.traceListener = traceListener;
+    this.traceSampleRate = traceSampleRate;
+    this.limits = limits;
+    this.signatureFirst = signatureFirst;
+    this.parallelCheck = parallelCheck;
+    this.stats = stats;
+    this.interner = interner;
+  }
+
+  /**
+   * Returns a copy of these options that traces one in {@code sampleRate} tokens,
+   * chosen at random, and reports the traces to {@code listener}. A sample rate of 1
+   * traces every token.
+   */
+  public ParserOptions withTracing(VerificationTraceListener listener, int sampleRate) {
+    Preconditions.checkNotNull(listener);
+    Preconditions.checkArgument(sampleRate > 0, "sampleRate must be positive");
+    return new ParserOptions(listener, sampleRate, limits, signatureFirst, parallelCheck, stats,
+        interner);
+  }
+
+  /**
+   * Returns a copy of these options with tracing disabled.
+   */
+  public ParserOptions withoutTracing() {
+    return new ParserOptions(null, 0, limits, signatureFirst, parallelCheck, stats, interner);
+  }
+
+  /**
+   * Returns a copy of these options that rejects tokens exceeding the given limits
+   * before parsing them.
+   */
+  public ParserOptions withLimits(TokenLimits limits) {
+    return new ParserOptions(traceListener, traceSampleRate, Preconditions.checkNotNull(limits),
+        signatureFirst, parallelCheck, stats, interner);
+  }
+
+  /**
+   * Returns a copy of these options that sets whether {@code verifyAndDeserialize} checks
+   * the signature before parsing the payload, so that forged tokens are rejected without
+   * building the payload's JSON tree. Traced verifications always parse first.
+   */
+  public ParserOptions withSignatureFirst(boolean signatureFirst) {
+    return new ParserOptions(traceListener, traceSampleRate, limits, signatureFirst,
+        parallelCheck, stats, interner);
+  }
+
+  /**
+   * Returns a copy of these options that checks a token's signature against several
+   * candidate verifiers in parallel, returning on the first that accepts it and cancelling
+   * the others. The calling thread checks one candidate itself and the executor the rest.
+   * When checks in progress already occupy {@code maxInFlight} executor tasks, further
+   * tokens are checked sequentially on the calling thread instead. Traced verifications
+   * are always sequential.
+   *
+   * @param executor a bounded pool, owned by the caller, that runs the checks.
+   * @param maxInFlight the number of executor tasks above which checks fall back to the
+   *   sequential path, typically the pool size.
+   */
+  public ParserOptions withParallelVerification(ExecutorService executor, int maxInFlight) {
+    return new ParserOptions(traceListener, traceSampleRate, limits, signatureFirst,
+        new ParallelSignatureCheck(executor, maxInFlight), stats, interner);
+  }
+
+  /**
+   * Returns a copy of these options that checks candidate verifiers one after another.
+   */
+  public ParserOptions withoutParallelVerification() {
+    return new ParserOptions(traceListener, traceSampleRate, limits, signatureFirst, null,
+        stats, interner);
+  }
+
+  /**
+   * Returns a copy of these options that records the outcome and latency of verifications
+   * in the given statistics, which may be shared by several parsers.
+   */
+  public ParserOptions withStats(VerificationStats stats) {
+    return new ParserOptions(traceListener, traceSampleRate, limits, signatureFirst,
+        parallelCheck, Preconditions.checkNotNull(stats), interner);
+  }
+
+  /**
+   * Returns a copy of these options that records no statistics.
+   */
+  public ParserOptions withoutStats() {
+    return new ParserOptions(traceListener, traceSampleRate, limits, signatureFirst,
+        parallelCheck, null, interner);
+  }
+
+  /**
+   * Returns a copy of these options that replaces issuer, audience, key id and algorithm
+   * values of deserialized tokens with the canonical instances held by {@code interner}.
+   * The parser never adds to the interner; only values added to it explicitly, e.g. the
+   * issuers and key ids known from configuration, are shared.
+   */
+  public ParserOptions withInterner(ClaimInterner interner) {
+    return new ParserOptions(traceListener, traceSampleRate, limits, signatureFirst,
+        parallelCheck, stats, Preconditions.checkNotNull(interner));
+  }
+
+  /**
+   * Returns a copy of these options that leaves deserialized values as they are.
+   */
+  public ParserOptions withoutInterner() {
+    return new ParserOptions(traceListener, traceSampleRate, limits, signatureFirst,
+        parallelCheck, stats, null);
+  }
+
+  @Nullable
+  public VerificationTraceListener getTraceListener() {
+    return traceListener;
+  }
+
+  public int getTraceSampleRate() {
+    return traceSampleRate;
+  }
+
+  public TokenLimits getLimits() {
+    return limits;
+  }
+
+  public boolean isSignatureFirst() {
+    return signatureFirst;
+  }
+
+  @Nullable
+  public VerificationStats getStats() {
+    return stats;
+  }
+
+  @Nullable
+  public ClaimInterner getInterner() {
+    return interner;
+  }
+
+  @Nullable
+  ParallelSignatureCheck getParallelCheck() {
+    return parallelCheck;
+  }
+
+  /**
+   * Returns a new trace if the next token is to be traced, or null.
+   */
+  @Nullable
+  VerificationTrace startTrace() {
+    if (traceListener == null) {
+      return null;
+    }
+    if (traceSampleRate > 1 && ThreadLocalRandom.current().nextInt(traceSampleRate) != 0) {
+      return null;
+    }
+    return new VerificationTrace();
+  }
+}
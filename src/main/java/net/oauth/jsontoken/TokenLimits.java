@@ -0,0 +1,148 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import com.google.common.base.Preconditions;
+import javax.annotation.Nullable;
+
+/**
+ * Immutable hard limits on the size and shape of the tokens a parser will deserialize.
+ * The limits are checked before the token's header and payload are parsed, so that
+ * oversized or deeply nested input from unauthenticated callers is rejected cheaply.
+ */
+public final class TokenLimits {
+
+  /** Limits that accept tokens of any size. */
+  public static final TokenLimits UNLIMITED = new TokenLimits(
+      Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+  /** The reasons a token can be rejected for exceeding a limit. */
+  public enum Violation {
+    /** The encoded token is longer than the maximum token length. */
+    TOKEN_LENGTH,
+    /** The decoded header or payload is larger than the maximum segment size. */
+    SEGMENT_SIZE,
+    /** The header or payload JSON is nested deeper than the maximum depth. */
+    JSON_DEPTH,
+    /** The payload has more claims than the maximum claim count. */
+    CLAIM_COUNT
+  }
+
+  private final int maxTokenLength;
+  private final int maxSegmentBytes;
+  private final int maxJsonDepth;
+  private final int maxClaimCount;
+
+  /**
+   * Public constructor.
+   * @param maxTokenLength the maximum number of characters in an encoded token.
+   * @param maxSegmentBytes the maximum number of bytes in the decoded header or payload.
+   * @param maxJsonDepth the maximum nesting depth of the header and payload JSON. The
+   *   top-level object has depth 1.
+   * @param maxClaimCount the maximum number of top-level members of the payload.
+   */
+  public TokenLimits(int maxTokenLength, int maxSegmentBytes, int maxJsonDepth,
+      int maxClaimCount) {
+    Preconditions.checkArgument(maxTokenLength > 0, "maxTokenLength must be positive");
+    Preconditions.checkArgument(maxSegmentBytes > 0, "maxSegmentBytes must be positive");
+    Preconditions.checkArgument(maxJsonDepth > 0, "maxJsonDepth must be positive");
+    Preconditions.checkArgument(maxClaimCount >= 0, "maxClaimCount must not be negative");
+    this.maxTokenLength = maxTokenLength;
+    this.maxSegmentBytes = maxSegmentBytes;
+    this.maxJsonDepth = maxJsonDepth;
+    this.maxClaimCount = maxClaimCount;
+  }
+
+  public int getMaxTokenLength() {
+    return maxTokenLength;
+  }
+
+  public int getMaxSegmentBytes() {
+    return maxSegmentBytes;
+  }
+
+  public int getMaxJsonDepth() {
+    return maxJsonDepth;
+  }
+
+  public int getMaxClaimCount() {
+    return maxClaimCount;
+  }
+
+  /**
+   * Scans decoded JSON text for the structural limits, without parsing it.
+   *
+   * @param json the UTF-8 encoded JSON of a header or payload.
+   * @param countClaims whether to count the members of the top-level object.
+   * @return the first limit the JSON exceeds, or null if it is within the limits.
+   */
+  @Nullable
+  Violation scanJson(byte[] json, boolean countClaims) {
+    // Each level of nesting and each member takes at least one byte, so limits at or above
+    // the length of the JSON, such as those of UNLIMITED, cannot be exceeded.
+    if (json.length <= maxJsonDepth && (!countClaims || json.length <= maxClaimCount)) {
+      return null;
+    }
+    int depth = 0;
+    int members = 0;
+    byte quote = 0;
+    for (int i = 0; i < json.length; i++) {
+      byte b = json[i];
+      if (quote != 0) {
+        // Bytes of multi-byte UTF-8 characters are all negative, so they never match.
+        if (b == '\\') {
+          i++;
+        } else if (b == quote) {
+          quote = 0;
+        }
+        continue;
+      }
+      switch (b) {
+        case '"':
+        case '\'':
+          quote = b;
+          break;
+        case '{':
+        case '[':
+          if (++depth > maxJsonDepth) {
+            return Violation.JSON_DEPTH;
+          }
+          break;
+        case '}':
+        case ']':
+          depth--;
+          break;
+        case ':':
+          if (countClaims && depth == 1 && ++members > maxClaimCount) {
+            return Violation.CLAIM_COUNT;
+          }
+          break;
+        default:
+          break;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public String toString() {
+    return "TokenLimits{maxTokenLength=" + maxTokenLength
+        + ", maxSegmentBytes=" + maxSegmentBytes
+        + ", maxJsonDepth=" + maxJsonDepth
+        + ", maxClaimCount=" + maxClaimCount + "}";
+  }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
+
+/**
+ * A service provider interface that lets token verification and key fetches appear as spans
+ * in a distributed trace, e.g., by adapting an OpenTelemetry tracer. Implementations are
+ * discovered with {@link java.util.ServiceLoader} and listed in
+ * {@code META-INF/services/net.oauth.jsontoken.TokenTracer}; see {@link Tracing}.
+ *
+ * <p>Span attributes are named by the constants of {@link Tracing}. All methods but
+ * {@link #startSpan} have no-op defaults.
+ */
+public interface TokenTracer {
+
+  /** A tracer that records nothing, used when no implementation is found. */
+  TokenTracer NOOP = name -> Span.NOOP;
+
+  /**
+   * Starts a span as a child of the current context of the calling thread.
+   */
+  Span startSpan(String name);
+
+  /**
+   * Returns an executor that runs tasks in the context current when this method is called,
+   * so that spans started by the tasks join the caller's trace.
+   */
+  default Executor wrap(Executor executor) {
+    return executor;
+  }
+
+  /**
+   * An operation being traced.
+   */
+  interface Span {
+
+    /** A span that records nothing. */
+    Span NOOP = new Span() { };
+
+    default void setAttribute(String key, String value) {
+    }
+
+    /**
+     * Makes this span the current context of the calling thread until the scope is closed.
+     */
+    default Scope makeCurrent() {
+      return Scope.NOOP;
+    }
+
+    /**
+     * Ends the span.
+     * @param failure the exception that failed the operation, if any.
+     */
+    default void end(@Nullable Throwable failure) {
+    }
+  }
+
+  /**
+   * The duration for which a span is current.
+   */
+  interface Scope extends AutoCloseable {
+
+    /** A scope that restores nothing. */
+    Scope NOOP = () -> { };
+
+    @Override
+    void close();
+  }
+}
@@ -0,0 +1,223 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import com.google.gson.JsonElement;
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
+
+/**
+ * Holds the process-wide {@link TokenTracer}: the first implementation found by
+ * {@link ServiceLoader}, or {@link TokenTracer#NOOP} if there is none. Without an
+ * implementation, tracing costs a reference comparison per traced operation. Calls into the
+ * tracer go through this class, which ignores any exception the tracer throws, so that a
+ * broken tracer can't fail a verification.
+ */
+public final class Tracing {
+
+  /** The span around verifying a token's signature and claims. */
+  public static final String VERIFY_SPAN = "jsontoken.verify";
+  /** The span around finding the verifiers of a token. */
+  public static final String PROVIDE_VERIFIERS_SPAN = "jsontoken.provideVerifiers";
+  /** The span around fetching keys over HTTP. */
+  public static final String FETCH_KEYS_SPAN = "jsontoken.fetchKeys";
+
+  public static final String ISSUER_ATTRIBUTE = "jwt.iss";
+  public static final String KEY_ID_ATTRIBUTE = "jwt.kid";
+  public static final String ALGORITHM_ATTRIBUTE = "jwt.alg";
+  public static final String URL_ATTRIBUTE = "http.url";
+  /** The outcome of the operation, {@link #SUCCESS} or {@link #FAILURE}. */
+  public static final String OUTCOME_ATTRIBUTE = "jsontoken.outcome";
+
+  public static final String SUCCESS = "success";
+  public static final String FAILURE = "failure";
+
+  private static final TokenTracer LOADED = load();
+
+  private static volatile TokenTracer tracer = LOADED;
+
+  private Tracing() { }
+
+  /**
+   * Returns the process-wide tracer.
+   */
+  public static TokenTracer getTracer() {
+    return tracer;
+  }
+
+  /**
+   * Returns whether a tracer implementation was found.
+   */
+  public static boolean isEnabled() {
+    return tracer != TokenTracer.NOOP;
+  }
+
+  /**
+   * Replaces the process-wide tracer, for tests.
+   * @param testTracer the tracer to use, or null to restore the one found by
+   *   {@link ServiceLoader}.
+   */
+  static void setTracerForTesting(@Nullable TokenTracer testTracer) {
+    tracer = testTracer == null ? LOADED : testTracer;
+  }
+
+  /**
+   * Starts a span carrying the issuer, key id and algorithm of the token, or returns
+   * {@link TokenTracer.Span#NOOP} if tracing is disabled.
+   */
+  static TokenTracer.Span startSpan(String name, JsonToken token) {
+    TokenTracer current = tracer;
+    if (current == TokenTracer.NOOP) {
+      return TokenTracer.Span.NOOP;
+    }
+    TokenTracer.Span span = startSpan(current, name);
+    if (span == TokenTracer.Span.NOOP) {
+      return span;
+    }
+    String issuer;
+    String keyId;
+    String alg;
+    try {
+      issuer = token.getIssuer();
+      keyId = token.getKeyId();
+      JsonElement algElement = token.getHeader().get(JsonToken.ALGORITHM_HEADER);
+      alg = algElement != null && algElement.isJsonPrimitive() ? algElement.getAsString() : null;
+    } catch (RuntimeException e) {
+      // a malformed token fails verification itself; the span goes without the attributes
+      return span;
+    }
+    setAttribute(span, ISSUER_ATTRIBUTE, issuer);
+    setAttribute(span, KEY_ID_ATTRIBUTE, keyId);
+    setAttribute(span, ALGORITHM_ATTRIBUTE, alg);
+    return span;
+  }
+
+  /**
+   * Starts a {@link #FETCH_KEYS_SPAN} carrying the URL fetched from and the issuer and key id
+   * the keys are fetched for, or returns {@link TokenTracer.Span#NOOP} if tracing is
+   * disabled.
+   */
+  public static TokenTracer.Span startFetchKeysSpan(String url, @Nullable String issuer,
+      @Nullable String keyId) {
+    TokenTracer current = tracer;
+    if (current == TokenTracer.NOOP) {
+      return TokenTracer.Span.NOOP;
+    }
+    TokenTracer.Span span = startSpan(current, FETCH_KEYS_SPAN);
+    if (span != TokenTracer.Span.NOOP) {
+      setAttribute(span, URL_ATTRIBUTE, url);
+      setAttribute(span, ISSUER_ATTRIBUTE, issuer);
+      setAttribute(span, KEY_ID_ATTRIBUTE, keyId);
+    }
+    return span;
+  }
+
+  /**
+   * Makes the span the current context of the calling thread until the returned scope is
+   * passed to {@link #close}.
+   */
+  public static TokenTracer.Scope makeCurrent(TokenTracer.Span span) {
+    if (span == TokenTracer.Span.NOOP) {
+      return TokenTracer.Scope.NOOP;
+    }
+    try {
+      return span.makeCurrent();
+    } catch (RuntimeException e) {
+      return TokenTracer.Scope.NOOP;
+    }
+  }
+
+  /**
+   * Closes a scope returned by {@link #makeCurrent}.
+   */
+  public static void close(TokenTracer.Scope scope) {
+    if (scope != TokenTracer.Scope.NOOP) {
+      try {
+        scope.close();
+      } catch (RuntimeException e) {
+        // the tracer's context is its own concern
+      }
+    }
+  }
+
+  /**
+   * Ends the span, recording the outcome.
+   * @param failure the exception that failed the operation, if any.
+   */
+  public static void end(TokenTracer.Span span, boolean succeeded, @Nullable Throwable failure) {
+    if (span != TokenTracer.Span.NOOP) {
+      setAttribute(span, OUTCOME_ATTRIBUTE, succeeded ? SUCCESS : FAILURE);
+      try {
+        span.end(failure);
+      } catch (RuntimeException e) {
+        // the span is lost, not the operation
+      }
+    }
+  }
+
+  /**
+   * Returns an executor that runs tasks in the context current when this method is called,
+   * or the executor itself if tracing is disabled.
+   */
+  static Executor inCurrentContext(Executor executor) {
+    TokenTracer current = tracer;
+    if (current == TokenTracer.NOOP) {
+      return executor;
+    }
+    try {
+      Executor wrapped = current.wrap(executor);
+      return wrapped != null ? wrapped : executor;
+    } catch (RuntimeException e) {
+      return executor;
+    }
+  }
+
+  private static TokenTracer.Span startSpan(TokenTracer current, String name) {
+    try {
+      TokenTracer.Span span = current.startSpan(name);
+      return span != null ? span : TokenTracer.Span.NOOP;
+    } catch (RuntimeException e) {
+      return TokenTracer.Span.NOOP;
+    }
+  }
+
+  private static void setAttribute(TokenTracer.Span span, String key, @Nullable String value) {
+    if (value != null) {
+      try {
+        span.setAttribute(key, value);
+      } catch (RuntimeException e) {
+        // the span goes without the attribute
+      }
+    }
+  }
+
+  private static TokenTracer load() {
+    try {
+      Iterator<TokenTracer> tracers =
+          ServiceLoader.load(TokenTracer.class, Tracing.class.getClassLoader()).iterator();
+      if (tracers.hasNext()) {
+        return tracers.next();
+      }
+    } catch (ServiceConfigurationError e) {
+      // a broken implementation must not break verification
+    }
+    return TokenTracer.NOOP;
+  }
+}
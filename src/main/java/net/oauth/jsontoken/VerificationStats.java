@@ -0,0 +1,410 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import com.google.common.base.Preconditions;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Always-on statistics of token verification: verification outcomes, failures by the
+ * {@link VerificationTrace.Phase} that failed, a verification latency histogram, and the
+ * hit rate and fetch latency of key lookups. Parsers record into it when configured with
+ * {@link ParserOptions#withStats(VerificationStats)}. A
+ * {@link net.oauth.jsontoken.discovery.VerifierCache}, and the key fetching
+ * {@link net.oauth.jsontoken.discovery.UrlBasedVerifierProvider},
+ * {@link net.oauth.jsontoken.discovery.ResilientVerifierProvider} and
+ * {@link net.oauth.jsontoken.discovery.KeySetManager}, record into it when constructed with it.
+ *
+ * <p>Counters are {@link LongAdder}s, so recording from many threads does not contend.
+ * Take a consistent-enough view with {@link #snapshot()}, or {@link #register} the
+ * statistics as an MXBean for JMX clients.
+ */
+public final class VerificationStats implements VerificationStatsMXBean {
+
+  /** The JMX domain under which statistics are registered. */
+  public static final String JMX_DOMAIN = "net.oauth.jsontoken";
+
+  private final LongAdder successes = new LongAdder();
+  private final EnumMap<VerificationTrace.Phase, LongAdder> failures =
+      new EnumMap<>(VerificationTrace.Phase.class);
+  private final LatencyHistogram verifyLatency = new LatencyHistogram();
+  private final LongAdder keyCacheHits = new LongAdder();
+  private final LongAdder keyCacheMisses = new LongAdder();
+  private final LongAdder keyFetchFailures = new LongAdder();
+  private final LatencyHistogram keyFetchLatency = new LatencyHistogram();
+  private volatile long resetNanos = System.nanoTime();
+
+  public VerificationStats() {
+    for (VerificationTrace.Phase phase : VerificationTrace.Phase.values()) {
+      failures.put(phase, new LongAdder());
+    }
+  }
+
+  /**
+   * Records a token that passed verification.
+   */
+  public void recordSuccess() {
+    successes.increment();
+  }
+
+  /**
+   * Records a token that failed verification in the given phase.
+   */
+  public void recordFailure(VerificationTrace.Phase phase) {
+    failures.get(phase).increment();
+  }
+
+  /**
+   * Records the latency of one call verifying a token, whatever its outcome.
+   */
+  public void recordVerifyLatency(long nanos) {
+    verifyLatency.record(nanos);
+  }
+
+  /**
+   * Records a lookup in a key or verifier cache.
+   */
+  public void recordKeyCacheLookup(boolean hit) {
+    (hit ? keyCacheHits : keyCacheMisses).increment();
+  }
+
+  /**
+   * Records a fetch of keys from a key provider.
+   * @param succeeded whether the fetch found any keys.
+   */
+  public void recordKeyFetch(long nanos, boolean succeeded) {
+    keyFetchLatency.record(nanos);
+    if (!succeeded) {
+      keyFetchFailures.increment();
+    }
+  }
+
+  /**
+   * Returns a snapshot of the statistics.
+   */
+  public Snapshot snapshot() {
+    EnumMap<VerificationTrace.Phase, Long> failureCounts =
+        new EnumMap<>(VerificationTrace.Phase.class);
+    for (Map.Entry<VerificationTrace.Phase, LongAdder> entry : failures.entrySet()) {
+      failureCounts.put(entry.getKey(), entry.getValue().sum());
+    }
+    return new Snapshot(System.nanoTime() - resetNanos, successes.sum(), failureCounts,
+        verifyLatency.snapshot(), keyCacheHits.sum(), keyCacheMisses.sum(),
+        keyFetchFailures.sum(), keyFetchLatency.snapshot());
+  }
+
+  /**
+   * Zeroes all statistics. Recordings concurrent with the reset may or may not be kept.
+   */
+  @Override
+  public void reset() {
+    successes.reset();
+    for (LongAdder adder : failures.values()) {
+      adder.reset();
+    }
+    verifyLatency.reset();
+    keyCacheHits.reset();
+    keyCacheMisses.reset();
+    keyFetchFailures.reset();
+    keyFetchLatency.reset();
+    resetNanos = System.nanoTime();
+  }
+
+  /**
+   * Registers these statistics with the platform MBean server under
+   * {@code net.oauth.jsontoken:type=VerificationStats,name=<name>}.
+   * @return the name the statistics were registered under.
+   * @throws IllegalStateException if the registration fails, e.g., because the name is taken.
+   */
+  public ObjectName register(String name) {
+    Preconditions.checkNotNull(name);
+    try {
+      ObjectName objectName = new ObjectName(
+          JMX_DOMAIN + ":type=VerificationStats,name=" + ObjectName.quote(name));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+      return objectName;
+    } catch (JMException e) {
+      throw new IllegalStateException("could not register statistics " + name, e);
+    }
+  }
+
+  /**
+   * Unregisters statistics registered by {@link #register}, if still registered.
+   */
+  public static void unregister(ObjectName objectName) {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+    } catch (JMException e) {
+      throw new IllegalStateException("could not unregister statistics " + objectName, e);
+    }
+  }
+
+  @Override
+  public long getVerificationCount() {
+    return snapshot().getVerificationCount();
+  }
+
+  @Override
+  public long getFailureCount() {
+    return snapshot().getFailureCount();
+  }
+
+  @Override
+  public Map<String, Long> getFailureCounts() {
+    Map<String, Long> counts = new LinkedHashMap<>();
+    for (Map.Entry<VerificationTrace.Phase, Long> entry
+        : snapshot().getFailureCounts().entrySet()) {
+      counts.put(entry.getKey().name(), entry.getValue());
+    }
+    return counts;
+  }
+
+  @Override
+  public double getVerificationsPerSecond() {
+    return snapshot().getVerificationsPerSecond();
+  }
+
+  @Override
+  public double getVerifyLatencyMeanMicros() {
+    return verifyLatency.snapshot().getMeanMicros();
+  }
+
+  @Override
+  public long getVerifyLatencyP50Micros() {
+    return verifyLatency.snapshot().getPercentileMicros(50);
+  }
+
+  @Override
+  public long getVerifyLatencyP99Micros() {
+    return verifyLatency.snapshot().getPercentileMicros(99);
+  }
+
+  @Override
+  public double getKeyCacheHitRate() {
+    return snapshot().getKeyCacheHitRate();
+  }
+
+  @Override
+  public long getKeyFetchCount() {
+    return keyFetchLatency.snapshot().getCount();
+  }
+
+  @Override
+  public long getKeyFetchFailureCount() {
+    return keyFetchFailures.sum();
+  }
+
+  @Override
+  public long getKeyFetchLatencyP50Micros() {
+    return keyFetchLatency.snapshot().getPercentileMicros(50);
+  }
+
+  @Override
+  public long getKeyFetchLatencyP99Micros() {
+    return keyFetchLatency.snapshot().getPercentileMicros(99);
+  }
+
+  /**
+   * A snapshot of a {@link VerificationStats}.
+   */
+  public static final class Snapshot {
+    private final long elapsedNanos;
+    private final long successCount;
+    private final Map<VerificationTrace.Phase, Long> failureCounts;
+    private final LatencySnapshot verifyLatency;
+    private final long keyCacheHitCount;
+    private final long keyCacheMissCount;
+    private final long keyFetchFailureCount;
+    private final LatencySnapshot keyFetchLatency;
+
+    Snapshot(long elapsedNanos, long successCount,
+        EnumMap<VerificationTrace.Phase, Long> failureCounts, LatencySnapshot verifyLatency,
+        long keyCacheHitCount, long keyCacheMissCount, long keyFetchFailureCount,
+        LatencySnapshot keyFetchLatency) {
+      this.elapsedNanos = elapsedNanos;
+      this.successCount = successCount;
+      this.failureCounts = Collections.unmodifiableMap(failureCounts);
+      this.verifyLatency = verifyLatency;
+      this.keyCacheHitCount = keyCacheHitCount;
+      this.keyCacheMissCount = keyCacheMissCount;
+      this.keyFetchFailureCount = keyFetchFailureCount;
+      this.keyFetchLatency = keyFetchLatency;
+    }
+
+    public long getVerificationCount() {
+      return successCount + getFailureCount();
+    }
+
+    public long getSuccessCount() {
+      return successCount;
+    }
+
+    public long getFailureCount() {
+      long count = 0;
+      for (long failures : failureCounts.values()) {
+        count += failures;
+      }
+      return count;
+    }
+
+    /** Returns the number of failed verifications by the phase that failed. */
+    public Map<VerificationTrace.Phase, Long> getFailureCounts() {
+      return failureCounts;
+    }
+
+    /** Returns the mean rate of verifications since the statistics were created or reset. */
+    public double getVerificationsPerSecond() {
+      return elapsedNanos <= 0 ? 0
+          : getVerificationCount() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    public LatencySnapshot getVerifyLatency() {
+      return verifyLatency;
+    }
+
+    /** Returns the fraction of key lookups served from a cache, or 0 if there were none. */
+    public double getKeyCacheHitRate() {
+      long lookups = keyCacheHitCount + keyCacheMissCount;
+      return lookups == 0 ? 0 : (double) keyCacheHitCount / lookups;
+    }
+
+    public long getKeyFetchFailureCount() {
+      return keyFetchFailureCount;
+    }
+
+    public LatencySnapshot getKeyFetchLatency() {
+      return keyFetchLatency;
+    }
+
+    @Override
+    public String toString() {
+      return "VerificationStats.Snapshot{successes=" + successCount + ", failures="
+          + failureCounts + ", verifyLatency=" + verifyLatency + ", keyCacheHitRate="
+          + getKeyCacheHitRate() + ", keyFetchFailures=" + keyFetchFailureCount
+          + ", keyFetchLatency=" + keyFetchLatency + "}";
+    }
+  }
+
+  /**
+   * A snapshot of a latency histogram whose buckets double in width, from under one
+   * microsecond to over 16 seconds. Percentiles are reported as the upper bound of the
+   * bucket they fall in.
+   */
+  public static final class LatencySnapshot {
+    private final long[] buckets;
+    private final long count;
+    private final long totalNanos;
+
+    LatencySnapshot(long[] buckets, long totalNanos) {
+      this.buckets = buckets;
+      long count = 0;
+      for (long bucket : buckets) {
+        count += bucket;
+      }
+      this.count = count;
+      this.totalNanos = totalNanos;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public double getMeanMicros() {
+      return count == 0 ? 0 : totalNanos / 1000.0 / count;
+    }
+
+    /**
+     * Returns the upper bound, in microseconds, of the bucket holding the given
+     * percentile, or 0 if nothing was recorded. The last bucket is unbounded and is
+     * reported as {@link Long#MAX_VALUE}.
+     */
+    public long getPercentileMicros(double percentile) {
+      Preconditions.checkArgument(percentile >= 0 && percentile <= 100,
+          "percentile must be between 0 and 100");
+      if (count == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(count * percentile / 100);
+      long seen = 0;
+      for (int i = 0; i < buckets.length; i++) {
+        seen += buckets[i];
+        if (seen >= rank && seen > 0) {
+          return LatencyHistogram.upperBoundMicros(i);
+        }
+      }
+      return Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+      return "{count=" + count + ", meanMicros=" + getMeanMicros() + ", p50Micros="
+          + getPercentileMicros(50) + ", p99Micros=" + getPercentileMicros(99) + "}";
+    }
+  }
+
+  private static final class LatencyHistogram {
+    // Bucket 0 holds latencies under 1us; bucket i < BUCKETS - 1 those under 2^i us.
+    private static final int BUCKETS = 26;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder totalNanos = new LongAdder();
+
+    LatencyHistogram() {
+      for (int i = 0; i < BUCKETS; i++) {
+        buckets[i] = new LongAdder();
+      }
+    }
+
+    static long upperBoundMicros(int bucket) {
+      return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    void record(long nanos) {
+      long micros = Math.max(0, nanos) / 1000;
+      int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+      buckets[bucket].increment();
+      totalNanos.add(Math.max(0, nanos));
+    }
+
+    LatencySnapshot snapshot() {
+      long[] counts = new long[BUCKETS];
+      for (int i = 0; i < BUCKETS; i++) {
+        counts[i] = buckets[i].sum();
+      }
+      return new LatencySnapshot(counts, totalNanos.sum());
+    }
+
+    void reset() {
+      for (LongAdder bucket : buckets) {
+        bucket.reset();
+      }
+      totalNanos.reset();
+    }
+  }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import java.util.Map;
+
+/**
+ * The JMX view of a {@link VerificationStats}. Rates and percentiles cover the time since
+ * the statistics were created or last reset.
+ */
+public interface VerificationStatsMXBean {
+
+  long getVerificationCount();
+
+  long getFailureCount();
+
+  /** Returns the number of failed verifications by the phase that failed. */
+  Map<String, Long> getFailureCounts();
+
+  double getVerificationsPerSecond();
+
+  double getVerifyLatencyMeanMicros();
+
+  long getVerifyLatencyP50Micros();
+
+  long getVerifyLatencyP99Micros();
+
+  double getKeyCacheHitRate();
+
+  long getKeyFetchCount();
+
+  long getKeyFetchFailureCount();
+
+  long getKeyFetchLatencyP50Micros();
+
+  long getKeyFetchLatencyP99Micros();
+
+  void reset();
+}
@@ -0,0 +1,316 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import com.google.gson.JsonElement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import net.oauth.jsontoken.crypto.Verifier;
+
+/**
+ * The timeline of the verification of one token, recorded when tracing is enabled through
+ * {@link ParserOptions#withTracing(VerificationTraceListener, int)}. A trace records how long
+ * each phase took, which verifiers were tried and with what outcome, key cache lookups made
+ * on the verifying thread, and which checker, if any, rejected the token.
+ *
+ * <p>Traces are filled in by a single verifying thread and handed to the
+ * {@link VerificationTraceListener} once complete.
+ */
+public final class VerificationTrace {
+
+  /**
+   * The phases of verification, in order.
+   */
+  public enum Phase {
+    /** Decoding and parsing the header and payload. */
+    DESERIALIZE,
+    /** Finding the verifiers for the token's issuer and key id. */
+    KEY_LOOKUP,
+    /** Checking the signature against the verifiers. */
+    SIGNATURE,
+    /** Checking iat and exp, and running the checkers. */
+    CLAIMS
+  }
+
+  /**
+   * One verifier tried against the token's signature.
+   */
+  public static final class VerifierAttempt {
+    private final String verifier;
+    private final int index;
+    @Nullable private final String keyFingerprint;
+    private final boolean verified;
+    private final long nanos;
+
+    VerifierAttempt(String verifier, int index, @Nullable String keyFingerprint,
+        boolean verified, long nanos) {
+      this.verifier = verifier;
+      this.index = index;
+      this.keyFingerprint = keyFingerprint;
+      this.verified = verified;
+      this.nanos = nanos;
+    }
+
+    /** Returns the class name of the verifier. */
+    public String getVerifier() {
+      return verifier;
+    }
+
+    /** Returns the position of the verifier among the candidates for the token. */
+    public int getIndex() {
+      return index;
+    }
+
+    /**
+     * Returns the fingerprint of the key the verifier checked the signature with, or null
+     * if the verifier does not report one.
+     * @see Verifier#getKeyFingerprint()
+     */
+    @Nullable
+    public String getKeyFingerprint() {
+      return keyFingerprint;
+    }
+
+    /** Returns whether the verifier accepted the signature. */
+    public boolean isVerified() {
+      return verified;
+    }
+
+    public long getNanos() {
+      return nanos;
+    }
+  }
+
+  /**
+   * One lookup in a key or verifier cache.
+   */
+  public static final class CacheLookup {
+    private final String cache;
+    private final boolean hit;
+
+    CacheLookup(String cache, boolean hit) {
+      this.cache = cache;
+      this.hit = hit;
+    }
+
+    /** Returns the name of the cache. */
+    public String getCache() {
+      return cache;
+    }
+
+    public boolean isHit() {
+      return hit;
+    }
+  }
+
+  private static final ThreadLocal<VerificationTrace> CURRENT = new ThreadLocal<>();
+
+  private final long startNanos = System.nanoTime();
+  private final long[] phaseNanos = new long[Phase.values().length];
+  private final List<VerifierAttempt> verifierAttempts = new ArrayList<>(2);
+  private List<CacheLookup> cacheLookups = Collections.emptyList();
+  private long totalNanos;
+  @Nullable private String algorithm;
+  @Nullable private String issuer;
+  @Nullable private String keyId;
+  @Nullable private Phase failedPhase;
+  @Nullable private Checker rejectingChecker;
+  @Nullable private Throwable failure;
+
+  VerificationTrace() { }
+
+  /**
+   * Returns the trace being recorded on the calling thread, or null if the token being
+   * verified on this thread is not traced. Verifier providers can use this to record
+   * cache lookups.
+   */
+  @Nullable
+  public static VerificationTrace current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Records a lookup in the named cache.
+   */
+  public void recordCacheLookup(String cache, boolean hit) {
+    if (cacheLookups.isEmpty()) {
+      cacheLookups = new ArrayList<>(2);
+    }
+    cacheLookups.add(new CacheLookup(cache, hit));
+  }
+
+  /** Returns whether the token was verified. */
+  public boolean isVerified() {
+    return failure == null;
+  }
+
+  /** Returns the token's "alg" header, if it was parsed. */
+  @Nullable
+  public String getAlgorithm() {
+    return algorithm;
+  }
+
+  /** Returns the token's issuer, if it was parsed. */
+  @Nullable
+  public String getIssuer() {
+    return issuer;
+  }
+
+  /** Returns the token's "kid" header, if it was parsed. */
+  @Nullable
+  public String getKeyId() {
+    return keyId;
+  }
+
+  /**
+   * Returns the time spent in the given phase, or 0 if the phase did not run.
+   */
+  public long getPhaseNanos(Phase phase) {
+    return phaseNanos[phase.ordinal()];
+  }
+
+  /** Returns the time from the start of the trace to its completion. */
+  public long getTotalNanos() {
+    return totalNanos;
+  }
+
+  /** Returns the verifiers tried, in order. */
+  public List<VerifierAttempt> getVerifierAttempts() {
+    return Collections.unmodifiableList(verifierAttempts);
+  }
+
+  /** Returns the cache lookups recorded on the verifying thread, in order. */
+  public List<CacheLookup> getCacheLookups() {
+    return Collections.unmodifiableList(cacheLookups);
+  }
+
+  /** Returns the phase that failed, or null if the token was verified. */
+  @Nullable
+  public Phase getFailedPhase() {
+    return failedPhase;
+  }
+
+  /** Returns the checker that rejected the token, or null if no checker did. */
+  @Nullable
+  public Checker getRejectingChecker() {
+    return rejectingChecker;
+  }
+
+  /** Returns the exception verification failed with, or null if the token was verified. */
+  @Nullable
+  public Throwable getFailure() {
+    return failure;
+  }
+
+  void begin() {
+    CURRENT.set(this);
+  }
+
+  void recordToken(JsonToken token) {
+    algorithm = stringOrNull(token.getHeader().get(JsonToken.ALGORITHM_HEADER));
+    issuer = token.getClaims().getIssuer();
+    keyId = token.getKeyId();
+  }
+
+  void recordPhase(Phase phase, long nanos) {
+    phaseNanos[phase.ordinal()] += nanos;
+  }
+
+  void recordVerifierAttempt(Verifier verifier, int index, boolean verified, long nanos) {
+    String keyFingerprint;
+    try {
+      keyFingerprint = verifier.getKeyFingerprint();
+    } catch (RuntimeException e) {
+      keyFingerprint = null;
+    }
+    verifierAttempts.add(new VerifierAttempt(verifier.getClass().getName(), index,
+        keyFingerprint, verified, nanos));
+  }
+
+  void recordRejectingChecker(Checker checker) {
+    rejectingChecker = checker;
+  }
+
+  void recordFailure(Phase phase, Throwable failure) {
+    if (this.failure == null) {
+      this.failedPhase = phase;
+      this.failure = failure;
+    }
+  }
+
+  /**
+   * Completes the trace and hands it to the listener. Exceptions thrown by the listener are
+   * dropped, so that they never replace the outcome of the verification.
+   */
+  void end(VerificationTraceListener listener) {
+    totalNanos = System.nanoTime() - startNanos;
+    CURRENT.remove();
+    try {
+      listener.onTrace(this);
+    } catch (RuntimeException e) {
+      // the listener's failure is not the verification's
+    }
+  }
+
+  /**
+   * Returns a one-line, human-readable rendering of the trace.
+   */
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("VerificationTrace{")
+        .append(isVerified() ? "verified" : "failed in " + failedPhase)
+        .append(", alg=").append(algorithm)
+        .append(", iss=").append(issuer)
+        .append(", kid=").append(keyId)
+        .append(", totalMicros=").append(micros(totalNanos));
+    for (Phase phase : Phase.values()) {
+      builder.append(", ").append(phase.name().toLowerCase()).append("Micros=")
+          .append(micros(getPhaseNanos(phase)));
+    }
+    for (VerifierAttempt attempt : verifierAttempts) {
+      builder.append(", verifier ").append(attempt.getIndex()).append(' ')
+          .append(attempt.getVerifier());
+      if (attempt.getKeyFingerprint() != null) {
+        builder.append(" key ").append(attempt.getKeyFingerprint());
+      }
+      builder.append(attempt.isVerified() ? " accepted" : " rejected");
+    }
+    for (CacheLookup lookup : cacheLookups) {
+      builder.append(", cache ").append(lookup.getCache())
+          .append(lookup.isHit() ? " hit" : " miss");
+    }
+    if (rejectingChecker != null) {
+      builder.append(", rejected by ").append(rejectingChecker.getClass().getName());
+    }
+    if (failure != null) {
+      builder.append(", failure=").append(failure);
+    }
+    return builder.append('}').toString();
+  }
+
+  @Nullable
+  private static String stringOrNull(@Nullable JsonElement element) {
+    return element != null && element.isJsonPrimitive() ? element.getAsString() : null;
+  }
+
+  private static long micros(long nanos) {
+    return TimeUnit.NANOSECONDS.toMicros(nanos);
+  }
+}
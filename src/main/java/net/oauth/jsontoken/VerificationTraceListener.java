@@ -0,0 +1,30 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+/**
+ * Receives the {@link VerificationTrace}s of sampled tokens. Configured through
+ * {@link ParserOptions#withTracing(VerificationTraceListener, int)}.
+ */
+public interface VerificationTraceListener {
+
+  /**
+   * Called on the verifying thread once verification of a sampled token has completed,
+   * whether it succeeded or failed. Implementations should return quickly.
+   */
+  void onTrace(VerificationTrace trace);
+}
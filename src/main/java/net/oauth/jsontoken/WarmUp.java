@@ -0,0 +1,156 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.SignatureException;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+import net.oauth.jsontoken.crypto.EcdsaSHA256Signer;
+import net.oauth.jsontoken.crypto.EcdsaSHA256Verifier;
+import net.oauth.jsontoken.crypto.Ed25519Signer;
+import net.oauth.jsontoken.crypto.Ed25519Verifier;
+import net.oauth.jsontoken.crypto.HmacSigner;
+import net.oauth.jsontoken.crypto.HmacVerifier;
+import net.oauth.jsontoken.crypto.RsaSigner;
+import net.oauth.jsontoken.crypto.RsaVerifier;
+import net.oauth.jsontoken.crypto.SignatureAlgorithm;
+import net.oauth.jsontoken.crypto.Signer;
+import net.oauth.jsontoken.crypto.Verifier;
+
+/**
+ * Runs synthetic sign and verify cycles with throwaway keys, so that the JCA providers are
+ * loaded and the JIT has compiled the signing, parsing and verification paths before real
+ * tokens arrive.
+ */
+final class WarmUp {
+
+  private static final String ISSUER = "warm-up";
+  private static final String KEY_ID = "warm-up";
+
+  private WarmUp() {
+  }
+
+  /**
+   * Signs and verifies {@code iterations} synthetic tokens with the given algorithm.
+   * @return false if the platform does not support the algorithm.
+   * @throws IllegalStateException if a synthetic token fails to sign or verify.
+   */
+  static boolean exercise(AbstractJsonTokenParser parser, SignatureAlgorithm alg, int iterations) {
+    Signer signer;
+    List<Verifier> verifiers;
+    try {
+      KeyPair keyPair = newKeyPair(alg);
+      signer = newSigner(alg, keyPair);
+      verifiers = Collections.singletonList(newVerifier(alg, keyPair));
+    } catch (NoSuchAlgorithmException e) {
+      return false;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("cannot create warm-up keys for " + alg, e);
+    }
+
+    for (int i = 0; i < iterations; i++) {
+      JsonToken token = new JsonToken(signer);
+      token.setParam("n", i);
+      String tokenString;
+      try {
+        tokenString = token.serializeAndSign();
+      } catch (SignatureException e) {
+        throw new IllegalStateException("cannot sign warm-up token for " + alg, e);
+      }
+      parser.deserialize(tokenString);
+      if (!parser.signatureIsValid(tokenString, verifiers)) {
+        throw new IllegalStateException("warm-up token did not verify for " + alg);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns a new key pair for the algorithm, or null for HMAC algorithms.
+   */
+  @Nullable
+  private static KeyPair newKeyPair(SignatureAlgorithm alg) throws GeneralSecurityException {
+    KeyPairGenerator generator;
+    switch (alg.getKeyType()) {
+      case RSA:
+        generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        break;
+      case EC:
+        generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        break;
+      case OKP:
+        generator = KeyPairGenerator.getInstance("Ed25519");
+        break;
+      default:
+        return null;
+    }
+    KeyPair keyPair = generator.generateKeyPair();
+    // The key factory is what parses keys fetched from issuers.
+    KeyFactory.getInstance(keyPair.getPublic().getAlgorithm())
+        .generatePublic(new X509EncodedKeySpec(keyPair.getPublic().getEncoded()));
+    return keyPair;
+  }
+
+  private static Signer newSigner(SignatureAlgorithm alg, @Nullable KeyPair keyPair)
+      throws GeneralSecurityException {
+    switch (alg.getKeyType()) {
+      case RSA:
+        return new RsaSigner(ISSUER, KEY_ID, alg, (RSAPrivateKey) keyPair.getPrivate());
+      case EC:
+        return new EcdsaSHA256Signer(ISSUER, KEY_ID, (ECPrivateKey) keyPair.getPrivate());
+      case OKP:
+        return new Ed25519Signer(ISSUER, KEY_ID, keyPair.getPrivate());
+      default:
+        return new HmacSigner(ISSUER, KEY_ID, alg, hmacKey());
+    }
+  }
+
+  private static Verifier newVerifier(SignatureAlgorithm alg, @Nullable KeyPair keyPair)
+      throws GeneralSecurityException {
+    switch (alg.getKeyType()) {
+      case RSA:
+        return new RsaVerifier(alg, keyPair.getPublic());
+      case EC:
+        return new EcdsaSHA256Verifier(keyPair.getPublic());
+      case OKP:
+        return new Ed25519Verifier(keyPair.getPublic());
+      default:
+        return new HmacVerifier(alg, hmacKey());
+    }
+  }
+
+  private static byte[] hmacKey() {
+    // Signer and verifier must share the key, so it is derived rather than random.
+    byte[] key = new byte[64];
+    for (int i = 0; i < key.length; i++) {
+      key[i] = (byte) i;
+    }
+    return key;
+  }
+}
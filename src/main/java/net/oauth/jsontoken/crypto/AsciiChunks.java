@@ -0,0 +1,83 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.crypto;
+
+import java.security.Signature;
+import java.security.SignatureException;
+
+import javax.crypto.Mac;
+
+/**
+ * Feeds ranges of US-ASCII characters into signature engines. The characters are converted in
+ * chunks into a buffer owned by the calling thread, so that signing or verifying a range of a
+ * token string does not copy it into a new byte array. As with
+ * {@link org.apache.commons.codec.binary.StringUtils#getBytesUsAscii(String)}, characters
+ * outside US-ASCII are fed as '?'.
+ */
+final class AsciiChunks {
+
+  static final int CHUNK_SIZE = 1024;
+
+  private static final ThreadLocal<byte[]> BUFFER =
+      ThreadLocal.withInitial(() -> new byte[CHUNK_SIZE]);
+
+  /**
+   * Feeds the characters of {@code source} from {@code start} (inclusive) to {@code end}
+   * (exclusive) into the signature.
+   */
+  static void update(Signature signature, CharSequence source, int start, int end)
+      throws SignatureException {
+    byte[] buffer = BUFFER.get();
+    for (int chunkStart = start; chunkStart < end; chunkStart += CHUNK_SIZE) {
+      int length = fill(buffer, source, chunkStart, Math.min(end, chunkStart + CHUNK_SIZE));
+      signature.update(buffer, 0, length);
+    }
+  }
+
+  /**
+   * Feeds the characters of {@code source} from {@code start} (inclusive) to {@code end}
+   * (exclusive) into the MAC.
+   */
+  static void update(Mac mac, CharSequence source, int start, int end) {
+    byte[] buffer = BUFFER.get();
+    for (int chunkStart = start; chunkStart < end; chunkStart += CHUNK_SIZE) {
+      int length = fill(buffer, source, chunkStart, Math.min(end, chunkStart + CHUNK_SIZE));
+      mac.update(buffer, 0, length);
+    }
+  }
+
+  /**
+   * Returns the characters of {@code source} from {@code start} (inclusive) to {@code end}
+   * (exclusive) as a new byte array. Used by signers and verifiers that only accept whole
+   * byte arrays.
+   */
+  static byte[] toBytes(CharSequence source, int start, int end) {
+    byte[] bytes = new byte[end - start];
+    fill(bytes, source, start, end);
+    return bytes;
+  }
+
+  private static int fill(byte[] buffer, CharSequence source, int start, int end) {
+    for (int i = start; i < end; i++) {
+      char c = source.charAt(i);
+      buffer[i - start] = c < 0x80 ? (byte) c : (byte) '?';
+    }
+    return end - start;
+  }
+
+  private AsciiChunks() { }
+}
@@ -17,7 +17,6 @@
 package net.oauth.jsontoken.crypto;
 
 import java.security.SignatureException;
-import org.apache.commons.codec.binary.StringUtils;
 
 /**
  * A Signer that can sign Strings (as opposed to byte arrays), assuming
@@ -40,6 +39,6 @@ public class AsciiStringSigner {
    * @throws SignatureException when the signature cannot be generated.
    */
   public byte[] sign(String source) throws SignatureException {
-    return signer.sign(StringUtils.getBytesUsAscii(source));
+    return signer.sign(source, 0, source.length());
   }
 }
@@ -16,8 +16,6 @@
  */
 package net.oauth.jsontoken.crypto;
 
-import org.apache.commons.codec.binary.StringUtils;
-
 import java.security.SignatureException;
 
 /**
@@ -44,6 +42,6 @@ public class AsciiStringVerifier {
    * @throws SignatureException if the signature doesn't verify.
    */
   public void verifySignature(String source, byte[] signature) throws SignatureException {
-    verifier.verifySignature(StringUtils.getBytesUsAscii(source), signature);
+    verifier.verifySignature(source, 0, source.length(), signature);
   }
 }
@@ -0,0 +1,139 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.crypto;
+
+import java.math.BigInteger;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.interfaces.ECPrivateKey;
+import java.security.spec.ECFieldFp;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.EllipticCurve;
+
+/**
+ * Signer that can sign byte arrays using ECDSA on the P-256 curve and SHA-256 (ES256).
+ * Signatures are returned in the JOSE r || s form. Each thread signs with its own
+ * {@link Signature} instance, so a single signer can be shared across threads.
+ */
+public class EcdsaSHA256Signer extends AbstractSigner {
+
+  static final String SHA256_WITH_ECDSA = "SHA256withECDSA";
+  static final int P256_COORDINATE_LENGTH = 32;
+
+  /** The NIST P-256 (secp256r1) domain parameters, from FIPS 186-4 section D.1.2.3. */
+  static final ECParameterSpec P256 = new ECParameterSpec(
+      new EllipticCurve(
+          new ECFieldFp(new BigInteger(
+              "FFFFFFFF00000001000000000000000000000000FFFFFFFFFFFFFFFFFFFFFFFF", 16)),
+          new BigInteger(
+              "FFFFFFFF00000001000000000000000000000000FFFFFFFFFFFFFFFFFFFFFFFC", 16),
+          new BigInteger(
+              "5AC635D8AA3A93E7B3EBBD55769886BC651D06B0CC53B0F63BCE3C3E27D2604B", 16)),
+      new ECPoint(
+          new BigInteger(
+              "6B17D1F2E12C4247F8BCE6E563A440F277037D812DEB33A0F4A13945D898C296", 16),
+          new BigInteger(
+              "4FE342E2FE1A7F9B8EE7EB4A7C0F9E162BCE33576B315ECECBB6406837BF51F5", 16)),
+      new BigInteger("FFFFFFFF00000000FFFFFFFFFFFFFFFFBCE6FAADA7179E84F3B9CAC2FC632551", 16),
+      1);
+
+  private final ECPrivateKey signingKey;
+  private final ThreadLocal<Signature> signature;
+
+  /**
+   * Public constructor.
+   * @param issuer The id of this signer, to be included in the JSON Token's envelope.
+   * @param keyId The id of the key used by this signer, to be included in the JSON Token's envelope.
+   * @param key the P-256 private key to be used for signing.
+   * @throws InvalidKeyException if the key is not a P-256 key.
+   */
+  public EcdsaSHA256Signer(String issuer, String keyId, ECPrivateKey key)
+      throws InvalidKeyException {
+    super(issuer, keyId);
+    if (!isP256(key.getParams())) {
+      throw new InvalidKeyException("ES256 requires a P-256 key");
+    }
+    this.signingKey = key;
+
+    // just to make sure we catch invalid keys early, let's initialize a signature now
+    newSignature(key);
+    this.signature = ThreadLocal.withInitial(() -> {
+      try {
+        return newSignature(signingKey);
+      } catch (InvalidKeyException e) {
+        // this should not happen - we tested this in the constructor
+        throw new IllegalStateException("key somehow became invalid since calling the constructor", e);
+      }
+    });
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see net.oauth.jsontoken.crypto.Signer#getSignatureAlgorithm()
+   */
+  @Override
+  public SignatureAlgorithm getSignatureAlgorithm() {
+    return SignatureAlgorithm.ES256;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see net.oauth.jsontoken.crypto.Signer#sign(byte[])
+   */
+  @Override
+  public byte[] sign(byte[] source) throws SignatureException {
+    Signature signer = signature.get();
+    signer.update(source);
+    return EcdsaSignatureFormat.toConcatenated(signer.sign(), P256_COORDINATE_LENGTH);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see net.oauth.jsontoken.crypto.Signer#sign(java.lang.CharSequence, int, int)
+   */
+  @Override
+  public byte[] sign(CharSequence source, int start, int end) throws SignatureException {
+    Signature signer = signature.get();
+    AsciiChunks.update(signer, source, start, end);
+    return EcdsaSignatureFormat.toConcatenated(signer.sign(), P256_COORDINATE_LENGTH);
+  }
+
+  private static Signature newSignature(ECPrivateKey key) throws InvalidKeyException {
+    try {
+      Signature signature = Signature.getInstance(SHA256_WITH_ECDSA);
+      signature.initSign(key);
+      return signature;
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("platform is missing SHA256withECDSA signature alg", e);
+    }
+  }
+
+  /**
+   * Returns whether the given domain parameters are exactly those of P-256. Comparing the field
+   * size alone would also accept other 256-bit curves such as secp256k1.
+   */
+  static boolean isP256(ECParameterSpec params) {
+    return params != null
+        && P256.getCurve().equals(params.getCurve())
+        && P256.getGenerator().equals(params.getGenerator())
+        && P256.getOrder().equals(params.getOrder())
+        && P256.getCofactor() == params.getCofactor();
+  }
+}
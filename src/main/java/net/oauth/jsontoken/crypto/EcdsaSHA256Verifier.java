@@ -0,0 +1,99 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.crypto;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.interfaces.ECPublicKey;
+
+/**
+ * A verifier that can verify ES256 signatures (ECDSA on the P-256 curve with SHA-256) in the
+ * JOSE r || s form. Each thread verifies with its own {@link Signature} instance, so a single
+ * verifier can be shared across threads.
+ */
+public class EcdsaSHA256Verifier implements Verifier {
+
+  private final PublicKey verificationKey;
+  private final ThreadLocal<Signature> verifier;
+
+  /**
+   * Public Constructor.
+   * @param verificationKey the P-256 key used to verify the signature.
+   */
+  public EcdsaSHA256Verifier(PublicKey verificationKey) {
+    if (!(verificationKey instanceof ECPublicKey)
+        || !EcdsaSHA256Signer.isP256(((ECPublicKey) verificationKey).getParams())) {
+      throw new IllegalStateException("key is invalid: ES256 requires a P-256 key");
+    }
+    this.verificationKey = verificationKey;
+    newSignature(verificationKey);
+    this.verifier = ThreadLocal.withInitial(() -> newSignature(this.verificationKey));
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see net.oauth.jsontoken.crypto.Verifier#verifySignature(byte[], byte[])
+   */
+  @Override
+  public void verifySignature(byte[] source, byte[] signature) throws SignatureException {
+    byte[] der = EcdsaSignatureFormat.toDer(signature, EcdsaSHA256Signer.P256_COORDINATE_LENGTH);
+    Signature signer = verifier.get();
+    signer.update(source);
+    if (!signer.verify(der)) {
+      throw new SignatureException("signature did not verify");
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see net.oauth.jsontoken.crypto.Verifier#verifySignature(java.lang.CharSequence, int, int, byte[])
+   */
+  @Override
+  public void verifySignature(CharSequence source, int start, int end, byte[] signature)
+      throws SignatureException {
+    byte[] der = EcdsaSignatureFormat.toDer(signature, EcdsaSHA256Signer.P256_COORDINATE_LENGTH);
+    Signature signer = verifier.get();
+    AsciiChunks.update(signer, source, start, end);
+    if (!signer.verify(der)) {
+      throw new SignatureException("signature did not verify");
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see net.oauth.jsontoken.crypto.Verifier#getKeyFingerprint()
+   */
+  @Override
+  public String getKeyFingerprint() {
+    return KeyFingerprints.of(verificationKey);
+  }
+
+  private static Signature newSignature(PublicKey key) {
+    try {
+      Signature signature = Signature.getInstance(EcdsaSHA256Signer.SHA256_WITH_ECDSA);
+      signature.initVerify(key);
+      return signature;
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("platform is missing SHA256withECDSA signature alg", e);
+    } catch (InvalidKeyException e) {
+      throw new IllegalStateException("key is invalid", e);
+    }
+  }
+}
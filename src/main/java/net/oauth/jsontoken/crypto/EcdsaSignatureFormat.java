@@ -0,0 +1,137 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.crypto;
+
+import java.security.SignatureException;
+
+/**
+ * Converts ECDSA signatures between the DER encoding produced by the JCA
+ * (a SEQUENCE of the two INTEGERs r and s) and the JOSE encoding, which is the
+ * fixed-length concatenation r || s of the two big-endian values.
+ */
+final class EcdsaSignatureFormat {
+
+  private static final byte SEQUENCE = 0x30;
+  private static final byte INTEGER = 0x02;
+
+  /**
+   * Converts a DER-encoded signature into the JOSE r || s form.
+   * @param der the DER-encoded signature.
+   * @param coordinateLength the length in bytes of each of r and s, e.g., 32 for P-256.
+   * @throws SignatureException if der is not a well-formed ECDSA signature.
+   */
+  static byte[] toConcatenated(byte[] der, int coordinateLength) throws SignatureException {
+    if (der.length < 8 || der[0] != SEQUENCE) {
+      throw new SignatureException("invalid DER-encoded ECDSA signature");
+    }
+    int offset = 1;
+    int sequenceLength = der[offset++] & 0xff;
+    if (sequenceLength == 0x81) {
+      sequenceLength = der[offset++] & 0xff;
+    } else if (sequenceLength > 0x7f) {
+      throw new SignatureException("invalid DER-encoded ECDSA signature");
+    }
+    if (offset + sequenceLength != der.length) {
+      throw new SignatureException("invalid DER-encoded ECDSA signature");
+    }
+
+    byte[] concatenated = new byte[2 * coordinateLength];
+    offset = copyInteger(der, offset, concatenated, 0, coordinateLength);
+    offset = copyInteger(der, offset, concatenated, coordinateLength, coordinateLength);
+    if (offset != der.length) {
+      throw new SignatureException("invalid DER-encoded ECDSA signature");
+    }
+    return concatenated;
+  }
+
+  /**
+   * Converts a JOSE r || s signature into the DER encoding expected by the JCA.
+   * @param concatenated the r || s signature.
+   * @param coordinateLength the length in bytes of each of r and s, e.g., 32 for P-256.
+   * @throws SignatureException if the signature does not have the expected length.
+   */
+  static byte[] toDer(byte[] concatenated, int coordinateLength) throws SignatureException {
+    if (concatenated.length != 2 * coordinateLength) {
+      throw new SignatureException("invalid ECDSA signature length: " + concatenated.length);
+    }
+    int rStart = firstSignificantByte(concatenated, 0, coordinateLength);
+    int sStart = firstSignificantByte(concatenated, coordinateLength, 2 * coordinateLength);
+    int rLength = integerLength(concatenated, rStart, coordinateLength);
+    int sLength = integerLength(concatenated, sStart, 2 * coordinateLength);
+    int sequenceLength = 2 + rLength + 2 + sLength;
+
+    int headerLength = sequenceLength > 0x7f ? 3 : 2;
+    byte[] der = new byte[headerLength + sequenceLength];
+    int offset = 0;
+    der[offset++] = SEQUENCE;
+    if (headerLength == 3) {
+      der[offset++] = (byte) 0x81;
+    }
+    der[offset++] = (byte) sequenceLength;
+    offset = writeInteger(concatenated, rStart, coordinateLength, rLength, der, offset);
+    writeInteger(concatenated, sStart, 2 * coordinateLength, sLength, der, offset);
+    return der;
+  }
+
+  private static int copyInteger(byte[] der, int offset, byte[] out, int outOffset,
+      int coordinateLength) throws SignatureException {
+    if (offset + 2 > der.length || der[offset] != INTEGER) {
+      throw new SignatureException("invalid DER-encoded ECDSA signature");
+    }
+    int length = der[offset + 1] & 0xff;
+    int start = offset + 2;
+    int end = start + length;
+    if (length == 0 || length > 0x7f || end > der.length) {
+      throw new SignatureException("invalid DER-encoded ECDSA signature");
+    }
+    // Drop the sign byte and any other leading zeros.
+    while (length > coordinateLength && der[start] == 0) {
+      start++;
+      length--;
+    }
+    if (length > coordinateLength) {
+      throw new SignatureException("invalid DER-encoded ECDSA signature");
+    }
+    System.arraycopy(der, start, out, outOffset + coordinateLength - length, length);
+    return end;
+  }
+
+  private static int firstSignificantByte(byte[] bytes, int start, int end) {
+    while (start < end - 1 && bytes[start] == 0) {
+      start++;
+    }
+    return start;
+  }
+
+  private static int integerLength(byte[] bytes, int start, int end) {
+    // A leading zero byte keeps a value with its high bit set positive.
+    return (end - start) + ((bytes[start] & 0x80) != 0 ? 1 : 0);
+  }
+
+  private static int writeInteger(byte[] bytes, int start, int end, int length, byte[] der,
+      int offset) {
+    der[offset++] = INTEGER;
+    der[offset++] = (byte) length;
+    if (length > end - start) {
+      der[offset++] = 0;
+    }
+    System.arraycopy(bytes, start, der, offset, end - start);
+    return offset + end - start;
+  }
+
+  private EcdsaSignatureFormat() { }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.crypto;
+
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.SignatureException;
+
+/**
+ * Signer that can sign byte arrays using Ed25519 (the EdDSA signature algorithm). Requires a
+ * platform that provides the "Ed25519" signature algorithm, which the JDK does from version 15.
+ * Each thread signs with its own {@link Signature} instance, so a single signer can be shared
+ * across threads.
+ */
+public class Ed25519Signer extends AbstractSigner {
+
+  static final String ED25519 = "Ed25519";
+
+  private final PrivateKey signingKey;
+  private final ThreadLocal<Signature> signature;
+
+  /**
+   * Public constructor.
+   * @param issuer The id of this signer, to be included in the JSON Token's envelope.
+   * @param keyId The id of the key used by this signer, to be included in the JSON Token's envelope.
+   * @param key the Ed25519 private key to be used for signing.
+   * @throws InvalidKeyException if the key is not an Ed25519 key.
+   */
+  public Ed25519Signer(String issuer, String keyId, PrivateKey key) throws InvalidKeyException {
+    super(issuer, keyId);
+    if (!isEd25519Key(key)) {
+      throw new InvalidKeyException("EdDSA requires an Ed25519 key");
+    }
+    this.signingKey = key;
+
+    // just to make sure we catch invalid keys early, let's initialize a signature now
+    newSignature(key);
+    this.signature = ThreadLocal.withInitial(() -> {
+      try {
+        return newSignature(signingKey);
+      } catch (InvalidKeyException e) {
+        // this should not happen - we tested this in the constructor
+        throw new IllegalStateException("key somehow became invalid since calling the constructor", e);
+      }
+    });
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see net.oauth.jsontoken.crypto.Signer#getSignatureAlgorithm()
+   */
+  @Override
+  public SignatureAlgorithm getSignatureAlgorithm() {
+    return SignatureAlgorithm.EdDSA;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see net.oauth.jsontoken.crypto.Signer#sign(byte[])
+   */
+  @Override
+  public byte[] sign(byte[] source) throws SignatureException {
+    Signature signer = signature.get();
+    signer.update(source);
+    return signer.sign();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see net.oauth.jsontoken.crypto.Signer#sign(java.lang.CharSequence, int, int)
+   */
+  @Override
+  public byte[] sign(CharSequence source, int start, int end) throws SignatureException {
+    Signature signer = signature.get();
+    AsciiChunks.update(signer, source, start, end);
+    return signer.sign();
+  }
+
+  /**
+   * Returns whether the key is an Ed25519 key. Providers report the algorithm of such keys as
+   * either "EdDSA" or "Ed25519".
+   */
+  static boolean isEd25519Key(Key key) {
+    return "EdDSA".equals(key.getAlgorithm()) || ED25519.equals(key.getAlgorithm());
+  }
+
+  private static Signature newSignature(PrivateKey key) throws InvalidKeyException {
+    try {
+      Signature signature = Signature.getInstance(ED25519);
+      signature.initSign(key);
+      return signature;
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("platform is missing Ed25519 signature alg", e);
+    }
+  }
+}
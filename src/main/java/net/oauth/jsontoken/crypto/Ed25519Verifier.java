@@ -0,0 +1,110 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.crypto;
+
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+
+/**
+ * A verifier that can verify Ed25519 (EdDSA) signatures. Each thread verifies with its own
+ * {@link Signature} instance, so a single verifier can be shared across threads.
+ */
+public class Ed25519Verifier implements Verifier {
+
+  private static final int SIGNATURE_LENGTH = 64;
+
+  private final PublicKey verificationKey;
+  private final ThreadLocal<Signature> verifier;
+
+  /**
+   * Public Constructor.
+   * @param verificationKey the Ed25519 key used to verify the signature.
+   */
+  public Ed25519Verifier(PublicKey verificationKey) {
+    if (!Ed25519Signer.isEd25519Key(verificationKey)) {
+      throw new IllegalStateException("key is invalid: EdDSA requires an Ed25519 key");
+    }
+    this.verificationKey = verificationKey;
+    newSignature(verificationKey);
+    this.verifier = ThreadLocal.withInitial(() -> newSignature(this.verificationKey));
+  }
+
+  /**
+   * Returns whether the key is one this verifier accepts.
+   */
+  public static boolean supportsKey(Key key) {
+    return Ed25519Signer.isEd25519Key(key);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see net.oauth.jsontoken.crypto.Verifier#verifySignature(byte[], byte[])
+   */
+  @Override
+  public void verifySignature(byte[] source, byte[] signature) throws SignatureException {
+    if (signature.length != SIGNATURE_LENGTH) {
+      throw new SignatureException("invalid Ed25519 signature length: " + signature.length);
+    }
+    Signature signer = verifier.get();
+    signer.update(source);
+    if (!signer.verify(signature)) {
+      throw new SignatureException("signature did not verify");
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see net.oauth.jsontoken.crypto.Verifier#verifySignature(java.lang.CharSequence, int, int, byte[])
+   */
+  @Override
+  public void verifySignature(CharSequence source, int start, int end, byte[] signature)
+      throws SignatureException {
+    if (signature.length != SIGNATURE_LENGTH) {
+      throw new SignatureException("invalid Ed25519 signature length: " + signature.length);
+    }
+    Signature signer = verifier.get();
+    AsciiChunks.update(signer, source, start, end);
+    if (!signer.verify(signature)) {
+      throw new SignatureException("signature did not verify");
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see net.oauth.jsontoken.crypto.Verifier#getKeyFingerprint()
+   */
+  @Override
+  public String getKeyFingerprint() {
+    return KeyFingerprints.of(verificationKey);
+  }
+
+  private static Signature newSignature(PublicKey key) {
+    try {
+      Signature signature = Signature.getInstance(Ed25519Signer.ED25519);
+      signature.initVerify(key);
+      return signature;
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("platform is missing Ed25519 signature alg", e);
+    } catch (InvalidKeyException e) {
+      throw new IllegalStateException("key is invalid", e);
+    }
+  }
+}
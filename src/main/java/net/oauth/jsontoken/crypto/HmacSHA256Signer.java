@@ -17,21 +17,11 @@
 package net.oauth.jsontoken.crypto;
 
 import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-
-import javax.crypto.Mac;
-import javax.crypto.SecretKey;
-import javax.crypto.spec.SecretKeySpec;
 
 /**
  * A signer that can sign byte arrays using HMAC-SHA256.
  */
-public class HmacSHA256Signer extends AbstractSigner {
-
-  private static final String HMAC_SHA256_ALG = "HmacSHA256";
-
-  private final Mac hmac;
-  private final SecretKey signingKey;
+public class HmacSHA256Signer extends HmacSigner {
 
   /**
    * Public constructor.
@@ -42,40 +32,6 @@ public class HmacSHA256Signer extends AbstractSigner {
    * @throws InvalidKeyException if the key cannot be used as an HMAC key.
    */
   public HmacSHA256Signer(String issuer, String keyId, byte[] keyBytes) throws InvalidKeyException {
-    super(issuer, keyId);
-
-    this.signingKey = new SecretKeySpec(keyBytes, HMAC_SHA256_ALG);
-    try {
-      this.hmac = Mac.getInstance(HMAC_SHA256_ALG);
-    } catch (NoSuchAlgorithmException e) {
-      throw new IllegalStateException("cannot use Hmac256Signer on system without HmacSHA256 alg", e);
-    }
-
-    // just to make sure we catch invalid keys early, let's initialize the hmac and throw if something goes wrong
-    hmac.init(signingKey);
-  }
-
-  /*
-   * (non-Javadoc)
-   * @see net.oauth.jsontoken.crypto.Signer#sign(byte[])
-   */
-  @Override
-  public byte[] sign(byte[] source) {
-    try {
-      hmac.init(signingKey);
-    } catch (InvalidKeyException e) {
-      // this should not happen - we tested this in the constructor
-      throw new IllegalStateException("key somehow became invalid since calling the constructor", e);
-    }
-    return hmac.doFinal(source);
-  }
-
-  /*
-   * (non-Javadoc)
-   * @see net.oauth.jsontoken.crypto.Signer#getSignatureAlgorithm()
-   */
-  @Override
-  public SignatureAlgorithm getSignatureAlgorithm() {
-    return SignatureAlgorithm.HS256;
+    super(issuer, keyId, SignatureAlgorithm.HS256, keyBytes);
   }
 }
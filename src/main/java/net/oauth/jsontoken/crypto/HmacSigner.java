@@ -0,0 +1,104 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.crypto;
+
+import com.google.common.base.Preconditions;
+
+import java.security.InvalidKeyException;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A signer that can sign byte arrays using any of the HMAC {@link SignatureAlgorithm}s
+ * (HS256, HS384, HS512 or HS1). Each thread signs with its own {@link Mac} instance, so a single
+ * signer can be shared across threads.
+ */
+public class HmacSigner extends AbstractSigner {
+
+  private final SignatureAlgorithm algorithm;
+  private final SecretKey signingKey;
+  private final ThreadLocal<Mac> hmac;
+
+  /**
+   * Public constructor.
+   * @param issuer the id of this signer, to be included in the envelope of the JSON token.
+   * @param keyId the id of the key that will be included in the envelope. If null, will be omitted
+   *   from the envelope.
+   * @param algorithm the HMAC signature algorithm to use.
+   * @param keyBytes the actual key.
+   * @throws InvalidKeyException if the key cannot be used as an HMAC key.
+   * @throws IllegalArgumentException if the algorithm is not an HMAC algorithm.
+   */
+  public HmacSigner(String issuer, String keyId, SignatureAlgorithm algorithm, byte[] keyBytes)
+      throws InvalidKeyException {
+    super(issuer, keyId);
+    Preconditions.checkArgument(algorithm.getKeyType() == SignatureAlgorithm.KeyType.OCT,
+        "%s is not an HMAC algorithm", algorithm);
+    this.algorithm = algorithm;
+    this.signingKey = new SecretKeySpec(keyBytes, algorithm.getJcaAlgorithm());
+
+    // just to make sure we catch invalid keys early, let's initialize an hmac and throw if something goes wrong
+    newMac(algorithm, signingKey);
+    this.hmac = ThreadLocal.withInitial(() -> {
+      try {
+        return newMac(this.algorithm, signingKey);
+      } catch (InvalidKeyException e) {
+        // this should not happen - we tested this in the constructor
+        throw new IllegalStateException("key somehow became invalid since calling the constructor", e);
+      }
+    });
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see net.oauth.jsontoken.crypto.Signer#sign(byte[])
+   */
+  @Override
+  public byte[] sign(byte[] source) {
+    // doFinal resets the Mac, leaving it ready for the next call on this thread.
+    return hmac.get().doFinal(source);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see net.oauth.jsontoken.crypto.Signer#sign(java.lang.CharSequence, int, int)
+   */
+  @Override
+  public byte[] sign(CharSequence source, int start, int end) {
+    Mac mac = hmac.get();
+    AsciiChunks.update(mac, source, start, end);
+    return mac.doFinal();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see net.oauth.jsontoken.crypto.Signer#getSignatureAlgorithm()
+   */
+  @Override
+  public SignatureAlgorithm getSignatureAlgorithm() {
+    return algorithm;
+  }
+
+  private static Mac newMac(SignatureAlgorithm algorithm, SecretKey key)
+      throws InvalidKeyException {
+    Mac mac = JcaEngines.newMac(algorithm);
+    mac.init(key);
+    return mac;
+  }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.crypto;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+
+import javax.crypto.Mac;
+
+/**
+ * Creates the JCA engines backing the {@link SignatureAlgorithm}s, applying any algorithm
+ * parameters the JOSE definition fixes (such as the PSS parameters of PS256).
+ */
+final class JcaEngines {
+
+  private static final int SHA256_LENGTH = 32;
+
+  /**
+   * Returns a new, uninitialized {@link Signature} for the given algorithm.
+   * @throws IllegalStateException if the platform does not provide the algorithm.
+   */
+  static Signature newSignature(SignatureAlgorithm alg) {
+    try {
+      Signature signature = Signature.getInstance(alg.getJcaAlgorithm());
+      if (alg == SignatureAlgorithm.PS256) {
+        signature.setParameter(new PSSParameterSpec(
+            "SHA-256", "MGF1", MGF1ParameterSpec.SHA256, SHA256_LENGTH, 1));
+      }
+      return signature;
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("platform is missing " + alg.getJcaAlgorithm()
+          + " signature alg", e);
+    } catch (InvalidAlgorithmParameterException e) {
+      throw new IllegalStateException("platform does not support the parameters of "
+          + alg.getNameForJson(), e);
+    }
+  }
+
+  /**
+   * Returns a new, uninitialized {@link Mac} for the given algorithm.
+   * @throws IllegalStateException if the platform does not provide the algorithm.
+   */
+  static Mac newMac(SignatureAlgorithm alg) {
+    try {
+      return Mac.getInstance(alg.getJcaAlgorithm());
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("platform is missing " + alg.getJcaAlgorithm() + " alg", e);
+    }
+  }
+
+  private JcaEngines() { }
+}
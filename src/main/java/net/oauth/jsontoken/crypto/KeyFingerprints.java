@@ -0,0 +1,50 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.crypto;
+
+import com.google.common.io.BaseEncoding;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+
+/**
+ * Computes the short public-key fingerprints verifiers report through
+ * {@link Verifier#getKeyFingerprint()}.
+ */
+final class KeyFingerprints {
+
+  private static final int FINGERPRINT_BYTES = 8;
+
+  /**
+   * Returns the first 8 bytes of the SHA-256 hash of the key's encoding, in lowercase hex,
+   * or null if the key has no encoding.
+   */
+  static String of(PublicKey key) {
+    byte[] encoded = key.getEncoded();
+    if (encoded == null) {
+      return null;
+    }
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(encoded);
+      return BaseEncoding.base16().lowerCase().encode(hash, 0, FINGERPRINT_BYTES);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("platform is missing SHA-256", e);
+    }
+  }
+
+  private KeyFingerprints() { }
+}
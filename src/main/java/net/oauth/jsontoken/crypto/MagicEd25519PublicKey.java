@@ -0,0 +1,99 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.crypto;
+
+import org.apache.commons.codec.binary.Base64;
+
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.regex.Pattern;
+
+/**
+ * Class that can parse "magic key" Ed25519 public key representations, which are of the form
+ * Ed25519.<base64(raw 32-byte public key)>.
+ */
+public class MagicEd25519PublicKey {
+
+  /** Type prefix of Ed25519 magic keys. */
+  public static final String KEY_TYPE = "Ed25519";
+
+  private static final int KEY_LENGTH = 32;
+
+  // DER prefix of a SubjectPublicKeyInfo holding an Ed25519 key (RFC 8410), to which the raw
+  // key bytes are appended.
+  private static final byte[] SPKI_PREFIX = {
+      0x30, 0x2a, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x70, 0x03, 0x21, 0x00
+  };
+
+  private final PublicKey publicKey;
+
+  /**
+   * Public constructor.
+   * @param magicKey the serialized key (of the form Ed25519.key).
+   */
+  public MagicEd25519PublicKey(String magicKey) {
+    this.publicKey = parseKey(magicKey);
+  }
+
+  /**
+   * Returns the public key represented by the "magic" serialized key.
+   */
+  public PublicKey getKey() {
+    return publicKey;
+  }
+
+  /**
+   * Returns whether the serialized key is an Ed25519 magic key.
+   */
+  public static boolean isMagicEd25519Key(String magicKey) {
+    return magicKey.startsWith(KEY_TYPE + ".");
+  }
+
+  private static PublicKey parseKey(String magicKey) {
+    String[] pieces = magicKey.split(Pattern.quote("."));
+    if (pieces.length != 2) {
+      throw new IllegalStateException("not a valid magic key: " + magicKey);
+    }
+
+    if (!pieces[0].equals(KEY_TYPE)) {
+      throw new IllegalStateException("unknown key type for magic key: " + pieces[0]);
+    }
+
+    byte[] keyBytes = Base64.decodeBase64(pieces[1]);
+    if (keyBytes.length != KEY_LENGTH) {
+      throw new IllegalStateException("bad key in descriptor doc: " + magicKey);
+    }
+    byte[] encoded = new byte[SPKI_PREFIX.length + KEY_LENGTH];
+    System.arraycopy(SPKI_PREFIX, 0, encoded, 0, SPKI_PREFIX.length);
+    System.arraycopy(keyBytes, 0, encoded, SPKI_PREFIX.length, KEY_LENGTH);
+
+    KeyFactory fac;
+    try {
+      fac = KeyFactory.getInstance(Ed25519Signer.ED25519);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("Ed25519 key factory missing on platform", e);
+    }
+    try {
+      return fac.generatePublic(new X509EncodedKeySpec(encoded));
+    } catch (InvalidKeySpecException e) {
+      throw new IllegalStateException("bad key in descriptor doc: " + magicKey, e);
+    }
+  }
+}
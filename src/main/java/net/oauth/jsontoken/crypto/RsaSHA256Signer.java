@@ -17,19 +17,12 @@
 package net.oauth.jsontoken.crypto;
 
 import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.security.PrivateKey;
-import java.security.Signature;
-import java.security.SignatureException;
 import java.security.interfaces.RSAPrivateKey;
 
 /**
  * Signer that can sign byte arrays using RSA and SHA-256.
  */
-public class RsaSHA256Signer extends AbstractSigner {
-
-  private final Signature signature;
-  private final PrivateKey signingKey;
+public class RsaSHA256Signer extends RsaSigner {
 
   /**
    * Public constructor.
@@ -39,39 +32,6 @@ public class RsaSHA256Signer extends AbstractSigner {
    * @throws InvalidKeyException if the key is unsuitable for RSA signing.
    */
   public RsaSHA256Signer(String issuer, String keyId, RSAPrivateKey key) throws InvalidKeyException {
-    super(issuer, keyId);
-
-    this.signingKey = key;
-
-    try {
-      this.signature = Signature.getInstance("SHA256withRSA");
-      this.signature.initSign(signingKey);
-    } catch (NoSuchAlgorithmException e) {
-      throw new IllegalStateException("platform is missing RSAwithSHA256 signature alg, or key is invalid", e);
-    }
-  }
-
-  /*
-   * (non-Javadoc)
-   * @see net.oauth.jsontoken.crypto.Signer#getSignatureAlgorithm()
-   */
-  @Override
-  public SignatureAlgorithm getSignatureAlgorithm() {
-    return SignatureAlgorithm.RS256;
-  }
-
-  /*
-   * (non-Javadoc)
-   * @see net.oauth.jsontoken.crypto.Signer#sign(byte[])
-   */
-  @Override
-  public byte[] sign(byte[] source) throws SignatureException {
-    try {
-      signature.initSign(signingKey);
-    } catch (InvalidKeyException e) {
-      throw new RuntimeException("key somehow became invalid since calling the constructor");
-    }
-    signature.update(source);
-    return signature.sign();
+    super(issuer, keyId, SignatureAlgorithm.RS256, key);
   }
 }
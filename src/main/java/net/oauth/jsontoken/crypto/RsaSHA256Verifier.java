@@ -16,50 +16,18 @@
  */
 package net.oauth.jsontoken.crypto;
 
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
-import java.security.Signature;
-import java.security.SignatureException;
 
 /**
  * A verifier that can verify signatures on byte arrays using RSA and SHA-256.
  */
-public class RsaSHA256Verifier implements Verifier {
-
-  private final PublicKey verificationKey;
-  private final Signature signer;
+public class RsaSHA256Verifier extends RsaVerifier {
 
   /**
    * Public Constructor.
    * @param verificationKey the key used to verify the signature.
    */
   public RsaSHA256Verifier(PublicKey verificationKey) {
-    this.verificationKey = verificationKey;
-    try {
-      this.signer = Signature.getInstance("SHA256withRSA");
-      this.signer.initVerify(verificationKey);
-    } catch (NoSuchAlgorithmException e) {
-      throw new IllegalStateException("platform is missing RSAwithSHA256 signature alg", e);
-    } catch (InvalidKeyException e) {
-      throw new IllegalStateException("key is invalid", e);
-    }
-  }
-
-  /*
-   * (non-Javadoc)
-   * @see net.oauth.jsontoken.crypto.Verifier#verifySignature(byte[], byte[])
-   */
-  @Override
-  public void verifySignature(byte[] source, byte[] signature) throws SignatureException {
-    try {
-      signer.initVerify(verificationKey);
-    } catch (InvalidKeyException e) {
-      throw new RuntimeException("key someone become invalid since calling the constructor");
-    }
-    signer.update(source);
-    if (!signer.verify(signature)) {
-      throw new SignatureException("signature did not verify");
-    }
+    super(SignatureAlgorithm.RS256, verificationKey);
   }
 }
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.crypto;
+
+import com.google.common.base.Preconditions;
+
+import java.security.InvalidKeyException;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.interfaces.RSAPrivateKey;
+
+/**
+ * Signer that can sign byte arrays using any of the RSA {@link SignatureAlgorithm}s (RS256,
+ * RS384, RS512 or PS256). Each thread signs with its own {@link Signature} instance, so a single
+ * signer can be shared across threads.
+ */
+public class RsaSigner extends AbstractSigner {
+
+  private final SignatureAlgorithm algorithm;
+  private final RSAPrivateKey signingKey;
+  private final ThreadLocal<Signature> signature;
+
+  /**
+   * Public constructor.
+   * @param issuer The id of this signer, to be included in the JSON Token's envelope.
+   * @param keyId The id of the key used by this signer, to be included in the JSON Token's envelope.
+   * @param algorithm the RSA signature algorithm to use.
+   * @param key the private key to be used for signing.
+   * @throws InvalidKeyException if the key is unsuitable for RSA signing.
+   * @throws IllegalArgumentException if the algorithm is not an RSA algorithm.
+   */
+  public RsaSigner(String issuer, String keyId, SignatureAlgorithm algorithm, RSAPrivateKey key)
+      throws InvalidKeyException {
+    super(issuer, keyId);
+    Preconditions.checkArgument(algorithm.getKeyType() == SignatureAlgorithm.KeyType.RSA,
+        "%s is not an RSA algorithm", algorithm);
+    this.algorithm = algorithm;
+    this.signingKey = key;
+
+    // just to make sure we catch invalid keys early, let's initialize a signature now
+    newSignature(algorithm, key);
+    this.signature = ThreadLocal.withInitial(() -> {
+      try {
+        return newSignature(this.algorithm, signingKey);
+      } catch (InvalidKeyException e) {
+        // this should not happen - we tested this in the constructor
+        throw new IllegalStateException("key somehow became invalid since calling the constructor", e);
+      }
+    });
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see net.oauth.jsontoken.crypto.Signer#getSignatureAlgorithm()
+   */
+  @Override
+  public SignatureAlgorithm getSignatureAlgorithm() {
+    return algorithm;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see net.oauth.jsontoken.crypto.Signer#sign(byte[])
+   */
+  @Override
+  public byte[] sign(byte[] source) throws SignatureException {
+    Signature signer = signature.get();
+    signer.update(source);
+    return signer.sign();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see net.oauth.jsontoken.crypto.Signer#sign(java.lang.CharSequence, int, int)
+   */
+  @Override
+  public byte[] sign(CharSequence source, int start, int end) throws SignatureException {
+    Signature signer = signature.get();
+    AsciiChunks.update(signer, source, start, end);
+    return signer.sign();
+  }
+
+  private static Signature newSignature(SignatureAlgorithm algorithm, RSAPrivateKey key)
+      throws InvalidKeyException {
+    Signature signature = JcaEngines.newSignature(algorithm);
+    signature.initSign(key);
+    return signature;
+  }
+}
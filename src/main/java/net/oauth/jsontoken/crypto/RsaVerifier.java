@@ -0,0 +1,98 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.crypto;
+
+import com.google.common.base.Preconditions;
+
+import java.security.InvalidKeyException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+
+/**
+ * A verifier that can verify signatures on byte arrays using any of the RSA
+ * {@link SignatureAlgorithm}s (RS256, RS384, RS512, RS1 or PS256). Each thread verifies with its
+ * own {@link Signature} instance, so a single verifier can be shared across threads.
+ */
+public class RsaVerifier implements Verifier {
+
+  private final SignatureAlgorithm algorithm;
+  private final PublicKey verificationKey;
+  private final ThreadLocal<Signature> verifier;
+
+  /**
+   * Public Constructor.
+   * @param algorithm the RSA signature algorithm to verify.
+   * @param verificationKey the key used to verify the signature.
+   * @throws IllegalArgumentException if the algorithm is not an RSA algorithm.
+   */
+  public RsaVerifier(SignatureAlgorithm algorithm, PublicKey verificationKey) {
+    Preconditions.checkArgument(algorithm.getKeyType() == SignatureAlgorithm.KeyType.RSA,
+        "%s is not an RSA algorithm", algorithm);
+    this.algorithm = algorithm;
+    this.verificationKey = verificationKey;
+    newSignature(algorithm, verificationKey);
+    this.verifier = ThreadLocal.withInitial(
+        () -> newSignature(this.algorithm, this.verificationKey));
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see net.oauth.jsontoken.crypto.Verifier#verifySignature(byte[], byte[])
+   */
+  @Override
+  public void verifySignature(byte[] source, byte[] signature) throws SignatureException {
+    Signature signer = verifier.get();
+    signer.update(source);
+    if (!signer.verify(signature)) {
+      throw new SignatureException("signature did not verify");
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see net.oauth.jsontoken.crypto.Verifier#verifySignature(java.lang.CharSequence, int, int, byte[])
+   */
+  @Override
+  public void verifySignature(CharSequence source, int start, int end, byte[] signature)
+      throws SignatureException {
+    Signature signer = verifier.get();
+    AsciiChunks.update(signer, source, start, end);
+    if (!signer.verify(signature)) {
+      throw new SignatureException("signature did not verify");
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see net.oauth.jsontoken.crypto.Verifier#getKeyFingerprint()
+   */
+  @Override
+  public String getKeyFingerprint() {
+    return KeyFingerprints.of(verificationKey);
+  }
+
+  private static Signature newSignature(SignatureAlgorithm algorithm, PublicKey key) {
+    Signature signature = JcaEngines.newSignature(algorithm);
+    try {
+      signature.initVerify(key);
+    } catch (InvalidKeyException e) {
+      throw new IllegalStateException("key is invalid", e);
+    }
+    return signature;
+  }
+}
@@ -16,19 +16,68 @@
  */
 package net.oauth.jsontoken.crypto;
 
+import javax.annotation.Nullable;
+
 /**
- * Enum of the signature algorithms supported by this package.
+ * Enum of the signature algorithms supported by this package. Each constant records the JCA
+ * algorithm that implements it and the type of key it takes, so that signers, verifiers and
+ * key discovery can be driven from this table.
  */
 public enum SignatureAlgorithm {
-  HS256("SHA256"),
-  HS1("SHA1"),
-  RS256("SHA256"),
-  RS1("SHA1");
+  HS256("SHA256", "HmacSHA256", KeyType.OCT),
+  HS1("SHA1", "HmacSHA1", KeyType.OCT),
+  RS256("SHA256", "SHA256withRSA", KeyType.RSA),
+  RS1("SHA1", "SHA1withRSA", KeyType.RSA),
+  ES256("SHA256", "SHA256withECDSA", KeyType.EC),
+  EdDSA("SHA512", "Ed25519", KeyType.OKP),
+  HS384("SHA384", "HmacSHA384", KeyType.OCT),
+  HS512("SHA512", "HmacSHA512", KeyType.OCT),
+  RS384("SHA384", "SHA384withRSA", KeyType.RSA),
+  RS512("SHA512", "SHA512withRSA", KeyType.RSA),
+  PS256("SHA256", "RSASSA-PSS", KeyType.RSA);
+
+  /**
+   * The kinds of keys taken by the algorithms, named after the JWK "kty" values.
+   */
+  public enum KeyType {
+    /** Symmetric secret keys (HMAC). */
+    OCT,
+    /** RSA key pairs. */
+    RSA,
+    /** Elliptic curve key pairs. */
+    EC,
+    /** Octet key pairs, such as Ed25519 keys. */
+    OKP
+  }
+
+  // Open-addressed table indexed by hash(name, HASH_SEED). The seed is chosen when the class is
+  // initialized so that no two algorithm names share a slot, which makes forJsonName a single
+  // probe followed by one comparison.
+  private static final int TABLE_SIZE = 32;
+  private static final int MAX_NAME_LENGTH;
+  private static final int HASH_SEED;
+  private static final SignatureAlgorithm[] TABLE = new SignatureAlgorithm[TABLE_SIZE];
+
+  static {
+    int maxLength = 0;
+    for (SignatureAlgorithm alg : values()) {
+      maxLength = Math.max(maxLength, alg.name().length());
+    }
+    MAX_NAME_LENGTH = maxLength;
+    HASH_SEED = findSeed();
+    for (SignatureAlgorithm alg : values()) {
+      TABLE[hash(alg.name(), HASH_SEED)] = alg;
+    }
+  }
 
   private final String hashAlg;
+  private final String jcaAlg;
+  private final KeyType keyType;
 
-  private SignatureAlgorithm(String hashAlg) {
+  private SignatureAlgorithm(String hashAlg, String jcaAlg, KeyType keyType) {
     this.hashAlg = hashAlg;
+    this.jcaAlg = jcaAlg;
+    this.keyType = keyType;
   }
 
   /**
@@ -48,10 +97,86 @@ public enum SignatureAlgorithm {
     return hashAlg;
   }
 
+  /**
+   * Returns the name of the JCA {@link java.security.Signature} or {@link javax.crypto.Mac}
+   * algorithm implementing this signature algorithm.
+   */
+  public String getJcaAlgorithm() {
+    return jcaAlg;
+  }
+
+  /**
+   * Returns the type of key this signature algorithm takes.
+   */
+  public KeyType getKeyType() {
+    return keyType;
+  }
+
   /**
    * Given the name of the algorithm in the envelope, returns the corresponding enum instance.
+   * @throws IllegalArgumentException if the name does not denote a supported algorithm.
    */
   public static SignatureAlgorithm getFromJsonName(String name) {
-    return SignatureAlgorithm.valueOf(name);
+    SignatureAlgorithm alg = forJsonName(name);
+    if (alg == null) {
+      throw new IllegalArgumentException("unsupported signature algorithm: " + name);
+    }
+    return alg;
+  }
+
+  /**
+   * Given the name of the algorithm in the envelope, returns the corresponding enum instance,
+   * or null if the name does not denote a supported algorithm. Unlike
+   * {@link #getFromJsonName(String)}, unknown names are cheap to reject.
+   */
+  @Nullable
+  public static SignatureAlgorithm forJsonName(@Nullable CharSequence name) {
+    if (name == null || name.length() == 0 || name.length() > MAX_NAME_LENGTH) {
+      return null;
+    }
+    SignatureAlgorithm alg = TABLE[hash(name, HASH_SEED)];
+    if (alg == null || !contentEquals(alg.name(), name)) {
+      return null;
+    }
+    return alg;
+  }
+
+  private static int hash(CharSequence name, int seed) {
+    int h = name.length();
+    for (int i = 0; i < name.length(); i++) {
+      h = h * seed + name.charAt(i);
+    }
+    return (h ^ (h >>> 16)) & (TABLE_SIZE - 1);
+  }
+
+  private static boolean contentEquals(String expected, CharSequence actual) {
+    if (expected.length() != actual.length()) {
+      return false;
+    }
+    for (int i = 0; i < expected.length(); i++) {
+      if (expected.charAt(i) != actual.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int findSeed() {
+    for (int seed = 31; seed < 1 << 16; seed += 2) {
+      boolean[] used = new boolean[TABLE_SIZE];
+      boolean collision = false;
+      for (SignatureAlgorithm alg : values()) {
+        int slot = hash(alg.name(), seed);
+        if (used[slot]) {
+          collision = true;
+          break;
+        }
+        used[slot] = true;
+      }
+      if (!collision) {
+        return seed;
+      }
+    }
+    throw new IllegalStateException("no collision-free hash seed for signature algorithm names");
   }
 }
@@ -53,4 +53,18 @@ public interface Signer {
    */
   public byte[] sign(byte[] source) throws SignatureException;
 
+  /**
+   * Signs a range of US-ASCII characters, such as the signing input of a token. Characters
+   * outside US-ASCII are signed as '?'. The default implementation copies the range into a
+   * byte array; implementations backed by a streaming engine feed the characters directly.
+   * @param source The characters that should be signed.
+   * @param start The index of the first character to sign.
+   * @param end The index after the last character to sign.
+   * @return The signature on the characters.
+   * @throws SignatureException if the signer could not create the signature.
+   */
+  default byte[] sign(CharSequence source, int start, int end) throws SignatureException {
+    return sign(AsciiChunks.toBytes(source, start, end));
+  }
+
 }
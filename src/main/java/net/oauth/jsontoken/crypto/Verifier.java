@@ -17,6 +17,7 @@
 package net.oauth.jsontoken.crypto;
 
 import java.security.SignatureException;
+import javax.annotation.Nullable;
 
 /**
  * Interface that a JSON Token verifier has to implement.
@@ -31,4 +32,30 @@ public interface Verifier {
    */
   public void verifySignature(byte[] source, byte[] signature) throws SignatureException;
 
+  /**
+   * Verifies a signature on a range of US-ASCII characters, such as the signed prefix of a
+   * token string. Characters outside US-ASCII are verified as '?'. The default implementation
+   * copies the range into a byte array; implementations backed by a streaming engine feed
+   * the characters directly.
+   * @param source The characters that were signed.
+   * @param start The index of the first signed character.
+   * @param end The index after the last signed character.
+   * @param signature The signature on the characters.
+   * @throws SignatureException If the signature doesn't match, or if some other error occurred.
+   */
+  default void verifySignature(CharSequence source, int start, int end, byte[] signature)
+      throws SignatureException {
+    verifySignature(AsciiChunks.toBytes(source, start, end), signature);
+  }
+
+  /**
+   * Returns a short, non-secret identifier of the key this verifier checks signatures with,
+   * such as a fingerprint of a public key, for diagnostics. The default implementation
+   * returns null.
+   */
+  @Nullable
+  default String getKeyFingerprint() {
+    return null;
+  }
+
 }
@@ -46,4 +46,14 @@ public interface AsyncVerifierProvider {
    */
   ListenableFuture<List<Verifier>> findVerifier(String issuer, String keyId);
 
+  /**
+   * Returns whether the verifiers found depend on the key id, rather than being the same
+   * for every key id of an issuer. {@link VerifierCache} leaves the key id out of its keys
+   * for providers that return false, so that tokens carrying arbitrary key ids share one
+   * entry. The default implementation returns true.
+   */
+  default boolean usesKeyId() {
+    return true;
+  }
+
 }
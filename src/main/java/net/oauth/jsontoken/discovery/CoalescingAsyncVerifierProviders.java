@@ -0,0 +1,122 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.discovery;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+import net.oauth.jsontoken.crypto.SignatureAlgorithm;
+import net.oauth.jsontoken.crypto.Verifier;
+
+/**
+ * An {@link AsyncVerifierProviders} decorator that batches concurrent lookups. While a
+ * lookup for a given (algorithm, issuer, key id) is pending, further lookups for the same
+ * triple share its future instead of calling the underlying {@link AsyncVerifierProvider}
+ * again. Once the lookup completes, the next request goes to the underlying provider.
+ */
+public final class CoalescingAsyncVerifierProviders implements AsyncVerifierProviders {
+
+  private final AsyncVerifierProviders delegate;
+  private final ConcurrentMap<LookupKey, ListenableFuture<List<Verifier>>> inFlight =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Public constructor.
+   * @param delegate the providers whose lookups should be coalesced.
+   */
+  public CoalescingAsyncVerifierProviders(AsyncVerifierProviders delegate) {
+    this.delegate = Preconditions.checkNotNull(delegate);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see net.oauth.jsontoken.discovery.AsyncVerifierProviders#getVerifierProvider(net.oauth.jsontoken.crypto.SignatureAlgorithm)
+   */
+  @Nullable
+  @Override
+  public AsyncVerifierProvider getVerifierProvider(SignatureAlgorithm alg) {
+    AsyncVerifierProvider provider = delegate.getVerifierProvider(alg);
+    if (provider == null) {
+      return null;
+    }
+    return (issuer, keyId) -> findVerifier(provider, new LookupKey(alg, issuer, keyId));
+  }
+
+  /**
+   * Returns the number of lookups currently pending in the underlying providers.
+   */
+  public int getPendingLookupCount() {
+    return inFlight.size();
+  }
+
+  private ListenableFuture<List<Verifier>> findVerifier(
+      AsyncVerifierProvider provider, LookupKey key) {
+    ListenableFuture<List<Verifier>> pending = inFlight.get(key);
+    if (pending != null) {
+      return Futures.nonCancellationPropagating(pending);
+    }
+
+    SettableFuture<List<Verifier>> lookup = SettableFuture.create();
+    pending = inFlight.putIfAbsent(key, lookup);
+    if (pending != null) {
+      return Futures.nonCancellationPropagating(pending);
+    }
+
+    try {
+      lookup.setFuture(provider.findVerifier(key.issuer, key.keyId));
+    } catch (RuntimeException e) {
+      lookup.setException(e);
+    }
+    lookup.addListener(() -> inFlight.remove(key, lookup), MoreExecutors.directExecutor());
+    return Futures.nonCancellationPropagating(lookup);
+  }
+
+  private static final class LookupKey {
+    private final SignatureAlgorithm alg;
+    private final String issuer;
+    private final String keyId;
+
+    LookupKey(SignatureAlgorithm alg, String issuer, String keyId) {
+      this.alg = alg;
+      this.issuer = issuer;
+      this.keyId = keyId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof LookupKey)) {
+        return false;
+      }
+      LookupKey other = (LookupKey) o;
+      return alg == other.alg
+          && Objects.equal(issuer, other.issuer)
+          && Objects.equal(keyId, other.keyId);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(alg, issuer, keyId);
+    }
+  }
+}
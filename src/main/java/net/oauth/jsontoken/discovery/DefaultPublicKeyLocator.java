@@ -18,12 +18,14 @@ package net.oauth.jsontoken.discovery;
 
 import com.google.common.collect.Lists;
 
-import net.oauth.jsontoken.crypto.RsaSHA256Verifier;
+import net.oauth.jsontoken.crypto.SignatureAlgorithm;
 import net.oauth.jsontoken.crypto.Verifier;
 
 import java.net.URI;
 import java.util.List;
 
+import javax.annotation.Nullable;
+
 /**
  * Default strategy for locating public verification keys. Unlike secret (symmetric)
  * verification keys, public verification keys can be published by token issuers
@@ -32,12 +34,14 @@ import java.util.List;
  * The default strategy to find a public verification key consists of first mapping
  * an issuer id to a server descriptor, and then fetching the ServerInfo document from
  * the server descriptor URL. Finally, the key is looked up int the ServerInfo document
- * by key id.
+ * by key id. Unless an algorithm is given, RSA keys are verified as RS256, elliptic
+ * curve keys as ES256 and Ed25519 keys as EdDSA.
  */
 public class DefaultPublicKeyLocator implements VerifierProvider {
 
   private final ServerDescriptorProvider descriptorProvider;
   private final ServerInfoResolver descriptorResolver;
+  @Nullable private final SignatureAlgorithm algorithm;
 
   /**
    * Public constructor.
@@ -46,11 +50,32 @@ public class DefaultPublicKeyLocator implements VerifierProvider {
    *   issuer ids to server descriptors (URLs).
    * @param resolver A {@link ServerInfoResolver}, i.e., an object that can fetch
    *   and parse a server info document, given a server descriptor.
+   * @deprecated picks the algorithm from the key type, so a located key can
+   *     verify tokens signed with an algorithm the issuer never registered.
+   *     Use {@link #DefaultPublicKeyLocator(ServerDescriptorProvider, ServerInfoResolver,
+   *     SignatureAlgorithm)}.
    */
+  @Deprecated
   public DefaultPublicKeyLocator(ServerDescriptorProvider descriptorProvider,
       ServerInfoResolver resolver) {
+    this(descriptorProvider, resolver, null);
+  }
+
+  /**
+   * Public constructor.
+   *
+   * @param descriptorProvider A {@link ServerDescriptorProvider} that maps
+   *   issuer ids to server descriptors (URLs).
+   * @param resolver A {@link ServerInfoResolver}, i.e., an object that can fetch
+   *   and parse a server info document, given a server descriptor.
+   * @param algorithm the algorithm the located keys verify, e.g., RS384 or PS256,
+   *   or null to pick the algorithm from the type of each key.
+   */
+  public DefaultPublicKeyLocator(ServerDescriptorProvider descriptorProvider,
+      ServerInfoResolver resolver, @Nullable SignatureAlgorithm algorithm) {
     this.descriptorProvider = descriptorProvider;
     this.descriptorResolver = resolver;
+    this.algorithm = algorithm;
   }
 
   /*
@@ -60,8 +85,8 @@ public class DefaultPublicKeyLocator implements VerifierProvider {
   @Override
   public List<Verifier> findVerifier(String issuer, String keyId) {
     URI serverDescriptor = descriptorProvider.getServerDescriptor(issuer);
-    Verifier rsaVerifier = 
-      new RsaSHA256Verifier(descriptorResolver.resolve(serverDescriptor).getVerificationKey(keyId));
-    return Lists.newArrayList(rsaVerifier);
+    Verifier verifier = PublicKeyVerifiers.forKey(algorithm,
+        descriptorResolver.resolve(serverDescriptor).getVerificationKey(keyId));
+    return Lists.newArrayList(verifier);
   }
 }
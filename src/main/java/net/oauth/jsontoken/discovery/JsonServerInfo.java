@@ -20,6 +20,7 @@ import com.google.common.collect.Maps;
 import com.google.gson.Gson;
 import com.google.gson.annotations.SerializedName;
 
+import net.oauth.jsontoken.crypto.MagicEd25519PublicKey;
 import net.oauth.jsontoken.crypto.MagicRsaPublicKey;
 
 import java.security.PublicKey;
@@ -29,7 +30,9 @@ import java.util.Map;
  * Implementation of the {@link ServerInfo} interface that assumes the
  * server info document is in JSON format. It can parse such a JSON-formatted
  * server info document and exposes its contents through the requisite
- * methods of the {@link ServerInfo} interface.
+ * methods of the {@link ServerInfo} interface. Verification keys are "magic"
+ * keys, either RSA ({@link MagicRsaPublicKey}) or Ed25519
+ * ({@link MagicEd25519PublicKey}).
  */
 public class JsonServerInfo implements ServerInfo {
 
@@ -54,6 +57,8 @@ public class JsonServerInfo implements ServerInfo {
     String magicKey = verificationKeys.get(keyId);
     if (magicKey == null) {
       return null;
+    } else if (MagicEd25519PublicKey.isMagicEd25519Key(magicKey)) {
+      return new MagicEd25519PublicKey(magicKey).getKey();
     } else {
       return new MagicRsaPublicKey(magicKey).getKey();
     }
@@ -0,0 +1,543 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.discovery;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.security.PublicKey;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+import net.oauth.jsontoken.Clock;
+import net.oauth.jsontoken.SystemClock;
+import net.oauth.jsontoken.VerificationStats;
+import net.oauth.jsontoken.crypto.SignatureAlgorithm;
+import net.oauth.jsontoken.crypto.Verifier;
+import org.joda.time.Duration;
+
+/**
+ * A {@link VerifierProvider} that keeps the key set of each issuer, as fetched by a
+ * {@link KeySetProvider}, and refreshes it when it reaches its maximum age.
+ *
+ * <p>A token whose key id is not in the issuer's key set triggers one immediate refresh,
+ * since the issuer may have rotated in a new key. To keep random key ids from forcing a
+ * fetch each, these refreshes are limited per issuer by a token bucket, from which the
+ * issuer's first fetch also takes a token, and a key id that is still unknown after a
+ * refresh is remembered as unknown for a short while.
+ *
+ * <p>Issuers come from unverified tokens as well. Only a bounded number of issuers, the
+ * most recently used, are kept; first fetches for issuers not seen before are limited by a
+ * token bucket shared by all issuers; and an issuer whose key set could not be fetched is
+ * not fetched again until the negative TTL has passed. Issuers registered with
+ * {@link #prefetch} are exempt from the first two limits, so that a flood of tokens naming
+ * random issuers can't lock them out.
+ */
+public final class KeySetManager implements VerifierProvider {
+
+  public static final Duration DEFAULT_MAX_AGE = Duration.standardHours(1);
+  public static final int DEFAULT_REFRESH_BURST = 3;
+  public static final Duration DEFAULT_REFRESH_PERIOD = Duration.standardMinutes(1);
+  public static final Duration DEFAULT_NEGATIVE_TTL = Duration.standardMinutes(1);
+  public static final int DEFAULT_MAX_ISSUERS = 1024;
+  public static final int DEFAULT_NEW_ISSUER_BURST = 16;
+  public static final Duration DEFAULT_NEW_ISSUER_PERIOD = Duration.standardSeconds(1);
+
+  // Bounds the unknown key ids remembered per issuer; the oldest are dropped first.
+  private static final int MAX_UNKNOWN_KEY_IDS = 1024;
+
+  private final KeySetProvider keySetProvider;
+  @Nullable private final SignatureAlgorithm algorithm;
+  private final long maxAgeMillis;
+  private final int refreshBurst;
+  private final long refreshPeriodMillis;
+  private final long negativeTtlMillis;
+  private final Clock clock;
+  @Nullable private final VerificationStats stats;
+  private final IssuerTable issuers;
+  private final ConcurrentMap<String, IssuerKeys> knownIssuers = new ConcurrentHashMap<>();
+  private final TokenBucket newIssuerFetches;
+
+  private final LongAdder refreshes = new LongAdder();
+  private final LongAdder unknownKeyRefreshes = new LongAdder();
+  private final LongAdder rateLimited = new LongAdder();
+  private final LongAdder negativeHits = new LongAdder();
+  private final LongAdder fetchFailures = new LongAdder();
+  private final LongAdder skippedKeys = new LongAdder();
+
+  /**
+   * Public constructor using the default settings and the system clock. Verifiers are
+   * chosen by the type of each key.
+   * @param keySetProvider fetches the key sets.
+   * @deprecated picks the algorithm from the key type, so a key can verify tokens signed
+   *     with an algorithm the issuer never registered. Use
+   *     {@link #KeySetManager(KeySetProvider, SignatureAlgorithm)}.
+   */
+  @Deprecated
+  public KeySetManager(KeySetProvider keySetProvider) {
+    this(keySetProvider, null, DEFAULT_MAX_AGE, DEFAULT_REFRESH_BURST, DEFAULT_REFRESH_PERIOD,
+        DEFAULT_NEGATIVE_TTL, new SystemClock(Duration.ZERO));
+  }
+
+  /**
+   * Public constructor using the default settings and the system clock.
+   * @param keySetProvider fetches the key sets.
+   * @param algorithm the algorithm the issuers sign with.
+   */
+  public KeySetManager(KeySetProvider keySetProvider, SignatureAlgorithm algorithm) {
+    this(keySetProvider, Preconditions.checkNotNull(algorithm), DEFAULT_MAX_AGE,
+        DEFAULT_REFRESH_BURST, DEFAULT_REFRESH_PERIOD, DEFAULT_NEGATIVE_TTL,
+        new SystemClock(Duration.ZERO));
+  }
+
+  /**
+   * Public constructor.
+   * @param keySetProvider fetches the key sets.
+   * @param algorithm the algorithm of the verifiers to build, or null to choose it by the
+   *   type of each key.
+   * @param maxAge the age after which a key set is refreshed.
+   * @param refreshBurst the number of refreshes an issuer's unknown key ids may trigger in
+   *   quick succession.
+   * @param refreshPeriod the time in which an issuer regains one such refresh.
+   * @param negativeTtl how long a key id stays known as unknown, and how long an issuer
+   *   whose key set could not be fetched is not fetched again.
+   * @param clock the clock that decides ages and expiries.
+   */
+  public KeySetManager(KeySetProvider keySetProvider, @Nullable SignatureAlgorithm algorithm,
+      Duration maxAge, int refreshBurst, Duration refreshPeriod, Duration negativeTtl,
+      Clock clock) {
+    this(keySetProvider, algorithm, maxAge, refreshBurst, refreshPeriod, negativeTtl,
+        DEFAULT_MAX_ISSUERS, clock);
+  }
+
+  /**
+   * Public constructor.
+   * @param keySetProvider fetches the key sets.
+   * @param algorithm the algorithm of the verifiers to build, or null to choose it by the
+   *   type of each key.
+   * @param maxAge the age after which a key set is refreshed.
+   * @param refreshBurst the number of refreshes an issuer's unknown key ids may trigger in
+   *   quick succession.
+   * @param refreshPeriod the time in which an issuer regains one such refresh.
+   * @param negativeTtl how long a key id stays known as unknown, and how long an issuer
+   *   whose key set could not be fetched is not fetched again.
+   * @param maxIssuers the maximum number of issuers whose key sets are kept.
+   * @param clock the clock that decides ages and expiries.
+   */
+  public KeySetManager(KeySetProvider keySetProvider, @Nullable SignatureAlgorithm algorithm,
+      Duration maxAge, int refreshBurst, Duration refreshPeriod, Duration negativeTtl,
+      int maxIssuers, Clock clock) {
+    this(keySetProvider, algorithm, maxAge, refreshBurst, refreshPeriod, negativeTtl,
+        maxIssuers, DEFAULT_NEW_ISSUER_BURST, DEFAULT_NEW_ISSUER_PERIOD, clock);
+  }
+
+  /**
+   * Public constructor.
+   * @param keySetProvider fetches the key sets.
+   * @param algorithm the algorithm of the verifiers to build, or null to choose it by the
+   *   type of each key.
+   * @param maxAge the age after which a key set is refreshed.
+   * @param refreshBurst the number of refreshes an issuer's unknown key ids may trigger in
+   *   quick succession.
+   * @param refreshPeriod the time in which an issuer regains one such refresh.
+   * @param negativeTtl how long a key id stays known as unknown, and how long an issuer
+   *   whose key set could not be fetched is not fetched again.
+   * @param maxIssuers the maximum number of issuers whose key sets are kept, besides those
+   *   registered with {@link #prefetch}.
+   * @param newIssuerBurst the number of first fetches for issuers not seen before that may
+   *   happen in quick succession.
+   * @param newIssuerPeriod the time in which one such fetch is regained.
+   * @param clock the clock that decides ages and expiries.
+   */
+  public KeySetManager(KeySetProvider keySetProvider, @Nullable SignatureAlgorithm algorithm,
+      Duration maxAge, int refreshBurst, Duration refreshPeriod, Duration negativeTtl,
+      int maxIssuers, int newIssuerBurst, Duration newIssuerPeriod, Clock clock) {
+    this(keySetProvider, algorithm, maxAge, refreshBurst, refreshPeriod, negativeTtl,
+        maxIssuers, newIssuerBurst, newIssuerPeriod, clock, null);
+  }
+
+  /**
+   * Public constructor.
+   * @param keySetProvider fetches the key sets.
+   * @param algorithm the algorithm of the verifiers to build, or null to choose it by the
+   *   type of each key.
+   * @param maxAge the age after which a key set is refreshed.
+   * @param refreshBurst the number of refreshes an issuer's unknown key ids may trigger in
+   *   quick succession.
+   * @param refreshPeriod the time in which an issuer regains one such refresh.
+   * @param negativeTtl how long a key id stays known as unknown, and how long an issuer
+   *   whose key set could not be fetched is not fetched again.
+   * @param maxIssuers the maximum number of issuers whose key sets are kept, besides those
+   *   registered with {@link #prefetch}.
+   * @param newIssuerBurst the number of first fetches for issuers not seen before that may
+   *   happen in quick succession.
+   * @param newIssuerPeriod the time in which one such fetch is regained.
+   * @param clock the clock that decides ages and expiries.
+   * @param stats where the latency and outcome of each key set fetch are also recorded,
+   *   or null.
+   */
+  public KeySetManager(KeySetProvider keySetProvider, @Nullable SignatureAlgorithm algorithm,
+      Duration maxAge, int refreshBurst, Duration refreshPeriod, Duration negativeTtl,
+      int maxIssuers, int newIssuerBurst, Duration newIssuerPeriod, Clock clock,
+      @Nullable VerificationStats stats) {
+    Preconditions.checkArgument(maxIssuers > 0, "maxIssuers must be positive");
+    Preconditions.checkArgument(newIssuerBurst >= 0, "newIssuerBurst must not be negative");
+    Preconditions.checkArgument(newIssuerPeriod.getMillis() > 0,
+        "newIssuerPeriod must be positive");
+    Preconditions.checkArgument(maxAge.getMillis() > 0, "maxAge must be positive");
+    Preconditions.checkArgument(refreshBurst >= 0, "refreshBurst must not be negative");
+    Preconditions.checkArgument(refreshPeriod.getMillis() > 0, "refreshPeriod must be positive");
+    Preconditions.checkArgument(negativeTtl.getMillis() >= 0, "negativeTtl must not be negative");
+    this.keySetProvider = Preconditions.checkNotNull(keySetProvider);
+    this.algorithm = algorithm;
+    this.maxAgeMillis = maxAge.getMillis();
+    this.refreshBurst = refreshBurst;
+    this.refreshPeriodMillis = refreshPeriod.getMillis();
+    this.negativeTtlMillis = negativeTtl.getMillis();
+    this.clock = Preconditions.checkNotNull(clock);
+    this.stats = stats;
+    this.issuers = new IssuerTable(maxIssuers);
+    this.newIssuerFetches =
+        new TokenBucket(newIssuerBurst, newIssuerPeriod.getMillis(), now());
+  }
+
+  /**
+   * Returns the verifier for the issuer's key with the given id, or, if the key id is null,
+   * the verifiers for all of the issuer's keys.
+   *
+   * @return the verifiers, or null if the issuer is null or has no matching key, or its key
+   *   set cannot be fetched.
+   */
+  @Nullable
+  @Override
+  public List<Verifier> findVerifier(String issuer, String keyId) {
+    if (issuer == null) {
+      return null;
+    }
+    long now = now();
+    IssuerKeys keys = knownIssuers.get(issuer);
+    if (keys == null) {
+      synchronized (issuers) {
+        keys = issuers.get(issuer);
+      }
+    }
+    if (keys == null) {
+      boolean allowed;
+      synchronized (newIssuerFetches) {
+        allowed = newIssuerFetches.take(now);
+      }
+      if (!allowed) {
+        rateLimited.increment();
+        return null;
+      }
+      synchronized (issuers) {
+        keys = issuers.computeIfAbsent(issuer, i -> new IssuerKeys(now));
+      }
+    }
+    KeySet keySet = keys.keySet;
+    if (keySet == null || now - keySet.loadedMillis >= maxAgeMillis) {
+      keySet = keys.refreshIfOlder(issuer, keySet, now);
+    }
+    if (keySet == null) {
+      return null;
+    }
+    if (keyId == null) {
+      return keySet.verifiers.isEmpty() ? null : ImmutableList.copyOf(keySet.verifiers.values());
+    }
+    Verifier verifier = keySet.verifiers.get(keyId);
+    if (verifier == null) {
+      verifier = keys.findUnknownKey(issuer, keyId, now);
+    }
+    return verifier == null ? null : ImmutableList.of(verifier);
+  }
+
+  /**
+   * Registers the issuer as known and fetches its key set now, e.g., for each trusted
+   * issuer at startup. Known issuers are kept however many other issuers are seen, and are
+   * not subject to the limit on first fetches for new issuers.
+   *
+   * @return whether a key set of the issuer is available, fetched now or before.
+   */
+  public boolean prefetch(String issuer) {
+    Preconditions.checkNotNull(issuer);
+    long now = now();
+    IssuerKeys keys;
+    synchronized (issuers) {
+      keys = knownIssuers.get(issuer);
+      if (keys == null) {
+        keys = issuers.remove(issuer);
+        if (keys == null) {
+          keys = new IssuerKeys(now);
+        }
+        knownIssuers.put(issuer, keys);
+      }
+    }
+    return keys.fetch(issuer, now) != null;
+  }
+
+  /**
+   * Returns a snapshot of the refresh statistics.
+   */
+  public Stats getStats() {
+    return new Stats(refreshes.sum(), unknownKeyRefreshes.sum(), rateLimited.sum(),
+        negativeHits.sum(), fetchFailures.sum(), skippedKeys.sum());
+  }
+
+  private long now() {
+    return clock.now().getMillis();
+  }
+
+  /**
+   * The key set, refresh budget and unknown key ids of one issuer. Lookups of known keys
+   * read the current key set without locking; refreshes are serialized per issuer.
+   */
+  private final class IssuerKeys {
+    @Nullable private volatile KeySet keySet;
+
+    // Guarded by this.
+    private final TokenBucket refreshTokens;
+    private long failedUntilMillis;
+    private final Map<String, Long> unknownKeyIds = new UnknownKeyIds();
+
+    IssuerKeys(long now) {
+      refreshTokens = new TokenBucket(refreshBurst, refreshPeriodMillis, now);
+      // the first fetch counts against the burst
+      refreshTokens.take(now);
+    }
+
+    /**
+     * Refreshes the key set unless another thread already replaced the given one, or the
+     * last fetch failed less than the negative TTL ago.
+     */
+    @Nullable
+    synchronized KeySet refreshIfOlder(String issuer, @Nullable KeySet seen, long now) {
+      if (keySet != seen) {
+        return keySet;
+      }
+      if (now < failedUntilMillis) {
+        negativeHits.increment();
+        return keySet;
+      }
+      refresh(issuer, now);
+      return keySet;
+    }
+
+    @Nullable
+    synchronized KeySet fetch(String issuer, long now) {
+      refresh(issuer, now);
+      return keySet;
+    }
+
+    @Nullable
+    synchronized Verifier findUnknownKey(String issuer, String keyId, long now) {
+      Verifier verifier = keySet.verifiers.get(keyId);
+      if (verifier != null) {
+        // refreshed by another thread in the meantime
+        return verifier;
+      }
+      Long unknownUntil = unknownKeyIds.get(keyId);
+      if (unknownUntil != null && now < unknownUntil) {
+        negativeHits.increment();
+        return null;
+      }
+      if (refreshTokens.take(now)) {
+        unknownKeyRefreshes.increment();
+        refresh(issuer, now);
+        verifier = keySet.verifiers.get(keyId);
+      } else {
+        rateLimited.increment();
+      }
+      if (verifier == null && negativeTtlMillis > 0) {
+        unknownKeyIds.remove(keyId);
+        unknownKeyIds.put(keyId, now + negativeTtlMillis);
+      }
+      return verifier;
+    }
+
+    private void refresh(String issuer, long now) {
+      refreshes.increment();
+      long start = stats == null ? 0 : System.nanoTime();
+      Map<String, PublicKey> keys;
+      try {
+        keys = keySetProvider.getKeySet(issuer);
+      } catch (RuntimeException e) {
+        keys = null;
+      }
+      if (stats != null) {
+        stats.recordKeyFetch(System.nanoTime() - start, keys != null && !keys.isEmpty());
+      }
+      if (keys == null) {
+        fetchFailures.increment();
+        failedUntilMillis = now + negativeTtlMillis;
+        return;
+      }
+      Map<String, Verifier> verifiers = new HashMap<>();
+      for (Map.Entry<String, PublicKey> key : keys.entrySet()) {
+        // Keys that don't fit the algorithm, or are broken, are left out; the rest of the
+        // key set stays usable.
+        if (key.getKey() == null || key.getValue() == null
+            || !PublicKeyVerifiers.supports(algorithm, key.getValue())) {
+          skippedKeys.increment();
+          continue;
+        }
+        try {
+          verifiers.put(key.getKey(), PublicKeyVerifiers.forKey(algorithm, key.getValue()));
+        } catch (RuntimeException e) {
+          skippedKeys.increment();
+        }
+      }
+      keySet = new KeySet(ImmutableMap.copyOf(verifiers), now);
+      unknownKeyIds.keySet().removeAll(verifiers.keySet());
+    }
+  }
+
+  /**
+   * A token bucket holding up to {@code burst} tokens and regaining one per period. Not
+   * thread-safe; callers synchronize.
+   */
+  private static final class TokenBucket {
+    private final int burst;
+    private final long periodMillis;
+    private double tokens;
+    private long refillMillis;
+
+    TokenBucket(int burst, long periodMillis, long now) {
+      this.burst = burst;
+      this.periodMillis = periodMillis;
+      this.tokens = burst;
+      this.refillMillis = now;
+    }
+
+    boolean take(long now) {
+      tokens = Math.min(burst, tokens + (double) (now - refillMillis) / periodMillis);
+      refillMillis = now;
+      if (tokens >= 1) {
+        tokens--;
+        return true;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * The issuers, least recently used first, guarded by its own monitor.
+   */
+  private static final class IssuerTable extends LinkedHashMap<String, IssuerKeys> {
+    private static final long serialVersionUID = 1L;
+
+    private final int maxSize;
+
+    IssuerTable(int maxSize) {
+      super(16, 0.75f, true);
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, IssuerKeys> eldest) {
+      return size() > maxSize;
+    }
+  }
+
+  /**
+   * The unknown key ids of an issuer and when they expire, oldest first.
+   */
+  private static final class UnknownKeyIds extends LinkedHashMap<String, Long> {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+      return size() > MAX_UNKNOWN_KEY_IDS;
+    }
+  }
+
+  private static final class KeySet {
+    private final Map<String, Verifier> verifiers;
+    private final long loadedMillis;
+
+    KeySet(Map<String, Verifier> verifiers, long loadedMillis) {
+      this.verifiers = verifiers;
+      this.loadedMillis = loadedMillis;
+    }
+  }
+
+  /**
+   * A snapshot of the statistics of a {@link KeySetManager}.
+   */
+  public static final class Stats {
+    private final long refreshCount;
+    private final long unknownKeyRefreshCount;
+    private final long rateLimitedCount;
+    private final long negativeHitCount;
+    private final long fetchFailureCount;
+    private final long skippedKeyCount;
+
+    Stats(long refreshCount, long unknownKeyRefreshCount, long rateLimitedCount,
+        long negativeHitCount, long fetchFailureCount, long skippedKeyCount) {
+      this.refreshCount = refreshCount;
+      this.unknownKeyRefreshCount = unknownKeyRefreshCount;
+      this.rateLimitedCount = rateLimitedCount;
+      this.negativeHitCount = negativeHitCount;
+      this.fetchFailureCount = fetchFailureCount;
+      this.skippedKeyCount = skippedKeyCount;
+    }
+
+    /** Returns the number of key set fetches, for any reason. */
+    public long getRefreshCount() {
+      return refreshCount;
+    }
+
+    /** Returns the number of fetches triggered by unknown key ids. */
+    public long getUnknownKeyRefreshCount() {
+      return unknownKeyRefreshCount;
+    }
+
+    /** Returns the number of unknown key ids denied a refresh by the rate limit. */
+    public long getRateLimitedCount() {
+      return rateLimitedCount;
+    }
+
+    /** Returns the number of lookups answered from the remembered unknown key ids. */
+    public long getNegativeHitCount() {
+      return negativeHitCount;
+    }
+
+    public long getFetchFailureCount() {
+      return fetchFailureCount;
+    }
+
+    /**
+     * Returns the number of fetched keys left out of key sets because they don't fit the
+     * algorithm or no verifier could be built for them.
+     */
+    public long getSkippedKeyCount() {
+      return skippedKeyCount;
+    }
+
+    @Override
+    public String toString() {
+      return "KeySetManager.Stats{refreshes=" + refreshCount
+          + ", unknownKeyRefreshes=" + unknownKeyRefreshCount
+          + ", rateLimited=" + rateLimitedCount + ", negativeHits=" + negativeHitCount
+          + ", fetchFailures=" + fetchFailureCount + ", skippedKeys=" + skippedKeyCount + "}";
+    }
+  }
+}
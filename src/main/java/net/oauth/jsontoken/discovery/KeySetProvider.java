@@ -0,0 +1,37 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.discovery;
+
+import java.security.PublicKey;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Fetches the complete set of public verification keys an issuer currently publishes,
+ * e.g., from its key URL. Used by {@link KeySetManager}, which decides when to fetch.
+ */
+public interface KeySetProvider {
+
+  /**
+   * Returns the issuer's current verification keys.
+   * @param issuer the id of the issuer.
+   * @return the keys by key id, or null if the key set cannot be fetched.
+   */
+  @Nullable
+  Map<String, PublicKey> getKeySet(String issuer);
+
+}
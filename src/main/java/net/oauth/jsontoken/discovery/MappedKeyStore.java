@@ -0,0 +1,452 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.discovery;
+
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.UnsignedBytes;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import net.oauth.jsontoken.crypto.SignatureAlgorithm;
+import net.oauth.jsontoken.crypto.Verifier;
+
+/**
+ * A {@link VerifierProvider} for many issuers whose public keys are kept in a memory-mapped
+ * key file rather than on the heap. The file holds the encoded (SubjectPublicKeyInfo) keys,
+ * sorted by (issuer, key id), and is searched in place. Verifiers are built only for keys
+ * that are looked up, and only a bounded number of them, the most recently used, are kept.
+ *
+ * <p>Key files are built offline with a {@link Writer}, which replaces the file atomically.
+ * Call {@link #reload()} to switch to a new file; lookups in progress finish against the
+ * old one. A mapped key file must be replaced, never rewritten in place.
+ */
+public final class MappedKeyStore implements VerifierProvider {
+
+  /** The default number of verifiers kept. */
+  public static final int DEFAULT_MAX_CACHED_VERIFIERS = 1024;
+
+  // File layout, all integers big-endian:
+  //   magic, version, record count, record offsets[count]
+  //   records: issuer length (u16), issuer, key id length (u16), key id,
+  //            key algorithm length (u8), key algorithm, key length (i32), encoded key
+  private static final int MAGIC = 0x4a544b53;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 12;
+
+  private final Path file;
+  @Nullable private final SignatureAlgorithm algorithm;
+  private final int maxCachedVerifiers;
+  private volatile Mapping mapping;
+
+  /**
+   * Public constructor. Verifiers are chosen by the type of each key.
+   * @param file the key file written by a {@link Writer}.
+   * @throws IOException if the file cannot be read or is not a key file.
+   * @deprecated picks the algorithm from the key type, so a stored key can
+   *     verify tokens signed with an algorithm the issuer never registered.
+   *     Use {@link #MappedKeyStore(Path, SignatureAlgorithm)}.
+   */
+  @Deprecated
+  public MappedKeyStore(Path file) throws IOException {
+    this(file, null, DEFAULT_MAX_CACHED_VERIFIERS);
+  }
+
+  /**
+   * Public constructor.
+   * @param file the key file written by a {@link Writer}.
+   * @param algorithm the algorithm of the verifiers to build.
+   * @throws IOException if the file cannot be read or is not a key file.
+   */
+  public MappedKeyStore(Path file, SignatureAlgorithm algorithm) throws IOException {
+    this(file, Preconditions.checkNotNull(algorithm), DEFAULT_MAX_CACHED_VERIFIERS);
+  }
+
+  /**
+   * Public constructor.
+   * @param file the key file written by a {@link Writer}.
+   * @param algorithm the algorithm of the verifiers to build, or null to choose it by the
+   *   type of each key.
+   * @param maxCachedVerifiers the maximum number of verifiers kept.
+   * @throws IOException if the file cannot be read or is not a key file.
+   */
+  public MappedKeyStore(Path file, @Nullable SignatureAlgorithm algorithm,
+      int maxCachedVerifiers) throws IOException {
+    Preconditions.checkArgument(maxCachedVerifiers > 0, "maxCachedVerifiers must be positive");
+    this.file = Preconditions.checkNotNull(file);
+    this.algorithm = algorithm;
+    this.maxCachedVerifiers = maxCachedVerifiers;
+    this.mapping = new Mapping(map(file), maxCachedVerifiers);
+  }
+
+  /**
+   * Maps the key file again, e.g., after a {@link Writer} replaced it, and drops the
+   * verifiers built from the previous file.
+   * @throws IOException if the file cannot be read or is not a key file, in which case the
+   *   previous file stays in use.
+   */
+  public void reload() throws IOException {
+    mapping = new Mapping(map(file), maxCachedVerifiers);
+  }
+
+  /**
+   * Returns the number of keys in the key file.
+   */
+  public int size() {
+    return mapping.count;
+  }
+
+  /**
+   * Returns the number of verifiers currently kept.
+   */
+  public int getCachedVerifierCount() {
+    Mapping current = mapping;
+    synchronized (current.verifiers) {
+      return current.verifiers.size();
+    }
+  }
+
+  /**
+   * Returns the verifier for the issuer's key with the given id, or, if the key id is null,
+   * the verifiers for all of the issuer's keys.
+   *
+   * @return the verifiers, or null if the issuer is null or the key file holds no matching
+   *   key.
+   * @throws IllegalStateException if a stored key cannot be decoded.
+   */
+  @Nullable
+  @Override
+  public List<Verifier> findVerifier(String issuer, String keyId) {
+    if (issuer == null) {
+      return null;
+    }
+    Mapping current = mapping;
+    byte[] issuerBytes = issuer.getBytes(StandardCharsets.UTF_8);
+    if (keyId != null) {
+      int record = current.find(issuerBytes, keyId.getBytes(StandardCharsets.UTF_8));
+      return record < 0 ? null : Collections.singletonList(verifier(current, record));
+    }
+
+    int first = current.firstOfIssuer(issuerBytes);
+    List<Verifier> verifiers = new ArrayList<>();
+    for (int i = first; i < current.count && current.compareIssuer(i, issuerBytes) == 0; i++) {
+      verifiers.add(verifier(current, i));
+    }
+    return verifiers.isEmpty() ? null : verifiers;
+  }
+
+  private Verifier verifier(Mapping current, int record) {
+    synchronized (current.verifiers) {
+      Verifier verifier = current.verifiers.get(record);
+      if (verifier != null) {
+        return verifier;
+      }
+    }
+    Verifier verifier = PublicKeyVerifiers.forKey(algorithm, current.publicKey(record));
+    synchronized (current.verifiers) {
+      current.verifiers.put(record, verifier);
+    }
+    return verifier;
+  }
+
+  private static MappedByteBuffer map(Path file) throws IOException {
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+      throw new IOException("not a key file: " + file);
+    }
+    if (buffer.getInt(4) != VERSION) {
+      throw new IOException("unsupported key file version " + buffer.getInt(4) + ": " + file);
+    }
+    int count = buffer.getInt(8);
+    if (count < 0 || HEADER_SIZE + 4L * count > buffer.capacity()) {
+      throw new IOException("corrupt key file: " + file);
+    }
+    // Lookups trust the record table, so check once that every record lies within the file.
+    long recordsStart = HEADER_SIZE + 4L * count;
+    for (int i = 0; i < count; i++) {
+      if (!isValidRecord(buffer, buffer.getInt(HEADER_SIZE + 4 * i), recordsStart)) {
+        throw new IOException("corrupt key file: " + file);
+      }
+    }
+    return buffer;
+  }
+
+  /**
+   * Returns whether the record at the offset, including all of its fields, lies between the
+   * start of the records and the end of the buffer.
+   */
+  private static boolean isValidRecord(ByteBuffer buffer, int offset, long recordsStart) {
+    long limit = buffer.capacity();
+    long position = offset;
+    if (position < recordsStart) {
+      return false;
+    }
+    // issuer and key id
+    for (int i = 0; i < 2; i++) {
+      if (position + 2 > limit) {
+        return false;
+      }
+      position += 2 + (buffer.getShort((int) position) & 0xffff);
+    }
+    if (position + 1 > limit) {
+      return false;
+    }
+    position += 1 + (buffer.get((int) position) & 0xff);
+    if (position + 4 > limit) {
+      return false;
+    }
+    int keyLength = buffer.getInt((int) position);
+    return keyLength >= 0 && position + 4 + keyLength <= limit;
+  }
+
+  /**
+   * One mapped key file and the verifiers built from it. Reads use absolute positions only,
+   * so the buffer is shared by all threads.
+   */
+  private static final class Mapping {
+    private final ByteBuffer buffer;
+    private final int count;
+    private final Map<Integer, Verifier> verifiers;
+
+    Mapping(ByteBuffer buffer, int maxCachedVerifiers) {
+      this.buffer = buffer;
+      this.count = buffer.getInt(8);
+      this.verifiers = new LinkedHashMap<Integer, Verifier>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Verifier> eldest) {
+          return size() > maxCachedVerifiers;
+        }
+      };
+    }
+
+    /** Returns the index of the record with the given issuer and key id, or -1. */
+    int find(byte[] issuer, byte[] keyId) {
+      int low = 0;
+      int high = count - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        int cmp = compareIssuer(mid, issuer);
+        if (cmp == 0) {
+          int keyIdOffset = offset(mid) + 2 + unsignedShort(offset(mid));
+          cmp = compare(keyIdOffset + 2, unsignedShort(keyIdOffset), keyId);
+        }
+        if (cmp < 0) {
+          low = mid + 1;
+        } else if (cmp > 0) {
+          high = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -1;
+    }
+
+    /** Returns the index of the first record whose issuer is not less than the given one. */
+    int firstOfIssuer(byte[] issuer) {
+      int low = 0;
+      int high = count;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (compareIssuer(mid, issuer) < 0) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    int compareIssuer(int record, byte[] issuer) {
+      int offset = offset(record);
+      return compare(offset + 2, unsignedShort(offset), issuer);
+    }
+
+    PublicKey publicKey(int record) {
+      int offset = offset(record);
+      offset += 2 + unsignedShort(offset);
+      offset += 2 + unsignedShort(offset);
+      byte[] keyAlgorithm = new byte[buffer.get(offset) & 0xff];
+      get(offset + 1, keyAlgorithm);
+      offset += 1 + keyAlgorithm.length;
+      byte[] encodedKey = new byte[buffer.getInt(offset)];
+      get(offset + 4, encodedKey);
+      try {
+        return KeyFactory.getInstance(new String(keyAlgorithm, StandardCharsets.UTF_8))
+            .generatePublic(new X509EncodedKeySpec(encodedKey));
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException("key factory missing on platform", e);
+      } catch (InvalidKeySpecException e) {
+        throw new IllegalStateException("bad key in key file", e);
+      }
+    }
+
+    private int offset(int record) {
+      return buffer.getInt(HEADER_SIZE + 4 * record);
+    }
+
+    private int unsignedShort(int offset) {
+      return buffer.getShort(offset) & 0xffff;
+    }
+
+    private void get(int offset, byte[] destination) {
+      for (int i = 0; i < destination.length; i++) {
+        destination[i] = buffer.get(offset + i);
+      }
+    }
+
+    /** Compares the bytes at the offset with the given bytes as unsigned strings. */
+    private int compare(int offset, int length, byte[] other) {
+      int common = Math.min(length, other.length);
+      for (int i = 0; i < common; i++) {
+        int cmp = UnsignedBytes.compare(buffer.get(offset + i), other[i]);
+        if (cmp != 0) {
+          return cmp;
+        }
+      }
+      return length - other.length;
+    }
+  }
+
+  /**
+   * Builds key files for {@link MappedKeyStore}.
+   */
+  public static final class Writer {
+    private static final Comparator<byte[]> BYTES = UnsignedBytes.lexicographicalComparator();
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * Adds a key.
+     * @param issuer the issuer using the key.
+     * @param keyId the id of the key.
+     * @param key the key, which must support X.509 (SubjectPublicKeyInfo) encoding.
+     * @return this writer.
+     */
+    public Writer add(String issuer, String keyId, PublicKey key) {
+      Preconditions.checkNotNull(key);
+      Preconditions.checkArgument("X.509".equals(key.getFormat()),
+          "key must be X.509 encoded, not %s", key.getFormat());
+      Entry entry = new Entry(issuer.getBytes(StandardCharsets.UTF_8),
+          keyId.getBytes(StandardCharsets.UTF_8),
+          key.getAlgorithm().getBytes(StandardCharsets.UTF_8), key.getEncoded());
+      Preconditions.checkArgument(entry.issuer.length <= 0xffff, "issuer too long");
+      Preconditions.checkArgument(entry.keyId.length <= 0xffff, "key id too long");
+      entries.add(entry);
+      return this;
+    }
+
+    /**
+     * Writes the key file to a temporary file next to the destination, then moves it
+     * into place atomically.
+     * @throws IllegalArgumentException if the same issuer and key id were added twice.
+     */
+    public void writeTo(Path destination) throws IOException {
+      List<Entry> sorted = new ArrayList<>(entries);
+      sorted.sort((a, b) -> {
+        int cmp = BYTES.compare(a.issuer, b.issuer);
+        return cmp != 0 ? cmp : BYTES.compare(a.keyId, b.keyId);
+      });
+      for (int i = 1; i < sorted.size(); i++) {
+        Entry previous = sorted.get(i - 1);
+        Entry entry = sorted.get(i);
+        Preconditions.checkArgument(BYTES.compare(previous.issuer, entry.issuer) != 0
+            || BYTES.compare(previous.keyId, entry.keyId) != 0,
+            "duplicate key %s for issuer %s", new String(entry.keyId, StandardCharsets.UTF_8),
+            new String(entry.issuer, StandardCharsets.UTF_8));
+      }
+
+      Path directory = destination.toAbsolutePath().getParent();
+      Path temp = Files.createTempFile(directory, destination.getFileName().toString(), ".tmp");
+      try {
+        try (OutputStream file = Files.newOutputStream(temp)) {
+          write(sorted, new DataOutputStream(new BufferedOutputStream(file)));
+        }
+        Files.move(temp, destination, StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    }
+
+    private static void write(List<Entry> sorted, DataOutputStream out) throws IOException {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(sorted.size());
+      long offset = HEADER_SIZE + 4L * sorted.size();
+      for (Entry entry : sorted) {
+        if (offset > Integer.MAX_VALUE) {
+          throw new IOException("key file too large");
+        }
+        out.writeInt((int) offset);
+        offset += entry.size();
+      }
+      for (Entry entry : sorted) {
+        out.writeShort(entry.issuer.length);
+        out.write(entry.issuer);
+        out.writeShort(entry.keyId.length);
+        out.write(entry.keyId);
+        out.writeByte(entry.keyAlgorithm.length);
+        out.write(entry.keyAlgorithm);
+        out.writeInt(entry.encodedKey.length);
+        out.write(entry.encodedKey);
+      }
+      out.flush();
+    }
+
+    private static final class Entry {
+      private final byte[] issuer;
+      private final byte[] keyId;
+      private final byte[] keyAlgorithm;
+      private final byte[] encodedKey;
+
+      Entry(byte[] issuer, byte[] keyId, byte[] keyAlgorithm, byte[] encodedKey) {
+        this.issuer = issuer;
+        this.keyId = keyId;
+        this.keyAlgorithm = keyAlgorithm;
+        this.encodedKey = encodedKey;
+      }
+
+      int size() {
+        return 2 + issuer.length + 2 + keyId.length + 1 + keyAlgorithm.length
+            + 4 + encodedKey.length;
+      }
+    }
+  }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.discovery;
+
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import javax.annotation.Nullable;
+import net.oauth.jsontoken.crypto.EcdsaSHA256Verifier;
+import net.oauth.jsontoken.crypto.Ed25519Verifier;
+import net.oauth.jsontoken.crypto.RsaSHA256Verifier;
+import net.oauth.jsontoken.crypto.RsaVerifier;
+import net.oauth.jsontoken.crypto.SignatureAlgorithm;
+import net.oauth.jsontoken.crypto.Verifier;
+
+/**
+ * Picks the {@link Verifier} implementation matching the type of a discovered public key.
+ */
+final class PublicKeyVerifiers {
+
+  /**
+   * Returns a verifier for the given key: ES256 for elliptic curve keys, EdDSA for Ed25519
+   * keys, RS256 otherwise.
+   */
+  static Verifier forKey(PublicKey key) {
+    if (key instanceof ECPublicKey) {
+      return new EcdsaSHA256Verifier(key);
+    }
+    if (Ed25519Verifier.supportsKey(key)) {
+      return new Ed25519Verifier(key);
+    }
+    return new RsaSHA256Verifier(key);
+  }
+
+  /**
+   * Returns a verifier for the given key and algorithm, or, if the algorithm is null, the
+   * verifier {@link #forKey(PublicKey)} picks for the key.
+   * @throws IllegalArgumentException if the algorithm does not use public keys.
+   */
+  static Verifier forKey(@Nullable SignatureAlgorithm algorithm, PublicKey key) {
+    if (algorithm == null) {
+      return forKey(key);
+    }
+    switch (algorithm.getKeyType()) {
+      case RSA:
+        return new RsaVerifier(algorithm, key);
+      case EC:
+        return new EcdsaSHA256Verifier(key);
+      case OKP:
+        return new Ed25519Verifier(key);
+      default:
+        throw new IllegalArgumentException(algorithm + " does not use public keys");
+    }
+  }
+
+  /**
+   * Returns whether the key can be used with the algorithm. A null algorithm accepts any key.
+   */
+  static boolean supports(@Nullable SignatureAlgorithm algorithm, PublicKey key) {
+    if (algorithm == null) {
+      return true;
+    }
+    switch (algorithm.getKeyType()) {
+      case RSA:
+        return key instanceof RSAPublicKey;
+      case EC:
+        return key instanceof ECPublicKey;
+      case OKP:
+        return Ed25519Verifier.supportsKey(key);
+      default:
+        return false;
+    }
+  }
+
+  private PublicKeyVerifiers() { }
+}
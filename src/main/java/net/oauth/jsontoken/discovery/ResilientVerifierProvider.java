@@ -0,0 +1,497 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.discovery;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+import net.oauth.jsontoken.Clock;
+import net.oauth.jsontoken.SystemClock;
+import net.oauth.jsontoken.VerificationStats;
+import net.oauth.jsontoken.crypto.Verifier;
+import org.joda.time.Duration;
+
+/**
+ * A {@link VerifierProvider} decorator for remote key discovery, such as a
+ * {@link UrlBasedVerifierProvider}, that keeps verification going while the key endpoint
+ * is slow or down. The wrapped provider is expected to return null when it cannot fetch
+ * the keys.
+ *
+ * <p>Key sets are refreshed once older than the refresh interval. Until they are older than
+ * the maximum staleness, the last good key set is served while it is refreshed in the
+ * background. Fetches go through a circuit breaker: after a number of consecutive failures
+ * the breaker opens and lookups without a usable key set fail fast with null instead of
+ * waiting on the endpoint. After an exponentially growing, jittered backoff a single trial
+ * fetch is let through; it closes the breaker if it succeeds and reopens it otherwise.
+ *
+ * <p>Key sets are kept per issuer, and also per key id if the wrapped provider
+ * {@link VerifierProvider#usesKeyId() uses key ids}. Since both come from unverified
+ * tokens, only a bounded number of key sets, the most recently used, are kept, and
+ * concurrent fetches of the same key set share one call to the wrapped provider.
+ *
+ * <p>Each instance has one breaker, so wrap the provider of each key URL separately.
+ */
+public final class ResilientVerifierProvider implements VerifierProvider {
+
+  /** The states of the circuit breaker. */
+  public enum BreakerState {
+    /** Fetches go through. */
+    CLOSED,
+    /** Fetches fail fast until the backoff has passed. */
+    OPEN,
+    /** A single trial fetch is in progress. */
+    HALF_OPEN
+  }
+
+  public static final Duration DEFAULT_REFRESH_AFTER = Duration.standardMinutes(5);
+  public static final Duration DEFAULT_MAX_STALENESS = Duration.standardHours(6);
+  public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+  public static final Duration DEFAULT_INITIAL_BACKOFF = Duration.standardSeconds(1);
+  public static final Duration DEFAULT_MAX_BACKOFF = Duration.standardMinutes(5);
+  public static final int DEFAULT_MAX_KEY_SETS = 256;
+
+  private static final Executor DEFAULT_EXECUTOR = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("jsontoken-key-refresh-%d").build());
+
+  private final VerifierProvider delegate;
+  private final long refreshAfterMillis;
+  private final long maxStalenessMillis;
+  private final int failureThreshold;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+  private final Clock clock;
+  private final Executor executor;
+  @Nullable private final VerificationStats stats;
+  private final boolean usesKeyId;
+  private final KeySetTable keySets;
+  private final ConcurrentMap<LookupKey, SettableFuture<List<Verifier>>> inFlight =
+      new ConcurrentHashMap<>();
+
+  // Breaker state, guarded by this.
+  private BreakerState state = BreakerState.CLOSED;
+  private int consecutiveFailures;
+  private int consecutiveOpenings;
+  private long openUntilMillis;
+  private boolean trialInFlight;
+
+  private final LongAdder fetches = new LongAdder();
+  private final LongAdder fetchFailures = new LongAdder();
+  private final LongAdder staleServed = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder openings = new LongAdder();
+  private final LongAdder halfOpenings = new LongAdder();
+  private final LongAdder closings = new LongAdder();
+
+  /**
+   * Public constructor using the default settings, the system clock, and a shared pool of
+   * daemon threads for background refreshes.
+   * @param delegate the provider that fetches the keys.
+   */
+  public ResilientVerifierProvider(VerifierProvider delegate) {
+    this(delegate, DEFAULT_REFRESH_AFTER, DEFAULT_MAX_STALENESS, DEFAULT_FAILURE_THRESHOLD,
+        DEFAULT_INITIAL_BACKOFF, DEFAULT_MAX_BACKOFF, new SystemClock(Duration.ZERO),
+        DEFAULT_EXECUTOR);
+  }
+
+  /**
+   * Public constructor.
+   * @param delegate the provider that fetches the keys.
+   * @param refreshAfter the age after which a key set is refreshed.
+   * @param maxStaleness the age after which a key set is no longer served.
+   * @param failureThreshold the number of consecutive failed fetches that opens the breaker.
+   * @param initialBackoff how long the breaker stays open the first time.
+   * @param maxBackoff the limit of the doubling backoff.
+   * @param clock the clock that decides the age of key sets and the end of backoffs.
+   * @param executor runs the background refreshes.
+   */
+  public ResilientVerifierProvider(VerifierProvider delegate, Duration refreshAfter,
+      Duration maxStaleness, int failureThreshold, Duration initialBackoff,
+      Duration maxBackoff, Clock clock, Executor executor) {
+    this(delegate, refreshAfter, maxStaleness, failureThreshold, initialBackoff, maxBackoff,
+        DEFAULT_MAX_KEY_SETS, clock, executor);
+  }
+
+  /**
+   * Public constructor.
+   * @param delegate the provider that fetches the keys.
+   * @param refreshAfter the age after which a key set is refreshed.
+   * @param maxStaleness the age after which a key set is no longer served.
+   * @param failureThreshold the number of consecutive failed fetches that opens the breaker.
+   * @param initialBackoff how long the breaker stays open the first time.
+   * @param maxBackoff the limit of the doubling backoff.
+   * @param maxKeySets the maximum number of key sets kept.
+   * @param clock the clock that decides the age of key sets and the end of backoffs.
+   * @param executor runs the background refreshes.
+   */
+  public ResilientVerifierProvider(VerifierProvider delegate, Duration refreshAfter,
+      Duration maxStaleness, int failureThreshold, Duration initialBackoff,
+      Duration maxBackoff, int maxKeySets, Clock clock, Executor executor) {
+    this(delegate, refreshAfter, maxStaleness, failureThreshold, initialBackoff, maxBackoff,
+        maxKeySets, clock, executor, null);
+  }
+
+  /**
+   * Public constructor.
+   * @param delegate the provider that fetches the keys.
+   * @param refreshAfter the age after which a key set is refreshed.
+   * @param maxStaleness the age after which a key set is no longer served.
+   * @param failureThreshold the number of consecutive failed fetches that opens the breaker.
+   * @param initialBackoff how long the breaker stays open the first time.
+   * @param maxBackoff the limit of the doubling backoff.
+   * @param maxKeySets the maximum number of key sets kept.
+   * @param clock the clock that decides the age of key sets and the end of backoffs.
+   * @param executor runs the background refreshes.
+   * @param stats where the latency and outcome of calls to the wrapped provider are also
+   *   recorded, or null.
+   */
+  public ResilientVerifierProvider(VerifierProvider delegate, Duration refreshAfter,
+      Duration maxStaleness, int failureThreshold, Duration initialBackoff,
+      Duration maxBackoff, int maxKeySets, Clock clock, Executor executor,
+      @Nullable VerificationStats stats) {
+    Preconditions.checkArgument(maxKeySets > 0, "maxKeySets must be positive");
+    Preconditions.checkArgument(refreshAfter.getMillis() > 0, "refreshAfter must be positive");
+    Preconditions.checkArgument(maxStaleness.getMillis() >= refreshAfter.getMillis(),
+        "maxStaleness must not be less than refreshAfter");
+    Preconditions.checkArgument(failureThreshold > 0, "failureThreshold must be positive");
+    Preconditions.checkArgument(initialBackoff.getMillis() > 0, "initialBackoff must be positive");
+    Preconditions.checkArgument(maxBackoff.getMillis() >= initialBackoff.getMillis(),
+        "maxBackoff must not be less than initialBackoff");
+    this.delegate = Preconditions.checkNotNull(delegate);
+    this.usesKeyId = delegate.usesKeyId();
+    this.keySets = new KeySetTable(maxKeySets);
+    this.refreshAfterMillis = refreshAfter.getMillis();
+    this.maxStalenessMillis = maxStaleness.getMillis();
+    this.failureThreshold = failureThreshold;
+    this.initialBackoffMillis = initialBackoff.getMillis();
+    this.maxBackoffMillis = maxBackoff.getMillis();
+    this.clock = Preconditions.checkNotNull(clock);
+    this.executor = Preconditions.checkNotNull(executor);
+    this.stats = stats;
+  }
+
+  /**
+   * Returns the verifiers of a fresh or usably stale key set, or fetches them.
+   * @return the verifiers, or null if no usable key set is known and the fetch failed or
+   *   was refused by the open breaker.
+   */
+  @Nullable
+  @Override
+  public List<Verifier> findVerifier(String issuer, String keyId) {
+    LookupKey key = new LookupKey(issuer, usesKeyId ? keyId : null);
+    KeySet cached;
+    synchronized (keySets) {
+      cached = keySets.get(key);
+    }
+    if (cached != null) {
+      long age = now() - cached.fetchedMillis;
+      if (age < refreshAfterMillis) {
+        return cached.verifiers;
+      }
+      if (age < maxStalenessMillis) {
+        staleServed.increment();
+        refreshInBackground(key, cached);
+        return cached.verifiers;
+      }
+    }
+    return fetch(key);
+  }
+
+  @Override
+  public boolean usesKeyId() {
+    return usesKeyId;
+  }
+
+  public synchronized BreakerState getBreakerState() {
+    return state;
+  }
+
+  /**
+   * Returns a snapshot of the fetch and breaker statistics.
+   */
+  public Stats getStats() {
+    return new Stats(getBreakerState(), fetches.sum(), fetchFailures.sum(), staleServed.sum(),
+        rejected.sum(), openings.sum(), halfOpenings.sum(), closings.sum());
+  }
+
+  private void refreshInBackground(LookupKey key, KeySet cached) {
+    if (!cached.refreshing.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      executor.execute(() -> {
+        try {
+          fetch(key);
+        } finally {
+          cached.refreshing.set(false);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      cached.refreshing.set(false);
+    }
+  }
+
+  /**
+   * Fetches the key set, or waits for a fetch of the same key set already in progress.
+   */
+  @Nullable
+  private List<Verifier> fetch(LookupKey key) {
+    SettableFuture<List<Verifier>> fetch = SettableFuture.create();
+    SettableFuture<List<Verifier>> existing = inFlight.putIfAbsent(key, fetch);
+    if (existing != null) {
+      try {
+        return Uninterruptibles.getUninterruptibly(existing);
+      } catch (ExecutionException e) {
+        return null;
+      }
+    }
+    List<Verifier> verifiers = null;
+    try {
+      verifiers = fetchUncoalesced(key);
+    } finally {
+      fetch.set(verifiers);
+      inFlight.remove(key, fetch);
+    }
+    return verifiers;
+  }
+
+  @Nullable
+  private List<Verifier> fetchUncoalesced(LookupKey key) {
+    if (!allowFetch()) {
+      rejected.increment();
+      return null;
+    }
+    fetches.increment();
+    long start = stats == null ? 0 : System.nanoTime();
+    List<Verifier> verifiers;
+    try {
+      verifiers = delegate.findVerifier(key.issuer, key.keyId);
+    } catch (RuntimeException e) {
+      verifiers = null;
+    }
+    if (stats != null) {
+      stats.recordKeyFetch(System.nanoTime() - start, verifiers != null);
+    }
+    if (verifiers == null) {
+      fetchFailures.increment();
+      recordFailure();
+      return null;
+    }
+    verifiers = ImmutableList.copyOf(verifiers);
+    synchronized (keySets) {
+      keySets.put(key, new KeySet(verifiers, now()));
+    }
+    recordSuccess();
+    return verifiers;
+  }
+
+  private synchronized boolean allowFetch() {
+    switch (state) {
+      case OPEN:
+        if (now() < openUntilMillis) {
+          return false;
+        }
+        state = BreakerState.HALF_OPEN;
+        halfOpenings.increment();
+        trialInFlight = true;
+        return true;
+      case HALF_OPEN:
+        if (trialInFlight) {
+          return false;
+        }
+        trialInFlight = true;
+        return true;
+      default:
+        return true;
+    }
+  }
+
+  private synchronized void recordSuccess() {
+    consecutiveFailures = 0;
+    consecutiveOpenings = 0;
+    trialInFlight = false;
+    if (state != BreakerState.CLOSED) {
+      state = BreakerState.CLOSED;
+      closings.increment();
+    }
+  }
+
+  private synchronized void recordFailure() {
+    consecutiveFailures++;
+    trialInFlight = false;
+    if (state == BreakerState.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+      consecutiveOpenings++;
+      long backoff = initialBackoffMillis;
+      for (int i = 1; i < consecutiveOpenings && backoff < maxBackoffMillis; i++) {
+        backoff *= 2;
+      }
+      backoff = Math.min(backoff, maxBackoffMillis);
+      // Jitter spreads the retries of many instances over the second half of the backoff.
+      openUntilMillis = now() + backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+      if (state != BreakerState.OPEN) {
+        state = BreakerState.OPEN;
+        openings.increment();
+      }
+    }
+  }
+
+  private long now() {
+    return clock.now().getMillis();
+  }
+
+  /**
+   * A snapshot of the statistics of a {@link ResilientVerifierProvider}.
+   */
+  public static final class Stats {
+    private final BreakerState breakerState;
+    private final long fetchCount;
+    private final long fetchFailureCount;
+    private final long staleServedCount;
+    private final long rejectedCount;
+    private final long openedCount;
+    private final long halfOpenedCount;
+    private final long closedCount;
+
+    Stats(BreakerState breakerState, long fetchCount, long fetchFailureCount,
+        long staleServedCount, long rejectedCount, long openedCount, long halfOpenedCount,
+        long closedCount) {
+      this.breakerState = breakerState;
+      this.fetchCount = fetchCount;
+      this.fetchFailureCount = fetchFailureCount;
+      this.staleServedCount = staleServedCount;
+      this.rejectedCount = rejectedCount;
+      this.openedCount = openedCount;
+      this.halfOpenedCount = halfOpenedCount;
+      this.closedCount = closedCount;
+    }
+
+    public BreakerState getBreakerState() {
+      return breakerState;
+    }
+
+    /** Returns the number of fetches passed to the wrapped provider. */
+    public long getFetchCount() {
+      return fetchCount;
+    }
+
+    public long getFetchFailureCount() {
+      return fetchFailureCount;
+    }
+
+    /** Returns the number of lookups answered with a stale key set. */
+    public long getStaleServedCount() {
+      return staleServedCount;
+    }
+
+    /** Returns the number of fetches refused by the breaker. */
+    public long getRejectedCount() {
+      return rejectedCount;
+    }
+
+    /** Returns the number of times the breaker opened. */
+    public long getOpenedCount() {
+      return openedCount;
+    }
+
+    /** Returns the number of trial fetches after a backoff. */
+    public long getHalfOpenedCount() {
+      return halfOpenedCount;
+    }
+
+    /** Returns the number of times the breaker closed again. */
+    public long getClosedCount() {
+      return closedCount;
+    }
+
+    @Override
+    public String toString() {
+      return "ResilientVerifierProvider.Stats{breaker=" + breakerState + ", fetches=" + fetchCount
+          + ", failures=" + fetchFailureCount + ", stale=" + staleServedCount
+          + ", rejected=" + rejectedCount + ", opened=" + openedCount
+          + ", halfOpened=" + halfOpenedCount + ", closed=" + closedCount + "}";
+    }
+  }
+
+  /**
+   * The key sets, least recently used first, guarded by its own monitor.
+   */
+  private static final class KeySetTable extends LinkedHashMap<LookupKey, KeySet> {
+    private static final long serialVersionUID = 1L;
+
+    private final int maxSize;
+
+    KeySetTable(int maxSize) {
+      super(16, 0.75f, true);
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<LookupKey, KeySet> eldest) {
+      return size() > maxSize;
+    }
+  }
+
+  private static final class KeySet {
+    private final List<Verifier> verifiers;
+    private final long fetchedMillis;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    KeySet(List<Verifier> verifiers, long fetchedMillis) {
+      this.verifiers = verifiers;
+      this.fetchedMillis = fetchedMillis;
+    }
+  }
+
+  private static final class LookupKey {
+    private final String issuer;
+    private final String keyId;
+
+    LookupKey(String issuer, String keyId) {
+      this.issuer = issuer;
+      this.keyId = keyId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof LookupKey)) {
+        return false;
+      }
+      LookupKey other = (LookupKey) o;
+      return Objects.equal(issuer, other.issuer) && Objects.equal(keyId, other.keyId);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(issuer, keyId);
+    }
+  }
+}
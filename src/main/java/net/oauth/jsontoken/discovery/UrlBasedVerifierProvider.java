@@ -1,91 +1,150 @@
 package net.oauth.jsontoken.discovery;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 
-import net.oauth.jsontoken.crypto.RsaSHA256Verifier;
+import net.oauth.jsontoken.TokenTracer;
+import net.oauth.jsontoken.Tracing;
+import net.oauth.jsontoken.VerificationStats;
+import net.oauth.jsontoken.crypto.SignatureAlgorithm;
 import net.oauth.jsontoken.crypto.Verifier;
 
-import org.apache.commons.codec.binary.Base64;
-
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
-import java.security.cert.X509Certificate;
+import java.security.PublicKey;
 import java.util.List;
 import java.util.Map;
 
+import javax.annotation.Nullable;
+
 /**
  * Simple certificates finder by fetching from URL. Expects simple json
  * format, for example:
  * {"keyid":"x509 certificate in Pem format", "keyid2":"x509 certificate in Pem format"..}
+ * Providers constructed with a {@link SignatureAlgorithm} yield verifiers for
+ * that algorithm only, and skip certificates whose key does not fit it.
+ * Providers constructed without one pick by key type: certificates with RSA
+ * keys yield RS256 verifiers, certificates with elliptic curve keys yield
+ * ES256 verifiers, and certificates with Ed25519 keys yield EdDSA verifiers.
+ * Each lookup fetches the certificates; to cache and refresh them, use a
+ * {@link KeySetManager} with a {@link UrlKeySetProvider}.
  */
 public class UrlBasedVerifierProvider implements VerifierProvider {
 
+  /** The default connect and read timeouts, in milliseconds. */
+  public static final int DEFAULT_TIMEOUT_MILLIS = 10000;
+
+  @Nullable private final SignatureAlgorithm algorithm;
   private final String publicCertUrl;
+  private final int connectTimeoutMillis;
+  private final int readTimeoutMillis;
+  @Nullable private final VerificationStats stats;
 
+  /**
+   * @deprecated picks the algorithm from the key type, so a certificate can
+   *     verify tokens signed with an algorithm the issuer never registered.
+   *     Use {@link #UrlBasedVerifierProvider(SignatureAlgorithm, String)}.
+   */
+  @Deprecated
   public UrlBasedVerifierProvider(String publicCertUrl) {
+    this(null, publicCertUrl, DEFAULT_TIMEOUT_MILLIS, DEFAULT_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * @param algorithm the algorithm the issuer signs with.
+   * @param publicCertUrl the URL of the certificates.
+   */
+  public UrlBasedVerifierProvider(SignatureAlgorithm algorithm, String publicCertUrl) {
+    this(Preconditions.checkNotNull(algorithm), publicCertUrl, DEFAULT_TIMEOUT_MILLIS,
+        DEFAULT_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * Public constructor.
+   * @param publicCertUrl the URL of the certificates.
+   * @param connectTimeoutMillis how long to wait for the connection to be established.
+   * @param readTimeoutMillis how long to wait for data once connected.
+   * @deprecated picks the algorithm from the key type. Use
+   *     {@link #UrlBasedVerifierProvider(SignatureAlgorithm, String, int, int)}.
+   */
+  @Deprecated
+  public UrlBasedVerifierProvider(String publicCertUrl, int connectTimeoutMillis,
+      int readTimeoutMillis) {
+    this(null, publicCertUrl, connectTimeoutMillis, readTimeoutMillis);
+  }
+
+  /**
+   * Public constructor.
+   *
+   * @param algorithm the algorithm the issuer signs with; null picks by key type.
+   * @param publicCertUrl the URL of the certificates.
+   * @param connectTimeoutMillis how long to wait for the connection to be established.
+   * @param readTimeoutMillis how long to wait for data once connected.
+   */
+  public UrlBasedVerifierProvider(@Nullable SignatureAlgorithm algorithm, String publicCertUrl,
+      int connectTimeoutMillis, int readTimeoutMillis) {
+    this(algorithm, publicCertUrl, connectTimeoutMillis, readTimeoutMillis, null);
+  }
+
+  /**
+   * Public constructor.
+   *
+   * @param algorithm the algorithm the issuer signs with; null picks by key type.
+   * @param publicCertUrl the URL of the certificates.
+   * @param connectTimeoutMillis how long to wait for the connection to be established.
+   * @param readTimeoutMillis how long to wait for data once connected.
+   * @param stats where the latency and outcome of each fetch are also recorded, or null.
+   */
+  public UrlBasedVerifierProvider(@Nullable SignatureAlgorithm algorithm, String publicCertUrl,
+      int connectTimeoutMillis, int readTimeoutMillis, @Nullable VerificationStats stats) {
+    Preconditions.checkArgument(connectTimeoutMillis > 0, "connectTimeoutMillis must be positive");
+    Preconditions.checkArgument(readTimeoutMillis > 0, "readTimeoutMillis must be positive");
+    this.algorithm = algorithm;
     this.publicCertUrl = publicCertUrl;
+    this.connectTimeoutMillis = connectTimeoutMillis;
+    this.readTimeoutMillis = readTimeoutMillis;
+    this.stats = stats;
   }
 
   @Override
   public List<Verifier> findVerifier(String issuer, String keyId) {
+    TokenTracer.Span span = Tracing.startFetchKeysSpan(publicCertUrl, issuer, keyId);
+    TokenTracer.Scope scope = Tracing.makeCurrent(span);
+    List<Verifier> verifiers;
     try {
-      URL url = new URL(publicCertUrl);
-      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-      connection.setRequestMethod("GET");
-      if (connection.getResponseCode() == HttpURLConnection.HTTP_OK) {
-        
-        InputStreamReader in = new InputStreamReader((InputStream) connection.getContent());
-        BufferedReader buff = new BufferedReader(in);
-        StringBuffer content = new StringBuffer();
-        String line = "";
-        do {
-          line = buff.readLine();
-          content.append(line + "\n");
-        } while (line != null);
-        
-        JsonParser parser = new JsonParser();
-        JsonObject jsonObject = parser.parse(content.toString()).getAsJsonObject();
-        List<Verifier> verifiers = Lists.newArrayList();
-        
-        for (Map.Entry<String, JsonElement> cert : jsonObject.entrySet()) {
-          String x509PemCertString = cert.getValue().getAsString();
-          // Parse pem format
-          String[] parts = x509PemCertString.split("\n");
-          if (parts.length < 3) {
-            return null;
-          }
-          String x509CertString = "";
-          for (int i = 1; i < parts.length - 1; i++) {
-            x509CertString += parts[i];
-          }
-          // parse x509
-          byte[] certBytes = Base64.decodeBase64(x509CertString);
-          CertificateFactory factory = CertificateFactory.getInstance("X509");
-          X509Certificate x509Cert = 
-            (X509Certificate) factory.generateCertificate(new ByteArrayInputStream(certBytes));
-          verifiers.add(new RsaSHA256Verifier(x509Cert.getPublicKey()));
-        }
-        return verifiers;  
-      } else {
-        return null;
-      }
-    } catch (MalformedURLException e) {
-      return null;
-    } catch (IOException e) {
-      return null;
-    } catch (CertificateException e) {
+      verifiers = fetch();
+    } catch (RuntimeException e) {
+      Tracing.end(span, false, e);
+      throw e;
+    } finally {
+      Tracing.close(scope);
+    }
+    Tracing.end(span, verifiers != null, null);
+    return verifiers;
+  }
+
+  /**
+   * Returns false: every key id of the issuer yields all the certificates at the URL.
+   */
+  @Override
+  public boolean usesKeyId() {
+    return false;
+  }
+
+  private List<Verifier> fetch() {
+    long start = stats == null ? 0 : System.nanoTime();
+    Map<String, PublicKey> keys =
+        UrlKeySetProvider.fetch(publicCertUrl, connectTimeoutMillis, readTimeoutMillis);
+    if (stats != null) {
+      stats.recordKeyFetch(System.nanoTime() - start, keys != null && !keys.isEmpty());
+    }
+    if (keys == null) {
       return null;
     }
+    List<Verifier> verifiers = Lists.newArrayList();
+    for (PublicKey key : keys.values()) {
+      if (PublicKeyVerifiers.supports(algorithm, key)) {
+        verifiers.add(PublicKeyVerifiers.forKey(algorithm, key));
+      }
+    }
+    return verifiers;
   }
-}
\ No newline at end of file
+}
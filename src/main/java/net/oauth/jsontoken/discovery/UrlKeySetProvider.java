@@ -0,0 +1,145 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.discovery;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.CharStreams;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.PublicKey;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * A {@link KeySetProvider} that fetches each issuer's certificates from a URL, in the format
+ * {@link UrlBasedVerifierProvider} reads:
+ * {"keyid":"x509 certificate in Pem format", "keyid2":"x509 certificate in Pem format"..}
+ * It lets a {@link KeySetManager} cache and refresh the keys of such issuers.
+ */
+public final class UrlKeySetProvider implements KeySetProvider {
+
+  private final ServerDescriptorProvider certUrls;
+  private final int connectTimeoutMillis;
+  private final int readTimeoutMillis;
+
+  /**
+   * Public constructor using the default timeouts of {@link UrlBasedVerifierProvider}.
+   * @param certUrls maps each issuer to the URL of its certificates.
+   */
+  public UrlKeySetProvider(ServerDescriptorProvider certUrls) {
+    this(certUrls, UrlBasedVerifierProvider.DEFAULT_TIMEOUT_MILLIS,
+        UrlBasedVerifierProvider.DEFAULT_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * Public constructor.
+   * @param certUrls maps each issuer to the URL of its certificates.
+   * @param connectTimeoutMillis how long to wait for the connection to be established.
+   * @param readTimeoutMillis how long to wait for data once connected.
+   */
+  public UrlKeySetProvider(ServerDescriptorProvider certUrls, int connectTimeoutMillis,
+      int readTimeoutMillis) {
+    Preconditions.checkArgument(connectTimeoutMillis > 0, "connectTimeoutMillis must be positive");
+    Preconditions.checkArgument(readTimeoutMillis > 0, "readTimeoutMillis must be positive");
+    this.certUrls = Preconditions.checkNotNull(certUrls);
+    this.connectTimeoutMillis = connectTimeoutMillis;
+    this.readTimeoutMillis = readTimeoutMillis;
+  }
+
+  /**
+   * Returns the public keys of the issuer's certificates by key id, or null if the issuer
+   * has no URL or its certificates cannot be fetched or parsed.
+   */
+  @Nullable
+  @Override
+  public Map<String, PublicKey> getKeySet(String issuer) {
+    URI certUrl = certUrls.getServerDescriptor(issuer);
+    if (certUrl == null) {
+      return null;
+    }
+    return fetch(certUrl.toString(), connectTimeoutMillis, readTimeoutMillis);
+  }
+
+  /**
+   * Fetches the certificates at the URL.
+   * @return the public keys of the certificates by key id, or null if they cannot be
+   *   fetched or parsed.
+   */
+  @Nullable
+  static Map<String, PublicKey> fetch(String certUrl, int connectTimeoutMillis,
+      int readTimeoutMillis) {
+    try {
+      HttpURLConnection connection = (HttpURLConnection) new URL(certUrl).openConnection();
+      connection.setRequestMethod("GET");
+      connection.setConnectTimeout(connectTimeoutMillis);
+      connection.setReadTimeout(readTimeoutMillis);
+      if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+        return null;
+      }
+      String content;
+      try (Reader in = new InputStreamReader((InputStream) connection.getContent(),
+          StandardCharsets.UTF_8)) {
+        content = CharStreams.toString(in);
+      }
+      return parse(content);
+    } catch (IOException | CertificateException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Parses a JSON object mapping key ids to PEM certificates.
+   * @return the public keys of the certificates by key id, or null if a certificate is not
+   *   in PEM format.
+   */
+  @Nullable
+  static Map<String, PublicKey> parse(String json) throws CertificateException {
+    JsonObject jsonObject = new JsonParser().parse(json).getAsJsonObject();
+    CertificateFactory factory = CertificateFactory.getInstance("X509");
+    Map<String, PublicKey> keys = new LinkedHashMap<>();
+    for (Map.Entry<String, JsonElement> cert : jsonObject.entrySet()) {
+      String[] parts = cert.getValue().getAsString().split("\n");
+      if (parts.length < 3) {
+        return null;
+      }
+      // drop the BEGIN and END lines
+      StringBuilder base64 = new StringBuilder();
+      for (int i = 1; i < parts.length - 1; i++) {
+        base64.append(parts[i]);
+      }
+      X509Certificate x509Cert = (X509Certificate) factory.generateCertificate(
+          new ByteArrayInputStream(Base64.decodeBase64(base64.toString())));
+      keys.put(cert.getKey(), x509Cert.getPublicKey());
+    }
+    return keys;
+  }
+}
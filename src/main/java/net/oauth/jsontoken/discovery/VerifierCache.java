@@ -0,0 +1,499 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.discovery;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import javax.annotation.Nullable;
+import net.oauth.jsontoken.Clock;
+import net.oauth.jsontoken.SystemClock;
+import net.oauth.jsontoken.VerificationStats;
+import net.oauth.jsontoken.VerificationTrace;
+import net.oauth.jsontoken.crypto.SignatureAlgorithm;
+import net.oauth.jsontoken.crypto.Verifier;
+import org.joda.time.Duration;
+
+/**
+ * A cache of the verifiers returned by {@link VerifierProvider}s and
+ * {@link AsyncVerifierProvider}s, keyed by (wrapped provider, signature algorithm, issuer,
+ * key id). Wrap a provider with one of the {@code wrap} methods to have its results cached.
+ *
+ * <p>The cache is split into independently locked shards, each evicting its least recently
+ * used entry once full. Entries are reloaded from the wrapped provider once older than the
+ * time-to-live. A key counts as rotated out, and its entry is dropped, when a reload finds
+ * no verifiers for it or when {@link #retainKeyIds} is told the issuer's current key set.
+ *
+ * <p>Concurrent misses on the same key share one load from the wrapped provider. For
+ * providers whose {@link VerifierProvider#usesKeyId() verifiers do not depend on the key
+ * id}, entries are keyed without the key id, so that tokens carrying arbitrary key ids
+ * cannot push other entries out.
+ *
+ * <p>Each wrapped provider has entries of its own, so that parsers sharing a cache, such as
+ * the {@link #getDefault() process-wide} one, never serve each other's verifiers, even for
+ * issuers of the same name.
+ */
+public final class VerifierCache {
+
+  /** The name under which lookups are recorded in a {@link VerificationTrace}. */
+  public static final String TRACE_NAME = "verifiers";
+
+  public static final int DEFAULT_MAX_SIZE = 1024;
+  public static final int DEFAULT_SHARD_COUNT = 16;
+  public static final Duration DEFAULT_TIME_TO_LIVE = Duration.standardHours(1);
+
+  private static final VerifierCache DEFAULT = new VerifierCache(DEFAULT_MAX_SIZE,
+      DEFAULT_SHARD_COUNT, DEFAULT_TIME_TO_LIVE, new SystemClock(Duration.ZERO));
+
+  private final Shard[] shards;
+  private final ConcurrentMap<Key, ListenableFuture<List<Verifier>>> loads =
+      new ConcurrentHashMap<>();
+  private final long timeToLiveMillis;
+  private final Clock clock;
+  @Nullable private final VerificationStats stats;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder rotations = new LongAdder();
+
+  /**
+   * Public constructor.
+   * @param maxSize the maximum number of entries across all shards.
+   * @param shardCount the number of shards, rounded up to a power of two.
+   * @param timeToLive how long an entry is served before it is reloaded.
+   * @param clock the clock that decides the age of entries.
+   */
+  public VerifierCache(int maxSize, int shardCount, Duration timeToLive, Clock clock) {
+    this(maxSize, shardCount, timeToLive, clock, null);
+  }
+
+  /**
+   * Public constructor.
+   * @param maxSize the maximum number of entries across all shards.
+   * @param shardCount the number of shards, rounded up to a power of two.
+   * @param timeToLive how long an entry is served before it is reloaded.
+   * @param clock the clock that decides the age of entries.
+   * @param stats where lookups and the latency of loads from the wrapped providers are
+   *   also recorded, or null.
+   */
+  public VerifierCache(int maxSize, int shardCount, Duration timeToLive, Clock clock,
+      @Nullable VerificationStats stats) {
+    Preconditions.checkArgument(shardCount > 0, "shardCount must be positive");
+    Preconditions.checkArgument(maxSize >= shardCount, "maxSize must be at least shardCount");
+    Preconditions.checkArgument(timeToLive.getMillis() > 0, "timeToLive must be positive");
+    int shardCountPowerOfTwo = 1;
+    while (shardCountPowerOfTwo < shardCount) {
+      shardCountPowerOfTwo <<= 1;
+    }
+    this.shards = new Shard[shardCountPowerOfTwo];
+    for (int i = 0; i < shards.length; i++) {
+      shards[i] = new Shard(Math.max(1, maxSize / shards.length));
+    }
+    this.timeToLiveMillis = timeToLive.getMillis();
+    this.clock = Preconditions.checkNotNull(clock);
+    this.stats = stats;
+  }
+
+  /**
+   * Returns the process-wide cache.
+   */
+  public static VerifierCache getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Returns a provider that serves the given provider's verifiers for the given algorithm
+   * from this cache.
+   */
+  public VerifierProvider wrap(SignatureAlgorithm alg, VerifierProvider provider) {
+    Preconditions.checkNotNull(alg);
+    Preconditions.checkNotNull(provider);
+    boolean usesKeyId = provider.usesKeyId();
+    return (issuer, keyId) -> {
+      Key key = new Key(provider, alg, issuer, usesKeyId ? keyId : null);
+      Shard shard = shardFor(key);
+      long now = clock.now().getMillis();
+      CachedVerifiers cached = shard.getFresh(key, now);
+      recordLookup(cached != null);
+      if (cached != null) {
+        return cached.verifiers;
+      }
+      SettableFuture<List<Verifier>> load = SettableFuture.create();
+      ListenableFuture<List<Verifier>> inFlight = loads.putIfAbsent(key, load);
+      if (inFlight != null) {
+        return await(inFlight);
+      }
+      try {
+        // another thread may have completed a load between the lookup and now
+        cached = shard.getFresh(key, now);
+        List<Verifier> verifiers;
+        if (cached != null) {
+          verifiers = cached.verifiers;
+        } else {
+          long start = stats == null ? 0 : System.nanoTime();
+          verifiers = null;
+          try {
+            verifiers = provider.findVerifier(issuer, keyId);
+          } finally {
+            recordFetch(start, verifiers);
+          }
+          verifiers = load(shard, key, verifiers, now);
+        }
+        load.set(verifiers);
+        return verifiers;
+      } catch (RuntimeException | Error e) {
+        load.setException(e);
+        throw e;
+      } finally {
+        loads.remove(key, load);
+      }
+    };
+  }
+
+  /**
+   * Returns a provider that serves the given provider's verifiers for the given algorithm
+   * from this cache.
+   */
+  public AsyncVerifierProvider wrapAsync(SignatureAlgorithm alg, AsyncVerifierProvider provider) {
+    Preconditions.checkNotNull(alg);
+    Preconditions.checkNotNull(provider);
+    boolean usesKeyId = provider.usesKeyId();
+    return (issuer, keyId) -> {
+      Key key = new Key(provider, alg, issuer, usesKeyId ? keyId : null);
+      Shard shard = shardFor(key);
+      long now = clock.now().getMillis();
+      CachedVerifiers cached = shard.getFresh(key, now);
+      recordLookup(cached != null);
+      if (cached != null) {
+        return Futures.immediateFuture(cached.verifiers);
+      }
+      SettableFuture<List<Verifier>> load = SettableFuture.create();
+      ListenableFuture<List<Verifier>> inFlight = loads.putIfAbsent(key, load);
+      if (inFlight != null) {
+        return Futures.nonCancellationPropagating(inFlight);
+      }
+      load.addListener(() -> loads.remove(key, load), MoreExecutors.directExecutor());
+      long start = stats == null ? 0 : System.nanoTime();
+      ListenableFuture<List<Verifier>> lookup;
+      try {
+        lookup = provider.findVerifier(issuer, keyId);
+      } catch (RuntimeException | Error e) {
+        load.setException(e);
+        throw e;
+      }
+      if (stats != null) {
+        lookup.addListener(() -> {
+          List<Verifier> verifiers = null;
+          try {
+            verifiers = Futures.getDone(lookup);
+          } catch (ExecutionException | RuntimeException e) {
+            // recorded as a failed fetch
+          }
+          recordFetch(start, verifiers);
+        }, MoreExecutors.directExecutor());
+      }
+      load.setFuture(Futures.transform(lookup, verifiers -> load(shard, key, verifiers, now),
+          MoreExecutors.directExecutor()));
+      return Futures.nonCancellationPropagating(load);
+    };
+  }
+
+  /**
+   * Returns providers that serve the verifiers of the given providers from this cache.
+   * Providers set on the returned object directly are not cached.
+   */
+  public VerifierProviders wrap(VerifierProviders providers) {
+    Preconditions.checkNotNull(providers);
+    return new VerifierProviders() {
+      @Nullable
+      @Override
+      public VerifierProvider getVerifierProvider(SignatureAlgorithm alg) {
+        VerifierProvider provider = super.getVerifierProvider(alg);
+        if (provider != null) {
+          return provider;
+        }
+        provider = providers.getVerifierProvider(alg);
+        return provider == null ? null : wrap(alg, provider);
+      }
+    };
+  }
+
+  /**
+   * Returns providers that serve the verifiers of the given providers from this cache.
+   */
+  public AsyncVerifierProviders wrapAsync(AsyncVerifierProviders providers) {
+    Preconditions.checkNotNull(providers);
+    return alg -> {
+      AsyncVerifierProvider provider = providers.getVerifierProvider(alg);
+      return provider == null ? null : wrapAsync(alg, provider);
+    };
+  }
+
+  /**
+   * Drops the entries of the issuer whose key ids are not in its current key set.
+   * Each dropped entry counts as a rotation.
+   */
+  public void retainKeyIds(String issuer, Collection<String> keyIds) {
+    Preconditions.checkNotNull(keyIds);
+    for (Shard shard : shards) {
+      rotations.add(shard.removeIf(key ->
+          Objects.equal(issuer, key.issuer) && !keyIds.contains(key.keyId)));
+    }
+  }
+
+  /**
+   * Drops all entries of the issuer, for all algorithms and key ids.
+   */
+  public void invalidateIssuer(String issuer) {
+    for (Shard shard : shards) {
+      shard.removeIf(key -> Objects.equal(issuer, key.issuer));
+    }
+  }
+
+  /**
+   * Drops all entries.
+   */
+  public void invalidateAll() {
+    for (Shard shard : shards) {
+      shard.removeIf(key -> true);
+    }
+  }
+
+  /**
+   * Returns a snapshot of the cache statistics.
+   */
+  public Stats getStats() {
+    int size = 0;
+    for (Shard shard : shards) {
+      synchronized (shard) {
+        size += shard.size();
+      }
+    }
+    return new Stats(size, hits.sum(), misses.sum(), evictions.sum(), rotations.sum());
+  }
+
+  /**
+   * Waits for a load started by another thread and returns its result, rethrowing its
+   * exception.
+   */
+  @Nullable
+  private static List<Verifier> await(ListenableFuture<List<Verifier>> load) {
+    try {
+      return Uninterruptibles.getUninterruptibly(load);
+    } catch (ExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  @Nullable
+  private List<Verifier> load(Shard shard, Key key, @Nullable List<Verifier> verifiers,
+      long now) {
+    if (verifiers == null || verifiers.isEmpty()) {
+      if (shard.evict(key)) {
+        rotations.increment();
+      }
+      return verifiers;
+    }
+    List<Verifier> copy = ImmutableList.copyOf(verifiers);
+    shard.store(key, new CachedVerifiers(copy, now));
+    return copy;
+  }
+
+  private void recordFetch(long startNanos, @Nullable List<Verifier> verifiers) {
+    if (stats != null) {
+      stats.recordKeyFetch(System.nanoTime() - startNanos,
+          verifiers != null && !verifiers.isEmpty());
+    }
+  }
+
+  private void recordLookup(boolean hit) {
+    (hit ? hits : misses).increment();
+    if (stats != null) {
+      stats.recordKeyCacheLookup(hit);
+    }
+    VerificationTrace trace = VerificationTrace.current();
+    if (trace != null) {
+      trace.recordCacheLookup(TRACE_NAME, hit);
+    }
+  }
+
+  private Shard shardFor(Key key) {
+    int h = key.hashCode();
+    return shards[(h ^ (h >>> 16)) & (shards.length - 1)];
+  }
+
+  /**
+   * A snapshot of the statistics of a {@link VerifierCache}.
+   */
+  public static final class Stats {
+    private final int size;
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long rotationCount;
+
+    Stats(int size, long hitCount, long missCount, long evictionCount, long rotationCount) {
+      this.size = size;
+      this.hitCount = hitCount;
+      this.missCount = missCount;
+      this.evictionCount = evictionCount;
+      this.rotationCount = rotationCount;
+    }
+
+    /** Returns the number of cached entries. */
+    public int getSize() {
+      return size;
+    }
+
+    public long getHitCount() {
+      return hitCount;
+    }
+
+    public long getMissCount() {
+      return missCount;
+    }
+
+    /** Returns the fraction of lookups served from the cache, or 0 if there were none. */
+    public double getHitRate() {
+      long lookups = hitCount + missCount;
+      return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    /** Returns the number of entries evicted to make room for others. */
+    public long getEvictionCount() {
+      return evictionCount;
+    }
+
+    /** Returns the number of entries dropped because their key was rotated out. */
+    public long getRotationCount() {
+      return rotationCount;
+    }
+
+    @Override
+    public String toString() {
+      return "VerifierCache.Stats{size=" + size + ", hits=" + hitCount + ", misses=" + missCount
+          + ", evictions=" + evictionCount + ", rotations=" + rotationCount + "}";
+    }
+  }
+
+  /**
+   * A least-recently-used map guarded by its own monitor.
+   */
+  private final class Shard extends LinkedHashMap<Key, CachedVerifiers> {
+    private static final long serialVersionUID = 1L;
+
+    private final int maxSize;
+
+    Shard(int maxSize) {
+      super(16, 0.75f, true);
+      this.maxSize = maxSize;
+    }
+
+    @Nullable
+    synchronized CachedVerifiers getFresh(Key key, long now) {
+      CachedVerifiers entry = get(key);
+      return entry != null && now - entry.loadedMillis < timeToLiveMillis ? entry : null;
+    }
+
+    synchronized void store(Key key, CachedVerifiers entry) {
+      put(key, entry);
+    }
+
+    synchronized boolean evict(Key key) {
+      return remove(key) != null;
+    }
+
+    synchronized int removeIf(Predicate<Key> predicate) {
+      int removed = 0;
+      for (Iterator<Key> it = keySet().iterator(); it.hasNext(); ) {
+        if (predicate.test(it.next())) {
+          it.remove();
+          removed++;
+        }
+      }
+      return removed;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key, CachedVerifiers> eldest) {
+      if (size() > maxSize) {
+        evictions.increment();
+        return true;
+      }
+      return false;
+    }
+  }
+
+  private static final class CachedVerifiers {
+    private final List<Verifier> verifiers;
+    private final long loadedMillis;
+
+    CachedVerifiers(List<Verifier> verifiers, long loadedMillis) {
+      this.verifiers = verifiers;
+      this.loadedMillis = loadedMillis;
+    }
+  }
+
+  private static final class Key {
+    // The wrapped provider, compared by identity: providers are trusted for their own keys.
+    private final Object provider;
+    private final SignatureAlgorithm alg;
+    private final String issuer;
+    private final String keyId;
+
+    Key(Object provider, SignatureAlgorithm alg, String issuer, String keyId) {
+      this.provider = provider;
+      this.alg = alg;
+      this.issuer = issuer;
+      this.keyId = keyId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return provider == other.provider
+          && alg == other.alg
+          && Objects.equal(issuer, other.issuer)
+          && Objects.equal(keyId, other.keyId);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(provider) + Objects.hashCode(alg, issuer, keyId);
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.signatures;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.SignatureException;
+import net.oauth.jsontoken.Base64Url;
+import net.oauth.jsontoken.crypto.SignatureAlgorithm;
+
+/**
+ * An input stream that hashes a request body while it is read, and checks the hash against
+ * the {@link SignedOAuthToken#BODY_HASH body hash} of the token when the end of the body is
+ * reached. If the hashes differ, the read that reaches the end, and every later one, throws
+ * an {@link IOException} caused by a {@link SignatureException}. The body is never buffered,
+ * so callers must not act on it until it has been read to the end.
+ */
+public final class BodyHashVerifyingInputStream extends FilterInputStream {
+
+  private final BodyHasher hasher;
+  private final byte[] expectedHash;
+  private boolean verified;
+  private IOException failure;
+
+  /**
+   * Public constructor.
+   * @param in the request body.
+   * @param signatureAlgorithm the signature algorithm of the token.
+   * @param expectedBodyHash the body hash of the token.
+   * @throws IllegalArgumentException if the body hash is not valid base64url.
+   */
+  public BodyHashVerifyingInputStream(InputStream in, SignatureAlgorithm signatureAlgorithm,
+      String expectedBodyHash) {
+    super(in);
+    this.expectedHash = Base64Url.decode(expectedBodyHash);
+    this.hasher = new BodyHasher(signatureAlgorithm);
+  }
+
+  /**
+   * Public constructor.
+   * @param in the request body.
+   * @param token the verified token that carries the body hash.
+   */
+  public BodyHashVerifyingInputStream(InputStream in, SignedOAuthToken token) {
+    this(in, token.getSignatureAlgorithm(), token.getBodyHash());
+  }
+
+  /**
+   * Returns whether the body has been read to the end and matched the body hash.
+   */
+  public boolean isVerified() {
+    return verified;
+  }
+
+  @Override
+  public int read() throws IOException {
+    int b = in.read();
+    if (b == -1) {
+      verify();
+    } else {
+      hasher.update(new byte[] {(byte) b}, 0, 1);
+    }
+    return b;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    int read = in.read(b, off, len);
+    if (read == -1) {
+      verify();
+    } else {
+      hasher.update(b, off, read);
+    }
+    return read;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    if (n <= 0) {
+      return 0;
+    }
+    // Skipped bytes must still be hashed.
+    byte[] buffer = new byte[(int) Math.min(n, 8192)];
+    long skipped = 0;
+    while (skipped < n) {
+      int read = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+      if (read == -1) {
+        break;
+      }
+      skipped += read;
+    }
+    return skipped;
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  @Override
+  public synchronized void mark(int readlimit) {
+  }
+
+  @Override
+  public synchronized void reset() throws IOException {
+    throw new IOException("mark/reset not supported");
+  }
+
+  private void verify() throws IOException {
+    if (failure != null) {
+      throw failure;
+    }
+    if (verified) {
+      return;
+    }
+    // MessageDigest.isEqual compares in constant time.
+    if (MessageDigest.isEqual(expectedHash, hasher.digest())) {
+      verified = true;
+    } else {
+      failure = new IOException("request body does not match body_hash",
+          new SignatureException("body_hash mismatch"));
+      throw failure;
+    }
+  }
+}
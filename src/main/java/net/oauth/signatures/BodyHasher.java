@@ -0,0 +1,161 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.signatures;
+
+import com.google.common.base.Preconditions;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import net.oauth.jsontoken.Base64Url;
+import net.oauth.jsontoken.crypto.SignatureAlgorithm;
+
+/**
+ * Computes the {@link SignedOAuthToken#BODY_HASH body hash} of a request body incrementally,
+ * so that large or streamed bodies need not be held in memory. The body is hashed with the
+ * hash algorithm of the token's signature algorithm.
+ *
+ * <p>A hasher is not thread-safe and is used for a single body. Its {@link MessageDigest} is
+ * borrowed from a shared pool and returned by {@link #digest()} or {@link #finish()}, after
+ * which the hasher can't be used anymore.
+ */
+public final class BodyHasher {
+
+  private static final int BUFFER_SIZE = 8192;
+  private static final int MAX_POOLED_DIGESTS = 16;
+
+  private static final ConcurrentMap<String, BlockingQueue<MessageDigest>> POOLS =
+      new ConcurrentHashMap<>();
+
+  private final String hashAlgorithm;
+  private MessageDigest digest;
+
+  /**
+   * Public constructor.
+   * @param signatureAlgorithm the signature algorithm of the token that carries the hash.
+   * @throws IllegalStateException if the platform is missing the hash algorithm.
+   */
+  public BodyHasher(SignatureAlgorithm signatureAlgorithm) {
+    this.hashAlgorithm = signatureAlgorithm.getHashAlgorithm();
+    this.digest = borrow(hashAlgorithm);
+  }
+
+  /**
+   * Returns the body hash of a complete body.
+   */
+  public static String hash(SignatureAlgorithm signatureAlgorithm, byte[] body) {
+    Preconditions.checkNotNull(body);
+    return new BodyHasher(signatureAlgorithm).update(body, 0, body.length).finish();
+  }
+
+  /**
+   * Adds {@code length} bytes of {@code source}, starting at {@code offset}, to the hash.
+   */
+  public BodyHasher update(byte[] source, int offset, int length) {
+    checkNotFinished().update(source, offset, length);
+    return this;
+  }
+
+  /**
+   * Adds the remaining bytes of the buffer to the hash, leaving the buffer at its limit.
+   */
+  public BodyHasher update(ByteBuffer buffer) {
+    checkNotFinished().update(buffer);
+    return this;
+  }
+
+  /**
+   * Adds the bytes of the stream, up to its end, to the hash. The stream is not closed.
+   */
+  public BodyHasher update(InputStream in) throws IOException {
+    MessageDigest digest = checkNotFinished();
+    byte[] buffer = new byte[BUFFER_SIZE];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      digest.update(buffer, 0, read);
+    }
+    return this;
+  }
+
+  /**
+   * Adds the bytes of the channel, up to its end, to the hash. The channel is not closed.
+   */
+  public BodyHasher update(ReadableByteChannel channel) throws IOException {
+    MessageDigest digest = checkNotFinished();
+    ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    while (channel.read(buffer) != -1) {
+      buffer.flip();
+      digest.update(buffer);
+      buffer.clear();
+    }
+    return this;
+  }
+
+  /**
+   * Completes the hash and returns the raw digest.
+   */
+  public byte[] digest() {
+    MessageDigest digest = checkNotFinished();
+    this.digest = null;
+    byte[] hash = digest.digest();
+    release(hashAlgorithm, digest);
+    return hash;
+  }
+
+  /**
+   * Completes the hash and returns it encoded as in the {@link SignedOAuthToken#BODY_HASH}
+   * parameter.
+   */
+  public String finish() {
+    return Base64Url.encode(digest());
+  }
+
+  private MessageDigest checkNotFinished() {
+    if (digest == null) {
+      throw new IllegalStateException("body hash is already complete");
+    }
+    return digest;
+  }
+
+  private static MessageDigest borrow(String hashAlgorithm) {
+    MessageDigest digest = pool(hashAlgorithm).poll();
+    if (digest != null) {
+      return digest;
+    }
+    try {
+      return MessageDigest.getInstance(hashAlgorithm);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("platform is missing hash algorithm: " + hashAlgorithm);
+    }
+  }
+
+  private static void release(String hashAlgorithm, MessageDigest digest) {
+    // digest() has reset the digest; if the pool is full, it's left to the garbage collector.
+    pool(hashAlgorithm).offer(digest);
+  }
+
+  private static BlockingQueue<MessageDigest> pool(String hashAlgorithm) {
+    return POOLS.computeIfAbsent(
+        hashAlgorithm, alg -> new ArrayBlockingQueue<>(MAX_POOLED_DIGESTS));
+  }
+}
@@ -0,0 +1,413 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.signatures;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.security.SignatureException;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+import net.oauth.jsontoken.Clock;
+import net.oauth.jsontoken.SystemClock;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+
+/**
+ * Supplies authorization headers from pools of pre-signed {@link SignedOAuthToken}s, so that
+ * clients whose tokens don't depend on the request (e.g., service-to-service calls) keep the
+ * signing off the critical path of each call.
+ *
+ * <p>There is one pool per audience and scope. Each token is served up to a maximum number
+ * of times, and not at all once it is within the refresh margin of its expiration. Taking a
+ * token from a pool that has fallen below its size refills the pool in the background; a
+ * call that finds its pool empty signs a token inline. Each pool is also refilled in the
+ * background when its earliest expiring token enters the refresh margin, so that pools of
+ * idle audiences don't go stale.
+ *
+ * <p>Tokens carry a nonce, so the factory must create a new token on each call, and should
+ * set its expiration. Tokens without an expiration are served until used up.
+ */
+public final class PreMintedTokenSupplier {
+
+  /**
+   * Creates the unsigned tokens of a pool.
+   */
+  public interface TokenFactory {
+    /**
+     * Returns a new token, with its own nonce, for the audience and scope.
+     */
+    SignedOAuthToken newToken(String audience, String scope);
+  }
+
+  public static final int DEFAULT_POOL_SIZE = 4;
+  public static final int DEFAULT_MAX_USES = 1;
+  public static final Duration DEFAULT_REFRESH_MARGIN = Duration.standardSeconds(30);
+
+  private static final Executor DEFAULT_EXECUTOR =
+      Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true)
+          .setNameFormat("jsontoken-token-refill-%d").build());
+  private static final ScheduledExecutorService DEFAULT_SCHEDULER =
+      Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+          .setNameFormat("jsontoken-token-refresh-%d").build());
+
+  private final TokenFactory factory;
+  private final int poolSize;
+  private final int maxUses;
+  private final long refreshMarginMillis;
+  private final Clock clock;
+  private final Executor executor;
+  private final ScheduledExecutorService scheduler;
+  private final ConcurrentMap<PoolKey, Pool> pools = new ConcurrentHashMap<>();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder mints = new LongAdder();
+  private final LongAdder discarded = new LongAdder();
+  private final LongAdder refillFailures = new LongAdder();
+
+  /**
+   * Public constructor using the default settings, the system clock, and shared daemon
+   * threads for refills.
+   * @param factory creates the tokens.
+   */
+  public PreMintedTokenSupplier(TokenFactory factory) {
+    this(factory, DEFAULT_POOL_SIZE, DEFAULT_MAX_USES, DEFAULT_REFRESH_MARGIN,
+        new SystemClock(Duration.ZERO), DEFAULT_EXECUTOR);
+  }
+
+  /**
+   * Public constructor.
+   * @param factory creates the tokens.
+   * @param poolSize the number of tokens kept ready per audience and scope.
+   * @param maxUses the number of times each token is served; 1 for single-use tokens.
+   * @param refreshMargin how long before its expiration a token is no longer served.
+   * @param clock the clock that decides whether tokens are within the refresh margin.
+   * @param executor runs the refills.
+   */
+  public PreMintedTokenSupplier(TokenFactory factory, int poolSize, int maxUses,
+      Duration refreshMargin, Clock clock, Executor executor) {
+    this(factory, poolSize, maxUses, refreshMargin, clock, executor, DEFAULT_SCHEDULER);
+  }
+
+  /**
+   * Public constructor.
+   * @param factory creates the tokens.
+   * @param poolSize the number of tokens kept ready per audience and scope.
+   * @param maxUses the number of times each token is served; 1 for single-use tokens.
+   * @param refreshMargin how long before its expiration a token is no longer served.
+   * @param clock the clock that decides whether tokens are within the refresh margin.
+   * @param executor runs the refills.
+   * @param scheduler starts the refill of each pool when its earliest expiring token enters
+   *   the refresh margin.
+   */
+  public PreMintedTokenSupplier(TokenFactory factory, int poolSize, int maxUses,
+      Duration refreshMargin, Clock clock, Executor executor,
+      ScheduledExecutorService scheduler) {
+    Preconditions.checkArgument(poolSize > 0, "poolSize must be positive");
+    Preconditions.checkArgument(maxUses > 0, "maxUses must be positive");
+    Preconditions.checkArgument(refreshMargin.getMillis() >= 0,
+        "refreshMargin must not be negative");
+    this.factory = Preconditions.checkNotNull(factory);
+    this.poolSize = poolSize;
+    this.maxUses = maxUses;
+    this.refreshMarginMillis = refreshMargin.getMillis();
+    this.clock = Preconditions.checkNotNull(clock);
+    this.executor = Preconditions.checkNotNull(executor);
+    this.scheduler = Preconditions.checkNotNull(scheduler);
+  }
+
+  /**
+   * Returns an authorization header carrying a pre-signed token for the audience and scope,
+   * or one signed inline if the pool holds no usable token.
+   * @throws SignatureException if the token must be signed inline and signing fails.
+   */
+  public String getAuthorizationHeader(String audience, String scope)
+      throws SignatureException {
+    PoolKey key = new PoolKey(audience, scope);
+    Pool pool = pools.computeIfAbsent(key, k -> new Pool());
+    String header = pool.take(now() + refreshMarginMillis);
+    if (header != null) {
+      hits.increment();
+    } else {
+      misses.increment();
+      PreMinted minted = mint(key);
+      if (minted.usesLeft > 1) {
+        minted.usesLeft--;
+        pool.offer(minted);
+        scheduleRefresh(key, pool);
+      }
+      header = minted.header;
+    }
+    refillInBackground(key, pool);
+    return header;
+  }
+
+  /**
+   * Fills the pool of the audience and scope on the calling thread, e.g., before the first
+   * call.
+   * @throws SignatureException if signing fails.
+   */
+  public void prefill(String audience, String scope) throws SignatureException {
+    PoolKey key = new PoolKey(audience, scope);
+    refill(key, pools.computeIfAbsent(key, k -> new Pool()));
+  }
+
+  /**
+   * Returns a snapshot of the statistics of this supplier.
+   */
+  public Stats getStats() {
+    return new Stats(hits.sum(), misses.sum(), mints.sum(), discarded.sum(),
+        refillFailures.sum());
+  }
+
+  private void refillInBackground(PoolKey key, Pool pool) {
+    if (pool.needsRefill()) {
+      startRefill(key, pool);
+    }
+  }
+
+  private void startRefill(PoolKey key, Pool pool) {
+    if (!pool.refilling.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      executor.execute(() -> {
+        try {
+          refill(key, pool);
+        } catch (SignatureException | RuntimeException e) {
+          refillFailures.increment();
+        } finally {
+          pool.refilling.set(false);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      pool.refilling.set(false);
+    }
+  }
+
+  private void refill(PoolKey key, Pool pool) throws SignatureException {
+    try {
+      pool.discardStale(now() + refreshMarginMillis);
+      while (pool.needsRefill()) {
+        pool.offer(mint(key));
+      }
+    } finally {
+      scheduleRefresh(key, pool);
+    }
+  }
+
+  /**
+   * Schedules the refill of the pool for when its earliest expiring token enters the refresh
+   * margin, unless a refill is already scheduled by then or that time has passed.
+   */
+  private void scheduleRefresh(PoolKey key, Pool pool) {
+    synchronized (pool) {
+      long earliest = pool.earliestExpirationMillis();
+      if (earliest == Long.MAX_VALUE) {
+        return;
+      }
+      long refreshAtMillis = earliest - refreshMarginMillis;
+      long delayMillis = refreshAtMillis - now();
+      if (delayMillis <= 0) {
+        // Tokens signed within the margin are stale from the start; refilling on a
+        // schedule would only spin. The pool is refilled when it's next used.
+        return;
+      }
+      if (pool.refresh != null) {
+        if (pool.refreshAtMillis <= refreshAtMillis) {
+          return;
+        }
+        pool.refresh.cancel(false);
+        pool.refresh = null;
+      }
+      try {
+        pool.refresh = scheduler.schedule(() -> {
+          pool.refreshed(refreshAtMillis);
+          startRefill(key, pool);
+        }, delayMillis, TimeUnit.MILLISECONDS);
+        pool.refreshAtMillis = refreshAtMillis;
+      } catch (RejectedExecutionException e) {
+        // The pool is refilled when it's next used.
+      }
+    }
+  }
+
+  private PreMinted mint(PoolKey key) throws SignatureException {
+    SignedOAuthToken token = factory.newToken(key.audience, key.scope);
+    String header = token.getAuthorizationHeader();
+    mints.increment();
+    Instant expiration = token.getExpiration();
+    return new PreMinted(header,
+        expiration == null ? Long.MAX_VALUE : expiration.getMillis(), maxUses);
+  }
+
+  private long now() {
+    return clock.now().getMillis();
+  }
+
+  /**
+   * A snapshot of the statistics of a {@link PreMintedTokenSupplier}.
+   */
+  public static final class Stats {
+    private final long hitCount;
+    private final long missCount;
+    private final long mintCount;
+    private final long discardedCount;
+    private final long refillFailureCount;
+
+    Stats(long hitCount, long missCount, long mintCount, long discardedCount,
+        long refillFailureCount) {
+      this.hitCount = hitCount;
+      this.missCount = missCount;
+      this.mintCount = mintCount;
+      this.discardedCount = discardedCount;
+      this.refillFailureCount = refillFailureCount;
+    }
+
+    /** Returns the number of headers served from a pool. */
+    public long getHitCount() {
+      return hitCount;
+    }
+
+    /** Returns the number of headers signed inline. */
+    public long getMissCount() {
+      return missCount;
+    }
+
+    /** Returns the number of tokens signed, inline or by refills. */
+    public long getMintCount() {
+      return mintCount;
+    }
+
+    /** Returns the number of tokens dropped within the refresh margin of their expiration. */
+    public long getDiscardedCount() {
+      return discardedCount;
+    }
+
+    public long getRefillFailureCount() {
+      return refillFailureCount;
+    }
+
+    @Override
+    public String toString() {
+      return "PreMintedTokenSupplier.Stats{hits=" + hitCount + ", misses=" + missCount
+          + ", mints=" + mintCount + ", discarded=" + discardedCount
+          + ", refillFailures=" + refillFailureCount + "}";
+    }
+  }
+
+  private static final class PreMinted {
+    private final String header;
+    private final long expirationMillis;
+    // Guarded by the pool holding the token.
+    private int usesLeft;
+
+    PreMinted(String header, long expirationMillis, int usesLeft) {
+      this.header = header;
+      this.expirationMillis = expirationMillis;
+      this.usesLeft = usesLeft;
+    }
+  }
+
+  private final class Pool {
+    // Earliest expiring first. Tokens signed inline and offered back can expire after
+    // tokens signed later by a refill, so the order they were signed in doesn't do.
+    private final PriorityQueue<PreMinted> tokens =
+        new PriorityQueue<>(Comparator.comparingLong(token -> token.expirationMillis));
+    private final AtomicBoolean refilling = new AtomicBoolean();
+    // Guarded by this pool.
+    @Nullable private ScheduledFuture<?> refresh;
+    private long refreshAtMillis;
+
+    @Nullable
+    synchronized String take(long usableUntilMillis) {
+      discardStale(usableUntilMillis);
+      PreMinted head = tokens.peek();
+      if (head == null) {
+        return null;
+      }
+      if (--head.usesLeft == 0) {
+        tokens.poll();
+      }
+      return head.header;
+    }
+
+    /** Drops every token that expires by the given time, not just the first one. */
+    synchronized void discardStale(long usableUntilMillis) {
+      while (!tokens.isEmpty() && tokens.peek().expirationMillis <= usableUntilMillis) {
+        tokens.poll();
+        discarded.increment();
+      }
+    }
+
+    synchronized void offer(PreMinted token) {
+      tokens.add(token);
+    }
+
+    synchronized long earliestExpirationMillis() {
+      PreMinted head = tokens.peek();
+      return head == null ? Long.MAX_VALUE : head.expirationMillis;
+    }
+
+    /** Clears the scheduled refresh, unless another one has replaced it. */
+    synchronized void refreshed(long atMillis) {
+      if (refresh != null && refreshAtMillis == atMillis) {
+        refresh = null;
+      }
+    }
+
+    synchronized boolean needsRefill() {
+      return tokens.size() < poolSize;
+    }
+  }
+
+  private static final class PoolKey {
+    private final String audience;
+    private final String scope;
+
+    PoolKey(String audience, String scope) {
+      this.audience = audience;
+      this.scope = scope;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof PoolKey)) {
+        return false;
+      }
+      PoolKey other = (PoolKey) o;
+      return Objects.equal(audience, other.audience) && Objects.equal(scope, other.scope);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(audience, scope);
+    }
+  }
+}
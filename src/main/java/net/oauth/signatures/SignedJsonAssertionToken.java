@@ -24,6 +24,7 @@ import net.oauth.jsontoken.Clock;
 import net.oauth.jsontoken.JsonToken;
 import net.oauth.jsontoken.crypto.Signer;
 import org.joda.time.Duration;
+import org.joda.time.Instant;
 
 import com.google.common.base.Preconditions;
 import com.google.gson.JsonPrimitive;
@@ -83,11 +84,12 @@ public class SignedJsonAssertionToken extends JsonToken {
   }
   
   public String getJsonAssertionPostBody() throws SignatureException {
-    StringBuffer buffer = new StringBuffer();
+    StringBuilder buffer = new StringBuilder();
     buffer.append(GRANT_TYPE).append("=").append(GRANT_TYPE_VALUE);
     buffer.append("&");
     try {
-      buffer.append(JWT).append("=").append(serializeAndSign());
+      buffer.append(JWT).append("=");
+      serializeAndSign(buffer);
       return URLEncoder.encode(buffer.toString(), "UTF-8");
     } catch (UnsupportedEncodingException e) {
       throw new SignatureException("unsupported encoding");
@@ -100,13 +102,15 @@ public class SignedJsonAssertionToken extends JsonToken {
   }
   
   @Override
-  protected String computeSignatureBaseString() {
-    if (getIssuedAt() == null) {
-      setIssuedAt(clock.now());
+  protected void appendSignatureBaseString(StringBuilder destination) {
+    Instant issuedAt = getIssuedAt();
+    if (issuedAt == null) {
+      issuedAt = clock.now();
+      setIssuedAt(issuedAt);
     }
     if (getExpiration() == null) {
-      setExpiration(getIssuedAt().plus(Duration.standardMinutes(DEFAULT_LIFETIME_IN_MINS)));
+      setExpiration(issuedAt.plus(Duration.standardMinutes(DEFAULT_LIFETIME_IN_MINS)));
     }
-    return super.computeSignatureBaseString();
+    super.appendSignatureBaseString(destination);
   }
 }
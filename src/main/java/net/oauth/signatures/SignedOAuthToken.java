@@ -16,12 +16,10 @@
  */
 package net.oauth.signatures;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.security.SignatureException;
 
-import org.apache.commons.codec.binary.Base64;
-
 import net.oauth.jsontoken.Clock;
 import net.oauth.jsontoken.JsonToken;
 import net.oauth.jsontoken.crypto.Signer;
@@ -71,7 +69,33 @@ public class SignedOAuthToken extends JsonToken {
    * @throws IllegalStateException if the header does not exist
    */
   public void setRequestBody(byte[] body) {
-    setParam(BODY_HASH, getBodyHash(body));
+    setParam(BODY_HASH, BodyHasher.hash(getSignatureAlgorithm(), body));
+  }
+
+  /**
+   * Sets the body hash by reading the request body to its end, without buffering it.
+   * @throws IllegalArgumentException if the signature algorithm is not supported
+   * @throws IllegalStateException if the header does not exist
+   */
+  public void setRequestBody(InputStream body) throws IOException {
+    setRequestBody(newBodyHasher().update(body));
+  }
+
+  /**
+   * Sets the body hash computed by a hasher from {@link #newBodyHasher()}, which is
+   * completed by this call.
+   */
+  public void setRequestBody(BodyHasher hasher) {
+    setParam(BODY_HASH, hasher.finish());
+  }
+
+  /**
+   * Returns a hasher for computing the body hash of this token incrementally.
+   * @throws IllegalArgumentException if the signature algorithm is not supported
+   * @throws IllegalStateException if the header does not exist
+   */
+  public BodyHasher newBodyHasher() {
+    return new BodyHasher(getSignatureAlgorithm());
   }
 
   public String getOAuthToken() {
@@ -91,33 +115,18 @@ public class SignedOAuthToken extends JsonToken {
   }
 
   public String getAuthorizationHeader() throws SignatureException {
-    return AUTH_METHOD + " " + SIGNED_TOKEN_PARAM + "=" + serializeAndSign();
+    StringBuilder header = new StringBuilder(512)
+        .append(AUTH_METHOD).append(' ').append(SIGNED_TOKEN_PARAM).append('=');
+    serializeAndSign(header);
+    return header.toString();
   }
 
   @Override
-  public String serializeAndSign() throws SignatureException {
+  public void serializeAndSign(StringBuilder destination) throws SignatureException {
     Preconditions.checkNotNull(getOAuthToken(), "must set OAuth token");
     Preconditions.checkNotNull(getNonce(), "must set nonce");
     Preconditions.checkNotNull(getAudience(), "must set Audience");
     Preconditions.checkNotNull(getMethod(), "must set method");
-    return super.serializeAndSign();
-  }
-
-  /**
-   * @throws IllegalArgumentException if the signature algorithm is not supported
-   * @throws IllegalStateException if the header does not exist
-   */
-  private String getBodyHash(byte[] requestBody) {
-    Preconditions.checkNotNull(requestBody);
-    String hashAlg = getSignatureAlgorithm().getHashAlgorithm();
-    MessageDigest digest;
-    try {
-      digest = MessageDigest.getInstance(hashAlg);
-    } catch (NoSuchAlgorithmException e) {
-      throw new IllegalStateException("platform is missing hash algorithm: " + hashAlg);
-    }
-    byte[] hash = digest.digest(requestBody);
-    return Base64.encodeBase64URLSafeString(hash);
+    super.serializeAndSign(destination);
   }
 }
-
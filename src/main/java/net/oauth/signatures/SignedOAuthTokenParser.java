@@ -17,6 +17,7 @@
  */
 package net.oauth.signatures;
 
+import java.io.IOException;
 import java.security.SignatureException;
 import java.util.Enumeration;
 
@@ -146,6 +147,30 @@ public class SignedOAuthTokenParser {
     return token;
   }
 
+  /**
+   * Returns the body of the request, checked against the body hash of its token while it is
+   * read. The body is hashed as it streams through and is never held in memory. Reading the
+   * end of the body fails with an {@link IOException} caused by a {@link SignatureException}
+   * if it doesn't match the body hash, so the request must not be acted on before the body
+   * has been read to the end.
+   * @param request the request the token was parsed from.
+   * @param token the token returned by {@link #parseToken(HttpServletRequest)}.
+   * @return the verifying body stream.
+   * @throws SignatureException if the token has no body hash.
+   * @throws IOException if the body of the request can't be opened.
+   */
+  public BodyHashVerifyingInputStream getVerifiedBody(HttpServletRequest request,
+      SignedOAuthToken token) throws SignatureException, IOException {
+    if (token.getParamAsPrimitive(SignedOAuthToken.BODY_HASH) == null) {
+      throw new SignatureException("missing body_hash in token");
+    }
+    try {
+      return new BodyHashVerifyingInputStream(request.getInputStream(), token);
+    } catch (IllegalArgumentException e) {
+      throw new SignatureException("body_hash is not valid base64url", e);
+    }
+  }
+
   private String getAuthHeader(HttpServletRequest request) {
     @SuppressWarnings("unchecked")
     Enumeration<String> authHeaders = request.getHeaders("Authorization");
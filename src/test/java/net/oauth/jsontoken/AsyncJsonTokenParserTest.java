@@ -135,6 +135,34 @@ public class AsyncJsonTokenParserTest extends JsonTokenTestBase {
     assertEquals("world", token.getParamAsPrimitive("hello").getAsString());
   }
 
+  public void testVerifyAndDeserialize_signatureFirst() throws Exception {
+    AsyncJsonTokenParser parser = new AsyncJsonTokenParser(clock, asyncLocators, executor,
+        ParserOptions.DEFAULT.withSignatureFirst(true), new AlwaysPassChecker());
+    JsonToken token = parser.verifyAndDeserialize(TOKEN_STRING).get();
+    assertHeader(token);
+    assertPayload(token);
+
+    assertFailsWithCause(
+        SignatureException.class,
+        () -> parser.verifyAndDeserialize(TOKEN_STRING_BAD_SIG).get()
+    );
+    assertFailsWithCause(
+        JsonParseException.class,
+        () -> parser.verifyAndDeserialize(TOKEN_STRING_CORRUPT_PAYLOAD).get()
+    );
+    assertFailsWithCause(
+        IllegalArgumentException.class,
+        () -> parser.verifyAndDeserialize(TOKEN_STRING_UNSUPPORTED_SIGNATURE_ALGORITHM).get()
+    );
+
+    // a token without an issuer is deserialized before its verifiers are looked up
+    AsyncJsonTokenParser rubyParser = new AsyncJsonTokenParser(clock, asyncLocatorsFromRuby,
+        executor, ParserOptions.DEFAULT.withSignatureFirst(true), new AlwaysPassChecker());
+    assertEquals("world",
+        rubyParser.verifyAndDeserialize(TOKEN_FROM_RUBY).get().getParamAsPrimitive("hello")
+            .getAsString());
+  }
+
   private AsyncJsonTokenParser getAsyncJsonTokenParser() {
     return new AsyncJsonTokenParser(clock, asyncLocators, executor, new AlwaysPassChecker());
   }
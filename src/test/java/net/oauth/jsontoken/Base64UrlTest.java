@@ -0,0 +1,89 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import junit.framework.TestCase;
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * Unit tests for {@link Base64Url}.
+ */
+public class Base64UrlTest extends TestCase {
+
+  public void testMatchesCommonsCodec() {
+    Random random = new Random(42);
+    for (int length = 0; length < 300; length++) {
+      byte[] bytes = new byte[length];
+      random.nextBytes(bytes);
+      String expected = Base64.encodeBase64URLSafeString(bytes);
+
+      assertEquals(expected, Base64Url.encode(bytes));
+      assertEquals(expected.length(), Base64Url.encodedLength(length));
+      assertArrayEquals(bytes, Base64Url.decode(expected));
+    }
+  }
+
+  public void testEncodeUtf8MatchesStringBytes() {
+    String[] sources = {
+        "", "a", "ab", "abc", "{\"hello\":\"world\"}", "w\u00f6rld", "\u20ac100",
+        "\ud83c\udf0d globe", "unpaired \ud83c surrogate", "trailing \udf0d", "\ud83c",
+    };
+    for (String source : sources) {
+      StringBuilder builder = new StringBuilder();
+      Base64Url.encodeUtf8(source, builder);
+      assertEquals(source, Base64Url.encode(source.getBytes(StandardCharsets.UTF_8)),
+          builder.toString());
+    }
+  }
+
+  public void testRanges() {
+    byte[] bytes = "xxhello worldxx".getBytes();
+    StringBuilder builder = new StringBuilder("prefix.");
+    Base64Url.encode(bytes, 2, 11, builder);
+    assertEquals("prefix.aGVsbG8gd29ybGQ", builder.toString());
+
+    char[] chars = new char[20];
+    assertEquals(15, Base64Url.encode(bytes, 2, 11, chars, 1));
+    assertEquals("aGVsbG8gd29ybGQ", new String(chars, 1, 15));
+
+    byte[] decoded = new byte[13];
+    assertEquals(11, Base64Url.decode(builder, 7, builder.length(), decoded, 2));
+    assertEquals("hello world", new String(decoded, 2, 11));
+  }
+
+  public void testRejectsNonCanonicalInput() {
+    String[] invalid = {
+        "aGVsbG8=",          // padding
+        "aGVs bG8",          // whitespace
+        "aGVs\nbG8",         // line break
+        "aGVs+G8",           // standard base64 alphabet
+        "aGVs/G8",
+        "aGVsb",             // impossible length
+        "aGVsbG9",           // non-zero trailing bits
+        "aGVsbH",
+        "aGVséG8",      // non-ASCII
+    };
+    for (String encoded : invalid) {
+      assertThrows(encoded, IllegalArgumentException.class, () -> Base64Url.decode(encoded));
+    }
+  }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.collect.Lists;
+import com.google.gson.JsonObject;
+import java.util.ArrayList;
+import java.security.SignatureException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.oauth.jsontoken.crypto.HmacSHA256Signer;
+import net.oauth.jsontoken.crypto.SignatureAlgorithm;
+import net.oauth.jsontoken.crypto.Signer;
+import org.joda.time.Duration;
+
+public class BatchTokenMinterTest extends JsonTokenTestBase {
+
+  private ExecutorService executor;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    executor = Executors.newFixedThreadPool(3);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    executor.shutdownNow();
+    super.tearDown();
+  }
+
+  public void testMint() throws Exception {
+    BatchTokenMinter minter = new BatchTokenMinter(
+        new HmacSHA256Signer("google.com", "key2", SYMMETRIC_KEY),
+        Duration.standardMinutes(5), clock, executor, 4);
+    List<JsonObject> claimSets = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      JsonObject claims = new JsonObject();
+      claims.addProperty("sub", "user" + i);
+      claimSets.add(claims);
+    }
+
+    List<String> tokens = minter.mint(claimSets);
+    assertEquals(10, tokens.size());
+    JsonTokenParser parser = new JsonTokenParser(clock, locators, new AlwaysPassChecker());
+    for (int i = 0; i < tokens.size(); i++) {
+      JsonToken token = parser.verifyAndDeserialize(tokens.get(i));
+      assertEquals("google.com", token.getIssuer());
+      assertEquals("user" + i, token.getParamAsPrimitive("sub").getAsString());
+      assertEquals(clock.now(), token.getIssuedAt());
+      assertEquals(clock.now().plus(Duration.standardMinutes(5)), token.getExpiration());
+    }
+  }
+
+  public void testMint_claimsOverrideDefaults() throws Exception {
+    BatchTokenMinter minter = new BatchTokenMinter(
+        new HmacSHA256Signer("google.com", "key2", SYMMETRIC_KEY),
+        Duration.standardMinutes(5), clock, executor, 2);
+    JsonObject claims = new JsonObject();
+    claims.addProperty(JsonToken.EXPIRATION, clock.now().getMillis() / 1000 + 30);
+
+    JsonToken token = naiveDeserialize(minter.mint(Lists.newArrayList(claims)).get(0));
+    assertEquals(clock.now().plus(Duration.standardSeconds(30)), token.getExpiration());
+    assertTrue(minter.mint(new ArrayList<>()).isEmpty());
+  }
+
+  public void testFailedBatchCancelsPendingTasks() throws Exception {
+    AtomicInteger signed = new AtomicInteger();
+    Signer failing = new Signer() {
+      @Override
+      public String getKeyId() {
+        return "key2";
+      }
+
+      @Override
+      public String getIssuer() {
+        return "google.com";
+      }
+
+      @Override
+      public SignatureAlgorithm getSignatureAlgorithm() {
+        return SignatureAlgorithm.HS256;
+      }
+
+      @Override
+      public byte[] sign(byte[] source) throws SignatureException {
+        signed.incrementAndGet();
+        throw new SignatureException("no key");
+      }
+    };
+    List<Runnable> queued = new ArrayList<>();
+    List<JsonObject> claimSets = Lists.newArrayList(new JsonObject(), new JsonObject());
+
+    BatchTokenMinter minter =
+        new BatchTokenMinter(failing, Duration.standardMinutes(5), clock, queued::add, 2);
+    assertThrows(SignatureException.class, () -> minter.mint(claimSets));
+    assertEquals(1, queued.size());
+    queued.get(0).run();
+    assertEquals(1, signed.get());
+
+    // the executor takes the first task, then rejects the second
+    queued.clear();
+    Executor rejecting = task -> {
+      if (!queued.isEmpty()) {
+        throw new RejectedExecutionException();
+      }
+      queued.add(task);
+    };
+    BatchTokenMinter busy = new BatchTokenMinter(
+        new HmacSHA256Signer("google.com", "key2", SYMMETRIC_KEY),
+        Duration.standardMinutes(5), clock, rejecting, 3);
+    assertThrows(RejectedExecutionException.class,
+        () -> busy.mint(Lists.newArrayList(new JsonObject(), new JsonObject(), new JsonObject())));
+    assertTrue(((Future<?>) queued.get(0)).isCancelled());
+  }
+
+  public void testInvalidArguments() throws Exception {
+    HmacSHA256Signer signer = new HmacSHA256Signer("google.com", "key2", SYMMETRIC_KEY);
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new BatchTokenMinter(signer, Duration.ZERO, clock, executor, 1)
+    );
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new BatchTokenMinter(signer, Duration.standardMinutes(1), clock, executor, 0)
+    );
+  }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.oauth.jsontoken.crypto.HmacSHA256Signer;
+import net.oauth.jsontoken.crypto.SignatureAlgorithm;
+import org.joda.time.Duration;
+
+/**
+ * Unit tests for {@link ClaimInterner} and its use by the parsers.
+ */
+public class ClaimInternerTest extends JsonTokenTestBase {
+  private static final int SIGNATURE_ALGORITHM_COUNT = SignatureAlgorithm.values().length;
+
+  public void testInternAndBound() {
+    ClaimInterner interner = new ClaimInterner(SIGNATURE_ALGORITHM_COUNT + 1);
+    String issuer = new String("google.com");
+    assertSame(issuer, interner.add(issuer));
+    assertSame(issuer, interner.intern(new String("google.com")));
+    assertSame(issuer, interner.add(new String("google.com")));
+
+    // The table is full, so new values are returned as they are and not remembered.
+    String other = new String("example.com");
+    assertSame(other, interner.add(other));
+    assertNotSame(other, interner.intern(new String("example.com")));
+    assertEquals(SIGNATURE_ALGORITHM_COUNT + 1, interner.size());
+    assertNull(interner.intern(null));
+  }
+
+  public void testParsedTokensShareIssuer() throws Exception {
+    HmacSHA256Signer signer = new HmacSHA256Signer("google.com", "key2", SYMMETRIC_KEY);
+    ClaimInterner interner = new ClaimInterner(ClaimInterner.DEFAULT_MAX_SIZE);
+    interner.add("google.com");
+    interner.add("http://www.google.com");
+    interner.add("key2");
+    JsonTokenParser parser = new JsonTokenParser(clock, locators,
+        ParserOptions.DEFAULT.withInterner(interner), new AlwaysPassChecker());
+
+    List<JsonToken> tokens = new ArrayList<JsonToken>();
+    for (int i = 0; i < 1000; i++) {
+      JsonToken token = new JsonToken(signer, clock);
+      token.setParam("n", i);
+      token.setAudience("http://www.google.com");
+      token.setIssuedAt(clock.now());
+      token.setExpiration(clock.now().plus(Duration.standardSeconds(1)));
+      tokens.add(parser.verifyAndDeserialize(token.serializeAndSign()));
+    }
+
+    String issuer = interner.intern("google.com");
+    String audience = interner.intern("http://www.google.com");
+    String keyId = interner.intern("key2");
+    for (JsonToken token : tokens) {
+      assertSame(issuer, token.getIssuer());
+      assertSame(issuer, token.getClaims().getIssuer());
+      assertSame(audience, token.getAudience());
+      assertSame(keyId, token.getKeyId());
+    }
+    assertSame(interner.intern("HS256"),
+        tokens.get(0).getHeader().get(JsonToken.ALGORITHM_HEADER).getAsString());
+    assertEquals(SIGNATURE_ALGORITHM_COUNT + 3, interner.size());
+  }
+
+  public void testParserWithoutInternerLeavesTableAlone() throws Exception {
+    HmacSHA256Signer signer = new HmacSHA256Signer("google.com", "key2", SYMMETRIC_KEY);
+    JsonTokenParser parser = new JsonTokenParser(clock, locators, new AlwaysPassChecker());
+    int size = ClaimInterner.getDefault().size();
+
+    JsonToken token = new JsonToken(signer, clock);
+    token.setAudience("user-" + System.nanoTime());
+    token.setIssuedAt(clock.now());
+    token.setExpiration(clock.now().plus(Duration.standardSeconds(1)));
+    parser.verifyAndDeserialize(token.serializeAndSign());
+
+    assertEquals(size, ClaimInterner.getDefault().size());
+  }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link ClaimSet}.
+ */
+public class ClaimSetTest extends TestCase {
+
+  public void testRegisteredClaims() {
+    JsonObject payload = new JsonObject();
+    payload.addProperty("iss", "google.com");
+    payload.addProperty("aud", "http://www.google.com");
+    payload.addProperty("sub", "user");
+    payload.addProperty("jti", "id-1");
+    payload.addProperty("iat", 1276669722);
+    payload.addProperty("exp", "1276669723");
+    payload.addProperty("nbf", 1276669700);
+    payload.addProperty("foo", "some value");
+
+    ClaimSet claims = ClaimSet.fromJson(payload);
+    assertEquals("google.com", claims.getIssuer());
+    assertEquals("http://www.google.com", claims.getAudience());
+    assertEquals("user", claims.getSubject());
+    assertEquals("id-1", claims.getJwtId());
+    assertEquals(1276669722L, claims.getIssuedAtSeconds());
+    assertEquals(1276669723L, claims.getExpirationSeconds());
+    assertEquals(1276669700L, claims.getNotBeforeSeconds());
+    assertEquals(1, claims.getCustomClaimCount());
+    assertEquals("foo", claims.getCustomClaimName(0));
+    assertEquals("some value", claims.getCustomClaim("foo").getAsString());
+  }
+
+  public void testMalformedRegisteredClaimsKeptAsCustomClaims() {
+    JsonObject payload = new JsonObject();
+    JsonArray audiences = new JsonArray();
+    audiences.add(new JsonPrimitive("a"));
+    payload.add("aud", audiences);
+    payload.addProperty("exp", "soon");
+    payload.addProperty("iat", true);
+
+    ClaimSet claims = ClaimSet.fromJson(payload);
+    assertNull(claims.getAudience());
+    assertEquals(ClaimSet.ABSENT, claims.getExpirationSeconds());
+    assertEquals(ClaimSet.ABSENT, claims.getIssuedAtSeconds());
+    assertEquals(ClaimSet.ABSENT, claims.getNotBeforeSeconds());
+    assertEquals(3, claims.getCustomClaimCount());
+    assertSame(audiences, claims.getCustomClaim("aud"));
+    assertNull(claims.getCustomClaim("iss"));
+  }
+
+  public void testJsonTokenClaimsFollowSetParam() {
+    JsonToken token = new JsonToken(new JsonObject());
+    assertEquals(ClaimSet.ABSENT, token.getClaims().getIssuedAtSeconds());
+    assertSame(token.getClaims(), token.getClaims());
+
+    token.setParam("iat", 1276669722);
+    assertEquals(1276669722L, token.getClaims().getIssuedAtSeconds());
+    assertEquals(token.getIssuedAt().getMillis() / 1000, token.getClaims().getIssuedAtSeconds());
+  }
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.gson.JsonParseException;
+import java.security.SignatureException;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.oauth.jsontoken.crypto.SignatureAlgorithm;
+import net.oauth.jsontoken.crypto.Verifier;
+import net.oauth.jsontoken.discovery.AsyncVerifierProvider;
+import net.oauth.jsontoken.discovery.AsyncVerifierProviders;
+import org.junit.function.ThrowingRunnable;
+
+public class CompletionStageJsonTokenParserTest extends JsonTokenTestBase {
+
+  private AsyncVerifierProviders asyncLocators;
+  private AtomicInteger executions;
+  private Executor countingExecutor;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    AsyncVerifierProvider hmacLocator = (issuer, keyId) -> Futures.immediateFuture(
+        locators.getVerifierProvider(SignatureAlgorithm.HS256).findVerifier(issuer, keyId));
+    asyncLocators = alg -> alg.equals(SignatureAlgorithm.HS256) ? hmacLocator : null;
+
+    executions = new AtomicInteger();
+    countingExecutor = command -> {
+      executions.incrementAndGet();
+      command.run();
+    };
+  }
+
+  public void testVerifyAndDeserialize_valid() throws Exception {
+    CompletionStageJsonTokenParser parser = getAsyncParser(asyncLocators);
+    JsonToken token = get(parser.verifyAndDeserialize(TOKEN_STRING));
+    assertHeader(token);
+    assertPayload(token);
+  }
+
+  public void testVerifyAndDeserialize_completedLookupStaysOnCallingThread() throws Exception {
+    CompletionStageJsonTokenParser parser = getAsyncParser(asyncLocators);
+    get(parser.verifyAndDeserialize(TOKEN_STRING));
+    assertEquals(0, executions.get());
+  }
+
+  public void testVerifyAndDeserialize_pendingLookupResumesOnExecutor() throws Exception {
+    SettableFuture<List<Verifier>> pending = SettableFuture.create();
+    AsyncVerifierProviders pendingLocators = alg -> (issuer, keyId) -> pending;
+    CompletionStageJsonTokenParser parser = getAsyncParser(pendingLocators);
+
+    CompletionStage<JsonToken> result = parser.verifyAndDeserialize(TOKEN_STRING);
+    assertFalse(result.toCompletableFuture().isDone());
+
+    pending.set(locators.getVerifierProvider(SignatureAlgorithm.HS256).findVerifier(null, null));
+    assertPayload(get(result));
+    assertEquals(1, executions.get());
+  }
+
+  public void testVerifyAndDeserialize_badSignature() throws Exception {
+    CompletionStageJsonTokenParser parser = getAsyncParser(asyncLocators);
+    assertFailsWithCause(
+        SignatureException.class,
+        () -> get(parser.verifyAndDeserialize(TOKEN_STRING_BAD_SIG))
+    );
+  }
+
+  public void testVerifyAndDeserialize_deserializeFail() throws Exception {
+    CompletionStageJsonTokenParser parser = getAsyncParser(asyncLocators);
+    assertFailsWithCause(
+        JsonParseException.class,
+        () -> get(parser.verifyAndDeserialize(TOKEN_STRING_CORRUPT_PAYLOAD))
+    );
+  }
+
+  public void testVerify_unsupportedSignature() throws Exception {
+    CompletionStageJsonTokenParser parser = getAsyncParser(asyncLocators);
+    JsonToken checkToken = naiveDeserialize(TOKEN_STRING_UNSUPPORTED_SIGNATURE_ALGORITHM);
+    assertFailsWithCause(
+        IllegalArgumentException.class,
+        () -> get(parser.verify(checkToken))
+    );
+  }
+
+  public void testVerify_noVerifiers() throws Exception {
+    AsyncVerifierProviders noLocators = alg -> (issuer, keyId) -> Futures.immediateFuture(null);
+    CompletionStageJsonTokenParser parser = getAsyncParser(noLocators);
+    JsonToken checkToken = naiveDeserialize(TOKEN_STRING);
+    assertFailsWithCause(
+        IllegalStateException.class,
+        () -> get(parser.verify(checkToken))
+    );
+  }
+
+  public void testBlocking_verifyAndDeserialize_valid() throws Exception {
+    CompletionStageJsonTokenParser parser =
+        new CompletionStageJsonTokenParser(clock, locators, countingExecutor,
+            new AlwaysPassChecker());
+    JsonToken token = get(parser.verifyAndDeserialize(TOKEN_STRING));
+    assertHeader(token);
+    assertPayload(token);
+    assertEquals(1, executions.get());
+  }
+
+  public void testBlocking_verifyAndDeserialize_badSignature() throws Exception {
+    CompletionStageJsonTokenParser parser =
+        new CompletionStageJsonTokenParser(clock, locators, countingExecutor,
+            new AlwaysPassChecker());
+    assertFailsWithCause(
+        SignatureException.class,
+        () -> get(parser.verifyAndDeserialize(TOKEN_STRING_BAD_SIG))
+    );
+  }
+
+  public void testBlocking_options() throws Exception {
+    VerificationStats stats = new VerificationStats();
+    CompletionStageJsonTokenParser parser =
+        new CompletionStageJsonTokenParser(clock, locators, countingExecutor,
+            ParserOptions.DEFAULT.withStats(stats).withLimits(new TokenLimits(300, 1000, 8, 16)),
+            new AlwaysPassChecker());
+    get(parser.verifyAndDeserialize(TOKEN_STRING));
+    assertFailsWithCause(
+        IllegalStateException.class,
+        () -> get(parser.verifyAndDeserialize(TOKEN_STRING + TOKEN_STRING))
+    );
+    assertEquals(2, stats.snapshot().getVerificationCount());
+    assertEquals(2, stats.snapshot().getVerifyLatency().getCount());
+  }
+
+  private CompletionStageJsonTokenParser getAsyncParser(AsyncVerifierProviders providers) {
+    return new CompletionStageJsonTokenParser(clock, providers, countingExecutor,
+        new AlwaysPassChecker());
+  }
+
+  private static <T> T get(CompletionStage<T> stage) throws Exception {
+    return stage.toCompletableFuture().get();
+  }
+
+  private <T extends Throwable> void assertFailsWithCause(
+      Class<T> throwableClass, ThrowingRunnable runnable) {
+    ExecutionException e = assertThrows(ExecutionException.class, runnable);
+    assertTrue(throwableClass.isInstance(e.getCause()));
+  }
+
+}
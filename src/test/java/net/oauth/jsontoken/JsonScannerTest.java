@@ -0,0 +1,49 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import java.nio.charset.StandardCharsets;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link JsonScanner}.
+ */
+public class JsonScannerTest extends TestCase {
+
+  public void testFindsTopLevelString() {
+    assertEquals("google.com", find("{\"iss\":\"google.com\",\"aud\":\"x\"}"));
+    assertEquals("google.com",
+        find(" { \"a\" : [1, {\"iss\":\"no\"}] ,\n\"iss\" : \"google.com\" } "));
+    assertEquals("b", find("{\"iss\":\"a\",\"iss\":\"b\"}"));
+    assertEquals("é", find("{\"x\":\"\\\"}\",\"iss\":\"é\"}"));
+  }
+
+  public void testGivesUp() {
+    assertNull(find("{\"aud\":\"x\"}"));
+    assertNull(find("{\"iss\":15}"));
+    assertNull(find("{\"iss\":\"a\\\"b\"}"));
+    assertNull(find("{\"iss\":\"a\""));
+    assertNull(find("{'iss':'a'}"));
+    assertNull(find("{\"iss\":\"a\"} x"));
+    assertNull(find("[\"iss\"]"));
+    assertNull(find(""));
+  }
+
+  private static String find(String json) {
+    return JsonScanner.findTopLevelString(json.getBytes(StandardCharsets.UTF_8), "iss");
+  }
+}
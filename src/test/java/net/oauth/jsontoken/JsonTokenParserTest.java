@@ -18,14 +18,22 @@ package net.oauth.jsontoken;
 
 import static org.junit.Assert.assertThrows;
 
+import com.google.common.collect.Lists;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
 import java.security.SignatureException;
+import java.security.interfaces.ECPrivateKey;
+import java.security.spec.ECGenParameterSpec;
 import java.util.regex.Pattern;
+import net.oauth.jsontoken.crypto.EcdsaSHA256Signer;
 import net.oauth.jsontoken.crypto.RsaSHA256Signer;
 import net.oauth.jsontoken.crypto.SignatureAlgorithm;
+import net.oauth.jsontoken.discovery.DefaultPublicKeyLocator;
+import net.oauth.jsontoken.discovery.IdentityServerDescriptorProvider;
 import net.oauth.jsontoken.discovery.VerifierProvider;
 import net.oauth.jsontoken.discovery.VerifierProviders;
 import org.apache.commons.codec.binary.Base64;
@@ -105,6 +113,60 @@ public class JsonTokenParserTest extends JsonTokenTestBase {
     assertEquals("world", token.getParamAsPrimitive("hello").getAsString());
   }
 
+  public void testVerifyAndDeserialize_signatureFirst() throws Exception {
+    ParserOptions options = ParserOptions.DEFAULT.withSignatureFirst(true);
+    JsonTokenParser parser =
+        new JsonTokenParser(clock, locators, options, new AlwaysPassChecker());
+    JsonToken token = parser.verifyAndDeserialize(TOKEN_STRING);
+    assertHeader(token);
+    assertPayload(token);
+
+    assertThrows(
+        SignatureException.class,
+        () -> parser.verifyAndDeserialize(TOKEN_STRING_BAD_SIG)
+    );
+    assertThrows(
+        JsonParseException.class,
+        () -> parser.verifyAndDeserialize(TOKEN_STRING_CORRUPT_PAYLOAD)
+    );
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> parser.verifyAndDeserialize(TOKEN_STRING_UNSUPPORTED_SIGNATURE_ALGORITHM)
+    );
+
+    JsonTokenParser failingParser =
+        new JsonTokenParser(clock, locators, options, new AlwaysFailChecker());
+    assertThrows(
+        SignatureException.class,
+        () -> failingParser.verifyAndDeserialize(TOKEN_STRING)
+    );
+
+    JsonTokenParser rubyParser =
+        new JsonTokenParser(clock, locatorsFromRuby, options, new AlwaysPassChecker());
+    JsonToken rubyToken = rubyParser.verifyAndDeserialize(TOKEN_FROM_RUBY);
+    assertEquals("world", rubyToken.getParamAsPrimitive("hello").getAsString());
+  }
+
+  public void testWarmUp() throws Exception {
+    VerifierProviders providers = new VerifierProviders();
+    providers.setVerifierProvider(SignatureAlgorithm.HS256, (issuer, keyId) ->
+        "google.com".equals(issuer) ? locators.getVerifierProvider(SignatureAlgorithm.HS256)
+            .findVerifier(issuer, keyId) : null);
+    providers.setVerifierProvider(SignatureAlgorithm.RS256,
+        locators.getVerifierProvider(SignatureAlgorithm.RS256));
+    providers.setVerifierProvider(SignatureAlgorithm.ES256, (issuer, keyId) -> {
+      throw new IllegalStateException("no keys");
+    });
+    JsonTokenParser parser = getJsonTokenParser(providers, new AlwaysPassChecker());
+
+    assertEquals(Lists.newArrayList("unknown"),
+        parser.warmUp(Lists.newArrayList("google.com", "unknown"), 3));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> parser.warmUp(Lists.newArrayList("google.com"), -1)
+    );
+  }
+
   public void testPublicKey() throws Exception {
     RsaSHA256Signer signer = new RsaSHA256Signer("google.com", "key1", privateKey);
 
@@ -142,6 +204,28 @@ public class JsonTokenParserTest extends JsonTokenTestBase {
     );
   }
 
+  public void testEcdsaPublicKey() throws Exception {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+    generator.initialize(new ECGenParameterSpec("secp256r1"));
+    KeyPair keyPair = generator.generateKeyPair();
+    EcdsaSHA256Signer signer =
+        new EcdsaSHA256Signer("google.com", "key1", (ECPrivateKey) keyPair.getPrivate());
+
+    JsonToken token = new JsonToken(signer, clock);
+    token.setParam("bar", 15);
+    String tokenString = token.serializeAndSign();
+
+    VerifierProviders ecLocators = new VerifierProviders();
+    ecLocators.setVerifierProvider(SignatureAlgorithm.ES256, new DefaultPublicKeyLocator(
+        new IdentityServerDescriptorProvider(), uri -> keyId -> keyPair.getPublic(),
+        SignatureAlgorithm.ES256));
+    JsonTokenParser parser = getJsonTokenParser(ecLocators, new AlwaysPassChecker());
+
+    token = parser.verifyAndDeserialize(tokenString);
+    assertEquals(SignatureAlgorithm.ES256, token.getSignatureAlgorithm());
+    assertEquals(15, token.getParamAsPrimitive("bar").getAsLong());
+  }
+
   private JsonTokenParser getJsonTokenParser() {
     return new JsonTokenParser(clock, locators, new AlwaysPassChecker());
   }
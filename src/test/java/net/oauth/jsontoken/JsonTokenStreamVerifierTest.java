@@ -0,0 +1,148 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import java.security.SignatureException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.oauth.jsontoken.crypto.SignatureAlgorithm;
+import net.oauth.jsontoken.crypto.Verifier;
+import net.oauth.jsontoken.discovery.AsyncVerifierProviders;
+import net.oauth.jsontoken.discovery.CoalescingAsyncVerifierProviders;
+
+public class JsonTokenStreamVerifierTest extends JsonTokenTestBase {
+
+  private List<SettableFuture<List<Verifier>>> lookups;
+  private AtomicInteger lookupCount;
+  private CoalescingAsyncVerifierProviders providers;
+  private List<String> events;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    lookups = Lists.newArrayList();
+    lookupCount = new AtomicInteger();
+    AsyncVerifierProviders pendingProviders = alg -> (issuer, keyId) -> {
+      lookupCount.incrementAndGet();
+      SettableFuture<List<Verifier>> lookup = SettableFuture.create();
+      lookups.add(lookup);
+      return lookup;
+    };
+    providers = new CoalescingAsyncVerifierProviders(pendingProviders);
+    events = Lists.newArrayList();
+  }
+
+  public void testWindowLimitsTokensInFlight() throws Exception {
+    JsonTokenStreamVerifier streamVerifier = getStreamVerifier(2, true);
+
+    assertTrue(streamVerifier.tryVerify(TOKEN_STRING));
+    assertTrue(streamVerifier.tryVerify(TOKEN_STRING_BAD_SIG));
+    assertFalse(streamVerifier.tryVerify(TOKEN_STRING));
+    assertEquals(0, streamVerifier.getAvailableSlots());
+
+    completeLookups();
+    assertEquals(2, streamVerifier.getAvailableSlots());
+    assertTrue(streamVerifier.tryVerify(TOKEN_STRING));
+  }
+
+  public void testLookupsForSameKeyAreCoalesced() throws Exception {
+    JsonTokenStreamVerifier streamVerifier = getStreamVerifier(10, true);
+    for (int i = 0; i < 5; i++) {
+      streamVerifier.verify(TOKEN_STRING);
+    }
+    assertEquals(1, lookupCount.get());
+    assertEquals(1, providers.getPendingLookupCount());
+
+    completeLookups();
+    assertEquals(0, providers.getPendingLookupCount());
+    assertEquals(5, events.size());
+  }
+
+  public void testOrderedDelivery() throws Exception {
+    JsonTokenStreamVerifier streamVerifier = getStreamVerifier(10, true);
+    streamVerifier.verify(TOKEN_STRING);
+    // Fails during deserialization, so it completes before the first token.
+    streamVerifier.verify(TOKEN_STRING_CORRUPT_PAYLOAD);
+    assertTrue(events.isEmpty());
+
+    completeLookups();
+    assertEquals(Lists.newArrayList("verified", "failed"), events);
+  }
+
+  public void testUnorderedDelivery() throws Exception {
+    JsonTokenStreamVerifier streamVerifier = getStreamVerifier(10, false);
+    streamVerifier.verify(TOKEN_STRING);
+    streamVerifier.verify(TOKEN_STRING_CORRUPT_PAYLOAD);
+    assertEquals(Lists.newArrayList("failed"), events);
+
+    completeLookups();
+    assertEquals(Lists.newArrayList("failed", "verified"), events);
+  }
+
+  public void testSignatureFailureIsDelivered() throws Exception {
+    List<Throwable> failures = Lists.newArrayList();
+    JsonTokenStreamVerifier streamVerifier = new JsonTokenStreamVerifier(getParser(), 1, true,
+        new JsonTokenStreamVerifier.Listener() {
+          @Override
+          public void onVerified(String tokenString, JsonToken token) {
+            fail("token should not verify");
+          }
+
+          @Override
+          public void onFailure(String tokenString, Throwable cause) {
+            failures.add(cause);
+          }
+        });
+    streamVerifier.verify(TOKEN_STRING_BAD_SIG);
+    completeLookups();
+
+    assertEquals(1, failures.size());
+    assertTrue(failures.get(0) instanceof SignatureException);
+  }
+
+  private void completeLookups() {
+    List<Verifier> verifiers =
+        locators.getVerifierProvider(SignatureAlgorithm.HS256).findVerifier(null, null);
+    for (SettableFuture<List<Verifier>> lookup : Lists.newArrayList(lookups)) {
+      lookup.set(verifiers);
+    }
+  }
+
+  private JsonTokenStreamVerifier getStreamVerifier(int maxInFlight, boolean ordered) {
+    return new JsonTokenStreamVerifier(getParser(), maxInFlight, ordered,
+        new JsonTokenStreamVerifier.Listener() {
+          @Override
+          public void onVerified(String tokenString, JsonToken token) {
+            events.add("verified");
+          }
+
+          @Override
+          public void onFailure(String tokenString, Throwable cause) {
+            events.add("failed");
+          }
+        });
+  }
+
+  private AsyncJsonTokenParser getParser() {
+    return new AsyncJsonTokenParser(clock, providers, MoreExecutors.directExecutor(),
+        new AlwaysPassChecker());
+  }
+
+}
@@ -58,6 +58,54 @@ public class JsonTokenTest extends JsonTokenTestBase {
     assertEquals(TOKEN_STRING_EMPTY_PAYLOAD, token.serializeAndSign());
   }
 
+  public void testSignAndSerialize_intoBuffer() throws Exception {
+    HmacSHA256Signer signer = new HmacSHA256Signer("google.com", "key2", SYMMETRIC_KEY);
+
+    JsonToken token = new JsonToken(signer, clock);
+    token.setParam("bar", 15);
+    token.setParam("foo", "some value");
+    token.setAudience("http://www.google.com");
+    token.setIssuedAt(clock.now());
+    token.setExpiration(clock.now().plus(Duration.standardSeconds(1)));
+
+    StringBuilder buffer = new StringBuilder("Bearer ");
+    token.serializeAndSign(buffer);
+    assertEquals("Bearer " + TOKEN_STRING, buffer.toString());
+  }
+
+  public void testSignAndSerialize_nonAsciiPayload() throws Exception {
+    HmacSHA256Signer signer = new HmacSHA256Signer(null, null, "secret".getBytes());
+    JsonToken token = new JsonToken(signer, clock);
+    token.setParam("hello", "w\u00f6rld \ud83c\udf0d");
+
+    String tokenString = token.serializeAndSign();
+    JsonToken parsed = new JsonTokenParser(clock, locators, new AlwaysPassChecker())
+        .deserialize(tokenString);
+    assertEquals("w\u00f6rld \ud83c\udf0d", parsed.getParamAsPrimitive("hello").getAsString());
+  }
+
+  public void testSignAndSerialize_intoBufferLeavesBufferOnFailure() throws Exception {
+    JsonToken token = new JsonToken(getFullHeader(), getFullPayload(), clock, TOKEN_STRING);
+    StringBuilder buffer = new StringBuilder("Bearer ");
+    assertThrows(
+        SignatureException.class,
+        () -> token.serializeAndSign(buffer)
+    );
+    assertEquals("Bearer ", buffer.toString());
+  }
+
+  public void testSignAndSerialize_overriddenBaseString() throws Exception {
+    HmacSHA256Signer signer = new HmacSHA256Signer("google.com", "key2", SYMMETRIC_KEY);
+    JsonToken token = new JsonToken(signer, clock) {
+      @Override
+      protected String computeSignatureBaseString() {
+        return "e30.e30";
+      }
+    };
+    String tokenString = token.serializeAndSign();
+    assertTrue(tokenString, tokenString.startsWith("e30.e30."));
+  }
+
   public void testSignAndSerialize_tokenFromJson() throws Exception {
     JsonToken token = new JsonToken(getFullHeader(), getFullPayload(), clock, TOKEN_STRING);
     assertThrows(
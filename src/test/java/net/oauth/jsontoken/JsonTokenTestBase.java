@@ -123,7 +123,8 @@ public abstract class JsonTokenTestBase extends TestCase {
           public ServerInfo resolve(URI uri) {
             return JsonServerInfo.getDocument(SERVER_INFO_DOCUMENT);
           }
-        });
+        },
+        SignatureAlgorithm.RS256);
 
     locators = new VerifierProviders();
     locators.setVerifierProvider(SignatureAlgorithm.HS256, hmacLocator);
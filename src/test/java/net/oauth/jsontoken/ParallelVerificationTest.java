@@ -0,0 +1,138 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.security.SignatureException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.oauth.jsontoken.crypto.HmacSHA256Verifier;
+import net.oauth.jsontoken.crypto.SignatureAlgorithm;
+import net.oauth.jsontoken.crypto.Verifier;
+import net.oauth.jsontoken.discovery.VerifierProviders;
+
+/**
+ * Tests for checking candidate verifiers in parallel.
+ */
+public class ParallelVerificationTest extends JsonTokenTestBase {
+
+  private final AtomicInteger slowChecks = new AtomicInteger();
+  private ExecutorService pool;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    pool = Executors.newFixedThreadPool(2);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    pool.shutdownNow();
+    super.tearDown();
+  }
+
+  public void testFirstSuccessWins() throws Exception {
+    Verifier good = new HmacSHA256Verifier(SYMMETRIC_KEY);
+    JsonTokenParser parser = getParser(2, rejecting(), slow(), good);
+
+    long start = System.nanoTime();
+    parser.verifyAndDeserialize(TOKEN_STRING);
+    assertTrue(System.nanoTime() - start < 1000000000L);
+  }
+
+  public void testNoCandidateAccepts() throws Exception {
+    JsonTokenParser parser = getParser(2, rejecting(), rejecting(), rejecting());
+    assertThrows(
+        SignatureException.class,
+        () -> parser.verifyAndDeserialize(TOKEN_STRING)
+    );
+  }
+
+  public void testSaturatedPoolFallsBackToSequential() throws Exception {
+    Verifier good = new HmacSHA256Verifier(SYMMETRIC_KEY);
+    JsonTokenParser parser = getParser(0, rejecting(), good, slow());
+
+    parser.verifyAndDeserialize(TOKEN_STRING);
+    // checked in order on the calling thread, stopping at the good verifier
+    assertEquals(0, slowChecks.get());
+  }
+
+  public void testRunningCheckStaysInFlightAfterReturn() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Verifier accepting = (source, signature) -> { };
+    Verifier acceptingOnceStarted =
+        (source, signature) -> Uninterruptibles.awaitUninterruptibly(started);
+    Verifier blocking = (source, signature) -> {
+      started.countDown();
+      Uninterruptibles.awaitUninterruptibly(release);
+      throw new SignatureException("rejected");
+    };
+    ParallelSignatureCheck check = new ParallelSignatureCheck(pool, 1);
+    byte[] signature = new byte[0];
+
+    assertEquals(Boolean.TRUE,
+        check.anyAccepts(TOKEN_STRING, 1, signature,
+            Lists.newArrayList(acceptingOnceStarted, blocking)));
+    // the blocking check still holds its slot
+    assertNull(
+        check.anyAccepts(TOKEN_STRING, 1, signature, Lists.newArrayList(accepting, accepting)));
+
+    release.countDown();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    Boolean result = null;
+    while (result == null && System.nanoTime() < deadline) {
+      result = check.anyAccepts(TOKEN_STRING, 1, signature,
+          Lists.newArrayList(accepting, accepting));
+    }
+    assertEquals(Boolean.TRUE, result);
+  }
+
+  private JsonTokenParser getParser(int maxInFlight, Verifier... verifiers) {
+    List<Verifier> candidates = Lists.newArrayList(verifiers);
+    VerifierProviders providers = new VerifierProviders();
+    providers.setVerifierProvider(SignatureAlgorithm.HS256, (issuer, keyId) -> candidates);
+    return new JsonTokenParser(clock, providers,
+        ParserOptions.DEFAULT.withParallelVerification(pool, maxInFlight),
+        new AlwaysPassChecker());
+  }
+
+  private static Verifier rejecting() {
+    return (source, signature) -> {
+      throw new SignatureException("rejected");
+    };
+  }
+
+  private Verifier slow() {
+    return (source, signature) -> {
+      slowChecks.incrementAndGet();
+      try {
+        Thread.sleep(2000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      throw new SignatureException("rejected");
+    };
+  }
+}
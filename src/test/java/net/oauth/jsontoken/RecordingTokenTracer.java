@@ -0,0 +1,84 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link TokenTracer} that records the spans it ends, installed by the tests with
+ * {@link Tracing#setTracerForTesting}.
+ */
+final class RecordingTokenTracer implements TokenTracer {
+
+  final List<RecordedSpan> spans = new CopyOnWriteArrayList<>();
+
+  private static final ThreadLocal<RecordedSpan> CURRENT = new ThreadLocal<>();
+
+  @Override
+  public Span startSpan(String name) {
+    return new RecordedSpan(name, CURRENT.get(), spans);
+  }
+
+  @Override
+  public Executor wrap(Executor executor) {
+    RecordedSpan context = CURRENT.get();
+    return task -> executor.execute(() -> {
+      RecordedSpan previous = CURRENT.get();
+      CURRENT.set(context);
+      try {
+        task.run();
+      } finally {
+        CURRENT.set(previous);
+      }
+    });
+  }
+
+  static final class RecordedSpan implements Span {
+    final String name;
+    @Nullable final RecordedSpan parent;
+    final Map<String, String> attributes = new HashMap<>();
+    private final List<RecordedSpan> ended;
+
+    RecordedSpan(String name, @Nullable RecordedSpan parent, List<RecordedSpan> ended) {
+      this.name = name;
+      this.parent = parent;
+      this.ended = ended;
+    }
+
+    @Override
+    public synchronized void setAttribute(String key, String value) {
+      attributes.put(key, value);
+    }
+
+    @Override
+    public Scope makeCurrent() {
+      RecordedSpan previous = CURRENT.get();
+      CURRENT.set(this);
+      return () -> CURRENT.set(previous);
+    }
+
+    @Override
+    public synchronized void end(@Nullable Throwable failure) {
+      ended.add(this);
+    }
+  }
+}
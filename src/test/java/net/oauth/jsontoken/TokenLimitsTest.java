@@ -0,0 +1,105 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.base.Strings;
+import java.nio.charset.StandardCharsets;
+import net.oauth.jsontoken.TokenLimits.Violation;
+
+/**
+ * Unit tests for the {@link TokenLimits} enforced by the token parsers.
+ */
+public class TokenLimitsTest extends JsonTokenTestBase {
+
+  private static final String HEADER = "{\"alg\":\"HS256\"}";
+
+  public void testTokenWithinLimits() throws Exception {
+    JsonTokenParser parser = getParser(new TokenLimits(TOKEN_STRING.length(), 128, 1, 6));
+    parser.verifyAndDeserialize(TOKEN_STRING);
+    for (Violation violation : Violation.values()) {
+      assertEquals(0, parser.getRejectionCount(violation));
+    }
+  }
+
+  public void testTokenLength() throws Exception {
+    JsonTokenParser parser = getParser(new TokenLimits(TOKEN_STRING.length() - 1, 128, 1, 6));
+    assertThrows(IllegalStateException.class, () -> parser.deserialize(TOKEN_STRING));
+    assertEquals(1, parser.getRejectionCount(Violation.TOKEN_LENGTH));
+  }
+
+  public void testSegmentSize() throws Exception {
+    JsonTokenParser parser = getParser(new TokenLimits(1024, 64, 10, 10));
+    String claim = Strings.repeat("x", 64);
+    assertThrows(
+        IllegalStateException.class,
+        () -> parser.deserialize(token("{\"iss\":\"" + claim + "\"}"))
+    );
+    assertEquals(1, parser.getRejectionCount(Violation.SEGMENT_SIZE));
+  }
+
+  public void testJsonDepth() throws Exception {
+    JsonTokenParser parser = getParser(new TokenLimits(1024, 1024, 3, 10));
+    parser.deserialize(token("{\"a\":{\"b\":[1]}}"));
+    assertThrows(
+        IllegalStateException.class,
+        () -> parser.deserialize(token("{\"a\":{\"b\":[[1]]}}"))
+    );
+    assertEquals(1, parser.getRejectionCount(Violation.JSON_DEPTH));
+
+    // brackets inside strings do not count towards the depth
+    parser.deserialize(token("{\"a\":\"[[[{{{\\\"]]]\"}"));
+  }
+
+  public void testClaimCount() throws Exception {
+    JsonTokenParser parser = getParser(new TokenLimits(1024, 1024, 10, 3));
+    // nested members and colons inside strings are not claims
+    parser.deserialize(token("{\"a\":1,\"b\":{\"c\":2,\"d\":3},\"e\":\"f:g\"}"));
+    assertThrows(
+        IllegalStateException.class,
+        () -> parser.deserialize(token("{\"a\":1,\"b\":2,\"c\":3,\"d\":4}"))
+    );
+    assertEquals(1, parser.getRejectionCount(Violation.CLAIM_COUNT));
+  }
+
+  public void testScanAtLengthBoundary() {
+    byte[] json = "{\"a\":[[1]]}".getBytes(StandardCharsets.UTF_8);
+    assertNull(TokenLimits.UNLIMITED.scanJson(json, true));
+    assertNull(new TokenLimits(1024, 1024, json.length, json.length).scanJson(json, true));
+    assertEquals(Violation.JSON_DEPTH,
+        new TokenLimits(1024, 1024, 2, json.length).scanJson(json, true));
+    assertEquals(Violation.CLAIM_COUNT,
+        new TokenLimits(1024, 1024, json.length, 0).scanJson(json, true));
+    assertNull(new TokenLimits(1024, 1024, json.length, 0).scanJson(json, false));
+  }
+
+  public void testInvalidLimits() {
+    assertThrows(IllegalArgumentException.class, () -> new TokenLimits(0, 1, 1, 1));
+    assertThrows(IllegalArgumentException.class, () -> new TokenLimits(1, 1, 0, 1));
+  }
+
+  private JsonTokenParser getParser(TokenLimits limits) {
+    return new JsonTokenParser(clock, locators, ParserOptions.DEFAULT.withLimits(limits),
+        new AlwaysPassChecker());
+  }
+
+  private static String token(String payload) {
+    return JsonTokenUtil.toDotFormat(JsonTokenUtil.convertToBase64(HEADER),
+        JsonTokenUtil.convertToBase64(payload), "c2ln");
+  }
+}
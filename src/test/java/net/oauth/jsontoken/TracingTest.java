@@ -0,0 +1,171 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.util.concurrent.Futures;
+import java.security.SignatureException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import javax.annotation.Nullable;
+import net.oauth.jsontoken.crypto.SignatureAlgorithm;
+import net.oauth.jsontoken.discovery.AsyncVerifierProvider;
+
+public class TracingTest extends JsonTokenTestBase {
+
+  private RecordingTokenTracer tracer;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    tracer = new RecordingTokenTracer();
+    Tracing.setTracerForTesting(tracer);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    Tracing.setTracerForTesting(null);
+    super.tearDown();
+  }
+
+  public void testNoTracerFound() throws Exception {
+    Tracing.setTracerForTesting(null);
+    assertFalse(Tracing.isEnabled());
+    assertSame(TokenTracer.NOOP, Tracing.getTracer());
+    assertSame(TokenTracer.Span.NOOP, Tracing.startFetchKeysSpan("https://example.com", null,
+        null));
+    Executor executor = Runnable::run;
+    assertSame(executor, Tracing.inCurrentContext(executor));
+
+    JsonTokenParser parser = new JsonTokenParser(clock, locators, new AlwaysPassChecker());
+    parser.verifyAndDeserialize(TOKEN_STRING);
+    assertTrue(tracer.spans.isEmpty());
+  }
+
+  public void testBrokenTracerIgnored() throws Exception {
+    JsonTokenParser parser = new JsonTokenParser(clock, locators, new AlwaysPassChecker());
+    Tracing.setTracerForTesting(name -> {
+      throw new IllegalStateException("broken tracer");
+    });
+    parser.verifyAndDeserialize(TOKEN_STRING);
+
+    TokenTracer.Span brokenSpan = new TokenTracer.Span() {
+      @Override
+      public void setAttribute(String key, String value) {
+        throw new IllegalStateException("broken span");
+      }
+
+      @Override
+      public TokenTracer.Scope makeCurrent() {
+        return () -> {
+          throw new IllegalStateException("broken scope");
+        };
+      }
+
+      @Override
+      public void end(@Nullable Throwable failure) {
+        throw new IllegalStateException("broken span");
+      }
+    };
+    Tracing.setTracerForTesting(new TokenTracer() {
+      @Override
+      public TokenTracer.Span startSpan(String name) {
+        return brokenSpan;
+      }
+
+      @Override
+      public Executor wrap(Executor executor) {
+        throw new IllegalStateException("broken tracer");
+      }
+    });
+    parser.verifyAndDeserialize(TOKEN_STRING);
+    assertThrows(
+        SignatureException.class,
+        () -> parser.verifyAndDeserialize(TOKEN_STRING_BAD_SIG)
+    );
+    Executor executor = Runnable::run;
+    assertSame(executor, Tracing.inCurrentContext(executor));
+  }
+
+  public void testVerifyAndDeserialize() throws Exception {
+    JsonTokenParser parser = new JsonTokenParser(clock, locators, new AlwaysPassChecker());
+    parser.verifyAndDeserialize(TOKEN_STRING);
+
+    assertEquals(2, tracer.spans.size());
+    RecordingTokenTracer.RecordedSpan lookup = tracer.spans.get(0);
+    assertEquals(Tracing.PROVIDE_VERIFIERS_SPAN, lookup.name);
+    assertEquals("google.com", lookup.attributes.get(Tracing.ISSUER_ATTRIBUTE));
+    assertEquals("key2", lookup.attributes.get(Tracing.KEY_ID_ATTRIBUTE));
+    assertEquals("HS256", lookup.attributes.get(Tracing.ALGORITHM_ATTRIBUTE));
+    assertEquals(Tracing.SUCCESS, lookup.attributes.get(Tracing.OUTCOME_ATTRIBUTE));
+    RecordingTokenTracer.RecordedSpan verify = tracer.spans.get(1);
+    assertEquals(Tracing.VERIFY_SPAN, verify.name);
+    assertEquals(Tracing.SUCCESS, verify.attributes.get(Tracing.OUTCOME_ATTRIBUTE));
+
+    tracer.spans.clear();
+    assertThrows(
+        SignatureException.class,
+        () -> parser.verifyAndDeserialize(TOKEN_STRING_BAD_SIG)
+    );
+    assertEquals(Tracing.FAILURE,
+        tracer.spans.get(1).attributes.get(Tracing.OUTCOME_ATTRIBUTE));
+  }
+
+  public void testAsyncContextPropagation() throws Exception {
+    AsyncVerifierProvider hmacLocator = (issuer, keyId) -> Futures.immediateFuture(
+        locators.getVerifierProvider(SignatureAlgorithm.HS256).findVerifier(issuer, keyId));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      AsyncJsonTokenParser parser = new AsyncJsonTokenParser(clock,
+          alg -> alg == SignatureAlgorithm.HS256 ? hmacLocator : null, executor,
+          new AlwaysPassChecker());
+
+      TokenTracer.Span request = Tracing.getTracer().startSpan("request");
+      TokenTracer.Scope scope = Tracing.makeCurrent(request);
+      try {
+        parser.verifyAndDeserialize(TOKEN_STRING).get();
+      } finally {
+        Tracing.close(scope);
+      }
+
+      RecordingTokenTracer.RecordedSpan verify = findSpan(Tracing.VERIFY_SPAN);
+      assertSame(request, verify.parent);
+      assertSame(request, findSpan(Tracing.PROVIDE_VERIFIERS_SPAN).parent);
+      assertEquals(Tracing.SUCCESS, verify.attributes.get(Tracing.OUTCOME_ATTRIBUTE));
+
+      ExecutionException e = assertThrows(
+          ExecutionException.class,
+          () -> parser.verifyAndDeserialize(TOKEN_STRING_UNSUPPORTED_SIGNATURE_ALGORITHM).get()
+      );
+      assertTrue(e.getCause() instanceof IllegalArgumentException);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private RecordingTokenTracer.RecordedSpan findSpan(String name) {
+    for (RecordingTokenTracer.RecordedSpan span : tracer.spans) {
+      if (span.name.equals(name)) {
+        return span;
+      }
+    }
+    throw new AssertionError("no span " + name);
+  }
+}
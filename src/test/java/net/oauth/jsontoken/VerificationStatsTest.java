@@ -0,0 +1,144 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.collect.Lists;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import java.lang.management.ManagementFactory;
+import java.security.SignatureException;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import net.oauth.jsontoken.crypto.SignatureAlgorithm;
+import net.oauth.jsontoken.crypto.Verifier;
+import net.oauth.jsontoken.discovery.VerifierCache;
+import net.oauth.jsontoken.discovery.VerifierProviders;
+import org.joda.time.Duration;
+
+public class VerificationStatsTest extends JsonTokenTestBase {
+
+  private VerificationStats stats;
+  private JsonTokenParser parser;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    stats = new VerificationStats();
+    parser = new JsonTokenParser(clock, locators, ParserOptions.DEFAULT.withStats(stats),
+        new AlwaysPassChecker());
+  }
+
+  public void testOutcomes() throws Exception {
+    parser.verifyAndDeserialize(TOKEN_STRING);
+    assertThrows(
+        SignatureException.class,
+        () -> parser.verifyAndDeserialize(TOKEN_STRING_BAD_SIG)
+    );
+    assertThrows(
+        JsonParseException.class,
+        () -> parser.verifyAndDeserialize(TOKEN_STRING_CORRUPT_PAYLOAD)
+    );
+    clock.setNow(clock.now().plus(Duration.standardHours(1)));
+    assertThrows(
+        IllegalStateException.class,
+        () -> parser.verifyAndDeserialize(TOKEN_STRING)
+    );
+
+    VerificationStats.Snapshot snapshot = stats.snapshot();
+    assertEquals(4, snapshot.getVerificationCount());
+    assertEquals(1, snapshot.getSuccessCount());
+    assertEquals(1, (long) snapshot.getFailureCounts().get(VerificationTrace.Phase.SIGNATURE));
+    assertEquals(1, (long) snapshot.getFailureCounts().get(VerificationTrace.Phase.DESERIALIZE));
+    assertEquals(1, (long) snapshot.getFailureCounts().get(VerificationTrace.Phase.CLAIMS));
+    assertEquals(4, snapshot.getVerifyLatency().getCount());
+
+    stats.reset();
+    assertEquals(0, stats.snapshot().getVerificationCount());
+    assertEquals(0, stats.snapshot().getVerifyLatency().getCount());
+  }
+
+  public void testEveryFailureRecorded() throws Exception {
+    // the header has no algorithm, so looking up the verifiers fails
+    JsonToken noAlgorithm = new JsonToken(new JsonObject(), new JsonObject(), clock, "");
+    assertThrows(IllegalStateException.class, () -> parser.verify(noAlgorithm));
+
+    Verifier broken = (source, signature) -> {
+      throw new IllegalStateException("broken verifier");
+    };
+    VerifierProviders providers = new VerifierProviders();
+    providers.setVerifierProvider(SignatureAlgorithm.HS256,
+        (issuer, keyId) -> Lists.newArrayList(broken));
+    JsonTokenParser brokenParser = new JsonTokenParser(clock, providers,
+        ParserOptions.DEFAULT.withStats(stats), new AlwaysPassChecker());
+    assertThrows(
+        IllegalStateException.class,
+        () -> brokenParser.verifyAndDeserialize(TOKEN_STRING)
+    );
+
+    VerificationStats.Snapshot snapshot = stats.snapshot();
+    assertEquals(2, snapshot.getVerificationCount());
+    assertEquals(1, (long) snapshot.getFailureCounts().get(VerificationTrace.Phase.KEY_LOOKUP));
+    assertEquals(1, (long) snapshot.getFailureCounts().get(VerificationTrace.Phase.SIGNATURE));
+  }
+
+  public void testLatencyPercentiles() throws Exception {
+    for (int i = 0; i < 99; i++) {
+      stats.recordVerifyLatency(TimeUnit.MICROSECONDS.toNanos(100));
+    }
+    stats.recordVerifyLatency(TimeUnit.SECONDS.toNanos(1));
+    VerificationStats.LatencySnapshot latency = stats.snapshot().getVerifyLatency();
+    assertEquals(128, latency.getPercentileMicros(50));
+    assertEquals(128, latency.getPercentileMicros(99));
+    assertEquals(1L << 20, latency.getPercentileMicros(100));
+  }
+
+  public void testKeyCache() throws Exception {
+    VerifierCache cache = new VerifierCache(16, 1, Duration.standardHours(1), clock, stats);
+    VerifierProviders cached = new VerifierProviders();
+    cached.setVerifierProvider(SignatureAlgorithm.HS256, cache.wrap(
+        SignatureAlgorithm.HS256, locators.getVerifierProvider(SignatureAlgorithm.HS256)));
+    JsonTokenParser cachingParser = new JsonTokenParser(clock, cached,
+        ParserOptions.DEFAULT.withStats(stats), new AlwaysPassChecker());
+
+    cachingParser.verifyAndDeserialize(TOKEN_STRING);
+    cachingParser.verifyAndDeserialize(TOKEN_STRING);
+    assertEquals(0.5, stats.snapshot().getKeyCacheHitRate());
+    assertEquals(1, stats.snapshot().getKeyFetchLatency().getCount());
+    assertEquals(0, stats.snapshot().getKeyFetchFailureCount());
+  }
+
+  public void testJmx() throws Exception {
+    ObjectName name = stats.register("test");
+    try {
+      parser.verifyAndDeserialize(TOKEN_STRING);
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      assertEquals(1L, server.getAttribute(name, "VerificationCount"));
+      assertEquals(0L, server.getAttribute(name, "FailureCount"));
+      server.invoke(name, "reset", null, null);
+      assertEquals(0L, server.getAttribute(name, "VerificationCount"));
+      assertThrows(
+          IllegalStateException.class,
+          () -> stats.register("test")
+      );
+    } finally {
+      VerificationStats.unregister(name);
+    }
+  }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken;
+
+import static org.junit.Assert.assertThrows;
+
+import com.google.gson.JsonParseException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SignatureException;
+import java.security.interfaces.ECPrivateKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import net.oauth.jsontoken.VerificationTrace.Phase;
+import net.oauth.jsontoken.crypto.EcdsaSHA256Signer;
+import net.oauth.jsontoken.crypto.EcdsaSHA256Verifier;
+import net.oauth.jsontoken.crypto.HmacSHA256Verifier;
+import net.oauth.jsontoken.crypto.SignatureAlgorithm;
+import net.oauth.jsontoken.crypto.Verifier;
+import net.oauth.jsontoken.discovery.VerifierProviders;
+
+/**
+ * Unit tests for verification tracing in {@link JsonTokenParser}.
+ */
+public class VerificationTraceTest extends JsonTokenTestBase {
+
+  private final List<VerificationTrace> traces = new ArrayList<>();
+
+  public void testVerifiedTokenTrace() throws Exception {
+    getParser(1, new AlwaysPassChecker()).verifyAndDeserialize(TOKEN_STRING);
+
+    assertEquals(1, traces.size());
+    VerificationTrace trace = traces.get(0);
+    assertTrue(trace.isVerified());
+    assertNull(trace.getFailedPhase());
+    assertEquals("HS256", trace.getAlgorithm());
+    assertEquals("google.com", trace.getIssuer());
+    assertEquals("key2", trace.getKeyId());
+    assertEquals(1, trace.getVerifierAttempts().size());
+    assertTrue(trace.getVerifierAttempts().get(0).isVerified());
+    assertEquals(HmacSHA256Verifier.class.getName(),
+        trace.getVerifierAttempts().get(0).getVerifier());
+    for (Phase phase : Phase.values()) {
+      assertTrue(trace.getPhaseNanos(phase) > 0);
+    }
+    assertTrue(trace.getTotalNanos() >= trace.getPhaseNanos(Phase.SIGNATURE));
+    assertNull(VerificationTrace.current());
+  }
+
+  public void testBadSignatureTrace() throws Exception {
+    JsonTokenParser parser = getParser(1, new AlwaysPassChecker());
+    assertThrows(
+        SignatureException.class,
+        () -> parser.verifyAndDeserialize(TOKEN_STRING_BAD_SIG)
+    );
+
+    VerificationTrace trace = traces.get(0);
+    assertFalse(trace.isVerified());
+    assertEquals(Phase.SIGNATURE, trace.getFailedPhase());
+    assertFalse(trace.getVerifierAttempts().get(0).isVerified());
+    assertTrue(trace.getFailure() instanceof SignatureException);
+  }
+
+  public void testRejectingCheckerTrace() throws Exception {
+    AlwaysFailChecker checker = new AlwaysFailChecker();
+    JsonTokenParser parser = getParser(1, new AlwaysPassChecker(), checker);
+    assertThrows(
+        SignatureException.class,
+        () -> parser.verifyAndDeserialize(TOKEN_STRING)
+    );
+
+    VerificationTrace trace = traces.get(0);
+    assertEquals(Phase.CLAIMS, trace.getFailedPhase());
+    assertSame(checker, trace.getRejectingChecker());
+    assertTrue(trace.toString().contains(AlwaysFailChecker.class.getName()));
+  }
+
+  public void testCorruptTokenTrace() throws Exception {
+    JsonTokenParser parser = getParser(1, new AlwaysPassChecker());
+    assertThrows(
+        JsonParseException.class,
+        () -> parser.verifyAndDeserialize(TOKEN_STRING_CORRUPT_PAYLOAD)
+    );
+
+    assertEquals(Phase.DESERIALIZE, traces.get(0).getFailedPhase());
+    assertTrue(traces.get(0).getVerifierAttempts().isEmpty());
+  }
+
+  public void testCacheLookupsRecordedOnVerifyingThread() throws Exception {
+    VerifierProviders recordingLocators = new VerifierProviders();
+    recordingLocators.setVerifierProvider(SignatureAlgorithm.HS256, (issuer, keyId) -> {
+      VerificationTrace.current().recordCacheLookup("keys", true);
+      return locators.getVerifierProvider(SignatureAlgorithm.HS256).findVerifier(issuer, keyId);
+    });
+    JsonTokenParser parser = new JsonTokenParser(clock, recordingLocators,
+        ParserOptions.DEFAULT.withTracing(traces::add, 1), new AlwaysPassChecker());
+    parser.verifyAndDeserialize(TOKEN_STRING);
+
+    assertEquals(1, traces.get(0).getCacheLookups().size());
+    assertTrue(traces.get(0).getCacheLookups().get(0).isHit());
+  }
+
+  public void testVerifierAttemptsRecordKeys() throws Exception {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+    generator.initialize(256);
+    KeyPair signingKey = generator.generateKeyPair();
+    KeyPair otherKey = generator.generateKeyPair();
+    EcdsaSHA256Verifier wrong = new EcdsaSHA256Verifier(otherKey.getPublic());
+    EcdsaSHA256Verifier right = new EcdsaSHA256Verifier(signingKey.getPublic());
+    VerifierProviders providers = new VerifierProviders();
+    providers.setVerifierProvider(SignatureAlgorithm.ES256,
+        (issuer, keyId) -> Arrays.<Verifier>asList(wrong, right));
+    JsonTokenParser parser = new JsonTokenParser(clock, providers,
+        ParserOptions.DEFAULT.withTracing(traces::add, 1), new AlwaysPassChecker());
+
+    JsonToken token = new JsonToken(new EcdsaSHA256Signer("google.com", null,
+        (ECPrivateKey) signingKey.getPrivate()), clock);
+    token.setIssuedAt(clock.now());
+    parser.verifyAndDeserialize(token.serializeAndSign());
+
+    List<VerificationTrace.VerifierAttempt> attempts = traces.get(0).getVerifierAttempts();
+    assertEquals(2, attempts.size());
+    assertEquals(0, attempts.get(0).getIndex());
+    assertFalse(attempts.get(0).isVerified());
+    assertEquals(wrong.getKeyFingerprint(), attempts.get(0).getKeyFingerprint());
+    assertEquals(1, attempts.get(1).getIndex());
+    assertTrue(attempts.get(1).isVerified());
+    assertEquals(right.getKeyFingerprint(), attempts.get(1).getKeyFingerprint());
+    assertEquals(16, right.getKeyFingerprint().length());
+    assertFalse(right.getKeyFingerprint().equals(wrong.getKeyFingerprint()));
+    assertTrue(traces.get(0).toString().contains(right.getKeyFingerprint()));
+  }
+
+  public void testThrowingListenerDoesNotReplaceFailure() throws Exception {
+    JsonTokenParser parser = new JsonTokenParser(clock, locators,
+        ParserOptions.DEFAULT.withTracing(trace -> {
+          throw new IllegalStateException("listener failed");
+        }, 1),
+        new AlwaysPassChecker());
+    assertThrows(
+        SignatureException.class,
+        () -> parser.verifyAndDeserialize(TOKEN_STRING_BAD_SIG)
+    );
+    assertNotNull(parser.verifyAndDeserialize(TOKEN_STRING));
+    assertNull(VerificationTrace.current());
+  }
+
+  public void testSampling() throws Exception {
+    JsonTokenParser parser = getParser(Integer.MAX_VALUE, new AlwaysPassChecker());
+    for (int i = 0; i < 10; i++) {
+      parser.verifyAndDeserialize(TOKEN_STRING);
+    }
+    // At a rate of one in Integer.MAX_VALUE, ten tokens are all but certain to go untraced.
+    assertTrue(traces.size() <= 1);
+
+    JsonTokenParser untraced = new JsonTokenParser(clock, locators, new AlwaysPassChecker());
+    untraced.verifyAndDeserialize(TOKEN_STRING);
+    assertNull(VerificationTrace.current());
+  }
+
+  private JsonTokenParser getParser(int sampleRate, Checker... checkers) {
+    return new JsonTokenParser(clock, locators,
+        ParserOptions.DEFAULT.withTracing(traces::add, sampleRate), checkers);
+  }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SignatureException;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.spec.ECGenParameterSpec;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for signing and verifying ranges of ASCII characters.
+ */
+public class AsciiStringSignerTest extends TestCase {
+  private static final byte[] SYMMETRIC_KEY = "kjdhasdkjhaskdjhaskdjhaskdjh".getBytes();
+
+  private String source;
+
+  @Override
+  protected void setUp() throws Exception {
+    // Spans several chunks and ends part way through one.
+    StringBuilder builder = new StringBuilder();
+    while (builder.length() < 3 * AsciiChunks.CHUNK_SIZE + 17) {
+      builder.append("randomdatatobesignedfortest.");
+    }
+    source = builder.toString();
+  }
+
+  public void testHmacRangeMatchesBytes() throws Exception {
+    HmacSigner signer = new HmacSigner("test", null, SignatureAlgorithm.HS256, SYMMETRIC_KEY);
+    byte[] expected = signer.sign(source.substring(5, source.length() - 3).getBytes(StandardCharsets.US_ASCII));
+
+    assertArrayEquals(expected, signer.sign(source, 5, source.length() - 3));
+    new HmacVerifier(SignatureAlgorithm.HS256, SYMMETRIC_KEY)
+        .verifySignature(source, 5, source.length() - 3, expected);
+  }
+
+  public void testNonAsciiCharactersSignedAsQuestionMark() throws Exception {
+    HmacSigner signer = new HmacSigner("test", null, SignatureAlgorithm.HS256, SYMMETRIC_KEY);
+    assertArrayEquals(signer.sign("caf?".getBytes(StandardCharsets.US_ASCII)),
+        new AsciiStringSigner(signer).sign("café"));
+  }
+
+  public void testRsaRange() throws Exception {
+    KeyPair keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+    RsaSigner signer = new RsaSigner(
+        "test", null, SignatureAlgorithm.RS256, (RSAPrivateKey) keyPair.getPrivate());
+    RsaVerifier verifier = new RsaVerifier(SignatureAlgorithm.RS256, keyPair.getPublic());
+
+    byte[] signature = signer.sign(source, 0, source.length());
+    verifier.verifySignature(source.getBytes(StandardCharsets.US_ASCII), signature);
+    verifier.verifySignature(source, 0, source.length(), signature);
+    assertThrows(
+        SignatureException.class,
+        () -> verifier.verifySignature(source, 1, source.length(), signature)
+    );
+  }
+
+  public void testEcdsaRange() throws Exception {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+    generator.initialize(new ECGenParameterSpec("secp256r1"));
+    KeyPair keyPair = generator.generateKeyPair();
+    EcdsaSHA256Signer signer =
+        new EcdsaSHA256Signer("test", null, (ECPrivateKey) keyPair.getPrivate());
+    EcdsaSHA256Verifier verifier = new EcdsaSHA256Verifier(keyPair.getPublic());
+
+    byte[] signature = signer.sign(source, 0, source.length());
+    verifier.verifySignature(source.getBytes(StandardCharsets.US_ASCII), signature);
+    new AsciiStringVerifier(verifier).verifySignature(source, signature);
+  }
+
+  public void testDefaultMethodsCopyRange() throws Exception {
+    Verifier byteVerifier = (bytes, signature) -> {
+      if (!new String(bytes, StandardCharsets.US_ASCII).equals("data")) {
+        throw new SignatureException("signature did not verify");
+      }
+    };
+    byteVerifier.verifySignature("xxdataxx", 2, 6, new byte[0]);
+  }
+}
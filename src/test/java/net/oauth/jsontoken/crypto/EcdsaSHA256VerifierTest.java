@@ -0,0 +1,179 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.math.BigInteger;
+import java.security.AlgorithmParameters;
+import java.security.InvalidKeyException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SignatureException;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECFieldFp;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.EllipticCurve;
+import junit.framework.TestCase;
+
+/**
+ * Basic unit tests for the {@link EcdsaSHA256Signer} and {@link EcdsaSHA256Verifier} classes.
+ */
+public class EcdsaSHA256VerifierTest extends TestCase {
+  private static final byte[] SOURCE = "randomdatatobesignedfortest".getBytes();
+
+  private KeyPair keyPair;
+
+  @Override
+  protected void setUp() throws Exception {
+    keyPair = generateKeyPair("secp256r1");
+  }
+
+  public void testGoodSignature() throws Exception {
+    EcdsaSHA256Signer signer = getSigner();
+    EcdsaSHA256Verifier verifier = new EcdsaSHA256Verifier(keyPair.getPublic());
+
+    byte[] signature = signer.sign(SOURCE);
+    assertEquals(64, signature.length);
+    verifier.verifySignature(SOURCE, signature);
+  }
+
+  public void testBadSignature() throws Exception {
+    EcdsaSHA256Signer signer = getSigner();
+    EcdsaSHA256Verifier verifier = new EcdsaSHA256Verifier(keyPair.getPublic());
+
+    byte[] signature = signer.sign(SOURCE);
+    signature[0] ^= 1;
+
+    assertThrows(
+        SignatureException.class,
+        () -> verifier.verifySignature(SOURCE, signature)
+    );
+  }
+
+  public void testDerSignatureRejected() throws Exception {
+    EcdsaSHA256Signer signer = getSigner();
+    EcdsaSHA256Verifier verifier = new EcdsaSHA256Verifier(keyPair.getPublic());
+    byte[] der = EcdsaSignatureFormat.toDer(signer.sign(SOURCE), 32);
+
+    assertThrows(
+        SignatureException.class,
+        () -> verifier.verifySignature(SOURCE, der)
+    );
+  }
+
+  public void testSignatureFormatRoundTrip() throws Exception {
+    // r and s with leading zeros and with the high bit set exercise the DER padding rules.
+    byte[] concatenated = new byte[64];
+    concatenated[2] = 0x7f;
+    concatenated[63] = 1;
+    for (int i = 32; i < 40; i++) {
+      concatenated[i] = (byte) 0xff;
+    }
+    byte[] der = EcdsaSignatureFormat.toDer(concatenated, 32);
+    assertArrayEquals(concatenated, EcdsaSignatureFormat.toConcatenated(der, 32));
+  }
+
+  public void testWrongCurveRejected() throws Exception {
+    KeyPair p384 = generateKeyPair("secp384r1");
+    assertThrows(
+        InvalidKeyException.class,
+        () -> new EcdsaSHA256Signer("test", "test-key", (ECPrivateKey) p384.getPrivate())
+    );
+    assertThrows(
+        IllegalStateException.class,
+        () -> new EcdsaSHA256Verifier(p384.getPublic())
+    );
+  }
+
+  public void testP256MatchesPlatformCurve() throws Exception {
+    AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+    parameters.init(new ECGenParameterSpec("secp256r1"));
+    assertTrue(EcdsaSHA256Signer.isP256(parameters.getParameterSpec(ECParameterSpec.class)));
+  }
+
+  public void testOther256BitCurveRejected() throws Exception {
+    // secp256k1 has a 256-bit field too, but is not the curve ES256 is defined over
+    ECParameterSpec secp256k1 = new ECParameterSpec(
+        new EllipticCurve(
+            new ECFieldFp(new BigInteger(
+                "FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFEFFFFFC2F", 16)),
+            BigInteger.ZERO,
+            BigInteger.valueOf(7)),
+        new ECPoint(
+            new BigInteger(
+                "79BE667EF9DCBBAC55A06295CE870B07029BFCDB2DCE28D959F2815B16F81798", 16),
+            new BigInteger(
+                "483ADA7726A3C4655DA4FBFC0E1108A8FD17B448A68554199C47D08FFB10D4B8", 16)),
+        new BigInteger("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFEBAAEDCE6AF48A03BBFD25E8CD0364141", 16),
+        1);
+    assertThrows(
+        InvalidKeyException.class,
+        () -> new EcdsaSHA256Signer("test", "test-key", new FakePrivateKey(secp256k1))
+    );
+    assertThrows(
+        IllegalStateException.class,
+        () -> new EcdsaSHA256Verifier(new FakePublicKey(secp256k1))
+    );
+  }
+
+  private EcdsaSHA256Signer getSigner() throws Exception {
+    return new EcdsaSHA256Signer("test", "test-key", (ECPrivateKey) keyPair.getPrivate());
+  }
+
+  private static KeyPair generateKeyPair(String curve) throws Exception {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+    generator.initialize(new ECGenParameterSpec(curve));
+    return generator.generateKeyPair();
+  }
+
+  /** An EC private key on arbitrary domain parameters, which no provider will generate. */
+  private static class FakePrivateKey implements ECPrivateKey {
+    private static final long serialVersionUID = 1L;
+    private final transient ECParameterSpec params;
+
+    FakePrivateKey(ECParameterSpec params) {
+      this.params = params;
+    }
+
+    @Override public BigInteger getS() { return BigInteger.ONE; }
+    @Override public ECParameterSpec getParams() { return params; }
+    @Override public String getAlgorithm() { return "EC"; }
+    @Override public String getFormat() { return null; }
+    @Override public byte[] getEncoded() { return null; }
+  }
+
+  /** An EC public key on arbitrary domain parameters, which no provider will generate. */
+  private static class FakePublicKey implements ECPublicKey {
+    private static final long serialVersionUID = 1L;
+    private final transient ECParameterSpec params;
+
+    FakePublicKey(ECParameterSpec params) {
+      this.params = params;
+    }
+
+    @Override public ECPoint getW() { return params.getGenerator(); }
+    @Override public ECParameterSpec getParams() { return params; }
+    @Override public String getAlgorithm() { return "EC"; }
+    @Override public String getFormat() { return null; }
+    @Override public byte[] getEncoded() { return null; }
+  }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.crypto;
+
+import static org.junit.Assert.assertThrows;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.util.Arrays;
+import junit.framework.TestCase;
+import net.oauth.jsontoken.discovery.JsonServerInfo;
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * Basic unit tests for the {@link Ed25519Signer} and {@link Ed25519Verifier} classes. The tests
+ * pass trivially on platforms without an Ed25519 provider.
+ */
+public class Ed25519VerifierTest extends TestCase {
+  private static final byte[] SOURCE = "randomdatatobesignedfortest".getBytes();
+
+  private KeyPair keyPair;
+
+  @Override
+  protected void setUp() throws Exception {
+    try {
+      keyPair = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+    } catch (NoSuchAlgorithmException e) {
+      keyPair = null;
+    }
+  }
+
+  public void testGoodSignature() throws Exception {
+    if (keyPair == null) {
+      return;
+    }
+    Ed25519Signer signer = new Ed25519Signer("test", "test-key", keyPair.getPrivate());
+    Ed25519Verifier verifier = new Ed25519Verifier(keyPair.getPublic());
+
+    byte[] signature = signer.sign(SOURCE);
+    assertEquals(64, signature.length);
+    assertEquals(SignatureAlgorithm.EdDSA, signer.getSignatureAlgorithm());
+    verifier.verifySignature(SOURCE, signature);
+  }
+
+  public void testBadSignature() throws Exception {
+    if (keyPair == null) {
+      return;
+    }
+    Ed25519Signer signer = new Ed25519Signer("test", "test-key", keyPair.getPrivate());
+    Ed25519Verifier verifier = new Ed25519Verifier(keyPair.getPublic());
+
+    byte[] signature = signer.sign(SOURCE);
+    signature[0] ^= 1;
+    assertThrows(
+        SignatureException.class,
+        () -> verifier.verifySignature(SOURCE, signature)
+    );
+    assertThrows(
+        SignatureException.class,
+        () -> verifier.verifySignature(SOURCE, Arrays.copyOf(signature, 63))
+    );
+  }
+
+  public void testRsaKeyRejected() throws Exception {
+    KeyPair rsa = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+    assertThrows(
+        IllegalStateException.class,
+        () -> new Ed25519Verifier(rsa.getPublic())
+    );
+  }
+
+  public void testMagicKey() throws Exception {
+    if (keyPair == null) {
+      return;
+    }
+    byte[] encoded = keyPair.getPublic().getEncoded();
+    byte[] raw = Arrays.copyOfRange(encoded, encoded.length - 32, encoded.length);
+    String magicKey = "Ed25519." + Base64.encodeBase64URLSafeString(raw);
+
+    String json = "{\"verification_keys\":{\"key1\":\"" + magicKey + "\"}}";
+    PublicKey key = JsonServerInfo.getDocument(json).getVerificationKey("key1");
+    assertEquals(keyPair.getPublic(), key);
+
+    Ed25519Signer signer = new Ed25519Signer("test", "key1", keyPair.getPrivate());
+    new Ed25519Verifier(key).verifySignature(SOURCE, signer.sign(SOURCE));
+  }
+}
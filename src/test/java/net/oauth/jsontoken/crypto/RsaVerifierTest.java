@@ -0,0 +1,88 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.crypto;
+
+import static org.junit.Assert.assertThrows;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SignatureException;
+import java.security.interfaces.RSAPrivateKey;
+import junit.framework.TestCase;
+
+/**
+ * Basic unit tests for the {@link RsaSigner} and {@link RsaVerifier} classes.
+ */
+public class RsaVerifierTest extends TestCase {
+  private static final byte[] SOURCE = "randomdatatobesignedfortest".getBytes();
+  private static final SignatureAlgorithm[] ALGORITHMS = {
+      SignatureAlgorithm.RS256, SignatureAlgorithm.RS384, SignatureAlgorithm.RS512,
+      SignatureAlgorithm.PS256
+  };
+
+  private KeyPair keyPair;
+
+  @Override
+  protected void setUp() throws Exception {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(2048);
+    keyPair = generator.generateKeyPair();
+  }
+
+  public void testGoodSignature() throws Exception {
+    for (SignatureAlgorithm alg : ALGORITHMS) {
+      RsaSigner signer = getSigner(alg);
+      RsaVerifier verifier = new RsaVerifier(alg, keyPair.getPublic());
+      assertSame(alg, signer.getSignatureAlgorithm());
+
+      // Verify twice to check the per-thread engines are left ready for reuse.
+      verifier.verifySignature(SOURCE, signer.sign(SOURCE));
+      verifier.verifySignature(SOURCE, signer.sign(SOURCE));
+    }
+  }
+
+  public void testBadSignature() throws Exception {
+    for (SignatureAlgorithm alg : ALGORITHMS) {
+      RsaVerifier verifier = new RsaVerifier(alg, keyPair.getPublic());
+      byte[] signature = getSigner(alg).sign(SOURCE);
+      signature[0] ^= 1;
+
+      assertThrows(
+          SignatureException.class,
+          () -> verifier.verifySignature(SOURCE, signature)
+      );
+    }
+  }
+
+  public void testAlgorithmMismatch() throws Exception {
+    byte[] signature = getSigner(SignatureAlgorithm.RS256).sign(SOURCE);
+    RsaVerifier verifier = new RsaVerifier(SignatureAlgorithm.PS256, keyPair.getPublic());
+
+    assertThrows(
+        SignatureException.class,
+        () -> verifier.verifySignature(SOURCE, signature)
+    );
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new RsaVerifier(SignatureAlgorithm.HS256, keyPair.getPublic())
+    );
+  }
+
+  private RsaSigner getSigner(SignatureAlgorithm alg) throws Exception {
+    return new RsaSigner("test", "test-key", alg, (RSAPrivateKey) keyPair.getPrivate());
+  }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.crypto;
+
+import static org.junit.Assert.assertThrows;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the {@link SignatureAlgorithm} name lookup.
+ */
+public class SignatureAlgorithmTest extends TestCase {
+
+  public void testForJsonNameFindsEveryAlgorithm() {
+    for (SignatureAlgorithm alg : SignatureAlgorithm.values()) {
+      assertSame(alg, SignatureAlgorithm.forJsonName(alg.getNameForJson()));
+      assertSame(alg, SignatureAlgorithm.forJsonName(new StringBuilder(alg.getNameForJson())));
+      assertSame(alg, SignatureAlgorithm.getFromJsonName(alg.getNameForJson()));
+    }
+  }
+
+  public void testForJsonNameRejectsUnknownNames() {
+    assertNull(SignatureAlgorithm.forJsonName(null));
+    assertNull(SignatureAlgorithm.forJsonName(""));
+    assertNull(SignatureAlgorithm.forJsonName("none"));
+    assertNull(SignatureAlgorithm.forJsonName("hs256"));
+    assertNull(SignatureAlgorithm.forJsonName("HS2566"));
+    assertNull(SignatureAlgorithm.forJsonName("ES512"));
+    assertNull(SignatureAlgorithm.forJsonName("a very long name that is not an algorithm"));
+  }
+
+  public void testGetFromJsonNameThrowsOnUnknownName() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> SignatureAlgorithm.getFromJsonName("none")
+    );
+  }
+
+  public void testHmacAlgorithms() throws Exception {
+    byte[] key = "kjdhasdkjhaskdjhaskdjhaskdjh".getBytes();
+    byte[] source = "randomdatatobesignedfortest".getBytes();
+    for (SignatureAlgorithm alg : SignatureAlgorithm.values()) {
+      if (alg.getKeyType() != SignatureAlgorithm.KeyType.OCT) {
+        continue;
+      }
+      HmacSigner signer = new HmacSigner("test", "test-key", alg, key);
+      assertSame(alg, signer.getSignatureAlgorithm());
+      byte[] signature = signer.sign(source);
+      new HmacVerifier(alg, key).verifySignature(source, signature);
+    }
+    assertEquals(48, new HmacSigner("test", null, SignatureAlgorithm.HS384, key)
+        .sign(source).length);
+    assertEquals(64, new HmacSigner("test", null, SignatureAlgorithm.HS512, key)
+        .sign(source).length);
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new HmacSigner("test", null, SignatureAlgorithm.RS256, key)
+    );
+  }
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.discovery;
+
+import com.google.common.collect.ImmutableMap;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+import net.oauth.jsontoken.FakeClock;
+import net.oauth.jsontoken.VerificationStats;
+import net.oauth.jsontoken.crypto.SignatureAlgorithm;
+import org.joda.time.Duration;
+
+/**
+ * Unit tests for {@link KeySetManager}.
+ */
+public class KeySetManagerTest extends TestCase {
+
+  private final FakeClock clock = new FakeClock();
+  private final AtomicInteger fetches = new AtomicInteger();
+  private volatile Map<String, PublicKey> published;
+  private PublicKey key1;
+  private PublicKey key2;
+  private KeySetManager manager;
+
+  @Override
+  protected void setUp() throws Exception {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    key1 = generator.generateKeyPair().getPublic();
+    key2 = generator.generateKeyPair().getPublic();
+    published = ImmutableMap.of("key1", key1);
+    manager = new KeySetManager(issuer -> {
+      fetches.incrementAndGet();
+      return published;
+    }, null, Duration.standardHours(1), 2, Duration.standardMinutes(1),
+        Duration.standardSeconds(30), clock);
+  }
+
+  public void testKnownKeysAreServedFromTheKeySet() throws Exception {
+    assertEquals(1, manager.findVerifier("issuer", "key1").size());
+    assertEquals(1, manager.findVerifier("issuer", "key1").size());
+    assertEquals(1, manager.findVerifier("issuer", null).size());
+    assertEquals(1, fetches.get());
+
+    clock.setNow(clock.now().plus(Duration.standardHours(1)));
+    manager.findVerifier("issuer", "key1");
+    assertEquals(2, fetches.get());
+  }
+
+  public void testUnknownKeyTriggersRefresh() throws Exception {
+    manager.findVerifier("issuer", "key1");
+    published = ImmutableMap.of("key1", key1, "key2", key2);
+
+    assertEquals(1, manager.findVerifier("issuer", "key2").size());
+    assertEquals(2, fetches.get());
+    assertEquals(1, manager.getStats().getUnknownKeyRefreshCount());
+  }
+
+  public void testUnknownKeysAreRateLimitedAndRemembered() throws Exception {
+    // the first fetch takes one of the issuer's two refresh tokens
+    manager.findVerifier("issuer", "key1");
+    assertNull(manager.findVerifier("issuer", "random1"));
+    assertNull(manager.findVerifier("issuer", "random1"));
+    assertNull(manager.findVerifier("issuer", "random2"));
+    assertNull(manager.findVerifier("issuer", "random3"));
+    assertEquals(2, fetches.get());
+
+    KeySetManager.Stats stats = manager.getStats();
+    assertEquals(1, stats.getUnknownKeyRefreshCount());
+    assertEquals(1, stats.getNegativeHitCount());
+    assertEquals(2, stats.getRateLimitedCount());
+
+    // the bucket refills over time, and other issuers have their own
+    assertNull(manager.findVerifier("other", "random1"));
+    assertEquals(4, fetches.get());
+    clock.setNow(clock.now().plus(Duration.standardMinutes(1)));
+    published = ImmutableMap.of("key1", key1, "key2", key2);
+    assertEquals(1, manager.findVerifier("issuer", "key2").size());
+    assertEquals(5, fetches.get());
+  }
+
+  public void testFailedFetchKeepsKeySet() throws Exception {
+    manager.findVerifier("issuer", "key1");
+    published = null;
+    clock.setNow(clock.now().plus(Duration.standardHours(2)));
+    assertEquals(1, manager.findVerifier("issuer", "key1").size());
+    assertEquals(1, manager.getStats().getFetchFailureCount());
+    assertNull(manager.findVerifier("unknown", "key1"));
+    assertEquals(2, manager.getStats().getFetchFailureCount());
+
+    // failed fetches are not retried until the negative TTL has passed
+    assertNull(manager.findVerifier("unknown", "key1"));
+    assertEquals(1, manager.findVerifier("issuer", "key1").size());
+    assertEquals(2, manager.getStats().getFetchFailureCount());
+    clock.setNow(clock.now().plus(Duration.standardSeconds(30)));
+    assertNull(manager.findVerifier("unknown", "key1"));
+    assertEquals(3, manager.getStats().getFetchFailureCount());
+  }
+
+  public void testFetchesRecordedInVerificationStats() throws Exception {
+    VerificationStats stats = new VerificationStats();
+    KeySetManager recorded = new KeySetManager(issuer -> published, null,
+        Duration.standardHours(1), 2, Duration.standardMinutes(1), Duration.standardSeconds(30),
+        KeySetManager.DEFAULT_MAX_ISSUERS, KeySetManager.DEFAULT_NEW_ISSUER_BURST,
+        KeySetManager.DEFAULT_NEW_ISSUER_PERIOD, clock, stats);
+    recorded.findVerifier("issuer", "key1");
+    recorded.findVerifier("issuer", "key1");
+    published = null;
+    recorded.findVerifier("unknown", "key1");
+
+    assertEquals(2, stats.getKeyFetchCount());
+    assertEquals(1, stats.getKeyFetchFailureCount());
+  }
+
+  public void testKeysNotFittingTheAlgorithmSkipped() throws Exception {
+    PublicKey ecKey = KeyPairGenerator.getInstance("EC").generateKeyPair().getPublic();
+    published = ImmutableMap.of("key1", key1, "ec", ecKey);
+    KeySetManager rs256 = new KeySetManager(issuer -> {
+      fetches.incrementAndGet();
+      return published;
+    }, SignatureAlgorithm.RS256, Duration.standardHours(1), 2, Duration.standardMinutes(1),
+        Duration.standardSeconds(30), clock);
+
+    assertEquals(1, rs256.findVerifier("issuer", "key1").size());
+    assertEquals(1, rs256.findVerifier("issuer", null).size());
+    assertEquals(1, rs256.findVerifier("issuer", "key1").size());
+    assertEquals(1, fetches.get());
+    assertEquals(1, rs256.getStats().getSkippedKeyCount());
+    // the EC key never verifies RS256 tokens
+    assertNull(rs256.findVerifier("issuer", "ec"));
+  }
+
+  public void testNullIssuer() throws Exception {
+    assertNull(manager.findVerifier(null, "key1"));
+    assertEquals(0, fetches.get());
+  }
+
+  public void testIssuersBoundedAndNewIssuersRateLimited() throws Exception {
+    KeySetManager bounded = new KeySetManager(issuer -> {
+      fetches.incrementAndGet();
+      return published;
+    }, null, Duration.standardHours(1), 2, Duration.standardMinutes(1),
+        Duration.standardSeconds(30), 2, clock);
+    bounded.findVerifier("a", "key1");
+    bounded.findVerifier("b", "key1");
+    bounded.findVerifier("a", "key1");
+    assertEquals(2, fetches.get());
+    // a third issuer pushes out the least recently used one
+    bounded.findVerifier("c", "key1");
+    bounded.findVerifier("a", "key1");
+    assertEquals(3, fetches.get());
+    bounded.findVerifier("b", "key1");
+    assertEquals(4, fetches.get());
+
+    // first fetches for new issuers share one bucket
+    for (int i = 0; i < 100; i++) {
+      bounded.findVerifier("random" + i, "key1");
+    }
+    assertEquals(16, fetches.get());
+    assertEquals(88, bounded.getStats().getRateLimitedCount());
+  }
+
+  public void testPrefetchedIssuersExemptFromLimits() throws Exception {
+    KeySetManager limited = new KeySetManager(issuer -> {
+      fetches.incrementAndGet();
+      return published;
+    }, null, Duration.standardHours(1), 2, Duration.standardMinutes(1),
+        Duration.standardSeconds(30), 1, 1, Duration.standardMinutes(1), clock);
+    assertTrue(limited.prefetch("trusted"));
+    assertEquals(1, fetches.get());
+
+    // a flood of random issuers drains the new-issuer bucket and churns the table
+    for (int i = 0; i < 10; i++) {
+      limited.findVerifier("random" + i, "key1");
+    }
+    assertEquals(2, fetches.get());
+    assertNull(limited.findVerifier("untrusted", "key1"));
+
+    assertEquals(1, limited.findVerifier("trusted", "key1").size());
+    assertEquals(2, fetches.get());
+    // registering another issuer doesn't need the drained bucket either
+    assertTrue(limited.prefetch("second"));
+    assertEquals(1, limited.findVerifier("second", "key1").size());
+    assertEquals(3, fetches.get());
+  }
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.discovery;
+
+import static org.junit.Assert.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SignatureException;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.List;
+import junit.framework.TestCase;
+import net.oauth.jsontoken.crypto.EcdsaSHA256Signer;
+import net.oauth.jsontoken.crypto.RsaSHA256Signer;
+import net.oauth.jsontoken.crypto.SignatureAlgorithm;
+import net.oauth.jsontoken.crypto.Verifier;
+
+/**
+ * Unit tests for {@link MappedKeyStore}.
+ */
+public class MappedKeyStoreTest extends TestCase {
+  private static final byte[] SOURCE = "randomdatatobesignedfortest".getBytes();
+
+  private Path directory;
+  private Path keyFile;
+  private KeyPair rsaKey;
+  private KeyPair ecKey;
+
+  @Override
+  protected void setUp() throws Exception {
+    directory = Files.createTempDirectory("keystore");
+    keyFile = directory.resolve("keys");
+    rsaKey = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+    KeyPairGenerator ec = KeyPairGenerator.getInstance("EC");
+    ec.initialize(new ECGenParameterSpec("secp256r1"));
+    ecKey = ec.generateKeyPair();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    Files.deleteIfExists(keyFile);
+    Files.deleteIfExists(directory);
+  }
+
+  @SuppressWarnings("deprecation") // the store holds both RSA and EC keys
+  public void testFindVerifier() throws Exception {
+    new MappedKeyStore.Writer()
+        .add("partner.example", "rsa", rsaKey.getPublic())
+        .add("example.com", "ec", ecKey.getPublic())
+        .add("partner.example", "ec", ecKey.getPublic())
+        .add("partner.exampl", "rsa", ecKey.getPublic())
+        .writeTo(keyFile);
+    MappedKeyStore store = new MappedKeyStore(keyFile);
+    assertEquals(4, store.size());
+
+    byte[] rsaSignature =
+        new RsaSHA256Signer("partner.example", "rsa", (RSAPrivateKey) rsaKey.getPrivate())
+            .sign(SOURCE);
+    List<Verifier> verifiers = store.findVerifier("partner.example", "rsa");
+    assertEquals(1, verifiers.size());
+    verifiers.get(0).verifySignature(SOURCE, rsaSignature);
+    assertSame(verifiers.get(0), store.findVerifier("partner.example", "rsa").get(0));
+
+    byte[] ecSignature =
+        new EcdsaSHA256Signer("example.com", "ec", (ECPrivateKey) ecKey.getPrivate())
+            .sign(SOURCE);
+    store.findVerifier("example.com", "ec").get(0).verifySignature(SOURCE, ecSignature);
+
+    assertEquals(2, store.findVerifier("partner.example", null).size());
+    assertNull(store.findVerifier("partner.example", "missing"));
+    assertNull(store.findVerifier("unknown.example", null));
+    assertNull(store.findVerifier("partner.examplf", "rsa"));
+    assertNull(store.findVerifier(null, "rsa"));
+    assertNull(store.findVerifier(null, null));
+  }
+
+  public void testBoundedVerifierCache() throws Exception {
+    MappedKeyStore.Writer writer = new MappedKeyStore.Writer();
+    for (int i = 0; i < 10; i++) {
+      writer.add("issuer" + i, "key", ecKey.getPublic());
+    }
+    writer.writeTo(keyFile);
+    MappedKeyStore store = new MappedKeyStore(keyFile, SignatureAlgorithm.ES256, 3);
+
+    for (int i = 0; i < 10; i++) {
+      assertNotNull(store.findVerifier("issuer" + i, "key"));
+    }
+    assertEquals(3, store.getCachedVerifierCount());
+  }
+
+  public void testReload() throws Exception {
+    new MappedKeyStore.Writer().add("issuer", "old", ecKey.getPublic()).writeTo(keyFile);
+    MappedKeyStore store = new MappedKeyStore(keyFile, SignatureAlgorithm.ES256);
+    assertNotNull(store.findVerifier("issuer", "old"));
+
+    new MappedKeyStore.Writer().add("issuer", "new", ecKey.getPublic()).writeTo(keyFile);
+    // the mapped file stays in use until reloaded
+    assertNotNull(store.findVerifier("issuer", "old"));
+    store.reload();
+    assertNull(store.findVerifier("issuer", "old"));
+    byte[] signature =
+        new EcdsaSHA256Signer("issuer", "new", (ECPrivateKey) ecKey.getPrivate()).sign(SOURCE);
+    Verifier verifier = store.findVerifier("issuer", "new").get(0);
+    verifier.verifySignature(SOURCE, signature);
+    signature[0] ^= 1;
+    assertThrows(SignatureException.class, () -> verifier.verifySignature(SOURCE, signature));
+
+    Path garbage = directory.resolve("garbage");
+    Files.write(garbage, "not a key file".getBytes(StandardCharsets.UTF_8));
+    Files.move(garbage, keyFile, StandardCopyOption.REPLACE_EXISTING);
+    assertThrows(IOException.class, store::reload);
+    assertNotNull(store.findVerifier("issuer", "new"));
+  }
+
+  public void testCorruptRecordTableRejected() throws Exception {
+    new MappedKeyStore.Writer()
+        .add("issuer", "a", ecKey.getPublic())
+        .add("issuer", "b", ecKey.getPublic())
+        .writeTo(keyFile);
+    byte[] valid = Files.readAllBytes(keyFile);
+
+    // a record offset pointing past the end of the file
+    byte[] corrupt = valid.clone();
+    corrupt[16] = 0x7f;
+    Files.write(keyFile, corrupt);
+    assertThrows(IOException.class, () -> new MappedKeyStore(keyFile, SignatureAlgorithm.ES256));
+
+    // a record offset pointing into the record table
+    corrupt = valid.clone();
+    corrupt[16] = 0;
+    corrupt[17] = 0;
+    corrupt[18] = 0;
+    corrupt[19] = 0;
+    Files.write(keyFile, corrupt);
+    assertThrows(IOException.class, () -> new MappedKeyStore(keyFile, SignatureAlgorithm.ES256));
+
+    // a key length running past the end of the file
+    corrupt = valid.clone();
+    corrupt[valid.length - ecKey.getPublic().getEncoded().length - 4] = 0x10;
+    Files.write(keyFile, corrupt);
+    assertThrows(IOException.class, () -> new MappedKeyStore(keyFile, SignatureAlgorithm.ES256));
+
+    Files.write(keyFile, valid);
+    assertEquals(2, new MappedKeyStore(keyFile, SignatureAlgorithm.ES256).size());
+  }
+
+  public void testDuplicateKeyRejected() throws Exception {
+    MappedKeyStore.Writer writer = new MappedKeyStore.Writer()
+        .add("issuer", "key", rsaKey.getPublic())
+        .add("issuer", "key", ecKey.getPublic());
+    assertThrows(IllegalArgumentException.class, () -> writer.writeTo(keyFile));
+    assertFalse(Files.exists(keyFile));
+  }
+}
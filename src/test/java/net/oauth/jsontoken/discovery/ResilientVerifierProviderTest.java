@@ -0,0 +1,278 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.discovery;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.sun.net.httpserver.HttpServer;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import junit.framework.TestCase;
+import net.oauth.jsontoken.FakeClock;
+import net.oauth.jsontoken.VerificationStats;
+import net.oauth.jsontoken.crypto.SignatureAlgorithm;
+import net.oauth.jsontoken.crypto.Verifier;
+import net.oauth.jsontoken.discovery.ResilientVerifierProvider.BreakerState;
+import org.joda.time.Duration;
+
+/**
+ * Tests for {@link ResilientVerifierProvider}, the timeouts of
+ * {@link UrlBasedVerifierProvider}, and {@link UrlKeySetProvider}, against a local stub key
+ * server.
+ */
+public class ResilientVerifierProviderTest extends TestCase {
+
+  private static final String CERTIFICATE = "-----BEGIN CERTIFICATE-----\\n"
+      + "MIIBdTCCARugAwIBAgIUbfEU1GtrhuXkG4EUJb1C9zlh8gYwCgYIKoZIzj0EAwIw\\n"
+      + "DzENMAsGA1UEAwwEdGVzdDAgFw0yNjEwMTgxOTM2MDVaGA8yMTI2MDkyNDE5MzYw\\n"
+      + "NVowDzENMAsGA1UEAwwEdGVzdDBZMBMGByqGSM49AgEGCCqGSM49AwEHA0IABM1D\\n"
+      + "C5WY/9LtaFCKzhJBF2Z62fsHuVHtYXh1yxBRF5UTIpl+iLhNr7TyiIZRn1u5UAVs\\n"
+      + "VaXVAFxWh0zbDq0ZfTyjUzBRMB0GA1UdDgQWBBTBQ9YUkZpjC/aZJlzZdqnyNB6i\\n"
+      + "KjAfBgNVHSMEGDAWgBTBQ9YUkZpjC/aZJlzZdqnyNB6iKjAPBgNVHRMBAf8EBTAD\\n"
+      + "AQH/MAoGCCqGSM49BAMCA0gAMEUCIDgbxIKoyEamg12c8UIKQwMuj2FCxV1rVih/\\n"
+      + "Wt8j3BE3AiEA7r42OqN0cQkArEIxXeIselYXXz68I4OSeE6MOcyvTjA=\\n"
+      + "-----END CERTIFICATE-----";
+  private static final String KEYS = "{\"key1\":\"" + CERTIFICATE + "\"}";
+
+  private enum Mode { UP, DOWN, HANGING }
+
+  private final FakeClock clock = new FakeClock();
+  private final AtomicInteger requests = new AtomicInteger();
+  private volatile Mode mode = Mode.UP;
+  private HttpServer server;
+  private ExecutorService serverThreads;
+  private String url;
+
+  @Override
+  protected void setUp() throws Exception {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/keys", exchange -> {
+      requests.incrementAndGet();
+      try {
+        if (mode == Mode.HANGING) {
+          Thread.sleep(2000);
+        }
+        if (mode == Mode.UP) {
+          byte[] body = KEYS.getBytes(StandardCharsets.UTF_8);
+          exchange.getResponseHeaders().set("Content-Type", "application/json");
+          exchange.sendResponseHeaders(200, body.length);
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+          }
+        } else {
+          exchange.sendResponseHeaders(503, -1);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        exchange.close();
+      }
+    });
+    serverThreads = Executors.newCachedThreadPool();
+    server.setExecutor(serverThreads);
+    server.start();
+    url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort()
+        + "/keys";
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    server.stop(0);
+    serverThreads.shutdownNow();
+  }
+
+  public void testReadTimeout() throws Exception {
+    mode = Mode.HANGING;
+    long start = System.nanoTime();
+    assertNull(new UrlBasedVerifierProvider(SignatureAlgorithm.ES256, url, 1000, 200)
+        .findVerifier("issuer", "key1"));
+    assertTrue(System.nanoTime() - start < 1500000000L);
+  }
+
+  public void testUrlKeySetProvider() throws Exception {
+    KeySetManager manager = new KeySetManager(
+        new UrlKeySetProvider(issuer -> "issuer".equals(issuer) ? URI.create(url) : null),
+        SignatureAlgorithm.ES256);
+    assertTrue(manager.prefetch("issuer"));
+    assertEquals(1, manager.findVerifier("issuer", "key1").size());
+    assertEquals(1, requests.get());
+    assertNull(manager.findVerifier("unknown", "key1"));
+
+    mode = Mode.DOWN;
+    assertNull(new UrlKeySetProvider(issuer -> URI.create(url)).getKeySet("issuer"));
+  }
+
+  public void testSkipsCertificatesNotMatchingTheAlgorithm() throws Exception {
+    assertEquals(1, new UrlBasedVerifierProvider(SignatureAlgorithm.ES256, url)
+        .findVerifier("issuer", "key1").size());
+    assertTrue(new UrlBasedVerifierProvider(SignatureAlgorithm.RS256, url)
+        .findVerifier("issuer", "key1").isEmpty());
+  }
+
+  public void testServesStaleKeysWhileEndpointIsDown() throws Exception {
+    ResilientVerifierProvider provider = newProvider();
+    assertEquals(1, provider.findVerifier("issuer", "key1").size());
+
+    mode = Mode.DOWN;
+    clock.setNow(clock.now().plus(Duration.standardMinutes(2)));
+    assertEquals(1, provider.findVerifier("issuer", "key1").size());
+    ResilientVerifierProvider.Stats stats = provider.getStats();
+    assertEquals(1, stats.getStaleServedCount());
+    assertEquals(1, stats.getFetchFailureCount());
+    assertEquals(BreakerState.CLOSED, stats.getBreakerState());
+
+    clock.setNow(clock.now().plus(Duration.standardMinutes(10)));
+    assertNull(provider.findVerifier("issuer", "key1"));
+  }
+
+  public void testBreakerOpensAndRecovers() throws Exception {
+    ResilientVerifierProvider provider = newProvider();
+    mode = Mode.DOWN;
+    assertNull(provider.findVerifier("issuer", "key1"));
+    assertNull(provider.findVerifier("issuer", "key1"));
+    assertEquals(BreakerState.OPEN, provider.getBreakerState());
+
+    // while open, lookups fail fast without calling the endpoint
+    assertNull(provider.findVerifier("issuer", "key1"));
+    assertEquals(2, requests.get());
+    assertEquals(1, provider.getStats().getRejectedCount());
+
+    // a failed trial reopens the breaker
+    clock.setNow(clock.now().plus(Duration.standardSeconds(10)));
+    assertNull(provider.findVerifier("issuer", "key1"));
+    assertEquals(3, requests.get());
+    assertEquals(BreakerState.OPEN, provider.getBreakerState());
+
+    mode = Mode.UP;
+    clock.setNow(clock.now().plus(Duration.standardSeconds(10)));
+    assertEquals(1, provider.findVerifier("issuer", "key1").size());
+    ResilientVerifierProvider.Stats stats = provider.getStats();
+    assertEquals(BreakerState.CLOSED, stats.getBreakerState());
+    assertEquals(2, stats.getOpenedCount());
+    assertEquals(2, stats.getHalfOpenedCount());
+    assertEquals(1, stats.getClosedCount());
+  }
+
+  public void testFetchesRecordedInVerificationStats() throws Exception {
+    VerificationStats urlStats = new VerificationStats();
+    VerificationStats resilientStats = new VerificationStats();
+    ResilientVerifierProvider provider = new ResilientVerifierProvider(
+        new UrlBasedVerifierProvider(SignatureAlgorithm.ES256, url, 1000, 1000, urlStats),
+        Duration.standardMinutes(1), Duration.standardMinutes(10), 2,
+        Duration.standardSeconds(1), Duration.standardSeconds(8),
+        ResilientVerifierProvider.DEFAULT_MAX_KEY_SETS, clock,
+        MoreExecutors.directExecutor(), resilientStats);
+    provider.findVerifier("issuer", "key1");
+    provider.findVerifier("issuer", "key1");
+    mode = Mode.DOWN;
+    clock.setNow(clock.now().plus(Duration.standardMinutes(2)));
+    provider.findVerifier("issuer", "key1");
+
+    for (VerificationStats stats : ImmutableList.of(urlStats, resilientStats)) {
+      assertEquals(2, stats.getKeyFetchCount());
+      assertEquals(1, stats.getKeyFetchFailureCount());
+    }
+  }
+
+  public void testKeySetsKeyedByIssuerWhenKeyIdsAreIgnored() throws Exception {
+    ResilientVerifierProvider provider = newProvider();
+    assertFalse(provider.usesKeyId());
+    for (int i = 0; i < 50; i++) {
+      assertEquals(1, provider.findVerifier("issuer", "random-" + i).size());
+    }
+    assertEquals(1, requests.get());
+  }
+
+  public void testKeySetsBounded() throws Exception {
+    AtomicInteger fetches = new AtomicInteger();
+    VerifierProvider delegate = (issuer, keyId) -> {
+      fetches.incrementAndGet();
+      return ImmutableList.<Verifier>of((source, signature) -> { });
+    };
+    ResilientVerifierProvider provider = new ResilientVerifierProvider(delegate,
+        Duration.standardMinutes(1), Duration.standardMinutes(10), 2,
+        Duration.standardSeconds(1), Duration.standardSeconds(8), 2, clock,
+        MoreExecutors.directExecutor());
+    assertTrue(provider.usesKeyId());
+
+    provider.findVerifier("issuer", "a");
+    provider.findVerifier("issuer", "b");
+    provider.findVerifier("issuer", "a");
+    assertEquals(2, fetches.get());
+    // a third key set pushes out the least recently used one
+    provider.findVerifier("issuer", "c");
+    provider.findVerifier("issuer", "a");
+    assertEquals(3, fetches.get());
+    provider.findVerifier("issuer", "b");
+    assertEquals(4, fetches.get());
+  }
+
+  public void testConcurrentFetchesCoalesced() throws Exception {
+    AtomicInteger fetches = new AtomicInteger();
+    CountDownLatch entered = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    VerifierProvider delegate = (issuer, keyId) -> {
+      fetches.incrementAndGet();
+      entered.countDown();
+      Uninterruptibles.awaitUninterruptibly(release);
+      return ImmutableList.<Verifier>of((source, signature) -> { });
+    };
+    ResilientVerifierProvider provider = new ResilientVerifierProvider(delegate,
+        Duration.standardMinutes(1), Duration.standardMinutes(10), 2,
+        Duration.standardSeconds(1), Duration.standardSeconds(8), clock,
+        MoreExecutors.directExecutor());
+
+    ExecutorService callers = Executors.newFixedThreadPool(2);
+    try {
+      Future<List<Verifier>> first = callers.submit(() -> provider.findVerifier("issuer", "k"));
+      entered.await();
+      AtomicReference<Thread> secondThread = new AtomicReference<>();
+      Future<List<Verifier>> second = callers.submit(() -> {
+        secondThread.set(Thread.currentThread());
+        return provider.findVerifier("issuer", "k");
+      });
+      while (secondThread.get() == null
+          || secondThread.get().getState() != Thread.State.WAITING) {
+        Thread.sleep(1);
+      }
+      release.countDown();
+      assertSame(first.get(), second.get());
+      assertEquals(1, fetches.get());
+    } finally {
+      callers.shutdownNow();
+    }
+  }
+
+  private ResilientVerifierProvider newProvider() {
+    return new ResilientVerifierProvider(
+        new UrlBasedVerifierProvider(SignatureAlgorithm.ES256, url, 1000, 1000),
+        Duration.standardMinutes(1), Duration.standardMinutes(10), 2,
+        Duration.standardSeconds(1), Duration.standardSeconds(8), clock,
+        MoreExecutors.directExecutor());
+  }
+}
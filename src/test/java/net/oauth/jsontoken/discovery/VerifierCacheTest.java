@@ -0,0 +1,229 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.jsontoken.discovery;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import junit.framework.TestCase;
+import net.oauth.jsontoken.FakeClock;
+import net.oauth.jsontoken.crypto.SignatureAlgorithm;
+import net.oauth.jsontoken.crypto.Verifier;
+import org.joda.time.Duration;
+
+/**
+ * Unit tests for {@link VerifierCache}.
+ */
+public class VerifierCacheTest extends TestCase {
+
+  private final FakeClock clock = new FakeClock();
+  private final AtomicInteger lookups = new AtomicInteger();
+  private final VerifierProvider provider = (issuer, keyId) -> {
+    lookups.incrementAndGet();
+    if ("revoked".equals(keyId)) {
+      return null;
+    }
+    Verifier verifier = (source, signature) -> { };
+    return ImmutableList.of(verifier);
+  };
+
+  public void testHitsAndMisses() throws Exception {
+    VerifierCache cache = newCache(16);
+    VerifierProvider cached = cache.wrap(SignatureAlgorithm.HS256, provider);
+
+    List<Verifier> first = cached.findVerifier("google.com", "key1");
+    assertSame(first, cached.findVerifier("google.com", "key1"));
+    assertNotSame(first, cached.findVerifier("google.com", "key2"));
+    assertNotSame(first,
+        cache.wrap(SignatureAlgorithm.HS512, provider).findVerifier("google.com", "key1"));
+
+    assertEquals(3, lookups.get());
+    VerifierCache.Stats stats = cache.getStats();
+    assertEquals(3, stats.getSize());
+    assertEquals(1, stats.getHitCount());
+    assertEquals(3, stats.getMissCount());
+    assertEquals(0.25, stats.getHitRate());
+  }
+
+  public void testProvidersDoNotShareEntries() throws Exception {
+    VerifierCache cache = newCache(16);
+    Verifier tenantA = (source, signature) -> { };
+    Verifier tenantB = (source, signature) -> { };
+    VerifierProvider cachedA =
+        cache.wrap(SignatureAlgorithm.HS256, (issuer, keyId) -> ImmutableList.of(tenantA));
+    VerifierProvider cachedB =
+        cache.wrap(SignatureAlgorithm.HS256, (issuer, keyId) -> ImmutableList.of(tenantB));
+
+    assertSame(tenantA, cachedA.findVerifier("google.com", "key1").get(0));
+    assertSame(tenantB, cachedB.findVerifier("google.com", "key1").get(0));
+    assertSame(tenantA, cachedA.findVerifier("google.com", "key1").get(0));
+    assertEquals(2, cache.getStats().getSize());
+  }
+
+  public void testTimeToLive() throws Exception {
+    VerifierCache cache = newCache(16);
+    VerifierProvider cached = cache.wrap(SignatureAlgorithm.HS256, provider);
+    List<Verifier> first = cached.findVerifier("google.com", "key1");
+
+    clock.setNow(clock.now().plus(Duration.standardMinutes(11)));
+    assertNotSame(first, cached.findVerifier("google.com", "key1"));
+    assertEquals(2, lookups.get());
+    assertEquals(0, cache.getStats().getRotationCount());
+  }
+
+  public void testLeastRecentlyUsedEviction() throws Exception {
+    VerifierCache cache = new VerifierCache(2, 1, Duration.standardMinutes(10), clock);
+    VerifierProvider cached = cache.wrap(SignatureAlgorithm.HS256, provider);
+    cached.findVerifier("a", "key");
+    cached.findVerifier("b", "key");
+    cached.findVerifier("a", "key");
+    cached.findVerifier("c", "key");
+
+    assertEquals(2, cache.getStats().getSize());
+    assertEquals(1, cache.getStats().getEvictionCount());
+    cached.findVerifier("a", "key");
+    assertEquals(3, lookups.get());
+  }
+
+  public void testRotation() throws Exception {
+    VerifierCache cache = newCache(16);
+    AtomicBoolean revoked = new AtomicBoolean();
+    VerifierProvider cached = cache.wrap(SignatureAlgorithm.HS256,
+        (issuer, keyId) -> revoked.get() ? null : provider.findVerifier(issuer, keyId));
+    cached.findVerifier("google.com", "key1");
+    cached.findVerifier("google.com", "key2");
+    cached.findVerifier("example.com", "key1");
+
+    cache.retainKeyIds("google.com", ImmutableSet.of("key2", "key3"));
+    assertEquals(2, cache.getStats().getSize());
+    assertEquals(1, cache.getStats().getRotationCount());
+
+    // a key that no longer resolves is dropped when it is reloaded
+    revoked.set(true);
+    clock.setNow(clock.now().plus(Duration.standardMinutes(11)));
+    assertNull(cached.findVerifier("google.com", "key2"));
+    assertEquals(1, cache.getStats().getSize());
+    assertEquals(2, cache.getStats().getRotationCount());
+  }
+
+  public void testAsyncProviders() throws Exception {
+    VerifierCache cache = newCache(16);
+    AsyncVerifierProviders providers = alg -> alg != SignatureAlgorithm.HS256 ? null
+        : (issuer, keyId) -> Futures.immediateFuture(provider.findVerifier(issuer, keyId));
+    AsyncVerifierProviders cached = cache.wrapAsync(providers);
+
+    assertNull(cached.getVerifierProvider(SignatureAlgorithm.RS256));
+    AsyncVerifierProvider hs256 = cached.getVerifierProvider(SignatureAlgorithm.HS256);
+    List<Verifier> first = hs256.findVerifier("google.com", "key1").get();
+    assertSame(first, hs256.findVerifier("google.com", "key1").get());
+    assertNull(hs256.findVerifier("google.com", "revoked").get());
+    assertEquals(2, lookups.get());
+  }
+
+  public void testProviderIgnoringKeyIds() throws Exception {
+    VerifierCache cache = new VerifierCache(2, 1, Duration.standardMinutes(10), clock);
+    VerifierProvider ignoringKeyIds = new VerifierProvider() {
+      @Override
+      public List<Verifier> findVerifier(String issuer, String keyId) {
+        return provider.findVerifier(issuer, "any");
+      }
+
+      @Override
+      public boolean usesKeyId() {
+        return false;
+      }
+    };
+    VerifierProvider cached = cache.wrap(SignatureAlgorithm.RS256, ignoringKeyIds);
+    List<Verifier> legitimate = cache.wrap(SignatureAlgorithm.HS256, provider)
+        .findVerifier("google.com", "key1");
+
+    // random key ids share one entry rather than pushing others out
+    List<Verifier> first = cached.findVerifier("example.com", "kid-1");
+    for (int i = 2; i < 100; i++) {
+      assertSame(first, cached.findVerifier("example.com", "kid-" + i));
+    }
+    assertEquals(2, lookups.get());
+    assertEquals(0, cache.getStats().getEvictionCount());
+    assertSame(legitimate,
+        cache.wrap(SignatureAlgorithm.HS256, provider).findVerifier("google.com", "key1"));
+  }
+
+  public void testConcurrentMissesShareOneLoad() throws Exception {
+    VerifierCache cache = newCache(16);
+    CountDownLatch entered = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    VerifierProvider cached = cache.wrap(SignatureAlgorithm.HS256, (issuer, keyId) -> {
+      entered.countDown();
+      Uninterruptibles.awaitUninterruptibly(release);
+      return provider.findVerifier(issuer, keyId);
+    });
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<List<Verifier>> leader =
+          executor.submit(() -> cached.findVerifier("google.com", "key1"));
+      entered.await();
+      AtomicReference<Thread> followerThread = new AtomicReference<>();
+      Future<List<Verifier>> follower = executor.submit(() -> {
+        followerThread.set(Thread.currentThread());
+        return cached.findVerifier("google.com", "key1");
+      });
+      while (followerThread.get() == null
+          || followerThread.get().getState() != Thread.State.WAITING) {
+        Thread.sleep(1);
+      }
+      release.countDown();
+      assertSame(leader.get(), follower.get());
+      assertEquals(1, lookups.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  public void testConcurrentAsyncMissesShareOneLoad() throws Exception {
+    VerifierCache cache = newCache(16);
+    SettableFuture<List<Verifier>> pending = SettableFuture.create();
+    AsyncVerifierProvider cached = cache.wrapAsync(SignatureAlgorithm.HS256, (issuer, keyId) -> {
+      lookups.incrementAndGet();
+      return pending;
+    });
+
+    ListenableFuture<List<Verifier>> first = cached.findVerifier("google.com", "key1");
+    ListenableFuture<List<Verifier>> second = cached.findVerifier("google.com", "key1");
+    assertEquals(1, lookups.get());
+    // cancelling one caller's future does not cancel the shared load
+    second.cancel(false);
+    pending.set(ImmutableList.<Verifier>of((source, signature) -> { }));
+    assertSame(first.get(), cached.findVerifier("google.com", "key1").get());
+    assertEquals(1, lookups.get());
+  }
+
+  private VerifierCache newCache(int maxSize) {
+    return new VerifierCache(maxSize, 4, Duration.standardMinutes(10), clock);
+  }
+}
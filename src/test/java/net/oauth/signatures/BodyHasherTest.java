@@ -0,0 +1,91 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.signatures;
+
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.security.MessageDigest;
+import java.security.SignatureException;
+import java.util.Random;
+import junit.framework.TestCase;
+import net.oauth.jsontoken.Base64Url;
+import net.oauth.jsontoken.crypto.SignatureAlgorithm;
+
+public class BodyHasherTest extends TestCase {
+
+  private static final byte[] BODY = new byte[100000];
+
+  static {
+    new Random(42).nextBytes(BODY);
+  }
+
+  public void testHash() throws Exception {
+    String expected = Base64Url.encode(MessageDigest.getInstance("SHA-256").digest(BODY));
+    assertEquals(expected, BodyHasher.hash(SignatureAlgorithm.HS256, BODY));
+
+    assertEquals(expected, new BodyHasher(SignatureAlgorithm.HS256)
+        .update(new ByteArrayInputStream(BODY))
+        .finish());
+    assertEquals(expected, new BodyHasher(SignatureAlgorithm.HS256)
+        .update(Channels.newChannel(new ByteArrayInputStream(BODY)))
+        .finish());
+    assertEquals(expected, new BodyHasher(SignatureAlgorithm.HS256)
+        .update(ByteBuffer.wrap(BODY, 0, 1000))
+        .update(BODY, 1000, BODY.length - 1000)
+        .finish());
+  }
+
+  public void testFinishedHasherRejected() throws Exception {
+    BodyHasher hasher = new BodyHasher(SignatureAlgorithm.RS256);
+    hasher.finish();
+    assertThrows(
+        IllegalStateException.class,
+        () -> hasher.update(BODY, 0, 1)
+    );
+  }
+
+  public void testVerifyingInputStream() throws Exception {
+    String bodyHash = BodyHasher.hash(SignatureAlgorithm.HS256, BODY);
+    BodyHashVerifyingInputStream in = new BodyHashVerifyingInputStream(
+        new ByteArrayInputStream(BODY), SignatureAlgorithm.HS256, bodyHash);
+    assertEquals(0, in.skip(-1));
+    assertEquals(0, in.skip(0));
+    assertEquals(10, in.skip(10));
+    assertEquals(BODY[10] & 0xff, in.read());
+    assertEquals(BODY.length - 11, ByteStreams.exhaust(in));
+    assertTrue(in.isVerified());
+    assertEquals(-1, in.read());
+  }
+
+  public void testVerifyingInputStream_mismatch() throws Exception {
+    String bodyHash = BodyHasher.hash(SignatureAlgorithm.HS256, BODY);
+    byte[] tampered = BODY.clone();
+    tampered[500] ^= 1;
+    InputStream in = new BodyHashVerifyingInputStream(
+        new ByteArrayInputStream(tampered), SignatureAlgorithm.HS256, bodyHash);
+
+    IOException e = assertThrows(IOException.class, () -> ByteStreams.exhaust(in));
+    assertTrue(e.getCause() instanceof SignatureException);
+    assertThrows(IOException.class, () -> in.read());
+  }
+}
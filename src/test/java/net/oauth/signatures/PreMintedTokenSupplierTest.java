@@ -0,0 +1,169 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.signatures;
+
+import static org.junit.Assert.assertThrows;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.oauth.jsontoken.JsonToken;
+import net.oauth.jsontoken.JsonTokenTestBase;
+import net.oauth.jsontoken.crypto.HmacSHA256Signer;
+import net.oauth.jsontoken.crypto.Signer;
+import org.joda.time.Duration;
+
+public class PreMintedTokenSupplierTest extends JsonTokenTestBase {
+
+  private static final String AUDIENCE = "http://www.example.com/api";
+
+  private final AtomicInteger nonces = new AtomicInteger();
+  private PreMintedTokenSupplier.TokenFactory factory;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    Signer signer = new HmacSHA256Signer("google.com", "key2", SYMMETRIC_KEY);
+    factory = (audience, scope) -> {
+      SignedOAuthToken token = new SignedOAuthToken(signer, clock);
+      token.setAudience(audience);
+      token.setMethod("GET");
+      token.setOAuthToken(scope);
+      token.setNonce("nonce" + nonces.incrementAndGet());
+      token.setIssuedAt(clock.now());
+      token.setExpiration(clock.now().plus(Duration.standardMinutes(2)));
+      return token;
+    };
+  }
+
+  public void testGetAuthorizationHeader() throws Exception {
+    PreMintedTokenSupplier supplier = new PreMintedTokenSupplier(
+        factory, 2, 1, Duration.standardSeconds(30), clock, Runnable::run);
+
+    String first = supplier.getAuthorizationHeader(AUDIENCE, "token");
+    assertTrue(first.startsWith("Token signed_token="));
+    // The empty pool was refilled after the inline signing.
+    assertEquals(3, supplier.getStats().getMintCount());
+
+    String second = supplier.getAuthorizationHeader(AUDIENCE, "token");
+    assertFalse(first.equals(second));
+    assertEquals(1, supplier.getStats().getHitCount());
+    assertEquals(1, supplier.getStats().getMissCount());
+    assertEquals(4, supplier.getStats().getMintCount());
+
+    JsonToken token = naiveDeserialize(second.substring("Token signed_token=".length()));
+    assertEquals("token", token.getParamAsPrimitive(SignedOAuthToken.OAUTH_TOKEN).getAsString());
+
+    supplier.getAuthorizationHeader(AUDIENCE, "other");
+    assertEquals(2, supplier.getStats().getMissCount());
+  }
+
+  public void testReuse() throws Exception {
+    PreMintedTokenSupplier supplier = new PreMintedTokenSupplier(
+        factory, 1, 2, Duration.standardSeconds(30), clock, Runnable::run);
+    supplier.prefill(AUDIENCE, "token");
+
+    String first = supplier.getAuthorizationHeader(AUDIENCE, "token");
+    assertEquals(first, supplier.getAuthorizationHeader(AUDIENCE, "token"));
+    assertFalse(first.equals(supplier.getAuthorizationHeader(AUDIENCE, "token")));
+    assertEquals(0, supplier.getStats().getMissCount());
+  }
+
+  public void testRefreshMargin() throws Exception {
+    PreMintedTokenSupplier supplier = new PreMintedTokenSupplier(
+        factory, 1, 5, Duration.standardSeconds(30), clock, Runnable::run);
+    String first = supplier.getAuthorizationHeader(AUDIENCE, "token");
+    assertEquals(first, supplier.getAuthorizationHeader(AUDIENCE, "token"));
+
+    clock.setNow(clock.now().plus(Duration.standardSeconds(90)));
+    assertFalse(first.equals(supplier.getAuthorizationHeader(AUDIENCE, "token")));
+    assertEquals(1, supplier.getStats().getDiscardedCount());
+  }
+
+  public void testEarliestExpiringTokenServedFirst() throws Exception {
+    ArrayDeque<Duration> lifetimes = new ArrayDeque<>(Arrays.asList(
+        Duration.standardMinutes(10), Duration.standardMinutes(2)));
+    PreMintedTokenSupplier supplier = new PreMintedTokenSupplier(
+        (audience, scope) -> {
+          SignedOAuthToken token = factory.newToken(audience, scope);
+          token.setExpiration(clock.now().plus(lifetimes.poll()));
+          return token;
+        },
+        2, 2, Duration.standardSeconds(30), clock, Runnable::run);
+
+    // signed inline and offered back, then the refill signs a token expiring sooner
+    String inline = supplier.getAuthorizationHeader(AUDIENCE, "token");
+    String refilled = supplier.getAuthorizationHeader(AUDIENCE, "token");
+    assertFalse(inline.equals(refilled));
+
+    clock.setNow(clock.now().plus(Duration.standardSeconds(90)));
+    assertEquals(inline, supplier.getAuthorizationHeader(AUDIENCE, "token"));
+    assertEquals(1, supplier.getStats().getDiscardedCount());
+  }
+
+  public void testRefreshBeforeExpiration() throws Exception {
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      Duration margin = Duration.standardSeconds(30);
+      PreMintedTokenSupplier supplier = new PreMintedTokenSupplier(
+          (audience, scope) -> {
+            SignedOAuthToken token = factory.newToken(audience, scope);
+            token.setExpiration(clock.now().plus(margin).plus(Duration.standardSeconds(2)));
+            return token;
+          },
+          1, 1, margin, clock, Runnable::run, scheduler);
+      supplier.prefill(AUDIENCE, "token");
+      assertEquals(1, supplier.getStats().getMintCount());
+
+      // the token enters the refresh margin while the pool is idle
+      clock.setNow(clock.now().plus(Duration.standardSeconds(2)));
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (supplier.getStats().getMintCount() < 2 && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(2, supplier.getStats().getMintCount());
+      assertEquals(1, supplier.getStats().getDiscardedCount());
+
+      supplier.getAuthorizationHeader(AUDIENCE, "token");
+      assertEquals(1, supplier.getStats().getHitCount());
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
+  public void testRefillFailure() throws Exception {
+    AtomicInteger calls = new AtomicInteger();
+    PreMintedTokenSupplier supplier = new PreMintedTokenSupplier(
+        (audience, scope) -> {
+          if (calls.incrementAndGet() > 1) {
+            throw new IllegalStateException("no key");
+          }
+          return factory.newToken(audience, scope);
+        },
+        1, 1, Duration.ZERO, clock, Runnable::run);
+
+    assertNotNull(supplier.getAuthorizationHeader(AUDIENCE, "token"));
+    assertEquals(1, supplier.getStats().getRefillFailureCount());
+    assertThrows(
+        IllegalStateException.class,
+        () -> supplier.getAuthorizationHeader(AUDIENCE, "token")
+    );
+  }
+}
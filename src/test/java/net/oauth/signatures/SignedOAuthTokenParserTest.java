@@ -0,0 +1,90 @@
+/**
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.oauth.signatures;
+
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.security.SignatureException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import net.oauth.jsontoken.JsonTokenTestBase;
+import net.oauth.jsontoken.crypto.HmacSHA256Signer;
+
+public class SignedOAuthTokenParserTest extends JsonTokenTestBase {
+
+  private static final byte[] BODY = "{\"amount\":100}".getBytes();
+
+  private SignedOAuthTokenParser parser;
+  private SignedOAuthToken token;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    parser = new SignedOAuthTokenParser(locators, null, clock);
+    token = new SignedOAuthToken(new HmacSHA256Signer("google.com", "key2", SYMMETRIC_KEY));
+  }
+
+  public void testGetVerifiedBody() throws Exception {
+    token.setRequestBody(BODY);
+    BodyHashVerifyingInputStream in = parser.getVerifiedBody(newRequest(BODY), token);
+    assertEquals(BODY.length, ByteStreams.exhaust(in));
+    assertTrue(in.isVerified());
+  }
+
+  public void testGetVerifiedBody_tamperedBody() throws Exception {
+    token.setRequestBody(BODY);
+    InputStream in = parser.getVerifiedBody(newRequest("{\"amount\":999}".getBytes()), token);
+    IOException e = assertThrows(IOException.class, () -> ByteStreams.exhaust(in));
+    assertTrue(e.getCause() instanceof SignatureException);
+  }
+
+  public void testGetVerifiedBody_missingBodyHash() throws Exception {
+    assertThrows(
+        SignatureException.class,
+        () -> parser.getVerifiedBody(newRequest(BODY), token)
+    );
+  }
+
+  private static HttpServletRequest newRequest(byte[] body) {
+    InputStream bodyStream = new ByteArrayInputStream(body);
+    ServletInputStream servletStream = new ServletInputStream() {
+      @Override
+      public int read() throws IOException {
+        return bodyStream.read();
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        return bodyStream.read(b, off, len);
+      }
+    };
+    return (HttpServletRequest) Proxy.newProxyInstance(
+        SignedOAuthTokenParserTest.class.getClassLoader(),
+        new Class<?>[] {HttpServletRequest.class},
+        (proxy, method, args) -> {
+          if (method.getName().equals("getInputStream")) {
+            return servletStream;
+          }
+          throw new UnsupportedOperationException(method.getName());
+        });
+  }
+}